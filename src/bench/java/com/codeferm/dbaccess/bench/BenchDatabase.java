@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.bench;
+
+import com.codeferm.dbaccess.DbAccess;
+import com.codeferm.dbaccess.DbAccessException;
+import com.codeferm.dbaccess.jdbc.DataGenerator;
+import com.codeferm.dbaccess.jdbc.StubDatabase;
+import com.codeferm.dbaccess.jdbc.StubDriver;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.apache.commons.dbcp2.BasicDataSource;
+import org.apache.commons.dbutils.QueryLoader;
+
+/**
+ * Embedded H2 database in PostgreSQL mode with the {@code test_table} of the
+ * unit tests, so benchmarks use the same SQL in {@code sql.properties} without
+ * an external server. Each database lives in memory until its
+ * {@code DataSource} is closed.
+ * <p>
+ * With {@code -Dbench.database=stub} the pool connects to
+ * {@link com.codeferm.dbaccess.jdbc.StubDatabase} instead, so only library
+ * overhead is measured. {@code -Dbench.stub.latency} adds execute latency in
+ * microseconds.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class BenchDatabase {
+
+    /**
+     * Table used by unit tests with H2 compatible types.
+     */
+    private static final String CREATE_TABLE = "create table test_table ("
+            + "id serial not null primary key, char_field char(50), "
+            + "varchar_field varchar(50), boolean_field boolean, "
+            + "date_field date, time_field time, "
+            + "timestamp_field timestamp, bigint_field bigint, "
+            + "int_field integer, smallint_field smallint, "
+            + "numeric_field numeric(9,2), real_field real, "
+            + "double_field double precision)";
+    /**
+     * Index for selects by {@code varchar_field}.
+     */
+    private static final String CREATE_INDEX = "create index "
+            + "test_table_varchar on test_table (varchar_field)";
+    /**
+     * Use stub database.
+     */
+    private static final boolean STUB = "stub".equalsIgnoreCase(System.
+            getProperty("bench.database", "h2"));
+    /**
+     * Execute latency of stub database in microseconds.
+     */
+    private static final long STUB_LATENCY = Long.getLong(
+            "bench.stub.latency", 0);
+    /**
+     * Rows inserted per batch when seeding.
+     */
+    private static final int SEED_BATCH = 500;
+    /**
+     * Seed of generated rows.
+     */
+    private static final long GENERATOR_SEED = 20111127L;
+    /**
+     * SQL statements of unit tests.
+     */
+    private static Map<String, String> sqlMap;
+
+    /**
+     * Static methods only.
+     */
+    private BenchDatabase() {
+    }
+
+    /**
+     * Get SQL statements from {@code sql.properties}.
+     *
+     * @return SQL by name.
+     */
+    public static synchronized Map<String, String> getSqlMap() {
+        if (sqlMap == null) {
+            try {
+                sqlMap = QueryLoader.instance().load("/sql.properties");
+            } catch (IOException e) {
+                throw new DbAccessException(e);
+            }
+        }
+        return sqlMap;
+    }
+
+    /**
+     * Create pooled {@code DataSource} for new in-memory database with
+     * {@code test_table}.
+     *
+     * @param name Database name, unique per benchmark trial.
+     * @param poolSize Maximum pooled connections.
+     * @return DataSource, close with {@link #close(DataSource)}.
+     */
+    public static DataSource create(final String name, final int poolSize) {
+        return create(name, poolSize, false);
+    }
+
+    /**
+     * Create pooled {@code DataSource} for new database with
+     * {@code test_table}. File databases are kept under {@code target/h2},
+     * so large tables do not use heap of the benchmark.
+     *
+     * @param name Database name, unique per benchmark trial.
+     * @param poolSize Maximum pooled connections.
+     * @param file Use file database instead of in-memory.
+     * @return DataSource, close with {@link #close(DataSource)}.
+     */
+    public static DataSource create(final String name, final int poolSize,
+            final boolean file) {
+        final BasicDataSource dataSource = new BasicDataSource();
+        dataSource.setMaxTotal(poolSize);
+        dataSource.setMaxIdle(poolSize);
+        if (STUB) {
+            final StubDatabase database = StubDatabase.get(name);
+            database.reset();
+            database.createTestTable();
+            database.setExecuteLatency(STUB_LATENCY, TimeUnit.MICROSECONDS);
+            dataSource.setDriverClassName(StubDriver.class.getName());
+            dataSource.setUrl(database.getUrl());
+        } else {
+            dataSource.setDriverClassName("org.h2.Driver");
+            if (file) {
+                dataSource.setUrl(String.format("jdbc:h2:file:./target/h2/%s;"
+                        + "MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE", name));
+            } else {
+                dataSource.setUrl(String.format("jdbc:h2:mem:%s;"
+                        + "MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+                        + "DB_CLOSE_DELAY=-1", name));
+            }
+            dataSource.setUsername("sa");
+            dataSource.setPassword("");
+            try (Connection connection = dataSource.getConnection();
+                    Statement statement = connection.createStatement()) {
+                statement.execute("drop table if exists test_table");
+                statement.execute(CREATE_TABLE);
+                statement.execute(CREATE_INDEX);
+            } catch (SQLException e) {
+                throw new DbAccessException(e);
+            }
+        }
+        return dataSource;
+    }
+
+    /**
+     * Drop database and close pool.
+     *
+     * @param dataSource DataSource from {@link #create(String, int)}.
+     */
+    public static void close(final DataSource dataSource) {
+        final BasicDataSource basicDataSource = (BasicDataSource) dataSource;
+        try {
+            if (STUB) {
+                StubDatabase.drop(StubDriver.database(basicDataSource.
+                        getUrl()).getName());
+            } else {
+                try (Connection connection = basicDataSource.getConnection();
+                        Statement statement = connection.createStatement()) {
+                    statement.execute("drop all objects");
+                }
+            }
+            basicDataSource.close();
+        } catch (SQLException e) {
+            throw new DbAccessException(e);
+        }
+    }
+
+    /**
+     * Close pool and keep database, so other pools can use it.
+     *
+     * @param dataSource DataSource from {@link #create(String, int)}.
+     */
+    public static void closePool(final DataSource dataSource) {
+        try {
+            ((BasicDataSource) dataSource).close();
+        } catch (SQLException e) {
+            throw new DbAccessException(e);
+        }
+    }
+
+    /**
+     * Create positional parameters for {@code insert.testtable}.
+     *
+     * @param varchar Value of {@code varchar_field}.
+     * @param number Value of numeric fields.
+     * @return Parameters.
+     */
+    public static Object[] row(final String varchar, final int number) {
+        final Timestamp now = new Timestamp(System.currentTimeMillis());
+        return new Object[]{"bench", varchar, Boolean.TRUE, now, now, now,
+            (long) number, number, (short) number, BigDecimal.valueOf(number,
+            2), (float) number, (double) number};
+    }
+
+    /**
+     * Create named parameters for {@code insert.testtable.named}.
+     *
+     * @param varchar Value of {@code varchar_field}.
+     * @param number Value of numeric fields.
+     * @return Parameters.
+     */
+    public static Map<String, Object> namedRow(final String varchar,
+            final int number) {
+        final Object[] values = row(varchar, number);
+        final String[] names = {"char_field", "varchar_field", "boolean_field",
+            "date_field", "time_field", "timestamp_field", "bigint_field",
+            "int_field", "smallint_field", "numeric_field", "real_field",
+            "double_field"};
+        final Map<String, Object> params = new HashMap<String, Object>();
+        for (int i = 0; i < names.length; i++) {
+            params.put(names[i], values[i]);
+        }
+        return params;
+    }
+
+    /**
+     * Insert rows in batches.
+     *
+     * @param dbAccess DbAccess.
+     * @param varchar Value of {@code varchar_field}.
+     * @param rows Number of rows.
+     */
+    public static void seed(final DbAccess dbAccess, final String varchar,
+            final int rows) {
+        final String sql = getSqlMap().get("insert.testtable");
+        int done = 0;
+        while (done < rows) {
+            final int count = Math.min(SEED_BATCH, rows - done);
+            final Object[][] params = new Object[count][];
+            for (int i = 0; i < count; i++) {
+                params[i] = row(varchar, done + i);
+            }
+            dbAccess.batch(sql, params);
+            done += count;
+        }
+    }
+
+    /**
+     * Insert deterministic rows with
+     * {@link com.codeferm.dbaccess.jdbc.DataGenerator}, which commits large
+     * batches directly through JDBC, so millions of rows take seconds instead
+     * of minutes with {@link #seed(DbAccess, String, int)}.
+     *
+     * @param dataSource DataSource from {@link #create(String, int)}.
+     * @param varchar Value of {@code varchar_field}.
+     * @param rows Number of rows.
+     */
+    public static void generate(final DataSource dataSource,
+            final String varchar, final long rows) {
+        final DataGenerator generator = new DataGenerator(GENERATOR_SEED);
+        generator.setValue("varchar_field", varchar);
+        generator.populate(dataSource, "test_table", 0, rows);
+    }
+}
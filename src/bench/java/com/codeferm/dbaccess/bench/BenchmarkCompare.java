@@ -0,0 +1,400 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compare two JMH JSON result files and report benchmarks that got worse by
+ * more than a threshold and by more than the combined score error. Throughput
+ * is worse when lower, all other modes when higher. Exit status is 1 if there
+ * are regressions, so a build can fail on them.
+ * <p>
+ * Usage: {@code BenchmarkCompare baseline.json current.json [percent]}, the
+ * default threshold is {@value #DEFAULT_THRESHOLD} percent.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class BenchmarkCompare {
+
+    /**
+     * Default threshold in percent.
+     */
+    public static final double DEFAULT_THRESHOLD = 10;
+    /**
+     * Regression threshold in percent.
+     */
+    private final double threshold;
+    /**
+     * Number of regressions found by last compare.
+     */
+    private int regressions;
+
+    /**
+     * Construct compare.
+     *
+     * @param threshold Regression threshold in percent.
+     */
+    public BenchmarkCompare(final double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Read JMH JSON results keyed by benchmark and parameters.
+     *
+     * @param file JSON file.
+     * @return Primary metric by key.
+     * @throws IOException Possible exception.
+     */
+    public static Map<String, Map<String, Object>> read(final File file)
+            throws IOException {
+        final String json = new String(Files.readAllBytes(file.toPath()),
+                StandardCharsets.UTF_8);
+        final Map<String, Map<String, Object>> results
+                = new TreeMap<String, Map<String, Object>>();
+        for (Object item : (List<?>) new Json(json).parse()) {
+            final Map<?, ?> run = (Map<?, ?>) item;
+            final StringBuilder key = new StringBuilder((String) run.get(
+                    "benchmark"));
+            final Map<?, ?> params = (Map<?, ?>) run.get("params");
+            if (params != null) {
+                key.append(new TreeMap<Object, Object>(params));
+            }
+            final Map<String, Object> primary = (Map<String, Object>) run.
+                    get("primaryMetric");
+            final Map<String, Object> metric
+                    = new LinkedHashMap<String, Object>(primary);
+            metric.put("mode", run.get("mode"));
+            results.put(key.toString(), metric);
+        }
+        return results;
+    }
+
+    /**
+     * Compare results and format report.
+     *
+     * @param baseline Baseline results from {@link #read(File)}.
+     * @param current Current results from {@link #read(File)}.
+     * @return Report.
+     */
+    public String compare(final Map<String, Map<String, Object>> baseline,
+            final Map<String, Map<String, Object>> current) {
+        regressions = 0;
+        final StringBuilder report = new StringBuilder();
+        for (Map.Entry<String, Map<String, Object>> entry : current.
+                entrySet()) {
+            final Map<String, Object> base = baseline.get(entry.getKey());
+            final Map<String, Object> now = entry.getValue();
+            if (base == null) {
+                report.append(String.format("NEW        %s %.3f %s%n", entry.
+                        getKey(), number(now, "score"), now.get("scoreUnit")));
+                continue;
+            }
+            final double baseScore = number(base, "score");
+            final double score = number(now, "score");
+            final double delta = (score - baseScore) / baseScore * 100;
+            // Positive change is always worse
+            double change = delta;
+            if ("thrpt".equals(now.get("mode"))) {
+                change = -delta;
+            }
+            final double error = number(base, "scoreError") + number(now,
+                    "scoreError");
+            String status = "OK";
+            if (change > threshold && Math.abs(score - baseScore) > error) {
+                status = "REGRESSION";
+                regressions++;
+            } else if (change < -threshold && Math.abs(score - baseScore)
+                    > error) {
+                status = "IMPROVED";
+            }
+            report.append(String.format("%-10s %s %.3f -> %.3f %s (%+.1f%%)%n",
+                    status, entry.getKey(), baseScore, score, now.get(
+                            "scoreUnit"), delta));
+        }
+        for (String key : baseline.keySet()) {
+            if (!current.containsKey(key)) {
+                report.append(String.format("MISSING    %s%n", key));
+            }
+        }
+        return report.toString();
+    }
+
+    /**
+     * Get number of regressions found by last compare.
+     *
+     * @return Regressions.
+     */
+    public int getRegressions() {
+        return regressions;
+    }
+
+    /**
+     * Get number from metric, NaN scores are 0.
+     *
+     * @param metric Metric.
+     * @param name Name.
+     * @return Value.
+     */
+    private static double number(final Map<String, Object> metric,
+            final String name) {
+        final Object value = metric.get(name);
+        double number = 0;
+        if (value instanceof Number) {
+            number = ((Number) value).doubleValue();
+        }
+        return number;
+    }
+
+    /**
+     * Compare baseline to current results.
+     *
+     * @param args Baseline file, current file and optional threshold percent.
+     * @throws IOException Possible exception.
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println(
+                    "Usage: BenchmarkCompare baseline.json current.json "
+                    + "[percent]");
+            System.exit(2);
+        }
+        double threshold = DEFAULT_THRESHOLD;
+        if (args.length > 2) {
+            threshold = Double.parseDouble(args[2]);
+        }
+        final BenchmarkCompare compare = new BenchmarkCompare(threshold);
+        System.out.print(compare.compare(read(new File(args[0])), read(
+                new File(args[1]))));
+        System.out.println(String.format("%d regressions over %.1f%%",
+                compare.getRegressions(), threshold));
+        if (compare.getRegressions() > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Minimal JSON reader for JMH results. Objects are Maps, arrays are Lists
+     * and numbers are Doubles. JMH writes "NaN" as a string, which is kept as
+     * a string.
+     */
+    private static final class Json {
+
+        /**
+         * JSON text.
+         */
+        private final String text;
+        /**
+         * Current position.
+         */
+        private int pos;
+
+        /**
+         * Construct reader.
+         *
+         * @param text JSON text.
+         */
+        Json(final String text) {
+            this.text = text;
+        }
+
+        /**
+         * Parse value.
+         *
+         * @return Value.
+         */
+        Object parse() {
+            skipWhitespace();
+            if (pos >= text.length()) {
+                throw error("Unexpected end");
+            }
+            final char c = text.charAt(pos);
+            Object value;
+            if (c == '{') {
+                value = parseObject();
+            } else if (c == '[') {
+                value = parseArray();
+            } else if (c == '"') {
+                value = parseString();
+            } else if (text.startsWith("true", pos)) {
+                pos += "true".length();
+                value = Boolean.TRUE;
+            } else if (text.startsWith("false", pos)) {
+                pos += "false".length();
+                value = Boolean.FALSE;
+            } else if (text.startsWith("null", pos)) {
+                pos += "null".length();
+                value = null;
+            } else {
+                value = parseNumber();
+            }
+            return value;
+        }
+
+        /**
+         * Parse object.
+         *
+         * @return Map.
+         */
+        private Map<String, Object> parseObject() {
+            final Map<String, Object> map = new LinkedHashMap<String, Object>();
+            pos++;
+            skipWhitespace();
+            if (text.charAt(pos) == '}') {
+                pos++;
+            } else {
+                boolean more = true;
+                while (more) {
+                    skipWhitespace();
+                    final String key = parseString();
+                    skipWhitespace();
+                    expect(':');
+                    map.put(key, parse());
+                    skipWhitespace();
+                    more = text.charAt(pos) == ',';
+                    if (!more) {
+                        expect('}');
+                    } else {
+                        pos++;
+                    }
+                }
+            }
+            return map;
+        }
+
+        /**
+         * Parse array.
+         *
+         * @return List.
+         */
+        private List<Object> parseArray() {
+            final List<Object> list = new ArrayList<Object>();
+            pos++;
+            skipWhitespace();
+            if (text.charAt(pos) == ']') {
+                pos++;
+            } else {
+                boolean more = true;
+                while (more) {
+                    list.add(parse());
+                    skipWhitespace();
+                    more = text.charAt(pos) == ',';
+                    if (!more) {
+                        expect(']');
+                    } else {
+                        pos++;
+                    }
+                }
+            }
+            return list;
+        }
+
+        /**
+         * Parse string.
+         *
+         * @return String.
+         */
+        private String parseString() {
+            expect('"');
+            final StringBuilder str = new StringBuilder();
+            char c = text.charAt(pos++);
+            while (c != '"') {
+                if (c == '\\') {
+                    c = text.charAt(pos++);
+                    switch (c) {
+                        case 'n':
+                            str.append('\n');
+                            break;
+                        case 't':
+                            str.append('\t');
+                            break;
+                        case 'r':
+                            str.append('\r');
+                            break;
+                        case 'b':
+                            str.append('\b');
+                            break;
+                        case 'f':
+                            str.append('\f');
+                            break;
+                        case 'u':
+                            str.append((char) Integer.parseInt(text.substring(
+                                    pos, pos + 4), 16));
+                            pos += 4;
+                            break;
+                        default:
+                            str.append(c);
+                    }
+                } else {
+                    str.append(c);
+                }
+                c = text.charAt(pos++);
+            }
+            return str.toString();
+        }
+
+        /**
+         * Parse number.
+         *
+         * @return Double.
+         */
+        private Double parseNumber() {
+            final int start = pos;
+            while (pos < text.length() && "+-0123456789.eE".indexOf(text.
+                    charAt(pos)) >= 0) {
+                pos++;
+            }
+            if (start == pos) {
+                throw error("Unexpected character");
+            }
+            return Double.valueOf(text.substring(start, pos));
+        }
+
+        /**
+         * Skip white space.
+         */
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(
+                    pos))) {
+                pos++;
+            }
+        }
+
+        /**
+         * Consume expected character.
+         *
+         * @param c Character.
+         */
+        private void expect(final char c) {
+            if (pos >= text.length() || text.charAt(pos) != c) {
+                throw error(String.format("Expected '%c'", c));
+            }
+            pos++;
+        }
+
+        /**
+         * Create parse error.
+         *
+         * @param message Message.
+         * @return Exception.
+         */
+        private IllegalArgumentException error(final String message) {
+            return new IllegalArgumentException(String.format(
+                    "%s at position %d", message, pos));
+        }
+    }
+}
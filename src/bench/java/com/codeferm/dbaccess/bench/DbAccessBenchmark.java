@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.bench;
+
+import com.codeferm.dbaccess.DbAccess;
+import com.codeferm.dbaccess.dto.TestTableDto;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Positional, named, batch and bean list paths of every
+ * {@link com.codeferm.dbaccess.DbAccess} implementation against an embedded
+ * H2 database. This replaces the {@code System.currentTimeMillis()} loops of
+ * the unit tests with JMH warmup, forks and error bounds, so results can be
+ * reproduced on any machine. Run with
+ * {@code mvn -Pbenchmark test-compile exec:exec
+ * -Dbench.args=DbAccessBenchmark}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DbAccessBenchmark {
+
+    /**
+     * Value of {@code varchar_field} of seeded rows.
+     */
+    private static final String SEEDED = "seeded";
+    /**
+     * Value of {@code varchar_field} of rows inserted by benchmarks.
+     */
+    private static final String INSERTED = "inserted";
+    /**
+     * Implementation measured.
+     */
+    @Param({"DbJdbcConn", "DbJdbcDs", "DbQueryRunnerConn", "DbQueryRunnerDs",
+        "DbJdbcTemplate", "DbPersist"})
+    private Implementation implementation;
+    /**
+     * Rows returned by list benchmarks and inserted by batch.
+     */
+    @Param({"1", "100", "1000"})
+    private int rows;
+    /**
+     * Database.
+     */
+    private DataSource dataSource;
+    /**
+     * Instance measured.
+     */
+    private DbAccess dbAccess;
+    /**
+     * SQL by name.
+     */
+    private Map<String, String> sqlMap;
+    /**
+     * Id of a seeded row.
+     */
+    private Object[] byId;
+    /**
+     * Named id of a seeded row.
+     */
+    private Map<String, Object> byIdNamed;
+    /**
+     * Select seeded rows.
+     */
+    private Object[] bySeeded;
+    /**
+     * Batch insert parameters.
+     */
+    private Object[][] batch;
+    /**
+     * Named batch insert parameters.
+     */
+    private List<Map<String, Object>> namedBatch;
+
+    /**
+     * Create database, seed rows and create instance.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Setup
+    public void setUp() throws SQLException {
+        sqlMap = BenchDatabase.getSqlMap();
+        dataSource = BenchDatabase.create(String.format("dbaccess_%s_%d",
+                implementation, rows), 8);
+        dbAccess = implementation.create(dataSource);
+        BenchDatabase.seed(dbAccess, SEEDED, rows);
+        final int id = (Integer) dbAccess.selectList(sqlMap.get(
+                "select.testtable.by.varchar.field"), new Object[]{SEEDED}).
+                get(0).get("id");
+        byId = new Object[]{id};
+        byIdNamed = new HashMap<String, Object>();
+        byIdNamed.put("int_field", id);
+        bySeeded = new Object[]{SEEDED};
+        batch = new Object[rows][];
+        namedBatch = new ArrayList<Map<String, Object>>(rows);
+        for (int i = 0; i < rows; i++) {
+            batch[i] = BenchDatabase.row(INSERTED, i);
+            namedBatch.add(BenchDatabase.namedRow(INSERTED, i));
+        }
+    }
+
+    /**
+     * Clean up instance and drop database.
+     */
+    @TearDown
+    public void tearDown() {
+        dbAccess.cleanUp();
+        BenchDatabase.close(dataSource);
+    }
+
+    /**
+     * Select one row as bean with positional parameter.
+     *
+     * @return Beans.
+     */
+    @Benchmark
+    public List<TestTableDto> selectById() {
+        return dbAccess.selectList(sqlMap.get("select.testtable.by.id"), byId,
+                TestTableDto.class);
+    }
+
+    /**
+     * Select one row as bean with named parameter.
+     *
+     * @return Beans.
+     */
+    @Benchmark
+    public List<TestTableDto> selectByIdNamed() {
+        return dbAccess.selectList(sqlMap.get("select.testtable.by.id.named"),
+                byIdNamed, TestTableDto.class);
+    }
+
+    /**
+     * Select seeded rows as beans.
+     *
+     * @return Beans.
+     */
+    @Benchmark
+    public List<TestTableDto> beanList() {
+        return dbAccess.selectList(sqlMap.get(
+                "select.testtable.by.varchar.field"), bySeeded,
+                TestTableDto.class);
+    }
+
+    /**
+     * Select seeded rows as maps.
+     *
+     * @return Maps.
+     */
+    @Benchmark
+    public List<Map<String, Object>> mapList() {
+        return dbAccess.selectList(sqlMap.get(
+                "select.testtable.by.varchar.field"), bySeeded);
+    }
+
+    /**
+     * Batch insert rows and delete them.
+     *
+     * @return Rows deleted.
+     */
+    @Benchmark
+    public int batch() {
+        dbAccess.batch(sqlMap.get("insert.testtable"), batch);
+        return dbAccess.update(sqlMap.get("delete.testtable.by.varchar.field"),
+                new Object[]{INSERTED});
+    }
+
+    /**
+     * Batch insert rows with named parameters and delete them.
+     *
+     * @return Rows deleted.
+     */
+    @Benchmark
+    public int batchNamed() {
+        dbAccess.batch(sqlMap.get("insert.testtable.named"), namedBatch);
+        return dbAccess.update(sqlMap.get("delete.testtable.by.varchar.field"),
+                new Object[]{INSERTED});
+    }
+}
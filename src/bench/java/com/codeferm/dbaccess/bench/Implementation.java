@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.bench;
+
+import com.codeferm.dbaccess.DbAccess;
+import java.sql.Connection;
+import java.sql.SQLException;
+import javax.sql.DataSource;
+
+/**
+ * {@link com.codeferm.dbaccess.DbAccess} implementations benchmarked. Names
+ * match the class names, so they can be used as JMH {@code @Param} values.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public enum Implementation {
+
+    /**
+     * {@link com.codeferm.dbaccess.DbJdbcConn}.
+     */
+    DbJdbcConn(false),
+    /**
+     * {@link com.codeferm.dbaccess.DbJdbcDs}.
+     */
+    DbJdbcDs(true),
+    /**
+     * {@link com.codeferm.dbaccess.DbQueryRunnerConn}.
+     */
+    DbQueryRunnerConn(false),
+    /**
+     * {@link com.codeferm.dbaccess.DbQueryRunnerDs}.
+     */
+    DbQueryRunnerDs(true),
+    /**
+     * {@link com.codeferm.dbaccess.DbJdbcTemplate}.
+     */
+    DbJdbcTemplate(true),
+    /**
+     * {@link com.codeferm.dbaccess.DbPersist}.
+     */
+    DbPersist(false);
+
+    /**
+     * Gets a pooled connection per operation, so it can be shared by threads.
+     */
+    private final boolean dataSourceBased;
+
+    /**
+     * Construct implementation.
+     *
+     * @param dataSourceBased True if a connection is acquired per operation.
+     */
+    Implementation(final boolean dataSourceBased) {
+        this.dataSourceBased = dataSourceBased;
+    }
+
+    /**
+     * Is a connection acquired per operation, so one instance can be shared
+     * by threads?
+     *
+     * @return True if {@code DataSource} based.
+     */
+    public boolean isDataSourceBased() {
+        return dataSourceBased;
+    }
+
+    /**
+     * Create instance. {@code Connection} based implementations hold a
+     * connection until {@link DbAccess#cleanUp()}.
+     *
+     * @param dataSource Database.
+     * @return New instance.
+     * @throws SQLException Possible exception.
+     */
+    public DbAccess create(final DataSource dataSource) throws SQLException {
+        DbAccess dbAccess;
+        switch (this) {
+            case DbJdbcConn:
+                dbAccess = new com.codeferm.dbaccess.DbJdbcConn(dataSource);
+                break;
+            case DbJdbcDs:
+                dbAccess = new com.codeferm.dbaccess.DbJdbcDs(dataSource);
+                break;
+            case DbQueryRunnerConn:
+                dbAccess = new com.codeferm.dbaccess.DbQueryRunnerConn(
+                        dataSource);
+                break;
+            case DbQueryRunnerDs:
+                dbAccess = new com.codeferm.dbaccess.DbQueryRunnerDs(
+                        dataSource);
+                break;
+            case DbJdbcTemplate:
+                dbAccess = new com.codeferm.dbaccess.DbJdbcTemplate(
+                        dataSource);
+                break;
+            default:
+                dbAccess = new com.codeferm.dbaccess.DbPersist(dataSource);
+                break;
+        }
+        return dbAccess;
+    }
+
+    /**
+     * Get connection held by a {@code Connection} based instance.
+     *
+     * @param dbAccess Instance from {@link #create(DataSource)}.
+     * @return Connection or null if {@code DataSource} based.
+     */
+    public Connection connection(final DbAccess dbAccess) {
+        Connection connection;
+        switch (this) {
+            case DbJdbcConn:
+                connection = ((com.codeferm.dbaccess.DbJdbcConn) dbAccess).
+                        getConnection();
+                break;
+            case DbQueryRunnerConn:
+                connection = ((com.codeferm.dbaccess.DbQueryRunnerConn)
+                        dbAccess).getConnection();
+                break;
+            case DbPersist:
+                connection = ((com.codeferm.dbaccess.DbPersist) dbAccess).
+                        getConnection();
+                break;
+            default:
+                connection = null;
+                break;
+        }
+        return connection;
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.bench;
+
+import com.codeferm.dbaccess.DbBeanMapper;
+import com.codeferm.dbaccess.DbBeanProcessor;
+import com.codeferm.dbaccess.DbJdbcConn;
+import com.codeferm.dbaccess.dto.TestTableDto;
+import com.codeferm.dbaccess.jdbc.SyntheticResultSet;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import net.sf.persist.Persist;
+import org.apache.commons.dbutils.BasicRowProcessor;
+import org.apache.commons.dbutils.handlers.BeanListHandler;
+import org.apache.commons.dbutils.handlers.MapListHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.RowMapperResultSetExtractor;
+
+/**
+ * Mapping cost alone of each library, driven by a
+ * {@link com.codeferm.dbaccess.jdbc.SyntheticResultSet} so no database or
+ * driver time is included. Bean benchmarks map to
+ * {@link com.codeferm.dbaccess.dto.TestTableDto} and map benchmarks cover the
+ * map list path of each implementation. Columns are the first columns of
+ * {@code test_table}, so fewer columns also means fewer column types.
+ * <p>
+ * {@link #main(String[])} runs the suite with the {@code gc} profiler and
+ * prints time and allocated bytes per row, since JMH reports per operation
+ * and an operation maps all rows. Run with
+ * {@code mvn -Pbenchmark test-compile exec:exec
+ * -Dbench.main=com.codeferm.dbaccess.bench.MapperBenchmark}
+ * or pass {@code MapperBenchmark -prof gc} to the JMH main class.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MapperBenchmark {
+
+    /**
+     * SQL used to cache column metadata.
+     */
+    private static final String SQL = "select * from test_table";
+    /**
+     * Rows in result set.
+     */
+    @Param({"1", "100", "1000"})
+    private int rows;
+    /**
+     * Columns in result set.
+     */
+    @Param({"4", "13"})
+    private int columns;
+    /**
+     * Result set read by every benchmark.
+     */
+    private ResultSet resultSet;
+    /**
+     * Mapper of DbJdbcConn and DbJdbcDs.
+     */
+    private DbBeanMapper mapper;
+    /**
+     * Persist without a database.
+     */
+    private Persist persist;
+
+    /**
+     * Create result set and mappers.
+     */
+    @Setup
+    public void setUp() {
+        resultSet = SyntheticResultSet.testTable(rows, columns);
+        final Connection connection = offline(Connection.class);
+        mapper = new DbJdbcConn(connection);
+        persist = new Persist(connection);
+    }
+
+    /**
+     * Rewind result set.
+     *
+     * @return Result set before first row.
+     * @throws SQLException Possible exception.
+     */
+    private ResultSet rewind() throws SQLException {
+        resultSet.beforeFirst();
+        return resultSet;
+    }
+
+    /**
+     * Create JDBC object that returns defaults, so libraries that look at the
+     * connection or its metadata work without a database.
+     *
+     * @param <T> Interface type.
+     * @param type Interface.
+     * @return Proxy.
+     */
+    static <T> T offline(final Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(MapperBenchmark.class.
+                getClassLoader(), new Class[]{type}, new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(final Object proxy,
+                            final Method method, final Object[] args) {
+                        final Class<?> returnType = method.getReturnType();
+                        Object result = null;
+                        if (returnType == boolean.class) {
+                            result = Boolean.FALSE;
+                        } else if (returnType == int.class) {
+                            result = 0;
+                        } else if (returnType == String.class) {
+                            result = "";
+                        } else if (returnType == DatabaseMetaData.class) {
+                            result = offline(DatabaseMetaData.class);
+                        } else if (returnType == ResultSet.class) {
+                            result = SyntheticResultSet.create(new String[0],
+                                    new int[0], new Object[0][]);
+                        }
+                        return result;
+                    }
+                }));
+    }
+
+    /**
+     * DbJdbcConn and DbJdbcDs bean list.
+     *
+     * @return Beans.
+     * @throws SQLException Possible exception.
+     */
+    @Benchmark
+    public List<TestTableDto> dbBeanMapper() throws SQLException {
+        return mapper.createObjects(SQL, rewind(), TestTableDto.class);
+    }
+
+    /**
+     * DbQueryRunnerConn and DbQueryRunnerDs bean list.
+     *
+     * @return Beans.
+     * @throws SQLException Possible exception.
+     */
+    @Benchmark
+    public List<TestTableDto> dbBeanProcessor() throws SQLException {
+        return new BeanListHandler<TestTableDto>(TestTableDto.class,
+                new BasicRowProcessor(new DbBeanProcessor(SQL))).handle(
+                        rewind());
+    }
+
+    /**
+     * DbJdbcTemplate bean list.
+     *
+     * @return Beans.
+     * @throws SQLException Possible exception.
+     */
+    @Benchmark
+    public List<TestTableDto> beanPropertyRowMapper() throws SQLException {
+        return new RowMapperResultSetExtractor<TestTableDto>(
+                new BeanPropertyRowMapper<TestTableDto>(TestTableDto.class)).
+                extractData(rewind());
+    }
+
+    /**
+     * DbPersist bean list.
+     *
+     * @return Beans.
+     * @throws SQLException Possible exception.
+     */
+    @Benchmark
+    public List<TestTableDto> persistReadList() throws SQLException {
+        return persist.readList(TestTableDto.class, rewind());
+    }
+
+    /**
+     * DbJdbcConn and DbJdbcDs map list.
+     *
+     * @return Maps.
+     * @throws SQLException Possible exception.
+     */
+    @Benchmark
+    public List<Map<String, Object>> dbBeanMapperMaps() throws SQLException {
+        return mapper.createMaps(SQL, rewind());
+    }
+
+    /**
+     * DbQueryRunnerConn and DbQueryRunnerDs map list.
+     *
+     * @return Maps.
+     * @throws SQLException Possible exception.
+     */
+    @Benchmark
+    public List<Map<String, Object>> mapListHandler() throws SQLException {
+        return new MapListHandler().handle(rewind());
+    }
+
+    /**
+     * DbJdbcTemplate map list.
+     *
+     * @return Maps.
+     * @throws SQLException Possible exception.
+     */
+    @Benchmark
+    public List<Map<String, Object>> columnMapRowMapper() throws
+            SQLException {
+        return new RowMapperResultSetExtractor<Map<String, Object>>(
+                new ColumnMapRowMapper()).extractData(rewind());
+    }
+
+    /**
+     * DbPersist map list.
+     *
+     * @return Maps.
+     * @throws SQLException Possible exception.
+     */
+    @Benchmark
+    public List<Map<String, Object>> persistReadMapList() throws
+            SQLException {
+        return persist.readMapList(rewind());
+    }
+
+    /**
+     * Run suite with {@code gc} profiler and print results per row. Arguments
+     * are JMH command line options, for example {@code -p rows=100}.
+     *
+     * @param args JMH options.
+     * @throws CommandLineOptionException Invalid options.
+     * @throws RunnerException Benchmark failed.
+     */
+    public static void main(final String[] args) throws
+            CommandLineOptionException, RunnerException {
+        final OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(new CommandLineOptions(args)).include(
+                MapperBenchmark.class.getSimpleName()).addProfiler("gc");
+        final StringBuilder report = new StringBuilder(String.format(
+                "%-24s %6s %8s %14s %12s %12s%n", "Benchmark", "rows",
+                "columns", "rows/s", "ns/row", "bytes/row"));
+        for (RunResult result : new Runner(builder.build()).run()) {
+            final String benchmark = result.getParams().getBenchmark();
+            final int rowCount = Integer.parseInt(result.getParams().getParam(
+                    "rows"));
+            final double opsPerSecond = result.getPrimaryResult().getScore();
+            final Result alloc = result.getSecondaryResults().get(
+                    "gc.alloc.rate.norm");
+            double bytes = Double.NaN;
+            if (alloc != null) {
+                bytes = alloc.getScore() / rowCount;
+            }
+            report.append(String.format("%-24s %6d %8s %14.0f %12.1f %12.1f%n",
+                    benchmark.substring(benchmark.lastIndexOf('.') + 1),
+                    rowCount, result.getParams().getParam("columns"),
+                    opsPerSecond * rowCount, TimeUnit.SECONDS.toNanos(1)
+                    / (opsPerSecond * rowCount), bytes));
+        }
+        System.out.print(report);
+    }
+}
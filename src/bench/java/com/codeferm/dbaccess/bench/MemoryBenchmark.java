@@ -0,0 +1,274 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.bench;
+
+import com.codeferm.dbaccess.DbAccess;
+import com.codeferm.dbaccess.dto.TestTableDto;
+import com.codeferm.dbaccess.metrics.AllocationMetrics;
+import com.codeferm.dbaccess.metrics.AllocationStats;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.sql.DataSource;
+
+/**
+ * Heap retained and allocated by large result lists of each implementation,
+ * as {@code List<TestTableDto>} and as {@code List<Map<String, Object>>}.
+ * Retained bytes are the heap delta after full GCs with the list still
+ * reachable. Allocated bytes are counted by
+ * {@link com.codeferm.dbaccess.metrics.AllocationMetrics} and include garbage
+ * made while mapping. Peak is the sum of heap pool peaks during the select
+ * less the heap used before, an upper bound since pools peak at different
+ * times.
+ * <p>
+ * Results are CSV. Options are {@code -i} implementations, {@code -r} row
+ * counts, {@code -f true} to keep the table in an H2 file database so it does
+ * not share the heap being measured, and {@code -o} output file, lists are
+ * comma separated. The default rows of 50000, 1000000 and 10000000 need a
+ * large heap, for example
+ * {@code mvn -Pbenchmark test-compile exec:exec
+ * -Dbench.main=com.codeferm.dbaccess.bench.MemoryBenchmark
+ * -Dbench.jvmArgs=-Xmx16g -Dbench.args="-f true"}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class MemoryBenchmark {
+
+    /**
+     * CSV header.
+     */
+    public static final String HEADER = "implementation,rows,format,"
+            + "retained_bytes,retained_per_row,allocated_bytes,"
+            + "allocated_per_row,peak_bytes";
+    /**
+     * Maximum full GCs while waiting for heap to settle.
+     */
+    private static final int MAX_GC = 10;
+    /**
+     * Value of {@code varchar_field} of seeded rows.
+     */
+    private static final String SEEDED = "memory";
+    /**
+     * Implementations measured.
+     */
+    private List<Implementation> implementations = Arrays.asList(
+            Implementation.values());
+    /**
+     * Row counts.
+     */
+    private int[] rows = {50000, 1000000, 10000000};
+    /**
+     * Use file database.
+     */
+    private boolean file;
+    /**
+     * Output.
+     */
+    private PrintStream out = System.out;
+
+    /**
+     * Parse options.
+     *
+     * @param args Options and values.
+     * @throws IOException If output file cannot be created.
+     */
+    void parse(final String[] args) throws IOException {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            final String value = args[i + 1];
+            switch (args[i]) {
+                case "-i":
+                    implementations = new ArrayList<Implementation>();
+                    for (String name : value.split(",")) {
+                        implementations.add(Implementation.valueOf(name.
+                                trim()));
+                    }
+                    break;
+                case "-r":
+                    final String[] strs = value.split(",");
+                    rows = new int[strs.length];
+                    for (int j = 0; j < strs.length; j++) {
+                        rows[j] = Integer.parseInt(strs[j].trim());
+                    }
+                    break;
+                case "-f":
+                    file = Boolean.parseBoolean(value);
+                    break;
+                case "-o":
+                    out = new PrintStream(value, "UTF-8");
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format(
+                            "Unknown option %s", args[i]));
+            }
+        }
+    }
+
+    /**
+     * Run full GCs until used heap stops shrinking.
+     *
+     * @return Used heap bytes.
+     */
+    static long settledHeap() {
+        long used = Long.MAX_VALUE;
+        long last = usedHeap();
+        for (int i = 0; i < MAX_GC && last < used; i++) {
+            used = last;
+            System.gc();
+            last = usedHeap();
+        }
+        return Math.min(used, last);
+    }
+
+    /**
+     * Get used heap.
+     *
+     * @return Bytes.
+     */
+    private static long usedHeap() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().
+                getUsed();
+    }
+
+    /**
+     * Reset peak usage of heap pools.
+     */
+    private static void resetPeak() {
+        for (MemoryPoolMXBean pool : ManagementFactory.
+                getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Get sum of heap pool peaks since reset.
+     *
+     * @return Bytes.
+     */
+    private static long peak() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.
+                getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    /**
+     * Run all combinations and print CSV.
+     *
+     * @throws SQLException Possible exception.
+     */
+    void run() throws SQLException {
+        if (!AllocationMetrics.isSupported()) {
+            throw new IllegalStateException(
+                    "Thread allocation counting not supported by this JVM");
+        }
+        out.println(HEADER);
+        for (Implementation implementation : implementations) {
+            for (int count : rows) {
+                final DataSource dataSource = BenchDatabase.create(String.
+                        format("memory_%s_%d", implementation, count), 1,
+                        file);
+                try {
+                    BenchDatabase.generate(dataSource, SEEDED, count);
+                    final DbAccess dbAccess = implementation.create(
+                            dataSource);
+                    final AllocationMetrics metrics = new AllocationMetrics();
+                    dbAccess.setMetrics(metrics);
+                    measure(implementation, dbAccess, metrics, count, true);
+                    measure(implementation, dbAccess, metrics, count, false);
+                    dbAccess.cleanUp();
+                } finally {
+                    BenchDatabase.close(dataSource);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Select all seeded rows and print memory used.
+     *
+     * @param implementation Implementation.
+     * @param dbAccess DbAccess.
+     * @param metrics Allocation metrics set on dbAccess.
+     * @param count Seeded rows.
+     * @param beans Select beans, otherwise Maps.
+     */
+    private void measure(final Implementation implementation,
+            final DbAccess dbAccess, final AllocationMetrics metrics,
+            final int count, final boolean beans) {
+        final String sql = BenchDatabase.getSqlMap().get(
+                "select.testtable.by.varchar.field");
+        final Object[] params = {SEEDED};
+        // First small select loads classes and fills caches
+        select(dbAccess, sql, new Object[]{"none"}, beans);
+        metrics.reset();
+        final long before = settledHeap();
+        resetPeak();
+        final List<?> list = select(dbAccess, sql, params, beans);
+        final long peak = peak() - before;
+        // List is still reachable until size is read
+        final long retained = settledHeap() - before;
+        final int size = list.size();
+        final AllocationStats stats = metrics.getStats(sql);
+        final long allocated = stats == null ? 0 : stats.getBytes();
+        out.println(String.format("%s,%d,%s,%d,%d,%d,%d,%d", implementation,
+                size, beans ? "bean" : "map", retained, retained / Math.max(1,
+                        size), allocated, allocated / Math.max(1, size),
+                peak));
+        out.flush();
+        if (size != count) {
+            throw new IllegalStateException(String.format(
+                    "Expected %d rows, got %d", count, size));
+        }
+    }
+
+    /**
+     * Select rows as beans or Maps.
+     *
+     * @param dbAccess DbAccess.
+     * @param sql SQL.
+     * @param params Parameters.
+     * @param beans Select beans, otherwise Maps.
+     * @return Rows.
+     */
+    private static List<?> select(final DbAccess dbAccess, final String sql,
+            final Object[] params, final boolean beans) {
+        List<?> list;
+        if (beans) {
+            list = dbAccess.selectList(sql, params, TestTableDto.class);
+        } else {
+            list = dbAccess.selectList(sql, params);
+        }
+        return list;
+    }
+
+    /**
+     * Run benchmark.
+     *
+     * @param args Options.
+     * @throws Exception Possible exception.
+     */
+    public static void main(final String[] args) throws Exception {
+        final MemoryBenchmark benchmark = new MemoryBenchmark();
+        benchmark.parse(args);
+        benchmark.run();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.bench;
+
+import com.codeferm.dbaccess.DbAccess;
+import com.codeferm.dbaccess.DbJdbcConn;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Cost of named parameter support in {@link com.codeferm.dbaccess.DbAccess},
+ * which parses SQL with Spring {@code NamedParameterUtils} on every call. This
+ * separates parsing from database time measured by
+ * {@link com.codeferm.dbaccess.bench.DbAccessBenchmark}. SQL length is varied
+ * with a quoted literal, since the parser scans literals character by
+ * character.
+ * <p>
+ * {@link #main(String[])} writes JMH JSON results, by default to
+ * {@code target/named-params.json}. Keep one run as a baseline and compare
+ * later runs with {@link com.codeferm.dbaccess.bench.BenchmarkCompare}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class NamedParamBenchmark {
+
+    /**
+     * Default result file.
+     */
+    public static final String RESULT_FILE = "target/named-params.json";
+
+    /**
+     * SQL with named parameters and parameter values.
+     */
+    @State(Scope.Benchmark)
+    public static class Sql {
+
+        /**
+         * Named parameters in SQL.
+         */
+        @Param({"1", "10", "50"})
+        private int params;
+        /**
+         * Characters of quoted literal added to SQL.
+         */
+        @Param({"0", "2000"})
+        private int padding;
+        /**
+         * DbAccess without a connection.
+         */
+        private DbAccess dbAccess;
+        /**
+         * SQL with named parameters.
+         */
+        private String sql;
+        /**
+         * Parameter values.
+         */
+        private Map<String, Object> values;
+
+        /**
+         * Build SQL and values.
+         */
+        @Setup
+        public void setUp() {
+            dbAccess = new DbJdbcConn((Connection) null);
+            final StringBuilder columns = new StringBuilder();
+            final StringBuilder where = new StringBuilder();
+            values = new HashMap<String, Object>();
+            for (int i = 1; i <= params; i++) {
+                if (i > 1) {
+                    columns.append(", ");
+                    where.append(" and ");
+                }
+                columns.append("col_").append(i);
+                where.append("col_").append(i).append(" = :param_").append(i);
+                values.put("param_" + i, i);
+            }
+            final char[] literal = new char[padding];
+            Arrays.fill(literal, 'x');
+            sql = String.format("select %s from test_table where %s and "
+                    + "varchar_field <> '%s'", columns, where, new String(
+                            literal));
+        }
+    }
+
+    /**
+     * Batch of parameter maps.
+     */
+    @State(Scope.Benchmark)
+    public static class Batch {
+
+        /**
+         * Parameter maps in batch.
+         */
+        @Param({"1", "100", "1000"})
+        private int batchSize;
+        /**
+         * Parameter maps.
+         */
+        private List<Map<String, Object>> list;
+
+        /**
+         * Build batch from SQL values.
+         *
+         * @param sql SQL state.
+         */
+        @Setup
+        public void setUp(final Sql sql) {
+            list = new ArrayList<Map<String, Object>>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                list.add(new HashMap<String, Object>(sql.values));
+            }
+        }
+    }
+
+    /**
+     * Replace named parameters with markers.
+     *
+     * @param sql SQL state.
+     * @return SQL with markers.
+     */
+    @Benchmark
+    public String namedParamsToMarkers(final Sql sql) {
+        return sql.dbAccess.namedParamsToMarkers(sql.sql);
+    }
+
+    /**
+     * Order parameter values by position.
+     *
+     * @param sql SQL state.
+     * @return Values.
+     */
+    @Benchmark
+    public Object[] paramMapToArray(final Sql sql) {
+        return sql.dbAccess.paramMapToArray(sql.sql, sql.values);
+    }
+
+    /**
+     * Order batch parameter values by position.
+     *
+     * @param sql SQL state.
+     * @param batch Batch state.
+     * @return Values.
+     */
+    @Benchmark
+    public Object[][] mapListToArray(final Sql sql, final Batch batch) {
+        return sql.dbAccess.mapListToArray(sql.sql, batch.list);
+    }
+
+    /**
+     * Run suite and write JSON results. Arguments are JMH command line
+     * options, {@code -rff} overrides the result file.
+     *
+     * @param args JMH options.
+     * @throws CommandLineOptionException Invalid options.
+     * @throws RunnerException Benchmark failed.
+     */
+    public static void main(final String[] args) throws
+            CommandLineOptionException, RunnerException {
+        final CommandLineOptions options = new CommandLineOptions(args);
+        final OptionsBuilder builder = new OptionsBuilder();
+        builder.include(NamedParamBenchmark.class.getSimpleName()).
+                resultFormat(ResultFormatType.JSON);
+        if (!Arrays.asList(args).contains("-rff")) {
+            builder.result(RESULT_FILE);
+        }
+        new Runner(builder.parent(options).build()).run();
+    }
+}
@@ -0,0 +1,380 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.bench;
+
+import com.codeferm.dbaccess.DbAccess;
+import com.codeferm.dbaccess.dto.TestTableDto;
+import com.codeferm.dbaccess.metrics.LatencyHistogram;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sql.DataSource;
+
+/**
+ * Throughput and tail latency of the {@code DataSource} implementations as
+ * threads and pool size grow. Each run is a closed loop of selects by id for
+ * a fixed time, so latency includes time waiting for a pooled connection and
+ * the point where the pool saturates shows up as flat throughput with rising
+ * p99. JMH cannot sweep thread counts in one run or use virtual threads, so
+ * this is a plain main class. Virtual threads are used only when the JVM has
+ * {@code Executors.newVirtualThreadPerTaskExecutor()}.
+ * <p>
+ * Results are CSV with one row per implementation, pool size, thread kind and
+ * thread count. Options are {@code -i} implementations, {@code -t} thread
+ * counts, {@code -p} pool sizes, {@code -w} warmup seconds, {@code -s}
+ * measured seconds, {@code -r} seeded rows and {@code -o} output file, lists
+ * are comma separated. Run with
+ * {@code mvn -Pbenchmark test-compile exec:exec
+ * -Dbench.main=com.codeferm.dbaccess.bench.ScalingBenchmark
+ * -Dbench.args="-p 8,32 -s 10"}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class ScalingBenchmark {
+
+    /**
+     * CSV header.
+     */
+    public static final String HEADER = "implementation,pool,kind,threads,"
+            + "ops_per_sec,mean_us,p50_us,p99_us,p999_us,max_us";
+    /**
+     * Implementations measured.
+     */
+    private List<Implementation> implementations = Arrays.asList(
+            Implementation.DbJdbcDs, Implementation.DbQueryRunnerDs,
+            Implementation.DbJdbcTemplate);
+    /**
+     * Thread counts.
+     */
+    private int[] threads = {1, 2, 4, 8, 16, 32, 64, 128, 256};
+    /**
+     * Pool sizes.
+     */
+    private int[] pools = {8, 32};
+    /**
+     * Warmup seconds per run.
+     */
+    private int warmup = 2;
+    /**
+     * Measured seconds per run.
+     */
+    private int seconds = 5;
+    /**
+     * Seeded rows.
+     */
+    private int rows = 1000;
+    /**
+     * Output.
+     */
+    private PrintStream out = System.out;
+
+    /**
+     * Parse comma separated integers.
+     *
+     * @param value Comma separated integers.
+     * @return Integers.
+     */
+    private static int[] ints(final String value) {
+        final String[] strs = value.split(",");
+        final int[] ints = new int[strs.length];
+        for (int i = 0; i < strs.length; i++) {
+            ints[i] = Integer.parseInt(strs[i].trim());
+        }
+        return ints;
+    }
+
+    /**
+     * Parse options.
+     *
+     * @param args Options and values.
+     * @throws IOException If output file cannot be created.
+     */
+    void parse(final String[] args) throws IOException {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            final String value = args[i + 1];
+            switch (args[i]) {
+                case "-i":
+                    implementations = new ArrayList<Implementation>();
+                    for (String name : value.split(",")) {
+                        implementations.add(Implementation.valueOf(name.
+                                trim()));
+                    }
+                    break;
+                case "-t":
+                    threads = ints(value);
+                    break;
+                case "-p":
+                    pools = ints(value);
+                    break;
+                case "-w":
+                    warmup = Integer.parseInt(value);
+                    break;
+                case "-s":
+                    seconds = Integer.parseInt(value);
+                    break;
+                case "-r":
+                    rows = Integer.parseInt(value);
+                    break;
+                case "-o":
+                    out = new PrintStream(value, "UTF-8");
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format(
+                            "Unknown option %s", args[i]));
+            }
+        }
+    }
+
+    /**
+     * Create virtual thread executor if the JVM supports it.
+     *
+     * @return Executor or null if not supported.
+     */
+    static ExecutorService virtualExecutor() {
+        ExecutorService executor = null;
+        try {
+            executor = (ExecutorService) Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException
+                | InvocationTargetException e) {
+            executor = null;
+        }
+        return executor;
+    }
+
+    /**
+     * Run all combinations and print CSV.
+     *
+     * @throws SQLException Possible exception.
+     * @throws InterruptedException If interrupted.
+     */
+    void run() throws SQLException, InterruptedException {
+        final boolean virtual = virtualExecutor() != null;
+        out.println(HEADER);
+        for (Implementation implementation : implementations) {
+            if (!implementation.isDataSourceBased()) {
+                throw new IllegalArgumentException(String.format(
+                        "%s is not DataSource based", implementation));
+            }
+            for (int pool : pools) {
+                final DataSource dataSource = BenchDatabase.create(String.
+                        format("scaling_%s_%d", implementation, pool), pool);
+                try {
+                    final DbAccess dbAccess = implementation.create(
+                            dataSource);
+                    BenchDatabase.seed(dbAccess, "scaling", rows);
+                    final Object[] ids = ids(dbAccess);
+                    for (int count : threads) {
+                        print(implementation, pool, "platform", count,
+                                measure(dbAccess, ids, count, false));
+                        if (virtual) {
+                            print(implementation, pool, "virtual", count,
+                                    measure(dbAccess, ids, count, true));
+                        }
+                    }
+                    dbAccess.cleanUp();
+                } finally {
+                    BenchDatabase.close(dataSource);
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Get ids of seeded rows.
+     *
+     * @param dbAccess DbAccess.
+     * @return Ids.
+     */
+    private static Object[] ids(final DbAccess dbAccess) {
+        final List<Map<String, Object>> list = dbAccess.selectList(
+                BenchDatabase.getSqlMap().get(
+                        "select.testtable.by.varchar.field"), new Object[]{
+                    "scaling"});
+        final Object[] ids = new Object[list.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = list.get(i).get("id");
+        }
+        return ids;
+    }
+
+    /**
+     * Warm up, then measure one combination.
+     *
+     * @param dbAccess DbAccess.
+     * @param ids Ids of seeded rows.
+     * @param count Thread count.
+     * @param virtual Use virtual threads.
+     * @return Run.
+     * @throws InterruptedException If interrupted.
+     */
+    private Run measure(final DbAccess dbAccess, final Object[] ids,
+            final int count, final boolean virtual) throws
+            InterruptedException {
+        loop(dbAccess, ids, count, virtual, warmup);
+        return loop(dbAccess, ids, count, virtual, seconds);
+    }
+
+    /**
+     * Run closed loop of selects on threads for a fixed time.
+     *
+     * @param dbAccess DbAccess.
+     * @param ids Ids of seeded rows.
+     * @param count Thread count.
+     * @param virtual Use virtual threads.
+     * @param runSeconds Seconds to run.
+     * @return Run.
+     * @throws InterruptedException If interrupted.
+     */
+    private Run loop(final DbAccess dbAccess, final Object[] ids,
+            final int count, final boolean virtual, final int runSeconds)
+            throws InterruptedException {
+        final String sql = BenchDatabase.getSqlMap().get(
+                "select.testtable.by.id");
+        final LatencyHistogram histogram = new LatencyHistogram();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(count);
+        final AtomicReference<RuntimeException> error
+                = new AtomicReference<RuntimeException>();
+        ExecutorService executor;
+        if (virtual) {
+            executor = virtualExecutor();
+        } else {
+            executor = Executors.newFixedThreadPool(count);
+        }
+        for (int i = 0; i < count; i++) {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        while (running.get()) {
+                            final Object[] params = {ids[ThreadLocalRandom.
+                                current().nextInt(ids.length)]};
+                            final long begin = System.nanoTime();
+                            final List<TestTableDto> list = dbAccess.
+                                    selectList(sql, params,
+                                            TestTableDto.class);
+                            histogram.record(System.nanoTime() - begin);
+                            if (list.isEmpty()) {
+                                throw new IllegalStateException(
+                                        "Row not found");
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (RuntimeException e) {
+                        // Stop all threads on first error
+                        error.compareAndSet(null, e);
+                        running.set(false);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        final long begin = System.nanoTime();
+        start.countDown();
+        TimeUnit.SECONDS.sleep(runSeconds);
+        running.set(false);
+        done.await();
+        final long elapsed = System.nanoTime() - begin;
+        executor.shutdown();
+        if (error.get() != null) {
+            throw error.get();
+        }
+        return new Run(histogram, elapsed);
+    }
+
+    /**
+     * Print CSV row.
+     *
+     * @param implementation Implementation.
+     * @param pool Pool size.
+     * @param kind Thread kind.
+     * @param count Thread count.
+     * @param run Run.
+     */
+    private void print(final Implementation implementation, final int pool,
+            final String kind, final int count, final Run run) {
+        final LatencyHistogram histogram = run.histogram;
+        out.println(String.format("%s,%d,%s,%d,%.0f,%.1f,%.1f,%.1f,%.1f,%.1f",
+                implementation, pool, kind, count, histogram.getCount()
+                * (double) TimeUnit.SECONDS.toNanos(1) / run.elapsed,
+                histogram.getMean() / 1000, micros(histogram, 50), micros(
+                        histogram, 99), micros(histogram, 99.9), histogram.
+                getMax() / 1000.0));
+        out.flush();
+    }
+
+    /**
+     * Get percentile in microseconds.
+     *
+     * @param histogram Histogram in nanoseconds.
+     * @param percentile Percentile.
+     * @return Microseconds.
+     */
+    private static double micros(final LatencyHistogram histogram,
+            final double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    /**
+     * Latency and elapsed time of one run.
+     */
+    private static final class Run {
+
+        /**
+         * Latency in nanoseconds.
+         */
+        private final LatencyHistogram histogram;
+        /**
+         * Elapsed nanoseconds.
+         */
+        private final long elapsed;
+
+        /**
+         * Construct run.
+         *
+         * @param histogram Latency in nanoseconds.
+         * @param elapsed Elapsed nanoseconds.
+         */
+        Run(final LatencyHistogram histogram, final long elapsed) {
+            this.histogram = histogram;
+            this.elapsed = elapsed;
+        }
+    }
+
+    /**
+     * Run benchmark.
+     *
+     * @param args Options.
+     * @throws Exception Possible exception.
+     */
+    public static void main(final String[] args) throws Exception {
+        final ScalingBenchmark benchmark = new ScalingBenchmark();
+        benchmark.parse(args);
+        benchmark.run();
+    }
+}
@@ -0,0 +1,579 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.bench;
+
+import com.codeferm.dbaccess.DbAccess;
+import com.codeferm.dbaccess.DbAccessException;
+import com.codeferm.dbaccess.metrics.LatencyHistogram;
+import com.codeferm.dbaccess.metrics.SqlFingerprint;
+import com.codeferm.dbaccess.replay.TrafficEntry;
+import com.codeferm.dbaccess.replay.TrafficLogReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.sql.DataSource;
+import org.apache.commons.dbcp2.BasicDataSource;
+
+/**
+ * Replay a log written by {@link com.codeferm.dbaccess.replay.TrafficRecorder}
+ * against any {@link com.codeferm.dbaccess.DbAccess} implementation and
+ * database. Each recorded thread is replayed by its own thread and every
+ * entry is started at its recorded offset divided by {@code -speed}, so the
+ * original concurrency and arrival pattern are kept. Replay and recorded
+ * latency are compared by SQL fingerprint.
+ * <p>
+ * Transaction boundaries are replayed with {@code setAutoCommit(false)},
+ * {@code commit} and {@code rollback} on the connection of
+ * {@code Connection} based implementations. {@code DataSource} based
+ * implementations get a connection per statement, so their boundaries are
+ * counted as skipped and statements run with auto commit. The log has no bean
+ * class, so bean list selects return maps unless {@code -bean} is given.
+ * Options:
+ * <ul>
+ * <li>{@code -log} traffic log, required.</li>
+ * <li>{@code -impl} implementation, default DbJdbcDs.</li>
+ * <li>{@code -url}, {@code -driver}, {@code -user}, {@code -password}
+ * database, default embedded H2 with {@code test_table}.</li>
+ * <li>{@code -pool} pool size, default number of recorded threads.</li>
+ * <li>{@code -speed} multiple of recorded speed, default 1. 0 replays as fast
+ * as possible.</li>
+ * <li>{@code -bean} class of bean list selects.</li>
+ * <li>{@code -o} output file, default standard output.</li>
+ * </ul>
+ * Results are CSV with one row per SQL fingerprint or transaction name and a
+ * row for all statements. Run with {@code mvn -Pbenchmark test-compile
+ * exec:exec -Dbench.main=com.codeferm.dbaccess.bench.TrafficReplay
+ * -Dbench.args="-log traffic.log -impl DbJdbcConn -speed 2"}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class TrafficReplay {
+
+    /**
+     * CSV header.
+     */
+    public static final String HEADER = "key,operation,recorded,replayed,"
+            + "recorded_errors,errors,recorded_mean_us,recorded_p99_us,"
+            + "replay_mean_us,replay_p99_us,p99_ratio,lag_p99_us,sql";
+    /**
+     * Log file.
+     */
+    private File log;
+    /**
+     * Implementation.
+     */
+    private Implementation implementation = Implementation.DbJdbcDs;
+    /**
+     * JDBC URL or null for embedded H2.
+     */
+    private String url;
+    /**
+     * JDBC driver class.
+     */
+    private String driver;
+    /**
+     * User.
+     */
+    private String user;
+    /**
+     * Password.
+     */
+    private String password;
+    /**
+     * Pool size, 0 for number of recorded threads.
+     */
+    private int pool;
+    /**
+     * Multiple of recorded speed, 0 for as fast as possible.
+     */
+    private double speed = 1;
+    /**
+     * Class of bean list selects or null for maps.
+     */
+    private Class<?> beanClass;
+    /**
+     * Output.
+     */
+    private PrintStream out = System.out;
+    /**
+     * Results by SQL fingerprint or transaction name.
+     */
+    private final ConcurrentMap<String, Stats> stats
+            = new ConcurrentHashMap<String, Stats>();
+    /**
+     * Results of all statements.
+     */
+    private final Stats total = new Stats("ALL", "all", "");
+    /**
+     * Transaction boundaries not replayed.
+     */
+    private final AtomicLong skipped = new AtomicLong();
+
+    /**
+     * Recorded and replay latency of one statement shape or transaction.
+     */
+    static final class Stats {
+
+        /**
+         * Fingerprint id or transaction name.
+         */
+        private final String key;
+        /**
+         * Operation label.
+         */
+        private final String operation;
+        /**
+         * Normalized SQL or empty for transactions.
+         */
+        private final String sql;
+        /**
+         * Recorded latency.
+         */
+        private final LatencyHistogram recorded = new LatencyHistogram();
+        /**
+         * Replay latency from actual start.
+         */
+        private final LatencyHistogram replayed = new LatencyHistogram();
+        /**
+         * Replay start behind schedule.
+         */
+        private final LatencyHistogram lag = new LatencyHistogram();
+        /**
+         * Recorded errors.
+         */
+        private final AtomicLong recordedErrors = new AtomicLong();
+        /**
+         * Replay errors.
+         */
+        private final AtomicLong errors = new AtomicLong();
+
+        /**
+         * Construct empty stats.
+         *
+         * @param key Fingerprint id or transaction name.
+         * @param operation Operation label.
+         * @param sql Normalized SQL or empty.
+         */
+        Stats(final String key, final String operation, final String sql) {
+            this.key = key;
+            this.operation = operation;
+            this.sql = sql;
+        }
+    }
+
+    /**
+     * Parse options.
+     *
+     * @param args Options and values.
+     * @throws IOException If output file cannot be created.
+     * @throws ClassNotFoundException If bean class is not found.
+     */
+    void parse(final String[] args) throws IOException,
+            ClassNotFoundException {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            final String value = args[i + 1];
+            switch (args[i]) {
+                case "-log":
+                    log = new File(value);
+                    break;
+                case "-impl":
+                    implementation = Implementation.valueOf(value);
+                    break;
+                case "-url":
+                    url = value;
+                    break;
+                case "-driver":
+                    driver = value;
+                    break;
+                case "-user":
+                    user = value;
+                    break;
+                case "-password":
+                    password = value;
+                    break;
+                case "-pool":
+                    pool = Integer.parseInt(value);
+                    break;
+                case "-speed":
+                    speed = Double.parseDouble(value);
+                    break;
+                case "-bean":
+                    beanClass = Class.forName(value);
+                    break;
+                case "-o":
+                    out = new PrintStream(value, "UTF-8");
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format(
+                            "Unknown option %s", args[i]));
+            }
+        }
+        if (log == null) {
+            throw new IllegalArgumentException("-log is required");
+        }
+    }
+
+    /**
+     * Read log and group entries by recorded thread in offset order.
+     *
+     * @return Entries by thread id.
+     * @throws IOException Possible exception.
+     */
+    Map<Long, List<TrafficEntry>> read() throws IOException {
+        final Map<Long, List<TrafficEntry>> threads
+                = new LinkedHashMap<Long, List<TrafficEntry>>();
+        try (TrafficLogReader reader = new TrafficLogReader(log)) {
+            TrafficEntry entry = reader.read();
+            while (entry != null) {
+                List<TrafficEntry> entries = threads.get(entry.getThreadId());
+                if (entries == null) {
+                    entries = new ArrayList<TrafficEntry>();
+                    threads.put(entry.getThreadId(), entries);
+                }
+                entries.add(entry);
+                entry = reader.read();
+            }
+        }
+        final Comparator<TrafficEntry> byOffset
+                = new Comparator<TrafficEntry>() {
+
+            @Override
+            public int compare(final TrafficEntry a, final TrafficEntry b) {
+                return Long.compare(a.getOffset(), b.getOffset());
+            }
+        };
+        for (List<TrafficEntry> entries : threads.values()) {
+            Collections.sort(entries, byOffset);
+        }
+        return threads;
+    }
+
+    /**
+     * Create pool for JDBC URL.
+     *
+     * @param size Pool size.
+     * @return DataSource.
+     */
+    private DataSource dataSource(final int size) {
+        DataSource dataSource;
+        if (url == null) {
+            dataSource = BenchDatabase.create("replay", size);
+        } else {
+            final BasicDataSource basicDataSource = new BasicDataSource();
+            basicDataSource.setDriverClassName(driver);
+            basicDataSource.setUrl(url);
+            basicDataSource.setUsername(user);
+            basicDataSource.setPassword(password);
+            basicDataSource.setMaxTotal(size);
+            basicDataSource.setMaxIdle(size);
+            dataSource = basicDataSource;
+        }
+        return dataSource;
+    }
+
+    /**
+     * Replay log and print results.
+     *
+     * @throws IOException Possible exception.
+     * @throws InterruptedException If interrupted.
+     */
+    void run() throws IOException, InterruptedException {
+        final Map<Long, List<TrafficEntry>> threads = read();
+        long first = Long.MAX_VALUE;
+        for (List<TrafficEntry> entries : threads.values()) {
+            if (!entries.isEmpty()) {
+                first = Math.min(first, entries.get(0).getOffset());
+            }
+        }
+        final int size = pool > 0 ? pool : Math.max(1, threads.size());
+        final DataSource dataSource = dataSource(size);
+        try {
+            final CountDownLatch done = new CountDownLatch(threads.size());
+            final long origin = first;
+            final long start = System.nanoTime();
+            for (final Map.Entry<Long, List<TrafficEntry>> thread : threads.
+                    entrySet()) {
+                final Thread worker = new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        try {
+                            replay(dataSource, thread.getValue(), origin,
+                                    start);
+                        } finally {
+                            done.countDown();
+                        }
+                    }
+                }, String.format("replay-%d", thread.getKey()));
+                worker.setDaemon(true);
+                worker.start();
+            }
+            done.await();
+            report(System.nanoTime() - start);
+        } finally {
+            if (url == null) {
+                BenchDatabase.close(dataSource);
+            } else {
+                BenchDatabase.closePool(dataSource);
+            }
+        }
+    }
+
+    /**
+     * Replay entries of one recorded thread.
+     *
+     * @param dataSource DataSource.
+     * @param entries Entries in offset order.
+     * @param origin Offset of first entry in log.
+     * @param start Start of replay in nanoseconds.
+     */
+    private void replay(final DataSource dataSource,
+            final List<TrafficEntry> entries, final long origin,
+            final long start) {
+        DbAccess dbAccess;
+        try {
+            dbAccess = implementation.create(dataSource);
+        } catch (SQLException e) {
+            throw new DbAccessException(e);
+        }
+        final Connection connection = implementation.connection(dbAccess);
+        int depth = 0;
+        try {
+            for (TrafficEntry entry : entries) {
+                long scheduled = System.nanoTime();
+                if (speed > 0) {
+                    scheduled = start + (long) ((entry.getOffset() - origin)
+                            / speed);
+                    long wait = scheduled - System.nanoTime();
+                    while (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                        wait = scheduled - System.nanoTime();
+                    }
+                }
+                switch (entry.getKind()) {
+                    case STATEMENT:
+                        execute(dbAccess, entry, scheduled);
+                        break;
+                    case BEGIN:
+                        if (connection == null) {
+                            skipped.incrementAndGet();
+                        } else if (depth++ == 0) {
+                            setAutoCommit(connection, false);
+                        }
+                        break;
+                    default:
+                        if (connection == null) {
+                            skipped.incrementAndGet();
+                        } else if (depth > 0 && --depth == 0) {
+                            complete(connection, entry, scheduled);
+                        }
+                }
+            }
+            if (depth > 0) {
+                connection.rollback();
+                setAutoCommit(connection, true);
+            }
+        } catch (SQLException e) {
+            throw new DbAccessException(e);
+        } finally {
+            dbAccess.cleanUp();
+        }
+    }
+
+    /**
+     * Set auto commit.
+     *
+     * @param connection Connection.
+     * @param autoCommit Auto commit.
+     */
+    private static void setAutoCommit(final Connection connection,
+            final boolean autoCommit) {
+        try {
+            connection.setAutoCommit(autoCommit);
+        } catch (SQLException e) {
+            throw new DbAccessException(e);
+        }
+    }
+
+    /**
+     * Get stats of key creating them if needed.
+     *
+     * @param key Fingerprint id or transaction name.
+     * @param operation Operation label.
+     * @param sql Normalized SQL or empty.
+     * @return Stats.
+     */
+    private Stats stats(final String key, final String operation,
+            final String sql) {
+        Stats value = stats.get(key);
+        if (value == null) {
+            final Stats created = new Stats(key, operation, sql);
+            value = stats.putIfAbsent(key, created);
+            if (value == null) {
+                value = created;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Execute statement and record latency.
+     *
+     * @param dbAccess DbAccess of this thread.
+     * @param entry Statement.
+     * @param scheduled Scheduled start in nanoseconds.
+     */
+    private void execute(final DbAccess dbAccess, final TrafficEntry entry,
+            final long scheduled) {
+        final SqlFingerprint fingerprint = SqlFingerprint.of(entry.getSql());
+        final Stats value = stats(fingerprint.getId(), entry.getOperation().
+                getLabel(), fingerprint.getSql());
+        final Object[] params = entry.getParams() == null ? new Object[]{}
+                : entry.getParams();
+        boolean failed = false;
+        final long begin = System.nanoTime();
+        try {
+            switch (entry.getOperation()) {
+                case SELECT_BEAN_LIST:
+                    if (beanClass == null) {
+                        dbAccess.selectList(entry.getSql(), params);
+                    } else {
+                        dbAccess.selectList(entry.getSql(), params,
+                                beanClass);
+                    }
+                    break;
+                case SELECT_MAP_LIST:
+                    dbAccess.selectList(entry.getSql(), params);
+                    break;
+                case UPDATE:
+                    dbAccess.update(entry.getSql(), params);
+                    break;
+                case UPDATE_RETURN_KEYS:
+                    dbAccess.updateReturnKeys(entry.getSql(), params);
+                    break;
+                default:
+                    final Object[][] batch = new Object[params.length][];
+                    for (int i = 0; i < batch.length; i++) {
+                        batch[i] = (Object[]) params[i];
+                    }
+                    dbAccess.batch(entry.getSql(), batch);
+            }
+        } catch (RuntimeException e) {
+            failed = true;
+        }
+        final long elapsed = System.nanoTime() - begin;
+        for (Stats target : new Stats[]{value, total}) {
+            target.recorded.record(entry.getElapsed());
+            target.replayed.record(elapsed);
+            target.lag.record(Math.max(0, begin - scheduled));
+            if (entry.getError() != null) {
+                target.recordedErrors.incrementAndGet();
+            }
+            if (failed) {
+                target.errors.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Commit or roll back as recorded and record latency.
+     *
+     * @param connection Connection of this thread.
+     * @param entry Commit or rollback.
+     * @param scheduled Scheduled start in nanoseconds.
+     */
+    private void complete(final Connection connection,
+            final TrafficEntry entry, final long scheduled) {
+        final boolean commit = entry.getKind() == TrafficEntry.Kind.COMMIT;
+        final Stats value = stats(entry.getName(), commit ? "commit"
+                : "rollback", "");
+        boolean failed = false;
+        final long begin = System.nanoTime();
+        try {
+            if (commit) {
+                connection.commit();
+            } else {
+                connection.rollback();
+            }
+        } catch (SQLException e) {
+            failed = true;
+        }
+        final long elapsed = System.nanoTime() - begin;
+        setAutoCommit(connection, true);
+        value.recorded.record(entry.getElapsed());
+        value.replayed.record(elapsed);
+        value.lag.record(Math.max(0, begin - scheduled));
+        if (entry.getError() != null) {
+            value.recordedErrors.incrementAndGet();
+        }
+        if (failed) {
+            value.errors.incrementAndGet();
+        }
+    }
+
+    /**
+     * Print results.
+     *
+     * @param elapsed Replay time in nanoseconds.
+     */
+    private void report(final long elapsed) {
+        out.println(String.format("# %s, speed=%s, elapsed=%.1fs, "
+                + "skipped transaction boundaries=%d", implementation,
+                speed > 0 ? String.valueOf(speed) : "max", elapsed / 1e9,
+                skipped.get()));
+        out.println(HEADER);
+        final List<Stats> rows = new ArrayList<Stats>(stats.values());
+        Collections.sort(rows, new Comparator<Stats>() {
+
+            @Override
+            public int compare(final Stats a, final Stats b) {
+                return Long.compare(b.replayed.getSum(), a.replayed.getSum());
+            }
+        });
+        rows.add(total);
+        for (Stats row : rows) {
+            final long recordedP99 = row.recorded.getValueAtPercentile(99);
+            final long replayP99 = row.replayed.getValueAtPercentile(99);
+            out.println(String.format("%s,%s,%d,%d,%d,%d,%.1f,%.1f,%.1f,%.1f,"
+                    + "%.2f,%.1f,\"%s\"", row.key, row.operation, row.recorded.
+                    getCount(), row.replayed.getCount(), row.recordedErrors.
+                    get(), row.errors.get(), row.recorded.getMean() / 1000.0,
+                    recordedP99 / 1000.0, row.replayed.getMean() / 1000.0,
+                    replayP99 / 1000.0, recordedP99 > 0 ? replayP99
+                    / (double) recordedP99 : 0, row.lag.getValueAtPercentile(
+                            99) / 1000.0, row.sql.replace("\"", "\"\"")));
+        }
+        out.flush();
+    }
+
+    /**
+     * Run replay.
+     *
+     * @param args Options.
+     * @throws Exception Possible exception.
+     */
+    public static void main(final String[] args) throws Exception {
+        final TrafficReplay replay = new TrafficReplay();
+        replay.parse(args);
+        replay.run();
+    }
+}
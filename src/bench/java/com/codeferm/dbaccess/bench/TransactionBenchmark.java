@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.bench;
+
+import com.atomikos.jdbc.AtomikosDataSourceBean;
+import com.codeferm.dbaccess.DbAccess;
+import com.codeferm.dbaccess.DbJdbcConn;
+import com.codeferm.dbaccess.DbJdbcDs;
+import com.codeferm.dbaccess.DbQueryRunnerConn;
+import com.codeferm.dbaccess.transaction.AtomikosTransModule;
+import com.codeferm.dbaccess.transaction.JdbcTransModule;
+import com.codeferm.dbaccess.transaction.QueryRunnerTransModule;
+import com.codeferm.dbaccess.transaction.TransactionFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of {@link com.codeferm.dbaccess.transaction.Transaction} per call on
+ * embedded H2. Subtracting benchmarks isolates each part:
+ * <ul>
+ * <li>{@code directCommit - directCommitNoToggle} is {@code setAutoCommit}
+ * toggling.</li>
+ * <li>{@code jdbcInterceptor - directCommit} is Guice interception and
+ * {@link com.codeferm.dbaccess.metrics.TransactionStats}.</li>
+ * <li>{@code atomikosTwoPhase - atomikosOnePhase} is the second resource and
+ * two-phase commit, since Atomikos commits a single resource in one
+ * phase.</li>
+ * </ul>
+ * H2 is the XA database through {@code org.h2.jdbcx.JdbcDataSource}. Run with
+ * {@code mvn -Pbenchmark test-compile exec:exec
+ * -Dbench.args=TransactionBenchmark}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class TransactionBenchmark {
+
+    /**
+     * Update one seeded row.
+     *
+     * @param sqlMap SQL statements.
+     * @param dbAccess Database with seeded row.
+     * @return Parameters of {@code update.testtable.by.id}.
+     */
+    static Object[] seedOne(final Map<String, String> sqlMap,
+            final DbAccess dbAccess) {
+        BenchDatabase.seed(dbAccess, "transaction", 1);
+        final Object id = dbAccess.selectList(sqlMap.get(
+                "select.testtable.by.varchar.field"), new Object[]{
+            "transaction"}).get(0).get("id");
+        return new Object[]{"updated", id};
+    }
+
+    /**
+     * Local transactions on one connection.
+     */
+    @State(Scope.Benchmark)
+    public static class Local {
+
+        /**
+         * Database.
+         */
+        private DataSource dataSource;
+        /**
+         * Connection of all DbAccess instances.
+         */
+        private Connection connection;
+        /**
+         * DbJdbcConn on connection.
+         */
+        private DbJdbcConn dbJdbcConn;
+        /**
+         * DbQueryRunnerConn on connection.
+         */
+        private DbQueryRunnerConn dbQueryRunnerConn;
+        /**
+         * Service intercepted by JdbcTransInterceptor.
+         */
+        private TransactionService jdbcService;
+        /**
+         * Service intercepted by QueryRunnerTransInterceptor.
+         */
+        private TransactionService queryRunnerService;
+        /**
+         * Update statement.
+         */
+        private String sql;
+        /**
+         * Update parameters.
+         */
+        private Object[] params;
+
+        /**
+         * Create database and services.
+         *
+         * @throws SQLException Possible exception.
+         */
+        @Setup
+        public void setUp() throws SQLException {
+            final Map<String, String> sqlMap = BenchDatabase.getSqlMap();
+            dataSource = BenchDatabase.create("transaction_local", 1);
+            connection = dataSource.getConnection();
+            dbJdbcConn = new DbJdbcConn(connection);
+            dbQueryRunnerConn = new DbQueryRunnerConn(connection);
+            sql = sqlMap.get("update.testtable.by.id");
+            params = seedOne(sqlMap, dbJdbcConn);
+            jdbcService = TransactionFactory.createObject(
+                    TransactionService.class, JdbcTransModule.class);
+            queryRunnerService = TransactionFactory.createObject(
+                    TransactionService.class, QueryRunnerTransModule.class);
+        }
+
+        /**
+         * Close connection and drop database.
+         *
+         * @throws SQLException Possible exception.
+         */
+        @TearDown
+        public void tearDown() throws SQLException {
+            connection.close();
+            BenchDatabase.close(dataSource);
+        }
+    }
+
+    /**
+     * JTA transactions on two XA databases.
+     */
+    @State(Scope.Benchmark)
+    public static class Xa {
+
+        /**
+         * First XA database.
+         */
+        private AtomikosDataSourceBean first;
+        /**
+         * Second XA database.
+         */
+        private AtomikosDataSourceBean second;
+        /**
+         * DbJdbcDs on first database.
+         */
+        private DbJdbcDs firstDbAccess;
+        /**
+         * DbJdbcDs on second database.
+         */
+        private DbJdbcDs secondDbAccess;
+        /**
+         * Service intercepted by AtomikosTransInterceptor.
+         */
+        private TransactionService service;
+        /**
+         * Update statement.
+         */
+        private String sql;
+        /**
+         * Update parameters, same id in both databases.
+         */
+        private Object[] params;
+
+        /**
+         * Create XA DataSource on named in-memory H2 database.
+         *
+         * @param name Database and resource name.
+         * @return DataSource.
+         */
+        private static AtomikosDataSourceBean xaDataSource(final String name) {
+            // Database outlives the pool that creates test_table
+            BenchDatabase.closePool(BenchDatabase.create(name, 1));
+            final AtomikosDataSourceBean dataSource
+                    = new AtomikosDataSourceBean();
+            dataSource.setUniqueResourceName(name);
+            dataSource.setXaDataSourceClassName("org.h2.jdbcx.JdbcDataSource");
+            final Properties properties = new Properties();
+            properties.setProperty("URL", String.format(
+                    "jdbc:h2:mem:%s;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+                    + "DB_CLOSE_DELAY=-1", name));
+            properties.setProperty("user", "sa");
+            properties.setProperty("password", "");
+            dataSource.setXaProperties(properties);
+            dataSource.setPoolSize(1);
+            return dataSource;
+        }
+
+        /**
+         * Create databases and service.
+         *
+         * @throws SQLException Possible exception.
+         */
+        @Setup
+        public void setUp() throws SQLException {
+            final Map<String, String> sqlMap = BenchDatabase.getSqlMap();
+            first = xaDataSource("transaction_xa1");
+            second = xaDataSource("transaction_xa2");
+            firstDbAccess = new DbJdbcDs(first);
+            secondDbAccess = new DbJdbcDs(second);
+            sql = sqlMap.get("update.testtable.by.id");
+            params = seedOne(sqlMap, firstDbAccess);
+            seedOne(sqlMap, secondDbAccess);
+            service = TransactionFactory.createObject(TransactionService.class,
+                    AtomikosTransModule.class);
+        }
+
+        /**
+         * Close pools.
+         */
+        @TearDown
+        public void tearDown() {
+            first.close();
+            second.close();
+        }
+    }
+
+    /**
+     * Update in auto-commit mode, no transaction.
+     *
+     * @param local Local state.
+     * @return Rows updated.
+     */
+    @Benchmark
+    public int autoCommit(final Local local) {
+        return local.dbJdbcConn.update(local.sql, local.params);
+    }
+
+    /**
+     * Update with JDBC commit, toggling auto-commit like the interceptors.
+     *
+     * @param local Local state.
+     * @return Rows updated.
+     * @throws SQLException Possible exception.
+     */
+    @Benchmark
+    public int directCommit(final Local local) throws SQLException {
+        local.connection.setAutoCommit(false);
+        final int rows = local.dbJdbcConn.update(local.sql, local.params);
+        local.connection.commit();
+        local.connection.setAutoCommit(true);
+        return rows;
+    }
+
+    /**
+     * Update with JDBC commit, auto-commit turned off once and left off.
+     *
+     * @param local Local state.
+     * @return Rows updated.
+     * @throws SQLException Possible exception.
+     */
+    @Benchmark
+    public int directCommitNoToggle(final Local local) throws SQLException {
+        if (local.connection.getAutoCommit()) {
+            local.connection.setAutoCommit(false);
+        }
+        final int rows = local.dbJdbcConn.update(local.sql, local.params);
+        local.connection.commit();
+        return rows;
+    }
+
+    /**
+     * Update through JdbcTransInterceptor.
+     *
+     * @param local Local state.
+     * @return Rows updated.
+     */
+    @Benchmark
+    public int jdbcInterceptor(final Local local) {
+        return local.jdbcService.update(local.dbJdbcConn, local.sql,
+                local.params);
+    }
+
+    /**
+     * Empty transaction through JdbcTransInterceptor.
+     *
+     * @param local Local state.
+     * @return 0.
+     */
+    @Benchmark
+    public int jdbcInterceptorEmpty(final Local local) {
+        return local.jdbcService.empty(local.dbJdbcConn);
+    }
+
+    /**
+     * Update through QueryRunnerTransInterceptor.
+     *
+     * @param local Local state.
+     * @return Rows updated.
+     */
+    @Benchmark
+    public int queryRunnerInterceptor(final Local local) {
+        return local.queryRunnerService.update(local.dbQueryRunnerConn,
+                local.sql, local.params);
+    }
+
+    /**
+     * Update one XA resource through AtomikosTransInterceptor.
+     *
+     * @param xa XA state.
+     * @return Rows updated.
+     */
+    @Benchmark
+    public int atomikosOnePhase(final Xa xa) {
+        return xa.service.update(xa.firstDbAccess, xa.sql, xa.params);
+    }
+
+    /**
+     * Update two XA resources through AtomikosTransInterceptor.
+     *
+     * @param xa XA state.
+     * @return Rows updated.
+     */
+    @Benchmark
+    public int atomikosTwoPhase(final Xa xa) {
+        return xa.service.updateBoth(xa.firstDbAccess, xa.secondDbAccess,
+                xa.sql, xa.params);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.bench;
+
+import com.codeferm.dbaccess.DbAccess;
+import com.codeferm.dbaccess.transaction.Transaction;
+
+/**
+ * Transactional methods measured by
+ * {@link com.codeferm.dbaccess.bench.TransactionBenchmark}. Create with
+ * {@link com.codeferm.dbaccess.transaction.TransactionFactory} so methods are
+ * intercepted.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public class TransactionService {
+
+    /**
+     * Transaction without statements, so only interception, commit and
+     * {@code setAutoCommit} are measured.
+     *
+     * @param dbAccess Database access.
+     * @return 0.
+     */
+    @Transaction
+    public int empty(final DbAccess dbAccess) {
+        return 0;
+    }
+
+    /**
+     * Update in transaction.
+     *
+     * @param dbAccess Database access.
+     * @param sql SQL statement.
+     * @param params Statement parameters.
+     * @return Rows updated.
+     */
+    @Transaction
+    public int update(final DbAccess dbAccess, final String sql,
+            final Object[] params) {
+        return dbAccess.update(sql, params);
+    }
+
+    /**
+     * Update two resources in one transaction, so JTA uses two-phase commit.
+     *
+     * @param dbAccess First database.
+     * @param other Second database.
+     * @param sql SQL statement.
+     * @param params Statement parameters.
+     * @return Rows updated.
+     */
+    @Transaction
+    public int updateBoth(final DbAccess dbAccess, final DbAccess other,
+            final String sql, final Object[] params) {
+        return dbAccess.update(sql, params) + other.update(sql, params);
+    }
+}
@@ -0,0 +1,587 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.bench;
+
+import com.codeferm.dbaccess.DbAccess;
+import com.codeferm.dbaccess.DbAccessException;
+import com.codeferm.dbaccess.dto.TestTableDto;
+import com.codeferm.dbaccess.metrics.LatencyHistogram;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import javax.sql.DataSource;
+import org.apache.commons.dbcp2.BasicDataSource;
+
+/**
+ * Load generator for capacity planning. Runs a mix of reads, writes and
+ * batches against {@code test_table} through any
+ * {@link com.codeferm.dbaccess.DbAccess} implementation, using embedded H2 or
+ * a database given by JDBC URL. Keys are chosen uniformly or with a zipfian
+ * distribution where the first seeded rows are hot.
+ * <p>
+ * With {@code -rate} above 0 the driver is open loop: operations are scheduled
+ * at a fixed arrival rate whether or not earlier ones finished, and latency is
+ * measured from the scheduled start. This corrects coordinated omission, where
+ * a closed loop stops sending while the database is stalled and hides the
+ * stall from the percentiles. Service time from the actual start is reported
+ * as well. With {@code -rate 0} each thread runs a closed loop with optional
+ * think time and both latencies are the same.
+ * <p>
+ * Rows are seeded before the run and deleted after. Options:
+ * <ul>
+ * <li>{@code -impl} implementation, default DbJdbcDs.</li>
+ * <li>{@code -url}, {@code -driver}, {@code -user}, {@code -password}
+ * database, default embedded H2. The database needs {@code test_table}.</li>
+ * <li>{@code -pool} pool size and {@code -threads} worker threads, default
+ * 16. Connection based implementations use one connection per thread.</li>
+ * <li>{@code -mix} read, write and batch ratio, default 80,15,5.</li>
+ * <li>{@code -batch} statements per batch, default 10.</li>
+ * <li>{@code -keys} seeded rows, default 10000.</li>
+ * <li>{@code -dist} uniform or zipfian, {@code -theta} zipfian skew, default
+ * 0.99.</li>
+ * <li>{@code -rate} operations per second, 0 for closed loop.</li>
+ * <li>{@code -think} closed loop think time in milliseconds.</li>
+ * <li>{@code -warmup} and {@code -duration} in seconds, default 5 and
+ * 30.</li>
+ * </ul>
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec
+ * -Dbench.main=com.codeferm.dbaccess.bench.WorkloadDriver
+ * -Dbench.args="-rate 2000 -dist zipfian"}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class WorkloadDriver {
+
+    /**
+     * Value of {@code varchar_field} of seeded rows.
+     */
+    private static final String SEEDED = "workload";
+    /**
+     * Percentiles reported.
+     */
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+    /**
+     * Implementation.
+     */
+    private Implementation implementation = Implementation.DbJdbcDs;
+    /**
+     * JDBC URL or null for embedded H2.
+     */
+    private String url;
+    /**
+     * JDBC driver class.
+     */
+    private String driver;
+    /**
+     * User.
+     */
+    private String user;
+    /**
+     * Password.
+     */
+    private String password;
+    /**
+     * Pool size.
+     */
+    private int pool = 16;
+    /**
+     * Worker threads.
+     */
+    private int threads = 16;
+    /**
+     * Ratios of operations by ordinal.
+     */
+    private int[] mix = {80, 15, 5};
+    /**
+     * Statements per batch.
+     */
+    private int batchSize = 10;
+    /**
+     * Seeded rows.
+     */
+    private int keys = 10000;
+    /**
+     * Use zipfian distribution.
+     */
+    private boolean zipfian;
+    /**
+     * Zipfian skew.
+     */
+    private double theta = ZipfianGenerator.DEFAULT_THETA;
+    /**
+     * Operations per second, 0 for closed loop.
+     */
+    private double rate;
+    /**
+     * Think time in milliseconds.
+     */
+    private long think;
+    /**
+     * Warmup seconds.
+     */
+    private int warmup = 5;
+    /**
+     * Measured seconds.
+     */
+    private int duration = 30;
+    /**
+     * Output.
+     */
+    private PrintStream out = System.out;
+    /**
+     * SQL statements.
+     */
+    private final Map<String, String> sqlMap = BenchDatabase.getSqlMap();
+    /**
+     * Ids of seeded rows.
+     */
+    private Object[] ids;
+    /**
+     * Zipfian generator or null for uniform.
+     */
+    private ZipfianGenerator generator;
+
+    /**
+     * Operation.
+     */
+    enum Operation {
+
+        /**
+         * Select one row as bean.
+         */
+        READ,
+        /**
+         * Update one row.
+         */
+        WRITE,
+        /**
+         * Batch update of rows.
+         */
+        BATCH
+    }
+
+    /**
+     * Latency of one phase.
+     */
+    static final class Results {
+
+        /**
+         * Latency from scheduled start by operation ordinal.
+         */
+        private final LatencyHistogram[] latency
+                = new LatencyHistogram[Operation.values().length];
+        /**
+         * Latency from actual start by operation ordinal.
+         */
+        private final LatencyHistogram[] service
+                = new LatencyHistogram[Operation.values().length];
+        /**
+         * Latency from scheduled start of all operations.
+         */
+        private final LatencyHistogram totalLatency = new LatencyHistogram();
+        /**
+         * Latency from actual start of all operations.
+         */
+        private final LatencyHistogram totalService = new LatencyHistogram();
+        /**
+         * Errors by operation ordinal.
+         */
+        private final AtomicLongArray errors = new AtomicLongArray(Operation.
+                values().length);
+
+        /**
+         * Construct empty results.
+         */
+        Results() {
+            for (int i = 0; i < latency.length; i++) {
+                latency[i] = new LatencyHistogram();
+                service[i] = new LatencyHistogram();
+            }
+        }
+    }
+
+    /**
+     * Parse options.
+     *
+     * @param args Options and values.
+     * @throws IOException If output file cannot be created.
+     */
+    void parse(final String[] args) throws IOException {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            final String value = args[i + 1];
+            switch (args[i]) {
+                case "-impl":
+                    implementation = Implementation.valueOf(value);
+                    break;
+                case "-url":
+                    url = value;
+                    break;
+                case "-driver":
+                    driver = value;
+                    break;
+                case "-user":
+                    user = value;
+                    break;
+                case "-password":
+                    password = value;
+                    break;
+                case "-pool":
+                    pool = Integer.parseInt(value);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "-mix":
+                    final String[] ratios = value.split(",");
+                    for (int j = 0; j < mix.length; j++) {
+                        mix[j] = j < ratios.length ? Integer.parseInt(
+                                ratios[j].trim()) : 0;
+                    }
+                    break;
+                case "-batch":
+                    batchSize = Integer.parseInt(value);
+                    break;
+                case "-keys":
+                    keys = Integer.parseInt(value);
+                    break;
+                case "-dist":
+                    zipfian = "zipfian".equalsIgnoreCase(value);
+                    break;
+                case "-theta":
+                    theta = Double.parseDouble(value);
+                    break;
+                case "-rate":
+                    rate = Double.parseDouble(value);
+                    break;
+                case "-think":
+                    think = Long.parseLong(value);
+                    break;
+                case "-warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                case "-duration":
+                    duration = Integer.parseInt(value);
+                    break;
+                case "-o":
+                    out = new PrintStream(value, "UTF-8");
+                    break;
+                default:
+                    throw new IllegalArgumentException(String.format(
+                            "Unknown option %s", args[i]));
+            }
+        }
+        if (!implementation.isDataSourceBased() && pool < threads) {
+            throw new IllegalArgumentException(String.format(
+                    "%s needs a pool of at least %d threads", implementation,
+                    threads));
+        }
+    }
+
+    /**
+     * Create pool for JDBC URL.
+     *
+     * @return DataSource.
+     */
+    private DataSource dataSource() {
+        DataSource dataSource;
+        if (url == null) {
+            dataSource = BenchDatabase.create("workload", pool);
+        } else {
+            final BasicDataSource basicDataSource = new BasicDataSource();
+            basicDataSource.setDriverClassName(driver);
+            basicDataSource.setUrl(url);
+            basicDataSource.setUsername(user);
+            basicDataSource.setPassword(password);
+            basicDataSource.setMaxTotal(pool);
+            basicDataSource.setMaxIdle(pool);
+            dataSource = basicDataSource;
+        }
+        return dataSource;
+    }
+
+    /**
+     * Seed rows, run warmup and measured phases, print results and delete
+     * rows.
+     *
+     * @throws SQLException Possible exception.
+     * @throws InterruptedException If interrupted.
+     */
+    void run() throws SQLException, InterruptedException {
+        final DataSource dataSource = dataSource();
+        try {
+            final DbAccess dbAccess = implementation.create(dataSource);
+            final String delete = sqlMap.get(
+                    "delete.testtable.by.varchar.field");
+            dbAccess.update(delete, new Object[]{SEEDED});
+            BenchDatabase.seed(dbAccess, SEEDED, keys);
+            final List<Map<String, Object>> rows = dbAccess.selectList(sqlMap.
+                    get("select.testtable.by.varchar.field"), new Object[]{
+                SEEDED});
+            ids = new Object[rows.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = rows.get(i).get("id");
+            }
+            if (zipfian) {
+                generator = new ZipfianGenerator(ids.length, theta);
+            }
+            phase(dataSource, warmup);
+            final Results results = phase(dataSource, duration);
+            report(results);
+            dbAccess.update(delete, new Object[]{SEEDED});
+            dbAccess.cleanUp();
+        } finally {
+            if (url == null) {
+                BenchDatabase.close(dataSource);
+            } else {
+                BenchDatabase.closePool(dataSource);
+            }
+        }
+    }
+
+    /**
+     * Run workers for a phase.
+     *
+     * @param dataSource DataSource.
+     * @param seconds Seconds to run.
+     * @return Results.
+     * @throws InterruptedException If interrupted.
+     */
+    private Results phase(final DataSource dataSource, final int seconds)
+            throws InterruptedException {
+        final Results results = new Results();
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicLong tickets = new AtomicLong();
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        for (int i = 0; i < threads; i++) {
+            final Thread thread = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        work(dataSource, results, tickets, start, end);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }, String.format("workload-%d", i));
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        return results;
+    }
+
+    /**
+     * Run operations until end of phase.
+     *
+     * @param dataSource DataSource.
+     * @param results Results.
+     * @param tickets Next scheduled operation in open loop.
+     * @param start Start of phase in nanoseconds.
+     * @param end End of phase in nanoseconds.
+     */
+    private void work(final DataSource dataSource, final Results results,
+            final AtomicLong tickets, final long start, final long end) {
+        DbAccess dbAccess;
+        try {
+            dbAccess = implementation.create(dataSource);
+        } catch (SQLException e) {
+            throw new DbAccessException(e);
+        }
+        final double interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate
+                : 0;
+        try {
+            boolean running = true;
+            while (running) {
+                long scheduled = System.nanoTime();
+                if (interval > 0) {
+                    scheduled = start + (long) (tickets.getAndIncrement()
+                            * interval);
+                    long wait = scheduled - System.nanoTime();
+                    while (wait > 0 && scheduled < end) {
+                        LockSupport.parkNanos(wait);
+                        wait = scheduled - System.nanoTime();
+                    }
+                }
+                running = scheduled < end;
+                if (running) {
+                    execute(dbAccess, results, scheduled);
+                    if (interval == 0 && think > 0) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(
+                                think));
+                    }
+                    running = System.nanoTime() < end;
+                }
+            }
+        } finally {
+            dbAccess.cleanUp();
+        }
+    }
+
+    /**
+     * Execute random operation and record latency.
+     *
+     * @param dbAccess DbAccess of this thread.
+     * @param results Results.
+     * @param scheduled Scheduled start in nanoseconds.
+     */
+    private void execute(final DbAccess dbAccess, final Results results,
+            final long scheduled) {
+        final Operation operation = operation();
+        final long begin = System.nanoTime();
+        try {
+            switch (operation) {
+                case READ:
+                    dbAccess.selectList(sqlMap.get("select.testtable.by.id"),
+                            new Object[]{key()}, TestTableDto.class);
+                    break;
+                case WRITE:
+                    dbAccess.update(sqlMap.get("update.testtable.by.id"),
+                            new Object[]{"written", key()});
+                    break;
+                default:
+                    final Object[][] params = new Object[batchSize][];
+                    for (int i = 0; i < batchSize; i++) {
+                        params[i] = new Object[]{"batched", key()};
+                    }
+                    dbAccess.batch(sqlMap.get("update.testtable.by.id"),
+                            params);
+            }
+        } catch (RuntimeException e) {
+            results.errors.incrementAndGet(operation.ordinal());
+        }
+        final long now = System.nanoTime();
+        results.latency[operation.ordinal()].record(now - scheduled);
+        results.service[operation.ordinal()].record(now - begin);
+        results.totalLatency.record(now - scheduled);
+        results.totalService.record(now - begin);
+    }
+
+    /**
+     * Choose operation by ratio.
+     *
+     * @return Operation.
+     */
+    private Operation operation() {
+        int total = 0;
+        for (int ratio : mix) {
+            total += ratio;
+        }
+        int value = ThreadLocalRandom.current().nextInt(total);
+        int ordinal = 0;
+        while (value >= mix[ordinal]) {
+            value -= mix[ordinal];
+            ordinal++;
+        }
+        return Operation.values()[ordinal];
+    }
+
+    /**
+     * Choose key.
+     *
+     * @return Id of seeded row.
+     */
+    private Object key() {
+        int index;
+        if (generator == null) {
+            index = ThreadLocalRandom.current().nextInt(ids.length);
+        } else {
+            index = (int) generator.next();
+        }
+        return ids[index];
+    }
+
+    /**
+     * Print results.
+     *
+     * @param results Results of measured phase.
+     */
+    private void report(final Results results) {
+        out.println(String.format("%s, threads=%d, pool=%d, mix=%d/%d/%d, "
+                + "%s, rate=%s, duration=%ds", implementation, threads, pool,
+                mix[0], mix[1], mix[2], zipfian ? String.format("zipfian(%.2f)",
+                        theta) : "uniform", rate > 0 ? String.format("%.0f/s",
+                                rate) : "closed loop", duration));
+        final StringBuilder header = new StringBuilder(String.format(
+                "%-8s %-8s %10s %10s %8s", "op", "latency", "count", "ops/s",
+                "errors"));
+        for (double percentile : PERCENTILES) {
+            header.append(String.format(" %10s", "p" + format(percentile)));
+        }
+        out.println(header.append(String.format(" %10s", "max(us)")));
+        long errors = 0;
+        for (Operation operation : Operation.values()) {
+            final int ordinal = operation.ordinal();
+            line(operation.name(), "intended", results.latency[ordinal],
+                    results.errors.get(ordinal));
+            line(operation.name(), "service", results.service[ordinal],
+                    results.errors.get(ordinal));
+            errors += results.errors.get(ordinal);
+        }
+        line("ALL", "intended", results.totalLatency, errors);
+        line("ALL", "service", results.totalService, errors);
+        out.flush();
+    }
+
+    /**
+     * Print one line of results in microseconds.
+     *
+     * @param name Operation name.
+     * @param type Latency type.
+     * @param histogram Latency in nanoseconds.
+     * @param errors Errors.
+     */
+    private void line(final String name, final String type,
+            final LatencyHistogram histogram, final long errors) {
+        final StringBuilder line = new StringBuilder(String.format(
+                "%-8s %-8s %10d %10.0f %8d", name, type, histogram.getCount(),
+                histogram.getCount() / (double) duration, errors));
+        for (double percentile : PERCENTILES) {
+            line.append(String.format(" %10.1f", histogram.
+                    getValueAtPercentile(percentile) / 1000.0));
+        }
+        out.println(line.append(String.format(" %10.1f", histogram.getMax()
+                / 1000.0)));
+    }
+
+    /**
+     * Format percentile without trailing zeros.
+     *
+     * @param percentile Percentile.
+     * @return Formatted.
+     */
+    private static String format(final double percentile) {
+        String str = String.valueOf(percentile);
+        if (str.endsWith(".0")) {
+            str = str.substring(0, str.length() - 2);
+        }
+        return str;
+    }
+
+    /**
+     * Run driver.
+     *
+     * @param args Options.
+     * @throws Exception Possible exception.
+     */
+    public static void main(final String[] args) throws Exception {
+        final WorkloadDriver driver = new WorkloadDriver();
+        driver.parse(args);
+        driver.run();
+    }
+}
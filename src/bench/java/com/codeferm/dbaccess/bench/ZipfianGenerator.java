@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.bench;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Zipfian distributed integers from 0 to items - 1 using the method of Gray et
+ * al., "Quickly Generating Billion-Record Synthetic Databases", as used by
+ * YCSB. Item 0 is the most popular. Setup is O(items), each value is O(1) and
+ * the generator is thread safe.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class ZipfianGenerator {
+
+    /**
+     * Default skew, same as YCSB.
+     */
+    public static final double DEFAULT_THETA = 0.99;
+    /**
+     * Number of items.
+     */
+    private final long items;
+    /**
+     * Skew.
+     */
+    private final double theta;
+    /**
+     * 1 / (1 - theta).
+     */
+    private final double alpha;
+    /**
+     * Zeta of items.
+     */
+    private final double zetan;
+    /**
+     * Eta from Gray et al.
+     */
+    private final double eta;
+    /**
+     * 1 + 0.5^theta, threshold of second item.
+     */
+    private final double secondThreshold;
+
+    /**
+     * Construct generator.
+     *
+     * @param items Number of items.
+     * @param theta Skew greater than 0 and not 1.
+     */
+    public ZipfianGenerator(final long items, final double theta) {
+        if (items < 1 || theta <= 0 || theta == 1) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid items %d or theta %f", items, theta));
+        }
+        this.items = items;
+        this.theta = theta;
+        this.alpha = 1 / (1 - theta);
+        this.zetan = zeta(items, theta);
+        final double zeta2 = zeta(2, theta);
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2
+                / zetan);
+        this.secondThreshold = 1 + Math.pow(0.5, theta);
+    }
+
+    /**
+     * Compute zeta, sum of 1 / i^theta for i from 1 to n.
+     *
+     * @param n Number of items.
+     * @param theta Skew.
+     * @return Zeta.
+     */
+    static double zeta(final long n, final double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+
+    /**
+     * Get next value.
+     *
+     * @return Value from 0 to items - 1.
+     */
+    public long next() {
+        final double u = ThreadLocalRandom.current().nextDouble();
+        final double uz = u * zetan;
+        long value;
+        if (uz < 1) {
+            value = 0;
+        } else if (uz < secondThreshold) {
+            value = 1;
+        } else {
+            value = Math.min(items - 1, (long) (items * Math.pow(eta * u - eta
+                    + 1, alpha)));
+        }
+        return value;
+    }
+
+    /**
+     * Get number of items.
+     *
+     * @return Items.
+     */
+    public long getItems() {
+        return items;
+    }
+
+    /**
+     * Get skew.
+     *
+     * @return Theta.
+     */
+    public double getTheta() {
+        return theta;
+    }
+}
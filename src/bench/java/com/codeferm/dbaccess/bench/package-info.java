@@ -0,0 +1,4 @@
+/**
+ * JMH benchmarks run with the benchmark profile.
+ */
+package com.codeferm.dbaccess.bench;
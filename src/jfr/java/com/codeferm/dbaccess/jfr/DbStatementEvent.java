@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event for one {@link com.codeferm.dbaccess.DbAccess}
+ * operation. Duration is the time of the operation including mapping.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+@Name("com.codeferm.dbaccess.Statement")
+@Label("DbAccess Statement")
+@Category("DbAccess")
+@Description("SQL statement executed by a DbAccess implementation")
+@StackTrace(false)
+public final class DbStatementEvent extends Event {
+
+    /**
+     * Operation label.
+     */
+    @Label("Operation")
+    String operation;
+    /**
+     * Implementation class.
+     */
+    @Label("Implementation")
+    Class<?> implementation;
+    /**
+     * SQL fingerprint id.
+     */
+    @Label("Fingerprint")
+    String fingerprint;
+    /**
+     * Normalized SQL.
+     */
+    @Label("SQL")
+    String sql;
+    /**
+     * Rows returned or updated.
+     */
+    @Label("Rows")
+    int rows;
+    /**
+     * Parameter arrays for batch, otherwise 1.
+     */
+    @Label("Batch Size")
+    int batchSize;
+    /**
+     * Error type or null if successful. Messages are not recorded, since
+     * they contain SQL and parameters.
+     */
+    @Label("Error")
+    String error;
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for one
+ * {@link com.codeferm.dbaccess.transaction.Transaction} annotated method.
+ * Duration is the wall time including commit or rollback.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+@Name("com.codeferm.dbaccess.Transaction")
+@Label("DbAccess Transaction")
+@Category("DbAccess")
+@Description("Transaction started by a DbAccess interceptor")
+@StackTrace(false)
+public final class DbTransactionEvent extends Event {
+
+    /**
+     * Annotated method.
+     */
+    @Label("Method")
+    String method;
+    /**
+     * Interceptor class.
+     */
+    @Label("Interceptor")
+    Class<?> interceptor;
+    /**
+     * True if committed.
+     */
+    @Label("Committed")
+    boolean committed;
+    /**
+     * Time inside method.
+     */
+    @Label("Method Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long methodTime;
+    /**
+     * Time in commit or rollback.
+     */
+    @Label("Completion Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long completionTime;
+    /**
+     * Type of error that caused rollback or null.
+     */
+    @Label("Error")
+    String error;
+}
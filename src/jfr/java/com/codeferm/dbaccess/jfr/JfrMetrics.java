@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.jfr;
+
+import com.codeferm.dbaccess.metrics.QueryEvent;
+import com.codeferm.dbaccess.metrics.QueryMetrics;
+import com.codeferm.dbaccess.metrics.TransactionEvent;
+import com.codeferm.dbaccess.metrics.TransactionMetrics;
+import jdk.jfr.Event;
+
+/**
+ * Emit {@link com.codeferm.dbaccess.jfr.DbStatementEvent} and
+ * {@link com.codeferm.dbaccess.jfr.DbTransactionEvent} to Flight Recorder, so
+ * database time lines up with GC and thread events in one recording. Set it
+ * with {@code DbAccess.setMetrics} and
+ * {@code TransactionStats.getInstance().setMetrics}, or combine it with other
+ * listeners using {@link com.codeferm.dbaccess.metrics.CompositeMetrics}.
+ * <p>
+ * When the events are not enabled in a recording nothing is kept between
+ * start and end, and the unused event objects are removed by the JIT. Built
+ * only by the {@code jfr} profile, since the rest of the library targets
+ * Java 7 and {@code jdk.jfr} needs JDK 8u262 or 11.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class JfrMetrics implements QueryMetrics, TransactionMetrics {
+
+    /**
+     * Events begun on this thread and not yet committed.
+     */
+    private final ThreadLocal<Open> open = new ThreadLocal<Open>();
+
+    /**
+     * Begin event if enabled.
+     *
+     * @param key Event measured.
+     * @param event Flight Recorder event.
+     */
+    private void begin(final Object key, final Event event) {
+        if (event.isEnabled()) {
+            event.begin();
+            open.set(new Open(key, event, open.get()));
+        }
+    }
+
+    /**
+     * End event begun for key.
+     *
+     * @param key Event measured.
+     * @return Flight Recorder event or null if not begun.
+     */
+    private Event finish(final Object key) {
+        final Open top = open.get();
+        Event event = null;
+        if (top != null && top.key == key) {
+            open.set(top.next);
+            event = top.event;
+            event.end();
+        }
+        return event;
+    }
+
+    /**
+     * Begin statement event.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void start(final QueryEvent event) {
+        begin(event, new DbStatementEvent());
+    }
+
+    /**
+     * Commit statement event.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void end(final QueryEvent event) {
+        final DbStatementEvent jfr = (DbStatementEvent) finish(event);
+        if (jfr != null && jfr.shouldCommit()) {
+            jfr.operation = event.getOperation().getLabel();
+            jfr.implementation = event.getSource();
+            jfr.fingerprint = event.getFingerprint().getId();
+            jfr.sql = event.getFingerprint().getSql();
+            jfr.rows = event.getRows();
+            jfr.batchSize = event.getBatchSize();
+            // Error type only, since messages contain SQL and parameters
+            jfr.error = event.getErrorType();
+            jfr.commit();
+        }
+    }
+
+    /**
+     * Begin transaction event.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void start(final TransactionEvent event) {
+        begin(event, new DbTransactionEvent());
+    }
+
+    /**
+     * Commit transaction event.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void end(final TransactionEvent event) {
+        final DbTransactionEvent jfr = (DbTransactionEvent) finish(event);
+        if (jfr != null && jfr.shouldCommit()) {
+            jfr.method = event.getName();
+            jfr.interceptor = event.getSource();
+            jfr.committed = event.isCommitted();
+            jfr.methodTime = event.getMethodTime();
+            jfr.completionTime = event.getCompletionTime();
+            // Error type only, since messages contain SQL and parameters
+            jfr.error = event.getErrorType();
+            jfr.commit();
+        }
+    }
+
+    /**
+     * Flight Recorder event begun and not yet committed.
+     */
+    private static final class Open {
+
+        /**
+         * Event measured.
+         */
+        private final Object key;
+        /**
+         * Flight Recorder event.
+         */
+        private final Event event;
+        /**
+         * Enclosing open event or null.
+         */
+        private final Open next;
+
+        /**
+         * Construct open event.
+         *
+         * @param key Event measured.
+         * @param event Flight Recorder event.
+         * @param next Enclosing open event or null.
+         */
+        Open(final Object key, final Event event, final Open next) {
+            this.key = key;
+            this.event = event;
+            this.next = next;
+        }
+    }
+}
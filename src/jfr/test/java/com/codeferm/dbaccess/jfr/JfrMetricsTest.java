@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.jfr;
+
+import com.codeferm.dbaccess.DbAccessException;
+import com.codeferm.dbaccess.metrics.QueryEvent;
+import com.codeferm.dbaccess.metrics.QueryOperation;
+import com.codeferm.dbaccess.metrics.TransactionEvent;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.jfr.JfrMetrics}. Built and run only by the
+ * {@code jfr} profile.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class JfrMetricsTest {
+
+    /**
+     * Statement event name.
+     */
+    private static final String STATEMENT = "com.codeferm.dbaccess.Statement";
+    /**
+     * Transaction event name.
+     */
+    private static final String TRANSACTION
+            = "com.codeferm.dbaccess.Transaction";
+
+    /**
+     * Find first event of type.
+     *
+     * @param events Recorded events.
+     * @param name Event type name.
+     * @return Event or null.
+     */
+    private static RecordedEvent find(final List<RecordedEvent> events,
+            final String name) {
+        RecordedEvent found = null;
+        for (RecordedEvent event : events) {
+            if (found == null && name.equals(event.getEventType().
+                    getName())) {
+                found = event;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Statement and transaction events are recorded with their fields and
+     * only the error type.
+     *
+     * @throws IOException Possible exception.
+     * @throws NoSuchMethodException Possible exception.
+     */
+    @Test
+    public void events() throws IOException, NoSuchMethodException {
+        final JfrMetrics metrics = new JfrMetrics();
+        final Path file = Files.createTempFile("dbaccess", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(STATEMENT).withoutThreshold();
+            recording.enable(TRANSACTION).withoutThreshold();
+            recording.start();
+            final TransactionEvent transaction = new TransactionEvent(
+                    JfrMetricsTest.class, JfrMetricsTest.class.getMethod(
+                            "events"));
+            metrics.start(transaction);
+            final QueryEvent event = new QueryEvent(JfrMetricsTest.class,
+                    QueryOperation.UPDATE,
+                    "update users set ssn = '123-45-6789' where id = ?",
+                    new Object[]{1});
+            metrics.start(event);
+            final DbAccessException error = new DbAccessException(
+                    "update: params=[123-45-6789]", new SQLException("failed"));
+            event.setError(error);
+            event.finish(2);
+            metrics.end(event);
+            transaction.finish(false, error);
+            metrics.end(transaction);
+            recording.stop();
+            recording.dump(file);
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(
+                    file);
+            final RecordedEvent statement = find(events, STATEMENT);
+            assertNotNull("Statement event", statement);
+            assertEquals("Operation", "update", statement.getString(
+                    "operation"));
+            assertEquals("Implementation", JfrMetricsTest.class.getName(),
+                    statement.getClass("implementation").getName());
+            assertEquals("Fingerprint", event.getFingerprint().getId(),
+                    statement.getString("fingerprint"));
+            assertEquals("Normalized SQL", event.getFingerprint().getSql(),
+                    statement.getString("sql"));
+            assertEquals("Rows", 2, statement.getInt("rows"));
+            assertEquals("Error type", "DbAccessException(SQLException)",
+                    statement.getString("error"));
+            final RecordedEvent trans = find(events, TRANSACTION);
+            assertNotNull("Transaction event", trans);
+            assertEquals("Method", "JfrMetricsTest.events", trans.getString(
+                    "method"));
+            assertEquals("Interceptor", JfrMetricsTest.class.getName(), trans.
+                    getClass("interceptor").getName());
+            assertFalse("Committed", trans.getBoolean("committed"));
+            assertEquals("Transaction error type",
+                    "DbAccessException(SQLException)", trans.getString(
+                            "error"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
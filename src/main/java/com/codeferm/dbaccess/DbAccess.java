@@ -6,8 +6,15 @@
  */
 package com.codeferm.dbaccess;
 
+import com.codeferm.dbaccess.metrics.QueryEvent;
+import com.codeferm.dbaccess.metrics.QueryMetrics;
+import com.codeferm.dbaccess.metrics.QueryOperation;
+import com.codeferm.dbaccess.metrics.QueryPhase;
+import com.codeferm.dbaccess.transaction.IdentityMap;
 import java.util.List;
 import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
 
 /**
@@ -18,6 +25,8 @@ import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
  * dependant code. All implementations support named parameters as well.
  * Transactional support can be added using the
  * {@link com.codeferm.dbaccess.transaction.Transaction} annotation.
+ * Execution can be measured by setting
+ * {@link com.codeferm.dbaccess.metrics.QueryMetrics}.
  *
  * Implementations should automatically handle database field names with
  * underscores and map them to camelCase bean fields.
@@ -36,6 +45,211 @@ import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
  */
 public abstract class DbAccess {  //NOPMD, this is an API , so it's OK to have "too many" methods
 
+    /**
+     * Logger.
+     */
+    //CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger log = LoggerFactory.getLogger(DbAccess.class); //NOPMD
+    //CHECKSTYLE:ON ConstantName
+    /**
+     * Metrics called around each statement, null to disable. Volatile, since
+     * metrics may be set while other threads execute statements.
+     */
+    private transient volatile QueryMetrics metrics = null;
+    /**
+     * JDBC objects of wrapper implementations are proxied to time phases.
+     */
+    private transient boolean phaseTiming = false;
+
+    /**
+     * Get {@code QueryMetrics}.
+     *
+     * @return Metrics or null if disabled.
+     */
+    public final QueryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set {@code QueryMetrics} called around each {@code selectList},
+     * {@code update}, {@code updateReturnKeys} and {@code batch}. Statements
+     * already executing finish with the metrics they started with.
+     *
+     * @param metrics Metrics or null to disable.
+     */
+    public final void setMetrics(final QueryMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Are JDBC objects proxied to time phases of wrapper implementations?
+     * {@link com.codeferm.dbaccess.DbJdbcConn} and
+     * {@link com.codeferm.dbaccess.DbJdbcDs} always time phases when metrics
+     * are set.
+     *
+     * @return True if phases are timed.
+     */
+    public final boolean isPhaseTiming() {
+        return phaseTiming;
+    }
+
+    /**
+     * Set by wrapper implementations after their JDBC objects are proxied.
+     *
+     * @param phaseTiming True if phases are timed.
+     */
+    protected final void setPhaseTiming(final boolean phaseTiming) {
+        this.phaseTiming = phaseTiming;
+    }
+
+    /**
+     * Start measuring statement. Implementations call this before executing
+     * and {@link #end(QueryEvent, int)} when finished. Anything but a query
+     * clears the {@link com.codeferm.dbaccess.transaction.IdentityMap} of the
+     * current transaction, since the rows changed are not known.
+     *
+     * @param operation Operation.
+     * @param sql SQL statement.
+     * @param params Statement parameters, array of parameter arrays for batch.
+     * @return Event or null if metrics disabled.
+     */
+    protected final QueryEvent begin(final QueryOperation operation,
+            final String sql, final Object[] params) {
+        if (operation != QueryOperation.SELECT_BEAN_LIST
+                && operation != QueryOperation.SELECT_MAP_LIST) {
+            IdentityMap.clear();
+        }
+        // Read once in case metrics are changed by another thread
+        final QueryMetrics queryMetrics = metrics;
+        QueryEvent event = null;
+        if (queryMetrics != null) {
+            event = new QueryEvent(getClass(), operation, sql, params,
+                    queryMetrics);
+            event.enter();
+            try {
+                queryMetrics.start(event);
+            } catch (RuntimeException e) {
+                log.warn(String.format("begin: %s", e.getMessage()));
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Mark end of statement phase. Time since the previous mark is added to
+     * the phase.
+     *
+     * @param event Event or null if metrics disabled.
+     * @param phase Phase just finished.
+     */
+    protected static void mark(final QueryEvent event, final QueryPhase phase) {
+        if (event != null) {
+            event.mark(phase);
+        }
+    }
+
+    /**
+     * Add time of a library call not spent in other phases to phase. Does
+     * nothing unless phase timing is on, since the other phases would be
+     * missing.
+     *
+     * @param event Event or null if metrics disabled.
+     * @param phase Phase receiving the rest, usually
+     * {@link com.codeferm.dbaccess.metrics.QueryPhase#MAP}.
+     */
+    protected final void markRest(final QueryEvent event,
+            final QueryPhase phase) {
+        if (event != null && phaseTiming) {
+            event.markRest(phase);
+        }
+    }
+
+    /**
+     * Record error on event.
+     *
+     * @param <E> Type of exception.
+     * @param event Event or null if metrics disabled.
+     * @param e Exception to be thrown.
+     * @return Exception passed in.
+     */
+    protected final <E extends RuntimeException> E failed(
+            final QueryEvent event, final E e) {
+        if (event != null) {
+            event.setError(e);
+        }
+        return e;
+    }
+
+    /**
+     * Finish measuring statement.
+     *
+     * @param event Event or null if metrics disabled.
+     * @param rows Rows returned or updated.
+     */
+    protected final void end(final QueryEvent event, final int rows) {
+        if (event != null) {
+            event.finish(Math.max(0, rows));
+            event.exit();
+            // End the metrics started in begin, not what is set now
+            final QueryMetrics queryMetrics = event.getMetrics();
+            if (queryMetrics != null) {
+                try {
+                    queryMetrics.end(event);
+                } catch (RuntimeException e) {
+                    log.warn(String.format("end: %s", e.getMessage()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Finish measuring query.
+     *
+     * @param event Event or null if metrics disabled.
+     * @param list Rows returned, null if failed.
+     */
+    protected final void end(final QueryEvent event, final List<?> list) {
+        int rows = 0;
+        if (list != null) {
+            rows = list.size();
+        }
+        end(event, rows);
+    }
+
+    /**
+     * Finish measuring INSERT returning keys.
+     *
+     * @param event Event or null if metrics disabled.
+     * @param keys Keys returned, null if none.
+     */
+    protected final void end(final QueryEvent event,
+            final Map<String, Object> keys) {
+        int rows = 0;
+        if (keys != null) {
+            rows = 1;
+        }
+        end(event, rows);
+    }
+
+    /**
+     * Finish measuring batch. Statements without an update count are not
+     * counted.
+     *
+     * @param event Event or null if metrics disabled.
+     * @param counts Update counts, null if failed.
+     */
+    protected final void end(final QueryEvent event, final int[] counts) {
+        int rows = 0;
+        if (counts != null) {
+            for (int count : counts) {
+                if (count > 0) {
+                    rows += count;
+                }
+            }
+        }
+        end(event, rows);
+    }
+
     /**
      * Return SQL with ? type parameter markers in place of named parameters.
      *
@@ -142,6 +356,31 @@ public abstract class DbAccess {  //NOPMD, this is an API , so it's OK to have "
         return object;
     }
 
+    /**
+     * Return a single bean by key. If a
+     * {@link com.codeferm.dbaccess.transaction.IdentityMap} is open for the
+     * current transaction the bean is served from memory after the first load
+     * through this instance of the same bean class, SQL and key until the next
+     * write. Every lookup served from the map returns the same bean instance.
+     *
+     * @param <T> Type of object that the handler returns.
+     * @param sql SQL statement to execute with one parameter marker for key.
+     * @param key Key value.
+     * @param clazz Class to map results to.
+     * @return <T> typed object.
+     */
+    public final <T> T selectByKey(final String sql, final Object key,
+            final Class clazz) {
+        T object = IdentityMap.get(this, clazz, sql, key);
+        if (object == null) {
+            object = select(sql, new Object[]{key}, clazz);
+            if (object != null) {
+                IdentityMap.put(this, clazz, sql, key, object);
+            }
+        }
+        return object;
+    }
+
     /**
      * Return parameterized query results as list of beans. Named parameters
      * are converted to parameter markers.
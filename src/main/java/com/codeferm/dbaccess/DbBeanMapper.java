@@ -6,6 +6,8 @@
  */
 package com.codeferm.dbaccess;
 
+import com.codeferm.dbaccess.metrics.QueryEvent;
+import com.codeferm.dbaccess.metrics.QueryPhase;
 import java.beans.IntrospectionException;
 import java.beans.PropertyDescriptor;
 import java.lang.reflect.Field;
@@ -15,14 +17,17 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 /**
  * Abstract class adding simple bean mapping from database field names with
- * underscore to camelCase bean properties.
+ * underscore to camelCase bean properties. Column to property mapping is done
+ * by {@link com.codeferm.dbaccess.DbColumns}.
  *
  * @see com.codeferm.dbaccess.DbAccess
+ * @see com.codeferm.dbaccess.DbColumns
  *
  * @author sgoldsmith
  * @version 1.0.0
@@ -37,7 +42,10 @@ public abstract class DbBeanMapper extends DbAccess { //NOPMD, really, I have to
      *
      * @param fields {@code Array} containing bean field names
      * @return {@code Map} of bean to database field names
+     * @deprecated Column to property mapping is done by
+     * {@link com.codeferm.dbaccess.DbColumns}.
      */
+    @Deprecated
     public final Map<String, String> fromCamelCase(final Field[] fields) {
         final Map<String, String> map = new HashMap<String, String>();
         String[] splitArr = null;
@@ -65,7 +73,10 @@ public abstract class DbBeanMapper extends DbAccess { //NOPMD, really, I have to
      * @param fields {@code Array} containing bean field names
      * @param clazz {@code Class} of bean
      * @return {@code Map} of bean write methods
+     * @deprecated Use {@link com.codeferm.dbaccess.DbColumns#getWriteMethods},
+     * which caches write methods by column.
      */
+    @Deprecated
     public final Map<String, Method> getWriteMethods(final Field[] fields,
             final Class clazz) {
         final Map<String, Method> map = new HashMap<String, Method>();
@@ -86,7 +97,8 @@ public abstract class DbBeanMapper extends DbAccess { //NOPMD, really, I have to
     }
 
     /**
-     * Return list of beans mapped from {@code ResultSet}.
+     * Return list of beans mapped from {@code ResultSet}. Column metadata is
+     * not cached.
      *
      * @param <T> Type of beans
      * @param resultSet {@code ResultSet} to process
@@ -95,28 +107,61 @@ public abstract class DbBeanMapper extends DbAccess { //NOPMD, really, I have to
      */
     public final <T> List<T> createObjects(final ResultSet resultSet,
             final Class clazz) {
+        return createObjects(null, resultSet, clazz);
+    }
+
+    /**
+     * Return list of beans mapped from {@code ResultSet}. Column to bean write
+     * method mapping is cached by SQL statement, so only the first call for a
+     * statement shape and bean class does reflection. Mapping is driven by
+     * columns, so columns without a bean property are ignored and properties
+     * without a column are left unset. Field driven mapping used before threw
+     * {@link com.codeferm.dbaccess.DbAccessException} for a property without
+     * a column. Time spent reading rows
+     * is added to {@link com.codeferm.dbaccess.metrics.QueryPhase#FETCH} of the
+     * current event, if any.
+     *
+     * @param <T> Type of beans
+     * @param sql SQL statement that produced {@code ResultSet}
+     * @param resultSet {@code ResultSet} to process
+     * @param clazz {@code Class} of bean
+     * @return {@code List} of {@code <T>} type beans
+     */
+    public final <T> List<T> createObjects(final String sql,
+            final ResultSet resultSet, final Class clazz) {
         final List<T> list = new ArrayList<T>();
-        // Get bean fields
-        final Field[] fields = clazz.getDeclaredFields();
-        // Get bean to database field name mappings
-        final Map<String, String> dbMap = fromCamelCase(fields);
-        // Get bean write methods
-        final Map<String, Method> beanMap = getWriteMethods(fields, clazz);
         try {
+            // Get column to bean write method mappings
+            final DbColumns columns = DbColumns.get(sql, resultSet.
+                    getMetaData());
+            final Method[] writeMethods = columns.getWriteMethods(clazz);
+            final int numberOfColumns = columns.size();
+            final Object[] values = new Object[numberOfColumns];
+            final QueryEvent event = QueryEvent.current();
+            long fetch = 0;
+            long last = nanoTime(event);
             // Process ResultSet
             while (resultSet.next()) {
+                // Read row, ignoring columns without a bean property
+                for (int i = 0; i < numberOfColumns; i++) {
+                    if (writeMethods[i] != null) {
+                        values[i] = resultSet.getObject(i + 1);
+                    }
+                }
+                fetch += nanoTime(event) - last;
                 // New bean
                 final T instance = (T) clazz.newInstance();
-                // Map ResultSet to bean properties
-                for (Field field : fields) {
-                    // Ignore synthetic classes or dynamic proxies.
-                    if (!field.isSynthetic()) {
-                        beanMap.get(field.getName()).invoke(instance, resultSet.
-                                getObject(dbMap.get(field.getName())));
+                // Map row to bean properties
+                for (int i = 0; i < numberOfColumns; i++) {
+                    if (writeMethods[i] != null) {
+                        writeMethods[i].invoke(instance, values[i]);
                     }
                 }
                 list.add(instance);
+                last = nanoTime(event);
             }
+            // Last next call found no row
+            addFetch(event, fetch + nanoTime(event) - last);
         } catch (SQLException e) {
             throw new DbAccessException(e);
         } catch (InvocationTargetException e) {
@@ -128,4 +173,83 @@ public abstract class DbBeanMapper extends DbAccess { //NOPMD, really, I have to
         }
         return list;
     }
+
+    /**
+     * Return list of Maps mapped from {@code ResultSet} in column order.
+     * Column labels are cached by SQL statement. Time spent reading rows is
+     * added to {@link com.codeferm.dbaccess.metrics.QueryPhase#FETCH} of the
+     * current event, if any.
+     *
+     * @param sql SQL statement that produced {@code ResultSet}
+     * @param resultSet {@code ResultSet} to process
+     * @return {@code List} of Maps containing field name/value pair
+     * @throws SQLException Possible exception
+     */
+    public final List<Map<String, Object>> createMaps(final String sql,
+            final ResultSet resultSet) throws SQLException {
+        final DbColumns columns = DbColumns.get(sql, resultSet.getMetaData());
+        final int numberOfColumns = columns.size();
+        final List<Map<String, Object>> list
+                = new ArrayList<Map<String, Object>>();
+        final Object[] values = new Object[numberOfColumns];
+        final QueryEvent event = QueryEvent.current();
+        long fetch = 0;
+        long last = nanoTime(event);
+        while (resultSet.next()) {
+            for (int i = 0; i < numberOfColumns; i++) {
+                values[i] = resultSet.getObject(i + 1);
+            }
+            fetch += nanoTime(event) - last;
+            // Keep result set column order
+            final Map<String, Object> map = new LinkedHashMap<String, Object>(
+                    numberOfColumns * 2);
+            for (int i = 0; i < numberOfColumns; i++) {
+                map.put(columns.getLabel(i + 1), values[i]);
+            }
+            list.add(map);
+            last = nanoTime(event);
+        }
+        // Last next call found no row
+        addFetch(event, fetch + nanoTime(event) - last);
+        return list;
+    }
+
+    /**
+     * Add time of mapping call not spent fetching rows to
+     * {@link com.codeferm.dbaccess.metrics.QueryPhase#MAP}. Call after
+     * createObjects or createMaps, which add the fetch time themselves.
+     *
+     * @param event Event or null if metrics disabled.
+     */
+    protected static void markMap(final QueryEvent event) {
+        if (event != null) {
+            event.markRest(QueryPhase.MAP);
+        }
+    }
+
+    /**
+     * Current time if measuring.
+     *
+     * @param event Event or null if metrics disabled.
+     * @return Nano time or 0 if not measuring.
+     */
+    private static long nanoTime(final QueryEvent event) {
+        long nanos = 0;
+        if (event != null) {
+            nanos = System.nanoTime();
+        }
+        return nanos;
+    }
+
+    /**
+     * Add fetch time to event.
+     *
+     * @param event Event or null if metrics disabled.
+     * @param nanos Time spent fetching rows.
+     */
+    private static void addFetch(final QueryEvent event, final long nanos) {
+        if (event != null) {
+            event.add(QueryPhase.FETCH, nanos);
+        }
+    }
 }
@@ -10,7 +10,6 @@ import java.beans.PropertyDescriptor;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.Arrays;
-import java.util.Locale;
 import org.apache.commons.dbutils.BeanProcessor;
 
 /**
@@ -27,6 +26,28 @@ import org.apache.commons.dbutils.BeanProcessor;
  */
 public class DbBeanProcessor extends BeanProcessor {
 
+    /**
+     * SQL statement used to cache column metadata.
+     */
+    private final String sql;
+
+    /**
+     * Default constructor. Column metadata is not cached.
+     */
+    public DbBeanProcessor() {
+        this(null);
+    }
+
+    /**
+     * Construct processor that caches column metadata by SQL statement.
+     *
+     * @param sql SQL statement that produced the {@code ResultSet}.
+     */
+    public DbBeanProcessor(final String sql) {
+        super();
+        this.sql = sql;
+    }
+
     /**
      * Map ResultSet to bean properties.
      *
@@ -38,15 +59,14 @@ public class DbBeanProcessor extends BeanProcessor {
     @Override
     protected final int[] mapColumnsToProperties(final ResultSetMetaData rsmd,
             final PropertyDescriptor[] props) throws SQLException {
-        final int cols = rsmd.getColumnCount();
+        final DbColumns columns = DbColumns.get(sql, rsmd);
+        final int cols = columns.size();
         final int[] columnToProperty = new int[cols + 1];
         Arrays.fill(columnToProperty, PROPERTY_NOT_FOUND);
-        for (int propIndex = 0; propIndex < props.length; propIndex++) {
-            final String propName = props[propIndex].getName();
-            for (int col = 1; col <= cols; col++) {
-                final String columnName = this.toCamelCase(rsmd.getColumnName(
-                        col));
-                if (columnName.equalsIgnoreCase(propName)) {
+        for (int col = 1; col <= cols; col++) {
+            final String columnName = columns.getProperty(col);
+            for (int propIndex = 0; propIndex < props.length; propIndex++) {
+                if (columnName.equalsIgnoreCase(props[propIndex].getName())) {
                     columnToProperty[col] = propIndex;
                     break;
                 }
@@ -54,26 +74,4 @@ public class DbBeanProcessor extends BeanProcessor {
         }
         return columnToProperty;
     }
-
-    /**
-     * Convert string with '_' to camelCase.
-     *
-     * @param underscoreStr Input string.
-     * @return camelCase String.
-     */
-    private String toCamelCase(final String underscoreStr) {
-        final StringBuffer sbStr = new StringBuffer();
-        final String[] str = underscoreStr.split("_");
-        boolean firstTime = true;
-        for (String temp : str) {
-            if (firstTime) {
-                sbStr.append(temp.toLowerCase(Locale.ENGLISH));
-                firstTime = false;
-            } else {
-                sbStr.append(Character.toUpperCase(temp.charAt(0)));
-                sbStr.append(temp.substring(1).toLowerCase());
-            }
-        }
-        return sbStr.toString();
-    }
 }
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess;
+
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Method;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Column labels, JDBC types and camelCase property names derived from
+ * {@code ResultSetMetaData}. Instances are cached by SQL statement and shared
+ * by all {@link com.codeferm.dbaccess.DbAccess} implementations, so metadata
+ * work happens once per statement shape instead of once per row or call. A
+ * cached entry is validated against the column count of the current
+ * {@code ResultSet} and rebuilt if it does not match.
+ * <p>
+ * Names are read with {@code getColumnLabel}, not {@code getColumnName}, so a
+ * column alias given with {@code AS} is the Map key of
+ * {@link com.codeferm.dbaccess.DbJdbcConn} and
+ * {@link com.codeferm.dbaccess.DbJdbcDs} and is matched to bean properties
+ * by every implementation using this class. Without an alias both return the
+ * same name. Bean mapping of {@link com.codeferm.dbaccess.DbBeanMapper}
+ * already looked columns up by label, but Map keys and
+ * {@link com.codeferm.dbaccess.DbBeanProcessor} used the underlying column
+ * name before the cache was added.
+ *
+ * @see com.codeferm.dbaccess.DbBeanMapper
+ * @see com.codeferm.dbaccess.DbBeanProcessor
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class DbColumns {
+
+    /**
+     * Maximum number of cached statements. The cache is cleared when this is
+     * exceeded, so ad-hoc SQL cannot grow it without bound.
+     */
+    public static final int MAX_ENTRIES = 1000;
+    /**
+     * Columns by SQL statement.
+     */
+    private static final ConcurrentMap<String, DbColumns> CACHE
+            = new ConcurrentHashMap<String, DbColumns>();
+    /**
+     * Cache hits.
+     */
+    private static final AtomicLong HITS = new AtomicLong();
+    /**
+     * Cache misses.
+     */
+    private static final AtomicLong MISSES = new AtomicLong();
+    /**
+     * Column labels.
+     */
+    private final String[] labels;
+    /**
+     * JDBC types from {@link java.sql.Types}.
+     */
+    private final int[] types;
+    /**
+     * camelCase property names.
+     */
+    private final String[] properties;
+    /**
+     * Bean write methods by column for each bean class mapped so far.
+     */
+    private final ConcurrentMap<Class, Method[]> writeMethods
+            = new ConcurrentHashMap<Class, Method[]>();
+
+    /**
+     * Read columns from {@code ResultSetMetaData}.
+     *
+     * @param resultSetMetaData Metadata to read.
+     * @throws SQLException Possible exception.
+     */
+    private DbColumns(final ResultSetMetaData resultSetMetaData) throws
+            SQLException {
+        final int numberOfColumns = resultSetMetaData.getColumnCount();
+        labels = new String[numberOfColumns];
+        types = new int[numberOfColumns];
+        properties = new String[numberOfColumns];
+        for (int i = 0; i < numberOfColumns; i++) {
+            labels[i] = resultSetMetaData.getColumnLabel(i + 1);
+            types[i] = resultSetMetaData.getColumnType(i + 1);
+            properties[i] = toCamelCase(labels[i]);
+        }
+    }
+
+    /**
+     * Get columns for SQL statement from cache or build them from
+     * {@code ResultSetMetaData}. A {@code null} SQL statement is never cached.
+     *
+     * @param sql SQL statement used as cache key.
+     * @param resultSetMetaData Metadata of current {@code ResultSet}.
+     * @return Columns.
+     * @throws SQLException Possible exception.
+     */
+    public static DbColumns get(final String sql,
+            final ResultSetMetaData resultSetMetaData) throws SQLException {
+        DbColumns columns = null;
+        if (sql == null) {
+            columns = new DbColumns(resultSetMetaData);
+        } else {
+            columns = CACHE.get(sql);
+            // Column count is the cheap check that statement shape is the same
+            if (columns != null && columns.size() == resultSetMetaData.
+                    getColumnCount()) {
+                HITS.incrementAndGet();
+            } else {
+                MISSES.incrementAndGet();
+                columns = new DbColumns(resultSetMetaData);
+                if (CACHE.size() >= MAX_ENTRIES) {
+                    CACHE.clear();
+                }
+                CACHE.put(sql, columns);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Remove all cached statements and reset counters.
+     */
+    public static void clear() {
+        CACHE.clear();
+        HITS.set(0);
+        MISSES.set(0);
+    }
+
+    /**
+     * Reset hit and miss counters without clearing the cache.
+     */
+    public static void resetStats() {
+        HITS.set(0);
+        MISSES.set(0);
+    }
+
+    /**
+     * Get number of cache hits.
+     *
+     * @return Cache hits.
+     */
+    public static long getHits() {
+        return HITS.get();
+    }
+
+    /**
+     * Get number of cache misses.
+     *
+     * @return Cache misses.
+     */
+    public static long getMisses() {
+        return MISSES.get();
+    }
+
+    /**
+     * Get number of cached statements.
+     *
+     * @return Cached statements.
+     */
+    public static int getCacheSize() {
+        return CACHE.size();
+    }
+
+    /**
+     * Convert string with '_' to camelCase.
+     *
+     * @param underscoreStr Input string.
+     * @return camelCase String.
+     */
+    public static String toCamelCase(final String underscoreStr) {
+        final StringBuilder sbStr = new StringBuilder(underscoreStr.length());
+        final String[] str = underscoreStr.split("_");
+        boolean firstTime = true;
+        for (String temp : str) {
+            if (firstTime) {
+                sbStr.append(temp.toLowerCase(Locale.ENGLISH));
+                firstTime = false;
+            } else if (!temp.isEmpty()) {
+                sbStr.append(Character.toUpperCase(temp.charAt(0)));
+                sbStr.append(temp.substring(1).toLowerCase(Locale.ENGLISH));
+            }
+        }
+        return sbStr.toString();
+    }
+
+    /**
+     * Get number of columns.
+     *
+     * @return Number of columns.
+     */
+    public int size() {
+        return labels.length;
+    }
+
+    /**
+     * Get column label.
+     *
+     * @param column Column number starting at 1.
+     * @return Column label.
+     */
+    public String getLabel(final int column) {
+        return labels[column - 1];
+    }
+
+    /**
+     * Get column JDBC type.
+     *
+     * @param column Column number starting at 1.
+     * @return Type from {@link java.sql.Types}.
+     */
+    public int getType(final int column) {
+        return types[column - 1];
+    }
+
+    /**
+     * Get camelCase property name derived from column label.
+     *
+     * @param column Column number starting at 1.
+     * @return Property name.
+     */
+    public String getProperty(final int column) {
+        return properties[column - 1];
+    }
+
+    /**
+     * Get bean write method for each column. Columns without a matching
+     * writable bean property are {@code null}. Methods are looked up once per
+     * bean class.
+     *
+     * @param clazz {@code Class} of bean.
+     * @return Write methods indexed by column number minus 1.
+     */
+    public Method[] getWriteMethods(final Class clazz) {
+        Method[] methods = writeMethods.get(clazz);
+        if (methods == null) {
+            methods = new Method[properties.length];
+            try {
+                final PropertyDescriptor[] props = Introspector.getBeanInfo(
+                        clazz).getPropertyDescriptors();
+                for (int i = 0; i < properties.length; i++) {
+                    for (PropertyDescriptor prop : props) {
+                        if (prop.getWriteMethod() != null && prop.getName().
+                                equalsIgnoreCase(properties[i])) {
+                            methods[i] = prop.getWriteMethod();
+                            break;
+                        }
+                    }
+                }
+            } catch (IntrospectionException e) {
+                throw new DbAccessException(e);
+            }
+            writeMethods.put(clazz, methods);
+        }
+        return methods;
+    }
+}
@@ -6,14 +6,15 @@
  */
 package com.codeferm.dbaccess;
 
+import com.codeferm.dbaccess.metrics.QueryEvent;
+import com.codeferm.dbaccess.metrics.QueryOperation;
+import com.codeferm.dbaccess.metrics.QueryPhase;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -99,20 +100,27 @@ public class DbJdbcDs extends DbBeanMapper {
         PreparedStatement preparedStatement = null;
         ResultSet resultSet = null;
         List<T> list = null;
+        final QueryEvent event = begin(QueryOperation.SELECT_BEAN_LIST, sql,
+                params);
         try {
             connection = dataSource.getConnection();
+            mark(event, QueryPhase.ACQUIRE);
             preparedStatement = connection.prepareStatement(sql);
+            mark(event, QueryPhase.PREPARE);
             // Fill parameters
             int i = 1; //NOPMD
             for (Object o : params) {
                 preparedStatement.setObject(i++, o);
             }
+            mark(event, QueryPhase.BIND);
             resultSet = preparedStatement.executeQuery();
-            list = createObjects(resultSet, clazz);
+            mark(event, QueryPhase.EXECUTE);
+            list = createObjects(sql, resultSet, clazz);
+            markMap(event);
         } catch (Exception e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "selectBeanList: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
         } finally {
             try {
                 if (resultSet != null) {
@@ -135,6 +143,7 @@ public class DbJdbcDs extends DbBeanMapper {
             } catch (SQLException e) {
                 log.error(e.getMessage());
             }
+            end(event, list);
         }
         return list;
     }
@@ -162,30 +171,29 @@ public class DbJdbcDs extends DbBeanMapper {
         PreparedStatement preparedStatement = null;
         ResultSet resultSet = null;
         List<Map<String, Object>> list = null;
+        final QueryEvent event = begin(QueryOperation.SELECT_MAP_LIST, sql,
+                params);
         try {
             connection = dataSource.getConnection();
+            mark(event, QueryPhase.ACQUIRE);
             preparedStatement = connection.prepareStatement(sql);
+            mark(event, QueryPhase.PREPARE);
             // Fill parameters
             int i = 1; //NOPMD
             for (Object o : params) {
                 preparedStatement.setObject(i++, o);
             }
+            mark(event, QueryPhase.BIND);
             resultSet = preparedStatement.executeQuery();
-            final ResultSetMetaData resultSetMetaData = resultSet.getMetaData();
-            final int numberOfColumns = resultSetMetaData.getColumnCount();
-            list = new ArrayList<Map<String, Object>>();
-            final Map map = new HashMap();
-            while (resultSet.next()) {
-                for (i = 1; i <= numberOfColumns; i++) {
-                    map.put(resultSetMetaData.getColumnName(i), resultSet.
-                            getObject(i));
-                }
-                list.add(map);
-            }
+            mark(event, QueryPhase.EXECUTE);
+            list = createMaps(sql, resultSet);
+            markMap(event);
         } catch (SQLException e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "selectMapList: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
         } finally {
             try {
                 if (resultSet != null) {
@@ -208,6 +216,7 @@ public class DbJdbcDs extends DbBeanMapper {
             } catch (SQLException e) {
                 log.error(e.getMessage());
             }
+            end(event, list);
         }
         return list;
     }
@@ -233,19 +242,26 @@ public class DbJdbcDs extends DbBeanMapper {
         Connection connection = null;
         PreparedStatement preparedStatement = null;
         int rows = -1;
+        final QueryEvent event = begin(QueryOperation.UPDATE, sql, params);
         try {
             connection = dataSource.getConnection();
+            mark(event, QueryPhase.ACQUIRE);
             preparedStatement = connection.prepareStatement(sql);
+            mark(event, QueryPhase.PREPARE);
             // Fill parameters
             int i = 1; //NOPMD OK to use short name for loop iteration variable
             for (Object o : params) {
                 preparedStatement.setObject(i++, o);
             }
+            mark(event, QueryPhase.BIND);
             rows = preparedStatement.executeUpdate();
+            mark(event, QueryPhase.EXECUTE);
         } catch (SQLException e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "update: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
         } finally {
             try {
                 if (preparedStatement != null) {
@@ -261,6 +277,7 @@ public class DbJdbcDs extends DbBeanMapper {
             } catch (SQLException e) {
                 log.error(e.getMessage());
             }
+            end(event, rows);
         }
         return rows;
     }
@@ -289,31 +306,40 @@ public class DbJdbcDs extends DbBeanMapper {
         PreparedStatement preparedStatement = null;
         ResultSet resultSet = null;
         Map<String, Object> keys = null;
+        final QueryEvent event = begin(QueryOperation.UPDATE_RETURN_KEYS, sql,
+                params);
         try {
             connection = dataSource.getConnection();
+            mark(event, QueryPhase.ACQUIRE);
             preparedStatement = connection.prepareStatement(sql,
                     Statement.RETURN_GENERATED_KEYS);
+            mark(event, QueryPhase.PREPARE);
             // Fill parameters
             int i = 1; //NOPMD
             for (Object o : params) {
                 preparedStatement.setObject(i++, o);
             }
+            mark(event, QueryPhase.BIND);
             preparedStatement.executeUpdate();
+            mark(event, QueryPhase.EXECUTE);
             resultSet = preparedStatement.getGeneratedKeys();
-            final ResultSetMetaData resultSetMetaData = resultSet.getMetaData();
-            final int numberOfColumns = resultSetMetaData.getColumnCount();
+            final DbColumns columns = DbColumns.get(sql, resultSet.
+                    getMetaData());
+            final int numberOfColumns = columns.size();
             // Prime the pump
             if (resultSet.next()) {
                 keys = new HashMap<String, Object>();
                 for (i = 1; i <= numberOfColumns; i++) {
-                    keys.put(resultSetMetaData.getColumnName(i),
-                            resultSet.getObject(i));
+                    keys.put(columns.getLabel(i), resultSet.getObject(i));
                 }
             }
+            mark(event, QueryPhase.FETCH);
         } catch (SQLException e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "updateReturnKeys: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
         } finally {
             try {
                 if (resultSet != null) {
@@ -336,6 +362,7 @@ public class DbJdbcDs extends DbBeanMapper {
             } catch (SQLException e) {
                 log.error(e.getMessage());
             }
+            end(event, keys);
         }
         return keys;
     }
@@ -365,9 +392,12 @@ public class DbJdbcDs extends DbBeanMapper {
         Connection connection = null;
         PreparedStatement preparedStatement = null;
         int[] rows = null;
+        final QueryEvent event = begin(QueryOperation.BATCH, sql, params);
         try {
             connection = dataSource.getConnection();
+            mark(event, QueryPhase.ACQUIRE);
             preparedStatement = connection.prepareStatement(sql);
+            mark(event, QueryPhase.PREPARE);
             // Add parameter arrays to batch
             for (Object[] param : params) {
                 // Fill parameters
@@ -378,11 +408,15 @@ public class DbJdbcDs extends DbBeanMapper {
                 // Add to batch
                 preparedStatement.addBatch();
             }
+            mark(event, QueryPhase.BIND);
             rows = preparedStatement.executeBatch();
+            mark(event, QueryPhase.EXECUTE);
         } catch (SQLException e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "batch: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
         } finally {
             try {
                 if (preparedStatement != null) {
@@ -398,6 +432,7 @@ public class DbJdbcDs extends DbBeanMapper {
             } catch (SQLException e) {
                 log.error(e.getMessage());
             }
+            end(event, rows);
         }
         return rows;
     }
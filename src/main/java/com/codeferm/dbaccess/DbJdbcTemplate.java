@@ -6,6 +6,10 @@
  */
 package com.codeferm.dbaccess;
 
+import com.codeferm.dbaccess.metrics.PhaseTiming;
+import com.codeferm.dbaccess.metrics.QueryEvent;
+import com.codeferm.dbaccess.metrics.QueryOperation;
+import com.codeferm.dbaccess.metrics.QueryPhase;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -73,6 +77,25 @@ public class DbJdbcTemplate extends DbAccess {
         this.template = template;
     }
 
+    /**
+     * Proxy {@code DataSource} of template, so metrics are broken down by
+     * {@link com.codeferm.dbaccess.metrics.QueryPhase}. This adds overhead to
+     * every JDBC call, so only enable it while diagnosing. Calling it again
+     * does nothing.
+     * <p>
+     * Spring binds transaction connections to the {@code DataSource}
+     * instance, so statements run through the proxy no longer join a
+     * {@code DataSourceTransactionManager} transaction. Do not enable phase
+     * timing on a template shared with Spring managed transactions.
+     */
+    public final void enablePhaseTiming() {
+        if (!PhaseTiming.isWrapped(template.getDataSource())) {
+            template.setDataSource(PhaseTiming.wrap(template.
+                    getDataSource()));
+        }
+        setPhaseTiming(true);
+    }
+
     /**
      * Return query results as list of beans. {@code Connection} closed
      * automatically.
@@ -90,8 +113,19 @@ public class DbJdbcTemplate extends DbAccess {
             log.debug(String.format("selectBeanList: sql=%s, params=%s", sql,
                     Arrays.asList(params)));
         }
-        return template.query(sql, params,
-                new BeanPropertyRowMapper(clazz));
+        final QueryEvent event = begin(QueryOperation.SELECT_BEAN_LIST, sql,
+                params);
+        List<T> list = null;
+        try {
+            list = template.query(sql, params, new BeanPropertyRowMapper(
+                    clazz));
+            markRest(event, QueryPhase.MAP);
+        } catch (RuntimeException e) {
+            throw failed(event, e);
+        } finally {
+            end(event, list);
+        }
+        return list;
     }
 
     /**
@@ -109,7 +143,18 @@ public class DbJdbcTemplate extends DbAccess {
             log.debug(String.format("selectMapList: sql=%s, params=%s", sql,
                     Arrays.asList(params)));
         }
-        return template.queryForList(sql, params);
+        final QueryEvent event = begin(QueryOperation.SELECT_MAP_LIST, sql,
+                params);
+        List<Map<String, Object>> list = null;
+        try {
+            list = template.queryForList(sql, params);
+            markRest(event, QueryPhase.MAP);
+        } catch (RuntimeException e) {
+            throw failed(event, e);
+        } finally {
+            end(event, list);
+        }
+        return list;
     }
 
     /**
@@ -127,7 +172,16 @@ public class DbJdbcTemplate extends DbAccess {
             log.debug(String.format("update: sql=%s, params=%s", sql, Arrays.
                     asList(params)));
         }
-        return template.update(sql, params);
+        final QueryEvent event = begin(QueryOperation.UPDATE, sql, params);
+        int rows = 0;
+        try {
+            rows = template.update(sql, params);
+        } catch (RuntimeException e) {
+            throw failed(event, e);
+        } finally {
+            end(event, rows);
+        }
+        return rows;
     }
 
     /**
@@ -171,10 +225,20 @@ public class DbJdbcTemplate extends DbAccess {
                 return preparedStatement;
             }
         };
-        // Execute update
-        template.update(psc, keyHolder);
+        final QueryEvent event = begin(QueryOperation.UPDATE_RETURN_KEYS, sql,
+                params);
+        Map<String, Object> keys = null;
+        try {
+            // Execute update
+            template.update(psc, keyHolder);
+            keys = keyHolder.getKeys();
+        } catch (RuntimeException e) {
+            throw failed(event, e);
+        } finally {
+            end(event, keys);
+        }
         // Return keys
-        return keyHolder.getKeys();
+        return keys;
     }
 
     /**
@@ -195,7 +259,16 @@ public class DbJdbcTemplate extends DbAccess {
                                 Arrays.asList(param)));
             }
         }
-        return template.batchUpdate(sql, Arrays.asList(params));
+        final QueryEvent event = begin(QueryOperation.BATCH, sql, params);
+        int[] rows = null;
+        try {
+            rows = template.batchUpdate(sql, Arrays.asList(params));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
+        } finally {
+            end(event, rows);
+        }
+        return rows;
     }
 
     /**
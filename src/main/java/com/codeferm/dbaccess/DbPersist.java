@@ -6,6 +6,10 @@
  */
 package com.codeferm.dbaccess;
 
+import com.codeferm.dbaccess.metrics.PhaseTiming;
+import com.codeferm.dbaccess.metrics.QueryEvent;
+import com.codeferm.dbaccess.metrics.QueryOperation;
+import com.codeferm.dbaccess.metrics.QueryPhase;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -108,6 +112,20 @@ public class DbPersist extends DbAccess {
         this.template = template;
     }
 
+    /**
+     * Proxy {@code Connection} and create new {@code Persist} with it, so
+     * metrics are broken down by
+     * {@link com.codeferm.dbaccess.metrics.QueryPhase}. This adds overhead to
+     * every JDBC call, so only enable it while diagnosing.
+     */
+    public final void enablePhaseTiming() {
+        connection = PhaseTiming.wrap(connection);
+        template = new Persist(connection);
+        // Automatically close prepared statements after reads
+        template.setClosePreparedStatementsAfterRead(true);
+        setPhaseTiming(true);
+    }
+
     /**
      * Return query results as list of beans. {@code Connection} is not closed.
      *
@@ -128,7 +146,18 @@ public class DbPersist extends DbAccess {
             log.debug(String.format("selectBeanList: sql=%s, params=%s", sql,
                     Arrays.asList(params)));
         }
-        return (List<T>) template.readList(clazz, sql, params);
+        final QueryEvent event = begin(QueryOperation.SELECT_BEAN_LIST, sql,
+                params);
+        List<T> list = null;
+        try {
+            list = (List<T>) template.readList(clazz, sql, params);
+            markRest(event, QueryPhase.MAP);
+        } catch (RuntimeException e) {
+            throw failed(event, e);
+        } finally {
+            end(event, list);
+        }
+        return list;
     }
 
     /**
@@ -149,7 +178,18 @@ public class DbPersist extends DbAccess {
             log.debug(String.format("selectMapList: sql=%s, params=%s", sql,
                     Arrays.asList(params)));
         }
-        return template.readMapList(sql, params);
+        final QueryEvent event = begin(QueryOperation.SELECT_MAP_LIST, sql,
+                params);
+        List<Map<String, Object>> list = null;
+        try {
+            list = template.readMapList(sql, params);
+            markRest(event, QueryPhase.MAP);
+        } catch (RuntimeException e) {
+            throw failed(event, e);
+        } finally {
+            end(event, list);
+        }
+        return list;
     }
 
     /**
@@ -170,7 +210,16 @@ public class DbPersist extends DbAccess {
             log.debug(String.format("update: sql=%s, params=%s", sql, Arrays.
                     asList(params)));
         }
-        return template.executeUpdate(sql, params);
+        final QueryEvent event = begin(QueryOperation.UPDATE, sql, params);
+        int rows = 0;
+        try {
+            rows = template.executeUpdate(sql, params);
+        } catch (RuntimeException e) {
+            throw failed(event, e);
+        } finally {
+            end(event, rows);
+        }
+        return rows;
     }
 
     /**
@@ -193,6 +242,8 @@ public class DbPersist extends DbAccess {
             log.debug(String.format("updateReturnKeys: sql=%s, params=%s", sql,
                     Arrays.asList(params)));
         }
+        final QueryEvent event = begin(QueryOperation.UPDATE_RETURN_KEYS, sql,
+                params);
         Map<String, Object> keys = null;
         PreparedStatement preparedStatement = null;
         ResultSet resultSet = null;
@@ -210,9 +261,11 @@ public class DbPersist extends DbAccess {
                 keys = Persist.loadMap(resultSet);
             }
         } catch (SQLException e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "updateReturnKeys: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
         } finally {
             try {
                 if (resultSet != null) {
@@ -222,6 +275,7 @@ public class DbPersist extends DbAccess {
                 log.error(e.getMessage());
             }
             template.closePreparedStatement(preparedStatement);
+            end(event, keys);
         }
         return keys;
     }
@@ -248,6 +302,7 @@ public class DbPersist extends DbAccess {
                                 Arrays.asList(param)));
             }
         }
+        final QueryEvent event = begin(QueryOperation.BATCH, sql, params);
         int[] rows = null;
         PreparedStatement preparedStatement = null;
         try {
@@ -261,11 +316,14 @@ public class DbPersist extends DbAccess {
             }
             rows = preparedStatement.executeBatch();
         } catch (SQLException e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "batch: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
         } finally {
             template.closePreparedStatement(preparedStatement);
+            end(event, rows);
         }
         return rows;
     }
@@ -6,6 +6,10 @@
  */
 package com.codeferm.dbaccess;
 
+import com.codeferm.dbaccess.metrics.PhaseTiming;
+import com.codeferm.dbaccess.metrics.QueryEvent;
+import com.codeferm.dbaccess.metrics.QueryOperation;
+import com.codeferm.dbaccess.metrics.QueryPhase;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -115,6 +119,17 @@ public class DbQueryRunnerConn extends DbAccess {
         this.template = template;
     }
 
+    /**
+     * Proxy {@code Connection}, so metrics are broken down by
+     * {@link com.codeferm.dbaccess.metrics.QueryPhase}. This adds overhead to
+     * every JDBC call, so only enable it while diagnosing. Call again after
+     * {@link #setConnection(Connection)}.
+     */
+    public final void enablePhaseTiming() {
+        connection = PhaseTiming.wrap(connection);
+        setPhaseTiming(true);
+    }
+
     /**
      * Return query results as list of beans. DBUtils doesn't handle underscore
      * to camelCase conversions for you. A custom DbBeanProcessor is implemented
@@ -138,15 +153,22 @@ public class DbQueryRunnerConn extends DbAccess {
                     Arrays.asList(params)));
         }
         List<T> list = null;
+        final QueryEvent event = begin(QueryOperation.SELECT_BEAN_LIST, sql,
+                params);
         try {
             list = (List<T>) template.query(connection, sql,
                     new BeanListHandler(clazz,
-                            new BasicRowProcessor(new DbBeanProcessor())),
+                            new BasicRowProcessor(new DbBeanProcessor(sql))),
                     params);
+            markRest(event, QueryPhase.MAP);
         } catch (SQLException e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "selectBeanList: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
+        } finally {
+            end(event, list);
         }
         return list;
     }
@@ -170,13 +192,20 @@ public class DbQueryRunnerConn extends DbAccess {
                     Arrays.asList(params)));
         }
         List<Map<String, Object>> list = null;
+        final QueryEvent event = begin(QueryOperation.SELECT_MAP_LIST, sql,
+                params);
         try {
             list = template.query(connection, sql, new MapListHandler(),
                     params);
+            markRest(event, QueryPhase.MAP);
         } catch (SQLException e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "selectMapList: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
+        } finally {
+            end(event, list);
         }
         return list;
     }
@@ -200,12 +229,17 @@ public class DbQueryRunnerConn extends DbAccess {
                     asList(params)));
         }
         int rows = -1;
+        final QueryEvent event = begin(QueryOperation.UPDATE, sql, params);
         try {
             rows = template.update(connection, sql, params);
         } catch (SQLException e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "update: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
+        } finally {
+            end(event, rows);
         }
         return rows;
     }
@@ -233,6 +267,8 @@ public class DbQueryRunnerConn extends DbAccess {
         PreparedStatement preparedStatement = null;
         ResultSet resultSet = null; //NOPMD, DbUtils uses closeQuietly
         Map<String, Object> keys = null;
+        final QueryEvent event = begin(QueryOperation.UPDATE_RETURN_KEYS, sql,
+                params);
         try {
             // Connection from template
             preparedStatement = connection.prepareStatement(sql,
@@ -245,12 +281,15 @@ public class DbQueryRunnerConn extends DbAccess {
             // Get generated keys as Object array
             keys = new MapHandler().handle(resultSet);
         } catch (SQLException e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "updateReturnKeys: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
         } finally {
             DbUtils.closeQuietly(resultSet);
             DbUtils.closeQuietly(preparedStatement);
+            end(event, keys);
         }
         return keys;
     }
@@ -278,12 +317,17 @@ public class DbQueryRunnerConn extends DbAccess {
             }
         }
         int[] rows = null;
+        final QueryEvent event = begin(QueryOperation.BATCH, sql, params);
         try {
             rows = template.batch(connection, sql, params);
         } catch (SQLException e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "batch: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
+        } finally {
+            end(event, rows);
         }
         return rows;
     }
@@ -6,6 +6,10 @@
  */
 package com.codeferm.dbaccess;
 
+import com.codeferm.dbaccess.metrics.PhaseTiming;
+import com.codeferm.dbaccess.metrics.QueryEvent;
+import com.codeferm.dbaccess.metrics.QueryOperation;
+import com.codeferm.dbaccess.metrics.QueryPhase;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -76,6 +80,32 @@ public class DbQueryRunnerDs extends DbAccess {
         this.template = template;
     }
 
+    /**
+     * Proxy connections passed to template, so metrics are broken down by
+     * {@link com.codeferm.dbaccess.metrics.QueryPhase}. The template itself
+     * is kept, so its settings still apply. This adds overhead to every JDBC
+     * call, so only enable it while diagnosing.
+     */
+    public final void enablePhaseTiming() {
+        setPhaseTiming(true);
+    }
+
+    /**
+     * Get timed connection from template {@code DataSource} if phase timing is
+     * on. The caller closes it.
+     *
+     * @return Timed connection or null if phase timing is off.
+     * @throws SQLException Possible exception.
+     */
+    private Connection timedConnection() throws SQLException {
+        Connection connection = null;
+        if (isPhaseTiming()) {
+            connection = PhaseTiming.wrap(template.getDataSource()).
+                    getConnection();
+        }
+        return connection;
+    }
+
     /**
      * Return query results as list of beans. DBUtils doesn't handle underscore
      * to camelCase conversions for you. A custom
@@ -100,15 +130,29 @@ public class DbQueryRunnerDs extends DbAccess {
                     Arrays.asList(params)));
         }
         List<T> list = null;
+        final QueryEvent event = begin(QueryOperation.SELECT_BEAN_LIST, sql,
+                params);
+        Connection connection = null; //NOPMD, DbUtils uses closeQuietly
         try {
-            list = (List<T>) template.query(sql,
-                    new BeanListHandler(clazz,
-                            new BasicRowProcessor(new DbBeanProcessor())),
-                    params);
+            final BeanListHandler handler = new BeanListHandler(clazz,
+                    new BasicRowProcessor(new DbBeanProcessor(sql)));
+            connection = timedConnection();
+            if (connection == null) {
+                list = (List<T>) template.query(sql, handler, params);
+            } else {
+                list = (List<T>) template.query(connection, sql, handler,
+                        params);
+            }
+            markRest(event, QueryPhase.MAP);
         } catch (SQLException e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "selectBeanList: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
+        } finally {
+            DbUtils.closeQuietly(connection);
+            end(event, list);
         }
         return list;
     }
@@ -133,13 +177,27 @@ public class DbQueryRunnerDs extends DbAccess {
                     Arrays.asList(params)));
         }
         List<Map<String, Object>> list = null;
+        final QueryEvent event = begin(QueryOperation.SELECT_MAP_LIST, sql,
+                params);
+        Connection connection = null; //NOPMD, DbUtils uses closeQuietly
         try {
-            list = template.query(sql, new MapListHandler(),
-                    params);
+            connection = timedConnection();
+            if (connection == null) {
+                list = template.query(sql, new MapListHandler(), params);
+            } else {
+                list = template.query(connection, sql, new MapListHandler(),
+                        params);
+            }
+            markRest(event, QueryPhase.MAP);
         } catch (SQLException e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "selectMapList: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
+        } finally {
+            DbUtils.closeQuietly(connection);
+            end(event, list);
         }
         return list;
     }
@@ -163,12 +221,24 @@ public class DbQueryRunnerDs extends DbAccess {
                     asList(params)));
         }
         int rows = -1;
+        final QueryEvent event = begin(QueryOperation.UPDATE, sql, params);
+        Connection connection = null; //NOPMD, DbUtils uses closeQuietly
         try {
-            rows = template.update(sql, params);
+            connection = timedConnection();
+            if (connection == null) {
+                rows = template.update(sql, params);
+            } else {
+                rows = template.update(connection, sql, params);
+            }
         } catch (SQLException e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "update: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
+        } finally {
+            DbUtils.closeQuietly(connection);
+            end(event, rows);
         }
         return rows;
     }
@@ -197,9 +267,14 @@ public class DbQueryRunnerDs extends DbAccess {
         Connection connection = null; //NOPMD, DbUtils uses closeQuietly
         PreparedStatement preparedStatement = null;
         ResultSet resultSet = null; //NOPMD, DbUtils uses closeQuietly
+        final QueryEvent event = begin(QueryOperation.UPDATE_RETURN_KEYS, sql,
+                params);
         try {
             // Get Connection from QueryRunner DataSource
-            connection = template.getDataSource().getConnection();
+            connection = timedConnection();
+            if (connection == null) {
+                connection = template.getDataSource().getConnection();
+            }
             preparedStatement = connection.prepareStatement(sql,
                     Statement.RETURN_GENERATED_KEYS);
             // Fill parameters
@@ -210,13 +285,16 @@ public class DbQueryRunnerDs extends DbAccess {
             // Get generated keys as Object array
             keys = new MapHandler().handle(resultSet);
         } catch (SQLException e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "updateReturnKeys: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
         } finally {
             DbUtils.closeQuietly(resultSet);
             DbUtils.closeQuietly(preparedStatement);
             DbUtils.closeQuietly(connection);
+            end(event, keys);
         }
         return keys;
     }
@@ -244,12 +322,24 @@ public class DbQueryRunnerDs extends DbAccess {
             }
         }
         int[] rows = null;
+        final QueryEvent event = begin(QueryOperation.BATCH, sql, params);
+        Connection connection = null; //NOPMD, DbUtils uses closeQuietly
         try {
-            rows = template.batch(sql, params);
+            connection = timedConnection();
+            if (connection == null) {
+                rows = template.batch(sql, params);
+            } else {
+                rows = template.batch(connection, sql, params);
+            }
         } catch (SQLException e) {
-            throw new DbAccessException(String.format(
+            throw failed(event, new DbAccessException(String.format(
                     "batch: sql=%s, params=%s", sql, Arrays.asList(
-                            params)), e);
+                            params)), e));
+        } catch (RuntimeException e) {
+            throw failed(event, e);
+        } finally {
+            DbUtils.closeQuietly(connection);
+            end(event, rows);
         }
         return rows;
     }
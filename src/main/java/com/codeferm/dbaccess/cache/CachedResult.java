@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.cache;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Query result held by a {@link com.codeferm.dbaccess.cache.ResultStore}. The
+ * SQL statement and parameters are kept with the rows, so the result can be
+ * re-executed when it needs to be refreshed.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class CachedResult {
+
+    /**
+     * SQL statement.
+     */
+    private final String sql;
+    /**
+     * Statement parameters.
+     */
+    private final Object[] params;
+    /**
+     * Time result was read from database in milliseconds.
+     */
+    private final long created;
+    /**
+     * Result rows.
+     */
+    private final List<Map<String, Object>> rows;
+
+    /**
+     * Construct result.
+     *
+     * @param sql SQL statement.
+     * @param params Statement parameters.
+     * @param created Time result was read from database in milliseconds.
+     * @param rows Result rows.
+     */
+    public CachedResult(final String sql, final Object[] params,
+            final long created, final List<Map<String, Object>> rows) {
+        this.sql = sql;
+        this.params = params;
+        this.created = created;
+        this.rows = rows;
+    }
+
+    /**
+     * Get SQL statement.
+     *
+     * @return SQL statement.
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Get statement parameters.
+     *
+     * @return Statement parameters.
+     */
+    public Object[] getParams() {
+        return params;
+    }
+
+    /**
+     * Get time result was read from database.
+     *
+     * @return Time in milliseconds.
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * Get result rows.
+     *
+     * @return Rows as {@code List} of field name/value pairs.
+     */
+    public List<Map<String, Object>> getRows() {
+        return rows;
+    }
+
+    /**
+     * Is result older than time to live?
+     *
+     * @param ttl Time to live in milliseconds, 0 never expires.
+     * @param now Current time in milliseconds.
+     * @return True if expired.
+     */
+    public boolean isExpired(final long ttl, final long now) {
+        return ttl > 0 && now - created > ttl;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Row decoded from the store. Keys keep column order and the case they were
+ * stored with, but lookups ignore case like the maps returned by Spring and
+ * DBUtils, so a cache hit behaves like a miss.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class CaseInsensitiveRow extends LinkedHashMap<String, Object> {
+
+    /**
+     * Serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+    /**
+     * Stored key by lower case key.
+     */
+    private final Map<String, String> keys;
+
+    /**
+     * Construct empty row.
+     *
+     * @param columns Expected number of columns.
+     */
+    CaseInsensitiveRow(final int columns) {
+        super(columns * 2);
+        keys = new HashMap<String, String>(columns * 2);
+    }
+
+    /**
+     * Get lower case key.
+     *
+     * @param key Key.
+     * @return Lower case key or key if not a {@code String}.
+     */
+    private static Object lower(final Object key) {
+        Object lower = key;
+        if (key instanceof String) {
+            lower = ((String) key).toLowerCase(Locale.ENGLISH);
+        }
+        return lower;
+    }
+
+    /**
+     * Get key as stored.
+     *
+     * @param key Key in any case.
+     * @return Stored key or key if not stored.
+     */
+    private Object stored(final Object key) {
+        Object stored = keys.get(lower(key));
+        if (stored == null) {
+            stored = key;
+        }
+        return stored;
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return super.containsKey(stored(key));
+    }
+
+    @Override
+    public Object get(final Object key) {
+        return super.get(stored(key));
+    }
+
+    /**
+     * Put value replacing any key that differs only in case.
+     *
+     * @param key Column label.
+     * @param value Value.
+     * @return Previous value or null.
+     */
+    @Override
+    public Object put(final String key, final Object value) {
+        final String previous = keys.put((String) lower(key), key);
+        Object old = null;
+        if (previous != null && !previous.equals(key)) {
+            old = super.remove(previous);
+        }
+        final Object replaced = super.put(key, value);
+        if (replaced != null) {
+            old = replaced;
+        }
+        return old;
+    }
+
+    @Override
+    public void putAll(final Map<? extends String, ?> map) {
+        for (Map.Entry<? extends String, ?> entry : map.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    @Override
+    public Object remove(final Object key) {
+        final Object stored = stored(key);
+        keys.remove(lower(key));
+        return super.remove(stored);
+    }
+
+    @Override
+    public void clear() {
+        keys.clear();
+        super.clear();
+    }
+}
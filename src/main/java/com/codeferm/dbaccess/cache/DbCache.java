@@ -0,0 +1,359 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.cache;
+
+import com.codeferm.dbaccess.DbAccess;
+import com.codeferm.dbaccess.DbAccessException;
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Caching extension of {@link com.codeferm.dbaccess.DbAccess} abstract class
+ * layered over any other implementation. Query results returned as
+ * {@code List<Map<String, Object>>} are kept in a
+ * {@link com.codeferm.dbaccess.cache.ResultStore} by SQL statement and
+ * parameters. Bean queries are passed through. Any INSERT, UPDATE or DELETE
+ * executed through this class clears the store, since it cannot know which
+ * results are affected. A result read while such a write was running is not
+ * stored, so it cannot outlive the clear. Results holding values that cannot
+ * be encoded, such as a {@code Blob}, are returned without being stored.
+ * <p>
+ * If a snapshot file is set the store can be saved with {@link #save()}, for
+ * example at shutdown, and reloaded with {@link #load(boolean)} at startup.
+ * {@link #cleanUp()} does not save, since transaction interceptors call it
+ * after every transaction.
+ *
+ * @see com.codeferm.dbaccess.cache.OffHeapResultStore
+ * @see com.codeferm.dbaccess.cache.ResultSnapshot
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public class DbCache extends DbAccess {
+
+    /**
+     * Logger.
+     */
+    //CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger log = LoggerFactory.getLogger(//NOPMD
+            DbCache.class);
+    //CHECKSTYLE:ON ConstantName
+    /**
+     * Used in place of {@code null} parameters.
+     */
+    private static final Object[] NO_PARAMS = new Object[]{};
+    /**
+     * Incremented by every write, so a query can tell if the store was
+     * cleared while it ran.
+     */
+    private final AtomicLong generation = new AtomicLong();
+    /**
+     * Implementation doing the actual database work.
+     */
+    private transient DbAccess dbAccess = null;
+    /**
+     * Cached results.
+     */
+    private transient ResultStore store = null;
+    /**
+     * Time to live in milliseconds, 0 never expires.
+     */
+    private long ttl = 0;
+    /**
+     * Snapshot file, null if not set.
+     */
+    private File snapshotFile = null;
+
+    /**
+     * Construct cache where results never expire.
+     *
+     * @param dbAccess Implementation doing the actual database work.
+     * @param store Cached results.
+     */
+    public DbCache(final DbAccess dbAccess, final ResultStore store) {
+        this(dbAccess, store, 0);
+    }
+
+    /**
+     * Construct cache.
+     *
+     * @param dbAccess Implementation doing the actual database work.
+     * @param store Cached results.
+     * @param ttl Time to live in milliseconds, 0 never expires.
+     */
+    public DbCache(final DbAccess dbAccess, final ResultStore store,
+            final long ttl) {
+        super();
+        this.dbAccess = dbAccess;
+        this.store = store;
+        this.ttl = ttl;
+    }
+
+    /**
+     * Get cache key for SQL statement and parameters. Each parameter is
+     * written with its class and length, so values that print the same, such
+     * as {@code 1} and {@code "1"}, get different keys.
+     *
+     * @param sql SQL statement.
+     * @param params Statement parameters.
+     * @return Cache key.
+     */
+    public static String key(final String sql, final Object[] params) {
+        final Object[] values = toParams(params);
+        final StringBuilder sb = new StringBuilder(sql.length() + 32
+                * values.length).append(sql);
+        for (Object value : values) {
+            sb.append('\u0000');
+            String str = "null";
+            if (value != null) {
+                sb.append(value.getClass().getName()).append(':');
+                // Handles arrays such as byte[]
+                str = Arrays.deepToString(new Object[]{value});
+            }
+            sb.append(str.length()).append(':').append(str);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Treat {@code null} parameters as no parameters.
+     *
+     * @param params Statement parameters or null.
+     * @return Statement parameters.
+     */
+    private static Object[] toParams(final Object[] params) {
+        Object[] values = params;
+        if (values == null) {
+            values = NO_PARAMS;
+        }
+        return values;
+    }
+
+    /**
+     * Clear store after a write. Queries started before the write see the
+     * new generation and do not store their result.
+     */
+    private void invalidate() {
+        generation.incrementAndGet();
+        store.clear();
+    }
+
+    /**
+     * Get implementation doing the actual database work.
+     *
+     * @return DbAccess implementation.
+     */
+    public final DbAccess getDbAccess() {
+        return dbAccess;
+    }
+
+    /**
+     * Get {@code ResultStore}.
+     *
+     * @return Cached results.
+     */
+    public final ResultStore getStore() {
+        return store;
+    }
+
+    /**
+     * Get time to live.
+     *
+     * @return Time to live in milliseconds, 0 never expires.
+     */
+    public final long getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Set time to live.
+     *
+     * @param ttl Time to live in milliseconds, 0 never expires.
+     */
+    public final void setTtl(final long ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * Get snapshot file.
+     *
+     * @return Snapshot file or null.
+     */
+    public final File getSnapshotFile() {
+        return snapshotFile;
+    }
+
+    /**
+     * Set snapshot file used by {@link #save()} and {@link #load(boolean)}.
+     *
+     * @param snapshotFile Snapshot file or null.
+     */
+    public final void setSnapshotFile(final File snapshotFile) {
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Save store to snapshot file.
+     *
+     * @return Number of results saved.
+     */
+    public final int save() {
+        return ResultSnapshot.save(store, snapshotFile);
+    }
+
+    /**
+     * Load store from snapshot file. Expired results are dropped or re-run.
+     *
+     * @param revalidate Re-run expired results instead of dropping them.
+     * @return Number of results loaded.
+     */
+    public final int load(final boolean revalidate) {
+        DbAccess validator = null;
+        if (revalidate) {
+            validator = dbAccess;
+        }
+        return ResultSnapshot.load(store, snapshotFile, ttl, validator);
+    }
+
+    /**
+     * Store result. A result with values that cannot be encoded, such as a
+     * {@code Blob} or a value that is not {@code Serializable}, is not cached,
+     * since the query itself succeeded.
+     *
+     * @param key Cache key.
+     * @param result Result to store.
+     */
+    private void put(final String key, final CachedResult result) {
+        try {
+            store.put(key, result);
+        } catch (DbAccessException e) {
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Result not cached: sql=%s, error=%s",
+                        result.getSql(), e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Return query results as list of beans. Beans are not cached.
+     *
+     * @param <T> Type of object that the handler returns.
+     * @param sql SQL statement to execute.
+     * @param params Initialize the PreparedStatement's IN parameters.
+     * @param clazz Class to map results to.
+     * @return {@code List} of {@code <T>} typed objects.
+     */
+    @Override
+    public final <T> List<T> selectList(final String sql,
+            final Object[] params, final Class clazz) {
+        return dbAccess.selectList(sql, params, clazz);
+    }
+
+    /**
+     * Return query results as list of Maps from store or database. A result
+     * read from the database is not stored if a write finished while it was
+     * read.
+     *
+     * @param sql SQL statement to execute.
+     * @param params Initialize the PreparedStatement's IN parameters.
+     * @return {@code List} of Maps containing field name/value pair.
+     */
+    @Override
+    public final List<Map<String, Object>> selectList(final String sql,
+            final Object[] params) {
+        final Object[] values = toParams(params);
+        final String key = key(sql, values);
+        final long now = System.currentTimeMillis();
+        final CachedResult result = store.get(key);
+        List<Map<String, Object>> list = null;
+        if (result == null || result.isExpired(ttl, now)) {
+            final long started = generation.get();
+            list = dbAccess.selectList(sql, values);
+            if (generation.get() == started) {
+                put(key, new CachedResult(sql, values, now, list));
+                // A write may have cleared the store between check and put
+                if (generation.get() != started) {
+                    store.remove(key);
+                }
+            }
+        } else {
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("selectMapList: cache hit sql=%s, "
+                        + "params=%s", sql, Arrays.asList(values)));
+            }
+            list = result.getRows();
+        }
+        return list;
+    }
+
+    /**
+     * Executes the given INSERT, UPDATE, or DELETE SQL statement with parameter
+     * array and clears the store.
+     *
+     * @param sql SQL statement to execute.
+     * @param params Initialize the PreparedStatement's IN parameters.
+     * @return Number of rows updated.
+     */
+    @Override
+    public final int update(final String sql, final Object[] params) {
+        try {
+            return dbAccess.update(sql, params);
+        } finally {
+            invalidate();
+        }
+    }
+
+    /**
+     * Executes the given INSERT statement with parameter array, returns auto
+     * generate keys and clears the store.
+     *
+     * @param sql SQL statement to execute.
+     * @param params Initialize the PreparedStatement's IN parameters.
+     * @return Field name/value pairs of keys.
+     */
+    @Override
+    public final Map<String, Object> updateReturnKeys(final String sql,
+            final Object[] params) {
+        try {
+            return dbAccess.updateReturnKeys(sql, params);
+        } finally {
+            invalidate();
+        }
+    }
+
+    /**
+     * Executes the given INSERT, UPDATE, or DELETE SQL statement with array of
+     * parameter arrays and clears the store.
+     *
+     * @param sql SQL statement to execute.
+     * @param params Initialize the PreparedStatement's IN parameters.
+     * @return Number of rows updated array.
+     */
+    @Override
+    public final int[] batch(final String sql, final Object[][] params) {
+        try {
+            return dbAccess.batch(sql, params);
+        } finally {
+            invalidate();
+        }
+    }
+
+    /**
+     * Clean up underlying implementation. Cached results are kept and the
+     * store is not saved.
+     */
+    @Override
+    public final void cleanUp() {
+        dbAccess.cleanUp();
+    }
+}
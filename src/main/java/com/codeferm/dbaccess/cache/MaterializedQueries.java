@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.cache;
+
+import com.codeferm.dbaccess.DbAccess;
+import com.codeferm.dbaccess.DbAccessException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of small, hot queries kept materialized in memory. Queries are
+ * registered by name from {@code sql.properties} and re-executed in the
+ * background through any {@link com.codeferm.dbaccess.DbAccess} on a fixed
+ * schedule, or when a reader finds the snapshot older than the staleness
+ * threshold. Readers always get the last snapshot without touching the
+ * database and never block on a refresh, since a new snapshot is swapped in
+ * atomically once it is complete. If a refresh fails the previous snapshot is
+ * kept. A refresh that started before the current snapshot was loaded, for
+ * example a stale read refresh overlapping a scheduled one, is discarded.
+ * <p>
+ * Refreshes run on a daemon thread, so the {@code DbAccess} should be backed
+ * by a {@code DataSource} when it is also used by other threads.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class MaterializedQueries {
+
+    /**
+     * Logger.
+     */
+    //CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger log = LoggerFactory.getLogger(//NOPMD
+            MaterializedQueries.class);
+    //CHECKSTYLE:ON ConstantName
+    /**
+     * Implementation used to run queries.
+     */
+    private final DbAccess dbAccess;
+    /**
+     * SQL statements by name.
+     */
+    private final Map<String, String> sqlMap;
+    /**
+     * Runs refreshes.
+     */
+    private final ScheduledExecutorService executor;
+    /**
+     * Registered queries by name.
+     */
+    private final ConcurrentMap<String, Query> queries
+            = new ConcurrentHashMap<String, Query>();
+
+    /**
+     * Construct registry with one refresh thread.
+     *
+     * @param dbAccess Implementation used to run queries.
+     * @param sqlMap SQL statements by name.
+     */
+    public MaterializedQueries(final DbAccess dbAccess,
+            final Map<String, String> sqlMap) {
+        this(dbAccess, sqlMap, 1);
+    }
+
+    /**
+     * Construct registry.
+     *
+     * @param dbAccess Implementation used to run queries.
+     * @param sqlMap SQL statements by name.
+     * @param threads Number of refresh threads.
+     */
+    public MaterializedQueries(final DbAccess dbAccess,
+            final Map<String, String> sqlMap, final int threads) {
+        this.dbAccess = dbAccess;
+        this.sqlMap = sqlMap;
+        this.executor = Executors.newScheduledThreadPool(threads,
+                new ThreadFactory() {
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable,
+                                "materialized-queries");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * Register query and load first snapshot before returning. The query is
+     * only registered if the first load succeeds, otherwise a query already
+     * registered under the name is kept.
+     *
+     * @param name Name of SQL statement in {@code sql.properties}.
+     * @param params Statement parameters.
+     * @param refresh Refresh interval in milliseconds, 0 for no schedule.
+     * @param stale Age in milliseconds when a read triggers a refresh, 0 to
+     * never trigger.
+     */
+    public void register(final String name, final Object[] params,
+            final long refresh, final long stale) {
+        final String sql = sqlMap.get(name);
+        if (sql == null) {
+            throw new DbAccessException(String.format(
+                    "SQL statement %s not found", name));
+        }
+        final Query query = new Query(sql, params, stale);
+        // Readers must never see a query without a snapshot
+        load(name, query);
+        final Query old = queries.put(name, query);
+        if (old != null) {
+            old.cancel();
+        }
+        if (refresh > 0) {
+            query.future = executor.scheduleWithFixedDelay(
+                    refreshTask(name, query), refresh, refresh,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Unregister query and cancel scheduled refresh.
+     *
+     * @param name Query name.
+     */
+    public void unregister(final String name) {
+        final Query query = queries.remove(name);
+        if (query != null) {
+            query.cancel();
+        }
+    }
+
+    /**
+     * Get rows of last snapshot. A background refresh is started if the
+     * snapshot is stale.
+     *
+     * @param name Query name.
+     * @return Unmodifiable rows.
+     */
+    public List<Map<String, Object>> get(final String name) {
+        return getSnapshot(name).getRows();
+    }
+
+    /**
+     * Get last snapshot. A background refresh is started if the snapshot is
+     * stale.
+     *
+     * @param name Query name.
+     * @return Snapshot.
+     */
+    public CachedResult getSnapshot(final String name) {
+        final Query query = query(name);
+        final CachedResult snapshot = query.snapshot.get();
+        if (snapshot.isExpired(query.stale, System.currentTimeMillis())
+                && !executor.isShutdown() && query.refreshing.compareAndSet(
+                        false, true)) {
+            final Runnable task = refreshTask(name, query);
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        query.refreshing.set(false);
+                    }
+                }
+            });
+        }
+        return snapshot;
+    }
+
+    /**
+     * Refresh query now in calling thread.
+     *
+     * @param name Query name.
+     */
+    public void refresh(final String name) {
+        load(name, query(name));
+    }
+
+    /**
+     * Get names of registered queries.
+     *
+     * @return Query names.
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(queries.keySet());
+    }
+
+    /**
+     * Stop refreshing. Snapshots can still be read.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Get registered query.
+     *
+     * @param name Query name.
+     * @return Query.
+     */
+    private Query query(final String name) {
+        final Query query = queries.get(name);
+        if (query == null) {
+            throw new DbAccessException(String.format(
+                    "Query %s not registered", name));
+        }
+        return query;
+    }
+
+    /**
+     * Create scheduled refresh task. Errors are logged, so the schedule keeps
+     * running.
+     *
+     * @param name Query name.
+     * @param query Query to refresh.
+     * @return Task.
+     */
+    private Runnable refreshTask(final String name, final Query query) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    load(name, query);
+                } catch (RuntimeException e) {
+                    log.error(String.format("Refresh of %s failed", name), e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Execute query and swap in new snapshot unless a snapshot started later
+     * was swapped in while it ran.
+     *
+     * @param name Query name.
+     * @param query Query to load.
+     */
+    private void load(final String name, final Query query) {
+        final long start = System.currentTimeMillis();
+        final List<Map<String, Object>> rows = unmodifiable(dbAccess.
+                selectList(query.sql, query.params));
+        final CachedResult next = new CachedResult(query.sql, query.params,
+                start, rows);
+        CachedResult current = query.snapshot.get();
+        boolean swapped = false;
+        while (!swapped && (current == null || current.getCreated() <= start)) {
+            swapped = query.snapshot.compareAndSet(current, next);
+            current = query.snapshot.get();
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Refreshed %s rows=%d, ms=%d, swapped=%s",
+                    name, rows.size(), System.currentTimeMillis() - start,
+                    swapped));
+        }
+    }
+
+    /**
+     * Copy rows into unmodifiable list of unmodifiable rows.
+     *
+     * @param rows Rows returned by query.
+     * @return Unmodifiable rows.
+     */
+    private static List<Map<String, Object>> unmodifiable(
+            final List<Map<String, Object>> rows) {
+        final List<Map<String, Object>> list
+                = new ArrayList<Map<String, Object>>(rows.size());
+        for (Map<String, Object> row : rows) {
+            list.add(Collections.unmodifiableMap(row));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Registered query and its current snapshot.
+     */
+    private static final class Query {
+
+        /**
+         * SQL statement.
+         */
+        private final String sql;
+        /**
+         * Statement parameters.
+         */
+        private final Object[] params;
+        /**
+         * Staleness threshold in milliseconds.
+         */
+        private final long stale;
+        /**
+         * Last snapshot.
+         */
+        private final AtomicReference<CachedResult> snapshot
+                = new AtomicReference<CachedResult>();
+        /**
+         * Stale read refresh in progress.
+         */
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        /**
+         * Scheduled refresh.
+         */
+        private volatile ScheduledFuture<?> future;
+
+        /**
+         * Construct query.
+         *
+         * @param sql SQL statement.
+         * @param params Statement parameters.
+         * @param stale Staleness threshold in milliseconds.
+         */
+        Query(final String sql, final Object[] params, final long stale) {
+            this.sql = sql;
+            this.params = params;
+            this.stale = stale;
+        }
+
+        /**
+         * Cancel scheduled refresh.
+         */
+        void cancel() {
+            if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+}
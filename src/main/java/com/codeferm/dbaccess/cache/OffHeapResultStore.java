@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link com.codeferm.dbaccess.cache.ResultStore} that keeps results outside of
+ * the Java heap. Results are encoded in a compact row format, optionally
+ * Deflate compressed, and written to fixed size pages carved from direct
+ * {@code ByteBuffer} slabs. Slabs are allocated as needed up to the maximum
+ * size. When the store is full the least recently used results are evicted.
+ * <p>
+ * Only the key index lives on the heap, so large result sets can be cached
+ * without adding to GC pause time. Rows are decoded lazily as they are read
+ * from the returned {@code List}.
+ *
+ * @see com.codeferm.dbaccess.cache.DbCache
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class OffHeapResultStore implements ResultStore {
+
+    /**
+     * Logger.
+     */
+    //CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger log = LoggerFactory.getLogger(//NOPMD
+            OffHeapResultStore.class);
+    //CHECKSTYLE:ON ConstantName
+    /**
+     * Default page size in bytes.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+    /**
+     * Default slab size in bytes.
+     */
+    public static final int DEFAULT_SLAB_SIZE = 16 * 1024 * 1024;
+    /**
+     * Page size in bytes.
+     */
+    private final int pageSize;
+    /**
+     * Pages per slab.
+     */
+    private final int slabPages;
+    /**
+     * Maximum number of pages.
+     */
+    private final int maxPages;
+    /**
+     * Deflate results.
+     */
+    private final boolean compress;
+    /**
+     * Direct memory slabs.
+     */
+    private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+    /**
+     * Stack of free page numbers.
+     */
+    private int[] freePages = new int[0];
+    /**
+     * Number of free pages on stack.
+     */
+    private int freeCount;
+    /**
+     * Number of pages allocated in slabs.
+     */
+    private int allocatedPages;
+    /**
+     * Entries in least recently used order.
+     */
+    private final LinkedHashMap<String, Entry> entries
+            = new LinkedHashMap<String, Entry>(16, 0.75F, true);
+    /**
+     * Cache hits.
+     */
+    private long hits;
+    /**
+     * Cache misses.
+     */
+    private long misses;
+    /**
+     * Evicted results.
+     */
+    private long evictions;
+
+    /**
+     * Construct store with default page and slab size and compression.
+     *
+     * @param maxBytes Maximum off-heap memory in bytes.
+     */
+    public OffHeapResultStore(final long maxBytes) {
+        this(maxBytes, DEFAULT_PAGE_SIZE, DEFAULT_SLAB_SIZE, true);
+    }
+
+    /**
+     * Construct store.
+     *
+     * @param maxBytes Maximum off-heap memory in bytes.
+     * @param pageSize Page size in bytes.
+     * @param slabSize Slab size in bytes, rounded down to whole pages.
+     * @param compress Deflate results.
+     */
+    public OffHeapResultStore(final long maxBytes, final int pageSize,
+            final int slabSize, final boolean compress) {
+        if (pageSize <= 0 || slabSize < pageSize || maxBytes < pageSize) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid sizes maxBytes=%d, pageSize=%d, slabSize=%d",
+                    maxBytes, pageSize, slabSize));
+        }
+        this.pageSize = pageSize;
+        this.slabPages = slabSize / pageSize;
+        this.maxPages = (int) Math.min(Integer.MAX_VALUE, maxBytes / pageSize);
+        this.compress = compress;
+    }
+
+    /**
+     * Get cached result. Bytes are copied out of off-heap memory, so the
+     * result stays valid if it is later evicted.
+     *
+     * @param key Cache key.
+     * @return Cached result or null if not found.
+     */
+    @Override
+    public CachedResult get(final String key) {
+        byte[] data = null;
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry == null) {
+                misses++;
+            } else {
+                hits++;
+                data = read(entry);
+            }
+        }
+        // Decode outside of lock
+        CachedResult result = null;
+        if (data != null) {
+            result = RowCodec.decode(data);
+        }
+        return result;
+    }
+
+    /**
+     * Get encoded bytes of cached result without counting a hit or decoding
+     * it. The entry becomes most recently used, so reading every key of
+     * {@link #keys()} in order keeps the eviction order.
+     *
+     * @param key Cache key.
+     * @return Encoded bytes or null if not found.
+     */
+    synchronized byte[] getEncoded(final String key) {
+        byte[] data = null;
+        final Entry entry = entries.get(key);
+        if (entry != null) {
+            data = read(entry);
+        }
+        return data;
+    }
+
+    /**
+     * Put result evicting least recently used results if needed. Results
+     * larger than the store are not cached.
+     *
+     * @param key Cache key.
+     * @param result Result to cache.
+     */
+    @Override
+    public void put(final String key, final CachedResult result) {
+        // Encode outside of lock
+        final byte[] data = RowCodec.encode(result, compress);
+        final int pages = (data.length + pageSize - 1) / pageSize;
+        synchronized (this) {
+            free(entries.remove(key));
+            if (pages > maxPages) {
+                if (log.isDebugEnabled()) {
+                    log.debug(String.format(
+                            "Result too large to cache: key=%s, bytes=%d", key,
+                            data.length));
+                }
+            } else {
+                // Evict least recently used until result fits
+                final Iterator<Entry> iterator = entries.values().iterator();
+                while (freeCount + maxPages - allocatedPages < pages) {
+                    free(iterator.next());
+                    iterator.remove();
+                    evictions++;
+                }
+                final Entry entry = new Entry(new int[pages], data.length);
+                for (int i = 0; i < pages; i++) {
+                    entry.pages[i] = allocate();
+                }
+                write(entry, data);
+                entries.put(key, entry);
+            }
+        }
+    }
+
+    /**
+     * Remove result.
+     *
+     * @param key Cache key.
+     */
+    @Override
+    public synchronized void remove(final String key) {
+        free(entries.remove(key));
+    }
+
+    /**
+     * Remove all results. Slabs are kept for reuse.
+     */
+    @Override
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            free(entry);
+        }
+        entries.clear();
+    }
+
+    /**
+     * Get copy of keys from least to most recently used.
+     *
+     * @return Cache keys.
+     */
+    @Override
+    public synchronized List<String> keys() {
+        return new ArrayList<String>(entries.keySet());
+    }
+
+    /**
+     * Get number of cached results.
+     *
+     * @return Number of results.
+     */
+    @Override
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get off-heap bytes used by cached results including page slack.
+     *
+     * @return Bytes used.
+     */
+    public synchronized long getUsedBytes() {
+        return (long) (allocatedPages - freeCount) * pageSize;
+    }
+
+    /**
+     * Get maximum off-heap bytes.
+     *
+     * @return Maximum bytes.
+     */
+    public long getMaxBytes() {
+        return (long) maxPages * pageSize;
+    }
+
+    /**
+     * Get cache hits.
+     *
+     * @return Cache hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get cache misses.
+     *
+     * @return Cache misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get number of results evicted to make room.
+     *
+     * @return Evictions.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Allocate page from free stack or a new slab. Caller has made sure a page
+     * is available.
+     *
+     * @return Page number.
+     */
+    private int allocate() {
+        if (freeCount == 0) {
+            // New slab, last one may be smaller to honor maximum size
+            final int pages = Math.min(slabPages, maxPages - allocatedPages);
+            slabs.add(ByteBuffer.allocateDirect(pages * pageSize));
+            if (freePages.length < allocatedPages + pages) {
+                final int[] newFree = new int[allocatedPages + pages];
+                System.arraycopy(freePages, 0, newFree, 0, freeCount);
+                freePages = newFree;
+            }
+            // Push in reverse, so pages are handed out in order
+            for (int i = allocatedPages + pages - 1; i >= allocatedPages; i--) {
+                freePages[freeCount++] = i;
+            }
+            allocatedPages += pages;
+        }
+        return freePages[--freeCount];
+    }
+
+    /**
+     * Return entry pages to free stack.
+     *
+     * @param entry Entry to free, may be null.
+     */
+    private void free(final Entry entry) {
+        if (entry != null) {
+            for (int page : entry.pages) {
+                freePages[freeCount++] = page;
+            }
+        }
+    }
+
+    /**
+     * Get slab buffer positioned at page.
+     *
+     * @param page Page number.
+     * @return Buffer positioned at start of page.
+     */
+    private ByteBuffer buffer(final int page) {
+        final ByteBuffer buffer = slabs.get(page / slabPages);
+        buffer.clear();
+        buffer.position(page % slabPages * pageSize);
+        return buffer;
+    }
+
+    /**
+     * Write data to entry pages.
+     *
+     * @param entry Entry with allocated pages.
+     * @param data Data to write.
+     */
+    private void write(final Entry entry, final byte[] data) {
+        int offset = 0;
+        for (int page : entry.pages) {
+            final int length = Math.min(pageSize, data.length - offset);
+            buffer(page).put(data, offset, length);
+            offset += length;
+        }
+    }
+
+    /**
+     * Read data from entry pages.
+     *
+     * @param entry Entry to read.
+     * @return Data read.
+     */
+    private byte[] read(final Entry entry) {
+        final byte[] data = new byte[entry.length];
+        int offset = 0;
+        for (int page : entry.pages) {
+            final int length = Math.min(pageSize, data.length - offset);
+            buffer(page).get(data, offset, length);
+            offset += length;
+        }
+        return data;
+    }
+
+    /**
+     * Pages and length of a cached result.
+     */
+    private static final class Entry {
+
+        /**
+         * Page numbers in order.
+         */
+        private final int[] pages;
+        /**
+         * Data length in bytes.
+         */
+        private final int length;
+
+        /**
+         * Construct entry.
+         *
+         * @param pages Page numbers in order.
+         * @param length Data length in bytes.
+         */
+        Entry(final int[] pages, final int length) {
+            this.pages = pages;
+            this.length = length;
+        }
+    }
+}
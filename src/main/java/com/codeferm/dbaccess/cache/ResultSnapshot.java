@@ -0,0 +1,276 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.cache;
+
+import com.codeferm.dbaccess.DbAccess;
+import com.codeferm.dbaccess.DbAccessException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Save and load {@link com.codeferm.dbaccess.cache.ResultStore} contents to a
+ * local file, so caches can be warmed at startup instead of sending every
+ * first request to the database. Results are written in the compressed row
+ * format used by {@link com.codeferm.dbaccess.cache.OffHeapResultStore}, in
+ * eviction order, so a reloaded store evicts in the same order. Results of an
+ * {@link com.codeferm.dbaccess.cache.OffHeapResultStore} are saved as stored,
+ * so saving does not count as cache hits.
+ * <p>
+ * A snapshot file is not trusted when loaded. Values written with Java
+ * serialization are only deserialized if they are plain JDBC value types and
+ * lengths are checked against the file size before anything is allocated.
+ * <p>
+ * The file is written to a temporary file and moved over the old one, so a
+ * crash during save leaves the previous snapshot in place.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class ResultSnapshot {
+
+    /**
+     * Logger.
+     */
+    //CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger log = LoggerFactory.getLogger(//NOPMD
+            ResultSnapshot.class);
+    //CHECKSTYLE:ON ConstantName
+    /**
+     * File magic "DBCS".
+     */
+    private static final int MAGIC = 0x44424353;
+    /**
+     * File format version.
+     */
+    private static final int VERSION = 1;
+    /**
+     * Bytes of magic and version.
+     */
+    private static final int HEADER_SIZE = 8;
+    /**
+     * Bytes of flag written before each result.
+     */
+    private static final int FLAG_SIZE = 1;
+    /**
+     * Bytes of length written before key and data.
+     */
+    private static final int LENGTH_SIZE = 4;
+    /**
+     * UTF-8 character set.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Static methods only.
+     */
+    private ResultSnapshot() {
+    }
+
+    /**
+     * Save store contents to file.
+     *
+     * @param store Store to save.
+     * @param file Snapshot file.
+     * @return Number of results saved.
+     */
+    public static int save(final ResultStore store, final File file) {
+        final long start = System.currentTimeMillis();
+        final File temp = new File(file.getPath() + ".tmp");
+        int count = 0;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (String key : store.keys()) {
+                final byte[] data = encoded(store, key);
+                // Result may have been evicted since keys were copied
+                if (data != null) {
+                    final byte[] keyBytes = key.getBytes(UTF_8);
+                    out.writeBoolean(true);
+                    out.writeInt(keyBytes.length);
+                    out.write(keyBytes);
+                    out.writeInt(data.length);
+                    out.write(data);
+                    count++;
+                }
+            }
+            out.writeBoolean(false);
+        } catch (IOException e) {
+            throw new DbAccessException(String.format(
+                    "Unable to save snapshot %s", file), e);
+        }
+        move(temp, file);
+        if (log.isDebugEnabled()) {
+            log.debug(String.format("Saved %d results to %s, ms=%d", count,
+                    file, System.currentTimeMillis() - start));
+        }
+        return count;
+    }
+
+    /**
+     * Replace file with temporary file. The move is atomic where the file
+     * system supports it, otherwise the file is replaced.
+     *
+     * @param temp Temporary file.
+     * @param file Snapshot file.
+     */
+    private static void move(final File temp, final File file) {
+        try {
+            try {
+                Files.move(temp.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new DbAccessException(String.format(
+                    "Unable to move %s to %s", temp, file), e);
+        }
+    }
+
+    /**
+     * Get encoded result from store.
+     *
+     * @param store Store to read.
+     * @param key Cache key.
+     * @return Encoded bytes or null if not found.
+     */
+    private static byte[] encoded(final ResultStore store, final String key) {
+        byte[] data = null;
+        if (store instanceof OffHeapResultStore) {
+            data = ((OffHeapResultStore) store).getEncoded(key);
+        } else {
+            final CachedResult result = store.get(key);
+            if (result != null) {
+                data = RowCodec.encode(result, true);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Load file into store. Results older than the time to live are re-run
+     * through {@code dbAccess} or dropped if it is {@code null}. A missing
+     * file loads nothing.
+     *
+     * @param store Store to load.
+     * @param file Snapshot file.
+     * @param ttl Time to live in milliseconds, 0 never expires.
+     * @param dbAccess Implementation used to re-validate expired results, may
+     * be null.
+     * @return Number of results loaded.
+     */
+    public static int load(final ResultStore store, final File file,
+            final long ttl, final DbAccess dbAccess) {
+        final long start = System.currentTimeMillis();
+        int count = 0;
+        if (file.exists()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    throw new DbAccessException(String.format(
+                            "%s is not a snapshot file", file));
+                }
+                // Bytes left after each length, so a bad length fails clean
+                long remaining = file.length() - HEADER_SIZE;
+                while (in.readBoolean()) {
+                    remaining -= FLAG_SIZE + LENGTH_SIZE;
+                    final byte[] keyBytes = new byte[length(in.readInt(),
+                            remaining, file)];
+                    in.readFully(keyBytes);
+                    remaining -= keyBytes.length + LENGTH_SIZE;
+                    final byte[] data = new byte[length(in.readInt(),
+                            remaining, file)];
+                    in.readFully(data);
+                    remaining -= data.length;
+                    final CachedResult result = validate(RowCodec.decode(data,
+                            true), ttl, dbAccess);
+                    if (result != null) {
+                        store.put(new String(keyBytes, UTF_8), result);
+                        count++;
+                    }
+                }
+            } catch (EOFException e) {
+                throw new DbAccessException(String.format(
+                        "Bad snapshot %s, file is truncated", file), e);
+            } catch (IOException e) {
+                throw new DbAccessException(String.format(
+                        "Unable to load snapshot %s", file), e);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug(String.format("Loaded %d results from %s, ms=%d",
+                        count, file, System.currentTimeMillis() - start));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Check length read from file.
+     *
+     * @param length Length read.
+     * @param remaining Bytes left in file.
+     * @param file Snapshot file.
+     * @return Length if it fits in the file.
+     */
+    private static int length(final int length, final long remaining,
+            final File file) {
+        if (length < 0 || length > remaining) {
+            throw new DbAccessException(String.format(
+                    "Bad snapshot %s, length %d with %d bytes left", file,
+                    length, remaining));
+        }
+        return length;
+    }
+
+    /**
+     * Return result if it has not expired, otherwise re-run it.
+     *
+     * @param result Result read from snapshot.
+     * @param ttl Time to live in milliseconds, 0 never expires.
+     * @param dbAccess Implementation used to re-validate, may be null.
+     * @return Valid result or null to drop it.
+     */
+    private static CachedResult validate(final CachedResult result,
+            final long ttl, final DbAccess dbAccess) {
+        final long now = System.currentTimeMillis();
+        CachedResult valid = result;
+        if (result.isExpired(ttl, now)) {
+            valid = null;
+            if (dbAccess != null) {
+                try {
+                    final List<Map<String, Object>> rows = dbAccess.
+                            selectList(result.getSql(), result.getParams());
+                    valid = new CachedResult(result.getSql(), result.
+                            getParams(), now, rows);
+                } catch (DbAccessException e) {
+                    log.warn(String.format("Dropping result sql=%s, %s",
+                            result.getSql(), e.getMessage()));
+                }
+            }
+        }
+        return valid;
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.cache;
+
+import java.util.List;
+
+/**
+ * Storage tier for cached query results. Implementations must be thread safe.
+ *
+ * @see com.codeferm.dbaccess.cache.DbCache
+ * @see com.codeferm.dbaccess.cache.OffHeapResultStore
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public interface ResultStore {
+
+    /**
+     * Get cached result by key.
+     *
+     * @param key Cache key.
+     * @return Cached result or null if not found.
+     */
+    CachedResult get(String key);
+
+    /**
+     * Put result by key replacing any existing result.
+     *
+     * @param key Cache key.
+     * @param result Result to cache.
+     */
+    void put(String key, CachedResult result);
+
+    /**
+     * Remove result by key.
+     *
+     * @param key Cache key.
+     */
+    void remove(String key);
+
+    /**
+     * Remove all results.
+     */
+    void clear();
+
+    /**
+     * Get copy of keys. Stores with an eviction order return keys from first
+     * to last evicted.
+     *
+     * @return Cache keys.
+     */
+    List<String> keys();
+
+    /**
+     * Get number of cached results.
+     *
+     * @return Number of results.
+     */
+    int size();
+}
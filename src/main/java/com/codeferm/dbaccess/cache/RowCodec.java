@@ -0,0 +1,677 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.cache;
+
+import com.codeferm.dbaccess.DbAccessException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary row format for {@link com.codeferm.dbaccess.cache.CachedResult}.
+ * Column labels are written once per result and each value is written with a
+ * one byte type tag. Row offsets are kept in the header, so rows are decoded
+ * lazily as they are read. The encoded form can optionally be Deflate
+ * compressed.
+ * <p>
+ * Decoded rows keep column order and ignore case of keys like the maps of
+ * Spring and DBUtils.
+ * <p>
+ * Values of other {@code Serializable} types are written with Java
+ * serialization. Data that was not encoded by this process, such as a
+ * snapshot file, should be decoded with {@code restricted} set, so only
+ * classes of plain JDBC values can be deserialized.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class RowCodec {
+
+    /**
+     * Encoded data is not compressed.
+     */
+    private static final byte RAW = 0;
+    /**
+     * Encoded data is Deflate compressed.
+     */
+    private static final byte DEFLATED = 1;
+    /**
+     * UTF-8 character set.
+     */
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    /**
+     * Null value.
+     */
+    private static final byte NULL = 0;
+    /**
+     * {@code String} value.
+     */
+    private static final byte STRING = 1;
+    /**
+     * {@code Integer} value.
+     */
+    private static final byte INTEGER = 2;
+    /**
+     * {@code Long} value.
+     */
+    private static final byte LONG = 3;
+    /**
+     * {@code Short} value.
+     */
+    private static final byte SHORT = 4;
+    /**
+     * {@code Byte} value.
+     */
+    private static final byte BYTE = 5;
+    /**
+     * {@code Boolean} value.
+     */
+    private static final byte BOOLEAN = 6;
+    /**
+     * {@code Double} value.
+     */
+    private static final byte DOUBLE = 7;
+    /**
+     * {@code Float} value.
+     */
+    private static final byte FLOAT = 8;
+    /**
+     * {@code BigDecimal} value.
+     */
+    private static final byte BIGDECIMAL = 9;
+    /**
+     * {@code BigInteger} value.
+     */
+    private static final byte BIGINTEGER = 10;
+    /**
+     * {@code java.sql.Timestamp} value.
+     */
+    private static final byte TIMESTAMP = 11;
+    /**
+     * {@code java.sql.Date} value.
+     */
+    private static final byte SQLDATE = 12;
+    /**
+     * {@code java.sql.Time} value.
+     */
+    private static final byte TIME = 13;
+    /**
+     * {@code java.util.Date} value.
+     */
+    private static final byte DATE = 14;
+    /**
+     * {@code byte[]} value.
+     */
+    private static final byte BYTES = 15;
+    /**
+     * Any other {@code Serializable} value.
+     */
+    private static final byte SERIALIZED = 16;
+    /**
+     * Classes that may be deserialized from restricted data. Superclasses
+     * and array types read by these classes are included.
+     */
+    private static final Set<String> ALLOWED = Collections.unmodifiableSet(
+            new HashSet<String>(Arrays.asList(Boolean.class.getName(),
+                    Byte.class.getName(), Character.class.getName(),
+                    Double.class.getName(), Float.class.getName(),
+                    Integer.class.getName(), Long.class.getName(),
+                    Number.class.getName(), Short.class.getName(),
+                    String.class.getName(), BigDecimal.class.getName(),
+                    BigInteger.class.getName(), Date.class.getName(),
+                    java.sql.Date.class.getName(), Time.class.getName(),
+                    Timestamp.class.getName(), java.util.UUID.class.getName(),
+                    byte[].class.getName(), char[].class.getName(),
+                    int[].class.getName(), long[].class.getName())));
+
+    /**
+     * Suppress default constructor for non-instantiability.
+     */
+    private RowCodec() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Encode result.
+     *
+     * @param result Result to encode.
+     * @param compress Deflate encoded data.
+     * @return Encoded bytes.
+     */
+    public static byte[] encode(final CachedResult result,
+            final boolean compress) {
+        try {
+            final List<Map<String, Object>> rows = result.getRows();
+            // Column labels come from first row, whose keys are in result set
+            // column order for every implementation
+            final String[] columns;
+            if (rows.isEmpty()) {
+                columns = new String[0];
+            } else {
+                columns = rows.get(0).keySet().toArray(new String[0]);
+            }
+            // Encode rows first, so offsets can go in header
+            final ByteArrayOutputStream rowBytes = new ByteArrayOutputStream();
+            final DataOutputStream rowOut = new DataOutputStream(rowBytes);
+            final int[] offsets = new int[rows.size()];
+            int i = 0; //NOPMD
+            for (Map<String, Object> row : rows) {
+                offsets[i++] = rowOut.size();
+                for (String column : columns) {
+                    writeValue(rowOut, row.get(column));
+                }
+            }
+            rowOut.flush();
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+                    rowBytes.size() + 256);
+            final DataOutputStream out = new DataOutputStream(bytes);
+            writeString(out, result.getSql());
+            out.writeLong(result.getCreated());
+            final Object[] params = result.getParams();
+            // Null parameters are stored as none
+            if (params == null) {
+                out.writeInt(0);
+            } else {
+                out.writeInt(params.length);
+                for (Object param : params) {
+                    writeValue(out, param);
+                }
+            }
+            out.writeInt(columns.length);
+            for (String column : columns) {
+                writeString(out, column);
+            }
+            out.writeInt(offsets.length);
+            for (int offset : offsets) {
+                out.writeInt(offset);
+            }
+            rowBytes.writeTo(out);
+            out.flush();
+            return wrap(bytes.toByteArray(), compress);
+        } catch (IOException e) {
+            throw new DbAccessException(e);
+        }
+    }
+
+    /**
+     * Decode result encoded by this process. Rows are decoded as they are
+     * read from the returned {@code List}.
+     *
+     * @param data Encoded bytes.
+     * @return Decoded result.
+     */
+    public static CachedResult decode(final byte[] data) {
+        return decode(data, false);
+    }
+
+    /**
+     * Decode result. Rows are decoded as they are read from the returned
+     * {@code List}.
+     *
+     * @param data Encoded bytes.
+     * @param restricted Only deserialize classes of plain JDBC values, for
+     * data read from outside the process.
+     * @return Decoded result.
+     */
+    public static CachedResult decode(final byte[] data,
+            final boolean restricted) {
+        try {
+            final byte[] bytes = unwrap(data);
+            final ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+            final DataInputStream dataIn = new DataInputStream(in);
+            final String sql = readString(dataIn);
+            final long created = dataIn.readLong();
+            final Object[] params = new Object[dataIn.readInt()];
+            for (int i = 0; i < params.length; i++) {
+                params[i] = readValue(dataIn, restricted);
+            }
+            final String[] columns = new String[dataIn.readInt()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = readString(dataIn);
+            }
+            final int[] offsets = new int[dataIn.readInt()];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = dataIn.readInt();
+            }
+            // Whatever is left is row data
+            final int rowsStart = bytes.length - in.available();
+            return new CachedResult(sql, params, created, new RowList(bytes,
+                    rowsStart, offsets, columns, restricted));
+        } catch (IOException e) {
+            throw new DbAccessException(e);
+        }
+    }
+
+    /**
+     * Add compression flag and optionally Deflate data.
+     *
+     * @param bytes Encoded bytes.
+     * @param compress Deflate data.
+     * @return Flagged bytes.
+     */
+    private static byte[] wrap(final byte[] bytes, final boolean compress) {
+        byte[] data;
+        if (compress) {
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(bytes);
+                deflater.finish();
+                final ByteArrayOutputStream out = new ByteArrayOutputStream(
+                        bytes.length / 2 + 16);
+                // Flag and raw length
+                out.write(DEFLATED);
+                out.write(bytes.length >>> 24);
+                out.write(bytes.length >>> 16);
+                out.write(bytes.length >>> 8);
+                out.write(bytes.length);
+                final byte[] buffer = new byte[8192];
+                while (!deflater.finished()) {
+                    out.write(buffer, 0, deflater.deflate(buffer));
+                }
+                data = out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        } else {
+            data = new byte[bytes.length + 1];
+            data[0] = RAW;
+            System.arraycopy(bytes, 0, data, 1, bytes.length);
+        }
+        return data;
+    }
+
+    /**
+     * Remove compression flag and inflate data if needed.
+     *
+     * @param data Flagged bytes.
+     * @return Encoded bytes.
+     */
+    private static byte[] unwrap(final byte[] data) {
+        byte[] bytes;
+        if (data[0] == DEFLATED) {
+            final int length = (data[1] & 0xff) << 24 | (data[2] & 0xff) << 16
+                    | (data[3] & 0xff) << 8 | data[4] & 0xff;
+            bytes = new byte[length];
+            final Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data, 5, data.length - 5);
+                int offset = 0;
+                while (offset < length) {
+                    final int count = inflater.inflate(bytes, offset, length
+                            - offset);
+                    if (count == 0 && (inflater.finished() || inflater.
+                            needsInput())) {
+                        throw new DbAccessException("Truncated cache entry");
+                    }
+                    offset += count;
+                }
+            } catch (DataFormatException e) {
+                throw new DbAccessException(e);
+            } finally {
+                inflater.end();
+            }
+        } else {
+            bytes = new byte[data.length - 1];
+            System.arraycopy(data, 1, bytes, 0, bytes.length);
+        }
+        return bytes;
+    }
+
+    /**
+     * Write length prefixed UTF-8 string. Unlike {@code writeUTF} there is no
+     * 64K limit.
+     *
+     * @param out Output stream.
+     * @param value String to write.
+     * @throws IOException Possible exception.
+     */
+    private static void writeString(final DataOutputStream out,
+            final String value) throws IOException {
+        final byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Read length prefixed UTF-8 string.
+     *
+     * @param in Input stream.
+     * @return String read.
+     * @throws IOException Possible exception.
+     */
+    private static String readString(final DataInputStream in) throws
+            IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Write value with type tag.
+     *
+     * @param out Output stream.
+     * @param value Value to write.
+     * @throws IOException Possible exception.
+     */
+    private static void writeValue(final DataOutputStream out,
+            final Object value) throws IOException { //NOPMD, one branch per type
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Short) {
+            out.writeByte(SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(BIGDECIMAL);
+            final byte[] unscaled = ((BigDecimal) value).unscaledValue().
+                    toByteArray();
+            out.writeInt(((BigDecimal) value).scale());
+            out.writeInt(unscaled.length);
+            out.write(unscaled);
+        } else if (value instanceof BigInteger) {
+            out.writeByte(BIGINTEGER);
+            final byte[] bytes = ((BigInteger) value).toByteArray();
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } else if (value instanceof Timestamp) {
+            out.writeByte(TIMESTAMP);
+            out.writeLong(((Timestamp) value).getTime());
+            out.writeInt(((Timestamp) value).getNanos());
+        } else if (value instanceof java.sql.Date) {
+            out.writeByte(SQLDATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof Time) {
+            out.writeByte(TIME);
+            out.writeLong(((Date) value).getTime());
+        } else if (value.getClass() == Date.class) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else if (value instanceof byte[]) {
+            out.writeByte(BYTES);
+            out.writeInt(((byte[]) value).length);
+            out.write((byte[]) value);
+        } else if (value instanceof Serializable) {
+            out.writeByte(SERIALIZED);
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            final ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+            objectOut.writeObject(value);
+            objectOut.close();
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        } else {
+            throw new DbAccessException(String.format(
+                    "Cannot cache value of type %s", value.getClass().
+                    getName()));
+        }
+    }
+
+    /**
+     * Read value with type tag.
+     *
+     * @param in Input stream.
+     * @param restricted Only deserialize classes of plain JDBC values.
+     * @return Value read.
+     * @throws IOException Possible exception.
+     */
+    private static Object readValue(final DataInputStream in,
+            final boolean restricted) throws
+            IOException { //NOPMD, one branch per type
+        final byte tag = in.readByte();
+        Object value = null;
+        switch (tag) {
+            case NULL:
+                break;
+            case STRING:
+                value = readString(in);
+                break;
+            case INTEGER:
+                value = in.readInt();
+                break;
+            case LONG:
+                value = in.readLong();
+                break;
+            case SHORT:
+                value = in.readShort();
+                break;
+            case BYTE:
+                value = in.readByte();
+                break;
+            case BOOLEAN:
+                value = in.readBoolean();
+                break;
+            case DOUBLE:
+                value = in.readDouble();
+                break;
+            case FLOAT:
+                value = in.readFloat();
+                break;
+            case BIGDECIMAL:
+                final int scale = in.readInt();
+                final byte[] unscaled = new byte[in.readInt()];
+                in.readFully(unscaled);
+                value = new BigDecimal(new BigInteger(unscaled), scale);
+                break;
+            case BIGINTEGER:
+                final byte[] bigInteger = new byte[in.readInt()];
+                in.readFully(bigInteger);
+                value = new BigInteger(bigInteger);
+                break;
+            case TIMESTAMP:
+                final Timestamp timestamp = new Timestamp(in.readLong());
+                timestamp.setNanos(in.readInt());
+                value = timestamp;
+                break;
+            case SQLDATE:
+                value = new java.sql.Date(in.readLong());
+                break;
+            case TIME:
+                value = new Time(in.readLong());
+                break;
+            case DATE:
+                value = new Date(in.readLong());
+                break;
+            case BYTES:
+                final byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                value = bytes;
+                break;
+            case SERIALIZED:
+                final byte[] serialized = new byte[in.readInt()];
+                in.readFully(serialized);
+                final ObjectInputStream objectIn;
+                if (restricted) {
+                    objectIn = new RestrictedObjectInputStream(
+                            new ByteArrayInputStream(serialized));
+                } else {
+                    objectIn = new ObjectInputStream(new ByteArrayInputStream(
+                            serialized));
+                }
+                try {
+                    value = objectIn.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw new DbAccessException(e);
+                } finally {
+                    objectIn.close();
+                }
+                break;
+            default:
+                throw new DbAccessException(String.format(
+                        "Unknown value tag %d", tag));
+        }
+        return value;
+    }
+
+    /**
+     * Read only {@code List} that decodes each row the first time it is read.
+     */
+    private static final class RowList extends AbstractList<Map<String, Object>> {
+
+        /**
+         * Encoded bytes.
+         */
+        private final byte[] bytes;
+        /**
+         * Start of row data.
+         */
+        private final int rowsStart;
+        /**
+         * Row offsets relative to start of row data.
+         */
+        private final int[] offsets;
+        /**
+         * Column labels.
+         */
+        private final String[] columns;
+        /**
+         * Rows decoded so far.
+         */
+        private final Map<String, Object>[] rows;
+        /**
+         * Only deserialize classes of plain JDBC values.
+         */
+        private final boolean restricted;
+
+        /**
+         * Construct list over encoded rows.
+         *
+         * @param bytes Encoded bytes.
+         * @param rowsStart Start of row data.
+         * @param offsets Row offsets relative to start of row data.
+         * @param columns Column labels.
+         * @param restricted Only deserialize classes of plain JDBC values.
+         */
+        RowList(final byte[] bytes, final int rowsStart, final int[] offsets,
+                final String[] columns, final boolean restricted) {
+            super();
+            this.bytes = bytes;
+            this.rowsStart = rowsStart;
+            this.offsets = offsets;
+            this.columns = columns;
+            this.rows = new Map[offsets.length];
+            this.restricted = restricted;
+        }
+
+        /**
+         * Get row, decoding it on first access.
+         *
+         * @param index Row index.
+         * @return Field name/value pairs.
+         */
+        @Override
+        public Map<String, Object> get(final int index) {
+            Map<String, Object> row = rows[index];
+            if (row == null) {
+                final DataInputStream in = new DataInputStream(
+                        new ByteArrayInputStream(bytes, rowsStart
+                                + offsets[index], bytes.length - rowsStart
+                                - offsets[index]));
+                row = new CaseInsensitiveRow(columns.length);
+                try {
+                    for (String column : columns) {
+                        row.put(column, readValue(in, restricted));
+                    }
+                } catch (IOException e) {
+                    throw new DbAccessException(e);
+                }
+                rows[index] = row;
+            }
+            return row;
+        }
+
+        /**
+         * Get number of rows.
+         *
+         * @return Number of rows.
+         */
+        @Override
+        public int size() {
+            return offsets.length;
+        }
+    }
+
+    /**
+     * {@code ObjectInputStream} that only resolves classes of plain JDBC
+     * values, so data from outside the process cannot create arbitrary
+     * objects.
+     */
+    private static final class RestrictedObjectInputStream extends
+            ObjectInputStream {
+
+        /**
+         * Construct stream.
+         *
+         * @param in Serialized bytes.
+         * @throws IOException Possible exception.
+         */
+        RestrictedObjectInputStream(final InputStream in) throws IOException {
+            super(in);
+        }
+
+        /**
+         * Resolve class if it is allowed.
+         *
+         * @param desc Class descriptor.
+         * @return Class.
+         * @throws IOException If class is not allowed.
+         * @throws ClassNotFoundException Possible exception.
+         */
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws
+                IOException, ClassNotFoundException {
+            if (!ALLOWED.contains(desc.getName())) {
+                throw new InvalidClassException(desc.getName(),
+                        "Class not allowed in restricted data");
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Query result caching.
+ */
+package com.codeferm.dbaccess.cache;
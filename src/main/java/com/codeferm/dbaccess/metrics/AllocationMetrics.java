@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Diagnostic {@link com.codeferm.dbaccess.metrics.QueryMetrics} that measures
+ * bytes allocated by the calling thread during each statement using
+ * {@code com.sun.management.ThreadMXBean.getThreadAllocatedBytes}. Bytes are
+ * aggregated per {@link com.codeferm.dbaccess.metrics.SqlFingerprint} and
+ * per implementation operation, for example
+ * {@code DbJdbcTemplate.selectBeanList} or
+ * {@code DbQueryRunnerDs.selectBeanList}. Bytes are those of the whole
+ * statement, so they include the driver as well as the row mapper. Comparing
+ * implementations on the same statement and dividing by rows shows which
+ * queries and mappers cause the most GC pressure.
+ * <p>
+ * Reading the counter costs about as much as a short system call, so this is
+ * meant for load tests and diagnosis rather than to stay on. On a JVM without
+ * thread allocation accounting nothing is recorded.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class AllocationMetrics implements QueryMetrics {
+
+    /**
+     * Logger.
+     */
+    //CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger log = LoggerFactory.getLogger(//NOPMD
+            AllocationMetrics.class);
+    //CHECKSTYLE:ON ConstantName
+    /**
+     * Thread MXBean or null if allocation accounting is not supported.
+     */
+    private static final com.sun.management.ThreadMXBean THREAD_BEAN
+            = threadBean();
+    /**
+     * Maximum number of SQL keys tracked.
+     */
+    private final int maxKeys;
+    /**
+     * Statistics by SQL key.
+     */
+    private final ConcurrentMap<String, Stats> statements
+            = new ConcurrentHashMap<String, Stats>();
+    /**
+     * Statistics by implementation operation.
+     */
+    private final ConcurrentMap<String, Stats> operations
+            = new ConcurrentHashMap<String, Stats>();
+    /**
+     * Allocated bytes at start of each open event on this thread.
+     */
+    private final ThreadLocal<Starts> starts = new ThreadLocal<Starts>() {
+
+        @Override
+        protected Starts initialValue() {
+            return new Starts();
+        }
+    };
+
+    /**
+     * Construct with default maximum number of SQL keys.
+     */
+    public AllocationMetrics() {
+        this(StatsCollector.DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * Construct and enable thread allocation accounting if needed.
+     *
+     * @param maxKeys Maximum number of SQL keys tracked.
+     */
+    public AllocationMetrics(final int maxKeys) {
+        this.maxKeys = maxKeys;
+        if (THREAD_BEAN == null) {
+            log.warn("Thread allocation accounting not supported");
+        } else if (!THREAD_BEAN.isThreadAllocatedMemoryEnabled()) {
+            THREAD_BEAN.setThreadAllocatedMemoryEnabled(true);
+        }
+    }
+
+    /**
+     * Get HotSpot thread MXBean if it supports allocation accounting.
+     *
+     * @return Thread MXBean or null.
+     */
+    private static com.sun.management.ThreadMXBean threadBean() {
+        com.sun.management.ThreadMXBean bean = null;
+        try {
+            final java.lang.management.ThreadMXBean threadMXBean
+                    = ManagementFactory.getThreadMXBean();
+            if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+                bean = (com.sun.management.ThreadMXBean) threadMXBean;
+                if (!bean.isThreadAllocatedMemorySupported()) {
+                    bean = null;
+                }
+            }
+        } catch (LinkageError e) {
+            bean = null;
+        }
+        return bean;
+    }
+
+    /**
+     * Is thread allocation accounting supported by this JVM?
+     *
+     * @return True if supported.
+     */
+    public static boolean isSupported() {
+        return THREAD_BEAN != null;
+    }
+
+    /**
+     * Get bytes allocated by current thread.
+     *
+     * @return Bytes or -1 if not supported.
+     */
+    static long allocatedBytes() {
+        long bytes = -1;
+        if (THREAD_BEAN != null) {
+            bytes = THREAD_BEAN.getThreadAllocatedBytes(Thread.currentThread().
+                    getId());
+        }
+        return bytes;
+    }
+
+    /**
+     * Save allocated bytes at start.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void start(final QueryEvent event) {
+        starts.get().push(event, allocatedBytes());
+    }
+
+    /**
+     * Record bytes allocated since start.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void end(final QueryEvent event) {
+        final long start = starts.get().pop(event);
+        if (start >= 0) {
+            final long bytes = Math.max(0, allocatedBytes() - start);
+            stats(statements, event.getFingerprint().getSql(), true).record(
+                    bytes, event.getRows());
+            stats(operations, operation(event), false).record(bytes, event.
+                    getRows());
+        }
+    }
+
+    /**
+     * Get implementation operation of event.
+     *
+     * @param event Event.
+     * @return Implementation and operation.
+     */
+    static String operation(final QueryEvent event) {
+        return String.format("%s.%s", event.getSource().getSimpleName(),
+                event.getOperation().getLabel());
+    }
+
+    /**
+     * Get snapshot for SQL statement. SQL is normalized, so any statement of
+     * the same shape finds the same snapshot.
+     *
+     * @param sql SQL statement or
+     * {@link com.codeferm.dbaccess.metrics.StatsCollector#OTHER}.
+     * @return Snapshot or null if not recorded.
+     */
+    public AllocationStats getStats(final String sql) {
+        return snapshot(statements, StatsCollector.key(sql));
+    }
+
+    /**
+     * Get snapshots for all SQL keys ordered by bytes descending.
+     *
+     * @return Snapshots.
+     */
+    public List<AllocationStats> getStats() {
+        return snapshots(statements);
+    }
+
+    /**
+     * Get snapshot for implementation operation. Bytes are per statement, not
+     * just mapping.
+     *
+     * @param operation Implementation and operation, for example
+     * {@code DbJdbcTemplate.selectBeanList}.
+     * @return Snapshot or null if operation not recorded.
+     */
+    public AllocationStats getOperationStats(final String operation) {
+        return snapshot(operations, operation);
+    }
+
+    /**
+     * Get snapshots for all implementation operations ordered by bytes
+     * descending.
+     *
+     * @return Snapshots.
+     */
+    public List<AllocationStats> getOperationStats() {
+        return snapshots(operations);
+    }
+
+    /**
+     * Remove all statistics.
+     */
+    public void reset() {
+        statements.clear();
+        operations.clear();
+    }
+
+    /**
+     * Get or create statistics for key.
+     *
+     * @param map Statistics by key.
+     * @param key Key.
+     * @param bounded Count keys over the limit under
+     * {@link com.codeferm.dbaccess.metrics.StatsCollector#OTHER}.
+     * @return Statistics.
+     */
+    private Stats stats(final ConcurrentMap<String, Stats> map,
+            final String key, final boolean bounded) {
+        Stats entry = map.get(key);
+        if (entry == null) {
+            String k = key;
+            if (bounded && map.size() >= maxKeys) {
+                k = StatsCollector.OTHER;
+            }
+            entry = new Stats();
+            final Stats existing = map.putIfAbsent(k, entry);
+            if (existing != null) {
+                entry = existing;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Get snapshot for key.
+     *
+     * @param map Statistics by key.
+     * @param key Key.
+     * @return Snapshot or null.
+     */
+    private static AllocationStats snapshot(
+            final ConcurrentMap<String, Stats> map, final String key) {
+        final Stats entry = map.get(key);
+        AllocationStats allocationStats = null;
+        if (entry != null) {
+            allocationStats = entry.snapshot(key);
+        }
+        return allocationStats;
+    }
+
+    /**
+     * Get snapshots ordered by bytes descending.
+     *
+     * @param map Statistics by key.
+     * @return Snapshots.
+     */
+    private static List<AllocationStats> snapshots(
+            final ConcurrentMap<String, Stats> map) {
+        final List<AllocationStats> list = new ArrayList<AllocationStats>(map.
+                size());
+        for (Map.Entry<String, Stats> entry : map.entrySet()) {
+            list.add(entry.getValue().snapshot(entry.getKey()));
+        }
+        Collections.sort(list, new Comparator<AllocationStats>() {
+
+            @Override
+            public int compare(final AllocationStats o1,
+                    final AllocationStats o2) {
+                return Long.compare(o2.getBytes(), o1.getBytes());
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Allocated bytes at start of open events, nested when a statement runs
+     * inside another's listener. Each start is kept with its event, so an end
+     * whose start was never recorded, for example because another listener
+     * threw first, does not take the start of an outer event.
+     */
+    private static final class Starts {
+
+        /**
+         * Events by depth.
+         */
+        private QueryEvent[] events = new QueryEvent[4];
+        /**
+         * Allocated bytes by depth.
+         */
+        private long[] bytes = new long[4];
+        /**
+         * Open events.
+         */
+        private int depth;
+
+        /**
+         * Push start.
+         *
+         * @param event Event started.
+         * @param value Allocated bytes.
+         */
+        void push(final QueryEvent event, final long value) {
+            if (depth == bytes.length) {
+                events = Arrays.copyOf(events, depth * 2);
+                bytes = Arrays.copyOf(bytes, depth * 2);
+            }
+            events[depth] = event;
+            bytes[depth++] = value;
+        }
+
+        /**
+         * Pop start of event. Starts above it belong to events that never
+         * ended and are dropped.
+         *
+         * @param event Event ended.
+         * @return Allocated bytes or -1 if start was not recorded.
+         */
+        long pop(final QueryEvent event) {
+            long value = -1;
+            int i = depth - 1;
+            while (i >= 0 && events[i] != event) {
+                i--;
+            }
+            if (i >= 0) {
+                value = bytes[i];
+                while (depth > i) {
+                    events[--depth] = null;
+                }
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Statistics for one key.
+     */
+    private static final class Stats {
+
+        /**
+         * Executions.
+         */
+        private final AtomicLong count = new AtomicLong();
+        /**
+         * Rows returned or updated.
+         */
+        private final AtomicLong rows = new AtomicLong();
+        /**
+         * Bytes allocated.
+         */
+        private final AtomicLong bytes = new AtomicLong();
+        /**
+         * Most bytes allocated by one execution.
+         */
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Record execution.
+         *
+         * @param value Bytes allocated.
+         * @param rowCount Rows returned or updated.
+         */
+        void record(final long value, final int rowCount) {
+            count.incrementAndGet();
+            rows.addAndGet(rowCount);
+            bytes.addAndGet(value);
+            long current = max.get();
+            while (value > current && !max.compareAndSet(current, value)) {
+                current = max.get();
+            }
+        }
+
+        /**
+         * Create snapshot.
+         *
+         * @param key Key.
+         * @return Snapshot.
+         */
+        AllocationStats snapshot(final String key) {
+            return new AllocationStats(key, count.get(), rows.get(), bytes.
+                    get(), max.get());
+        }
+    }
+}
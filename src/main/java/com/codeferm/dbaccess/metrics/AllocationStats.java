@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+/**
+ * Immutable snapshot of bytes allocated for one key collected by
+ * {@link com.codeferm.dbaccess.metrics.AllocationMetrics}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class AllocationStats {
+
+    /**
+     * SQL key or implementation operation.
+     */
+    private final String key;
+    /**
+     * Number of executions.
+     */
+    private final long count;
+    /**
+     * Rows returned or updated.
+     */
+    private final long rows;
+    /**
+     * Total bytes allocated.
+     */
+    private final long bytes;
+    /**
+     * Most bytes allocated by one execution.
+     */
+    private final long max;
+
+    /**
+     * Construct snapshot.
+     *
+     * @param key SQL key or implementation operation.
+     * @param count Number of executions.
+     * @param rows Rows returned or updated.
+     * @param bytes Total bytes allocated.
+     * @param max Most bytes allocated by one execution.
+     */
+    public AllocationStats(final String key, final long count, final long rows,
+            final long bytes, final long max) {
+        this.key = key;
+        this.count = count;
+        this.rows = rows;
+        this.bytes = bytes;
+        this.max = max;
+    }
+
+    /**
+     * Get key.
+     *
+     * @return SQL key or implementation operation.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Get number of executions.
+     *
+     * @return Count.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get rows returned or updated.
+     *
+     * @return Rows.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Get total bytes allocated.
+     *
+     * @return Bytes.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Get most bytes allocated by one execution.
+     *
+     * @return Bytes.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Get mean bytes allocated per execution.
+     *
+     * @return Bytes or 0 if no executions.
+     */
+    public long getBytesPerCall() {
+        long mean = 0;
+        if (count > 0) {
+            mean = bytes / count;
+        }
+        return mean;
+    }
+
+    /**
+     * Get mean bytes allocated per row.
+     *
+     * @return Bytes or 0 if no rows.
+     */
+    public long getBytesPerRow() {
+        long mean = 0;
+        if (rows > 0) {
+            mean = bytes / rows;
+        }
+        return mean;
+    }
+
+    /**
+     * Summary.
+     *
+     * @return Summary.
+     */
+    @Override
+    public String toString() {
+        return String.format("count=%d, rows=%d, bytes=%d, perCall=%d, "
+                + "perRow=%d, max=%d, key=%s", count, rows, bytes,
+                getBytesPerCall(), getBytesPerRow(), max, key);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import com.codeferm.dbaccess.DbColumns;
+
+/**
+ * Statistics of the column metadata cache in
+ * {@link com.codeferm.dbaccess.DbColumns}. The cache is shared by every
+ * {@link com.codeferm.dbaccess.DbAccess} instance in the class loader, so it
+ * is published once as {@code type=ColumnCache} instead of on each
+ * {@link com.codeferm.dbaccess.metrics.DbAccessStats} MBean.
+ *
+ * @see com.codeferm.dbaccess.metrics.DbAccessMBeans
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class ColumnCacheStats implements ColumnCacheStatsMBean {
+
+    /**
+     * Single instance.
+     */
+    private static final ColumnCacheStats INSTANCE = new ColumnCacheStats();
+
+    /**
+     * Use {@link #getInstance()}.
+     */
+    private ColumnCacheStats() {
+    }
+
+    /**
+     * Get single instance.
+     *
+     * @return Column cache statistics.
+     */
+    public static ColumnCacheStats getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public long getHitCount() {
+        return DbColumns.getHits();
+    }
+
+    @Override
+    public long getMissCount() {
+        return DbColumns.getMisses();
+    }
+
+    @Override
+    public double getHitRate() {
+        final long hits = DbColumns.getHits();
+        final long total = hits + DbColumns.getMisses();
+        double rate = 0;
+        if (total > 0) {
+            rate = (double) hits / total;
+        }
+        return rate;
+    }
+
+    @Override
+    public int getSize() {
+        return DbColumns.getCacheSize();
+    }
+
+    @Override
+    public void reset() {
+        DbColumns.resetStats();
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+/**
+ * JMX management interface of
+ * {@link com.codeferm.dbaccess.metrics.ColumnCacheStats}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public interface ColumnCacheStatsMBean {
+
+    /**
+     * Get number of cache hits.
+     *
+     * @return Hits.
+     */
+    long getHitCount();
+
+    /**
+     * Get number of cache misses.
+     *
+     * @return Misses.
+     */
+    long getMissCount();
+
+    /**
+     * Get hit rate.
+     *
+     * @return Hit rate from 0 to 1.
+     */
+    double getHitRate();
+
+    /**
+     * Get number of cached statements.
+     *
+     * @return Cached statements.
+     */
+    int getSize();
+
+    /**
+     * Reset hit and miss counters. Cached statements are kept.
+     */
+    void reset();
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pass events to several {@link com.codeferm.dbaccess.metrics.QueryMetrics}
+ * in the order they were added. An exception from one does not stop the
+ * others.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class CompositeMetrics implements QueryMetrics {
+
+    /**
+     * Logger.
+     */
+    //CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger log = LoggerFactory.getLogger(//NOPMD
+            CompositeMetrics.class);
+    //CHECKSTYLE:ON ConstantName
+    /**
+     * Metrics to call.
+     */
+    private final List<QueryMetrics> metrics;
+
+    /**
+     * Construct composite.
+     *
+     * @param metrics Metrics to call.
+     */
+    public CompositeMetrics(final QueryMetrics... metrics) {
+        this.metrics = new CopyOnWriteArrayList<QueryMetrics>(Arrays.asList(
+                metrics));
+    }
+
+    /**
+     * Add metrics.
+     *
+     * @param queryMetrics Metrics to add.
+     */
+    public void add(final QueryMetrics queryMetrics) {
+        metrics.add(queryMetrics);
+    }
+
+    /**
+     * Remove metrics.
+     *
+     * @param queryMetrics Metrics to remove.
+     */
+    public void remove(final QueryMetrics queryMetrics) {
+        metrics.remove(queryMetrics);
+    }
+
+    /**
+     * Call start on each metrics.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void start(final QueryEvent event) {
+        for (QueryMetrics queryMetrics : metrics) {
+            try {
+                queryMetrics.start(event);
+            } catch (RuntimeException e) {
+                log.warn(String.format("start: %s", e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Call end on each metrics.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void end(final QueryEvent event) {
+        for (QueryMetrics queryMetrics : metrics) {
+            try {
+                queryMetrics.end(event);
+            } catch (RuntimeException e) {
+                log.warn(String.format("end: %s", e.getMessage()));
+            }
+        }
+    }
+}
@@ -0,0 +1,464 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sql.DataSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connection acquisition and hold time of a {@code DataSource}. Wrap the
+ * {@code DataSource} passed to {@link com.codeferm.dbaccess.DbJdbcDs},
+ * {@link com.codeferm.dbaccess.DbQueryRunnerDs} or the {@code JdbcTemplate} of
+ * {@link com.codeferm.dbaccess.DbJdbcTemplate} with {@link #wrap(DataSource)}.
+ * Time in {@code getConnection} and time until {@code close} are recorded
+ * overall and by the {@link com.codeferm.dbaccess.metrics.QueryOperation} of
+ * the current {@link com.codeferm.dbaccess.metrics.QueryEvent}, along with the
+ * number of borrowed connections.
+ * <p>
+ * Pool exhaustion is reported separately from slow queries: an acquire slower
+ * than the exhaustion threshold, or one that fails with
+ * {@code SQLTimeoutException} or {@code SQLTransientConnectionException} as
+ * pools do when no connection becomes available, is counted as exhausted and
+ * logged at WARN at most once per second.
+ *
+ * @see com.codeferm.dbaccess.metrics.DbAccessMBeans
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class ConnectionStats implements ConnectionStatsMBean {
+
+    /**
+     * Logger.
+     */
+    //CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger log = LoggerFactory.getLogger(//NOPMD
+            ConnectionStats.class);
+    //CHECKSTYLE:ON ConstantName
+    /**
+     * Default acquire time treated as exhaustion in milliseconds.
+     */
+    public static final long DEFAULT_EXHAUSTION_THRESHOLD = 1000;
+    /**
+     * Minimum time between exhaustion warnings in milliseconds.
+     */
+    private static final long WARN_INTERVAL = 1000;
+    /**
+     * Index of connections acquired outside of a statement.
+     */
+    private static final int NONE = QueryOperation.values().length;
+    /**
+     * Acquire time in nanoseconds.
+     */
+    private final LatencyHistogram acquire = new LatencyHistogram();
+    /**
+     * Hold time in nanoseconds.
+     */
+    private final LatencyHistogram hold = new LatencyHistogram();
+    /**
+     * Acquire time by operation ordinal, last is outside of a statement.
+     */
+    private final LatencyHistogram[] acquireByOperation
+            = histograms(NONE + 1);
+    /**
+     * Hold time by operation ordinal, last is outside of a statement.
+     */
+    private final LatencyHistogram[] holdByOperation = histograms(NONE + 1);
+    /**
+     * Failed acquires.
+     */
+    private final AtomicLong failures = new AtomicLong();
+    /**
+     * Acquires that looked like exhaustion.
+     */
+    private final AtomicLong exhausted = new AtomicLong();
+    /**
+     * Time of last exhaustion warning in milliseconds.
+     */
+    private final AtomicLong lastWarn = new AtomicLong();
+    /**
+     * Connections borrowed.
+     */
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * Most connections borrowed at once.
+     */
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    /**
+     * Acquire time treated as exhaustion in nanoseconds.
+     */
+    private volatile long exhaustionThreshold = TimeUnit.MILLISECONDS.
+            toNanos(DEFAULT_EXHAUSTION_THRESHOLD);
+
+    /**
+     * Create histograms.
+     *
+     * @param count Number of histograms.
+     * @return Histograms.
+     */
+    private static LatencyHistogram[] histograms(final int count) {
+        final LatencyHistogram[] histograms = new LatencyHistogram[count];
+        for (int i = 0; i < count; i++) {
+            histograms[i] = new LatencyHistogram();
+        }
+        return histograms;
+    }
+
+    /**
+     * Get index of operation of current statement.
+     *
+     * @return Operation ordinal or {@link #NONE}.
+     */
+    private static int operation() {
+        final QueryEvent event = QueryEvent.current();
+        int index = NONE;
+        if (event != null) {
+            index = event.getOperation().ordinal();
+        }
+        return index;
+    }
+
+    /**
+     * Proxy {@code DataSource} so connections are measured.
+     *
+     * @param dataSource DataSource to measure.
+     * @return Measured DataSource.
+     */
+    public DataSource wrap(final DataSource dataSource) {
+        return (DataSource) Proxy.newProxyInstance(ConnectionStats.class.
+                getClassLoader(), new Class[]{DataSource.class},
+                new DataSourceHandler(dataSource));
+    }
+
+    /**
+     * Record successful acquire.
+     *
+     * @param nanos Acquire time.
+     * @param operation Operation index.
+     */
+    void acquired(final long nanos, final int operation) {
+        acquire.record(nanos);
+        acquireByOperation[operation].record(nanos);
+        final int borrowed = inFlight.incrementAndGet();
+        int current = maxInFlight.get();
+        while (borrowed > current && !maxInFlight.compareAndSet(current,
+                borrowed)) {
+            current = maxInFlight.get();
+        }
+        if (nanos >= exhaustionThreshold) {
+            exhausted(String.format("Connection acquire took %d ms",
+                    TimeUnit.NANOSECONDS.toMillis(nanos)));
+        }
+    }
+
+    /**
+     * Record failed acquire.
+     *
+     * @param e Exception thrown by {@code getConnection}.
+     */
+    void failed(final Throwable e) {
+        failures.incrementAndGet();
+        if (e instanceof SQLTimeoutException
+                || e instanceof SQLTransientConnectionException) {
+            exhausted(String.format("Connection acquire timed out: %s", e.
+                    getMessage()));
+        }
+    }
+
+    /**
+     * Record connection returned.
+     *
+     * @param nanos Hold time.
+     * @param operation Operation index at acquire.
+     */
+    void released(final long nanos, final int operation) {
+        inFlight.decrementAndGet();
+        hold.record(nanos);
+        holdByOperation[operation].record(nanos);
+    }
+
+    /**
+     * Count exhaustion and warn if not warned recently.
+     *
+     * @param message Warning.
+     */
+    private void exhausted(final String message) {
+        exhausted.incrementAndGet();
+        final long now = System.currentTimeMillis();
+        final long last = lastWarn.get();
+        if (now - last >= WARN_INTERVAL && lastWarn.compareAndSet(last, now)) {
+            log.warn(String.format("Pool exhausted? %s, in flight=%d, "
+                    + "exhausted=%d", message, inFlight.get(), exhausted.
+                    get()));
+        }
+    }
+
+    @Override
+    public long getAcquireCount() {
+        return acquire.getCount();
+    }
+
+    @Override
+    public long getAcquireFailures() {
+        return failures.get();
+    }
+
+    @Override
+    public long getAcquireMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros((long) acquire.getMean());
+    }
+
+    @Override
+    public long getAcquireP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(acquire.getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getAcquireMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(acquire.getMax());
+    }
+
+    @Override
+    public long getHoldMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros((long) hold.getMean());
+    }
+
+    @Override
+    public long getHoldP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(hold.getValueAtPercentile(99));
+    }
+
+    @Override
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    @Override
+    public long getExhaustedCount() {
+        return exhausted.get();
+    }
+
+    @Override
+    public long getExhaustionThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(exhaustionThreshold);
+    }
+
+    @Override
+    public void setExhaustionThresholdMillis(
+            final long exhaustionThresholdMillis) {
+        this.exhaustionThreshold = TimeUnit.MILLISECONDS.toNanos(
+                exhaustionThresholdMillis);
+    }
+
+    /**
+     * Get acquire time histogram of operation.
+     *
+     * @param operation Operation or null for connections acquired outside of
+     * a statement.
+     * @return Histogram in nanoseconds.
+     */
+    public LatencyHistogram getAcquire(final QueryOperation operation) {
+        return acquireByOperation[index(operation)];
+    }
+
+    /**
+     * Get hold time histogram of operation.
+     *
+     * @param operation Operation or null for connections acquired outside of
+     * a statement.
+     * @return Histogram in nanoseconds.
+     */
+    public LatencyHistogram getHold(final QueryOperation operation) {
+        return holdByOperation[index(operation)];
+    }
+
+    /**
+     * Get index of operation.
+     *
+     * @param operation Operation or null.
+     * @return Index.
+     */
+    private static int index(final QueryOperation operation) {
+        int index = NONE;
+        if (operation != null) {
+            index = operation.ordinal();
+        }
+        return index;
+    }
+
+    @Override
+    public String[] getOperations() {
+        final List<String> list = new ArrayList<String>();
+        for (int i = 0; i <= NONE; i++) {
+            if (acquireByOperation[i].getCount() > 0) {
+                String label = "none";
+                if (i < NONE) {
+                    label = QueryOperation.values()[i].getLabel();
+                }
+                list.add(String.format("%s: count=%d, acquireMean=%d, "
+                        + "acquireP99=%d, holdMean=%d, holdP99=%d", label,
+                        acquireByOperation[i].getCount(), TimeUnit.NANOSECONDS.
+                        toMicros((long) acquireByOperation[i].getMean()),
+                        TimeUnit.NANOSECONDS.toMicros(acquireByOperation[i].
+                                getValueAtPercentile(99)),
+                        TimeUnit.NANOSECONDS.toMicros((long) holdByOperation[i].
+                                getMean()), TimeUnit.NANOSECONDS.toMicros(
+                        holdByOperation[i].getValueAtPercentile(99))));
+            }
+        }
+        return list.toArray(new String[list.size()]);
+    }
+
+    /**
+     * Reset statistics. Connections currently borrowed are still counted.
+     */
+    @Override
+    public void reset() {
+        acquire.reset();
+        hold.reset();
+        for (int i = 0; i <= NONE; i++) {
+            acquireByOperation[i].reset();
+            holdByOperation[i].reset();
+        }
+        failures.set(0);
+        exhausted.set(0);
+        maxInFlight.set(inFlight.get());
+    }
+
+    /**
+     * Unwrap exception of reflective call.
+     *
+     * @param target Object called.
+     * @param method Method.
+     * @param args Arguments.
+     * @return Result.
+     * @throws Throwable Exception thrown by method.
+     */
+    private static Object call(final Object target, final Method method,
+            final Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Times {@code getConnection} and proxies connections returned.
+     */
+    private final class DataSourceHandler implements InvocationHandler {
+
+        /**
+         * DataSource measured.
+         */
+        private final DataSource target;
+
+        /**
+         * Construct handler.
+         *
+         * @param target DataSource measured.
+         */
+        DataSourceHandler(final DataSource target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method,
+                final Object[] args) throws Throwable {
+            Object result;
+            if ("getConnection".equals(method.getName())) {
+                final int operation = operation();
+                final long start = System.nanoTime();
+                try {
+                    result = call(target, method, args);
+                } catch (Throwable e) { //NOPMD
+                    failed(e);
+                    throw e;
+                }
+                final long now = System.nanoTime();
+                acquired(now - start, operation);
+                result = Proxy.newProxyInstance(ConnectionStats.class.
+                        getClassLoader(), new Class[]{Connection.class},
+                        new ConnectionHandler((Connection) result, now,
+                                operation));
+            } else {
+                result = call(target, method, args);
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Records hold time when connection is closed.
+     */
+    private final class ConnectionHandler implements InvocationHandler {
+
+        /**
+         * Connection measured.
+         */
+        private final Connection target;
+        /**
+         * Acquire time in nanoseconds.
+         */
+        private final long acquired;
+        /**
+         * Operation index at acquire.
+         */
+        private final int operation;
+        /**
+         * Set when closed, so hold time is only recorded once.
+         */
+        private boolean closed;
+
+        /**
+         * Construct handler.
+         *
+         * @param target Connection measured.
+         * @param acquired Acquire time in nanoseconds.
+         * @param operation Operation index at acquire.
+         */
+        ConnectionHandler(final Connection target, final long acquired,
+                final int operation) {
+            this.target = target;
+            this.acquired = acquired;
+            this.operation = operation;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method,
+                final Object[] args) throws Throwable {
+            if ("close".equals(method.getName())) {
+                synchronized (this) {
+                    if (!closed) {
+                        closed = true;
+                        released(System.nanoTime() - acquired, operation);
+                    }
+                }
+            }
+            return call(target, method, args);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+/**
+ * JMX management interface of
+ * {@link com.codeferm.dbaccess.metrics.ConnectionStats}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public interface ConnectionStatsMBean {
+
+    /**
+     * Get number of connections acquired.
+     *
+     * @return Connections acquired.
+     */
+    long getAcquireCount();
+
+    /**
+     * Get number of {@code getConnection} calls that threw.
+     *
+     * @return Failures.
+     */
+    long getAcquireFailures();
+
+    /**
+     * Get mean time waiting for a connection.
+     *
+     * @return Microseconds.
+     */
+    long getAcquireMeanMicros();
+
+    /**
+     * Get 99th percentile time waiting for a connection.
+     *
+     * @return Microseconds.
+     */
+    long getAcquireP99Micros();
+
+    /**
+     * Get longest time waiting for a connection.
+     *
+     * @return Microseconds.
+     */
+    long getAcquireMaxMicros();
+
+    /**
+     * Get mean time connections were held.
+     *
+     * @return Microseconds.
+     */
+    long getHoldMeanMicros();
+
+    /**
+     * Get 99th percentile time connections were held.
+     *
+     * @return Microseconds.
+     */
+    long getHoldP99Micros();
+
+    /**
+     * Get number of connections currently borrowed.
+     *
+     * @return Borrowers.
+     */
+    int getInFlight();
+
+    /**
+     * Get most connections borrowed at once.
+     *
+     * @return Borrowers.
+     */
+    int getMaxInFlight();
+
+    /**
+     * Get number of acquires that looked like pool exhaustion, either slower
+     * than the threshold or timed out.
+     *
+     * @return Exhausted acquires.
+     */
+    long getExhaustedCount();
+
+    /**
+     * Get acquire time treated as pool exhaustion.
+     *
+     * @return Milliseconds.
+     */
+    long getExhaustionThresholdMillis();
+
+    /**
+     * Set acquire time treated as pool exhaustion.
+     *
+     * @param exhaustionThresholdMillis Milliseconds.
+     */
+    void setExhaustionThresholdMillis(long exhaustionThresholdMillis);
+
+    /**
+     * Get acquire and hold times by operation.
+     *
+     * @return Operation summaries.
+     */
+    String[] getOperations();
+
+    /**
+     * Reset statistics.
+     */
+    void reset();
+}
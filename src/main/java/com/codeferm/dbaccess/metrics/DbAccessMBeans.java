@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import com.codeferm.dbaccess.DbAccess;
+import com.codeferm.dbaccess.DbAccessException;
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Register {@link com.codeferm.dbaccess.DbAccess} statistics with the platform
+ * {@code MBeanServer}. Each registered instance gets a
+ * {@link com.codeferm.dbaccess.metrics.DbAccessStats} MBean named
+ * {@code com.codeferm.dbaccess:type=DbAccess,name=<name>}. The aggregate of all
+ * instances is {@code name=aggregate}, transaction counts are
+ * {@code type=Transaction} and the column metadata cache shared by all
+ * instances is {@code type=ColumnCache}. These are registered with the first
+ * instance.
+ * {@link com.codeferm.dbaccess.metrics.ConnectionStats} of a
+ * {@code DataSource} are registered as {@code type=Connection}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class DbAccessMBeans {
+
+    /**
+     * JMX domain.
+     */
+    public static final String DOMAIN = "com.codeferm.dbaccess";
+    /**
+     * Name of aggregate MBean.
+     */
+    public static final String AGGREGATE = "aggregate";
+    /**
+     * Aggregate of all registered instances.
+     */
+    private static final DbAccessStats AGGREGATE_STATS = new DbAccessStats();
+
+    /**
+     * Static methods only.
+     */
+    private DbAccessMBeans() {
+    }
+
+    /**
+     * Get aggregate statistics.
+     *
+     * @return Aggregate statistics.
+     */
+    public static DbAccessStats getAggregate() {
+        return AGGREGATE_STATS;
+    }
+
+    /**
+     * Get {@code DbAccess} MBean name.
+     *
+     * @param name Instance name.
+     * @return Object name.
+     */
+    public static ObjectName objectName(final String name) {
+        try {
+            return new ObjectName(String.format("%s:type=DbAccess,name=%s",
+                    DOMAIN, ObjectName.quote(name)));
+        } catch (JMException e) {
+            throw new DbAccessException(e);
+        }
+    }
+
+    /**
+     * Register statistics MBean for {@code DbAccess}. Existing metrics on the
+     * instance are kept and called first.
+     *
+     * @param dbAccess Instance to measure.
+     * @param name Instance name, unique per JVM.
+     * @return Statistics registered.
+     */
+    public static synchronized DbAccessStats register(final DbAccess dbAccess,
+            final String name) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final DbAccessStats stats = new DbAccessStats(AGGREGATE_STATS);
+        try {
+            final ObjectName aggregate = objectName(AGGREGATE);
+            if (!server.isRegistered(aggregate)) {
+                server.registerMBean(AGGREGATE_STATS, aggregate);
+                server.registerMBean(TransactionStats.getInstance(),
+                        new ObjectName(String.format("%s:type=Transaction",
+                                DOMAIN)));
+                server.registerMBean(ColumnCacheStats.getInstance(),
+                        new ObjectName(String.format("%s:type=ColumnCache",
+                                DOMAIN)));
+            }
+            server.registerMBean(stats, objectName(name));
+        } catch (JMException e) {
+            throw new DbAccessException(e);
+        }
+        if (dbAccess.getMetrics() == null) {
+            dbAccess.setMetrics(stats);
+        } else {
+            dbAccess.setMetrics(new CompositeMetrics(dbAccess.getMetrics(),
+                    stats));
+        }
+        return stats;
+    }
+
+    /**
+     * Register connection statistics MBean named
+     * {@code com.codeferm.dbaccess:type=Connection,name=<name>}.
+     *
+     * @param stats Statistics of a wrapped {@code DataSource}.
+     * @param name DataSource name, unique per JVM.
+     */
+    public static synchronized void register(final ConnectionStats stats,
+            final String name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(stats,
+                    connectionName(name));
+        } catch (JMException e) {
+            throw new DbAccessException(e);
+        }
+    }
+
+    /**
+     * Get connection statistics MBean name.
+     *
+     * @param name DataSource name.
+     * @return Object name.
+     */
+    public static ObjectName connectionName(final String name) {
+        try {
+            return new ObjectName(String.format("%s:type=Connection,name=%s",
+                    DOMAIN, ObjectName.quote(name)));
+        } catch (JMException e) {
+            throw new DbAccessException(e);
+        }
+    }
+
+    /**
+     * Unregister connection statistics MBean.
+     *
+     * @param name DataSource name.
+     */
+    public static synchronized void unregisterConnection(final String name) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName objectName = connectionName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new DbAccessException(e);
+        }
+    }
+
+    /**
+     * Unregister {@code DbAccess} MBean. Metrics set on the instance are not
+     * changed.
+     *
+     * @param name Instance name.
+     */
+    public static synchronized void unregister(final String name) {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            final ObjectName objectName = objectName(name);
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new DbAccessException(e);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link com.codeferm.dbaccess.metrics.QueryMetrics} keeping runtime
+ * statistics of a {@link com.codeferm.dbaccess.DbAccess} instance for JMX.
+ * Events are also passed to an optional parent, so one aggregate instance can
+ * cover all {@code DbAccess} instances.
+ *
+ * @see com.codeferm.dbaccess.metrics.DbAccessMBeans
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class DbAccessStats implements DbAccessStatsMBean, QueryMetrics {
+
+    /**
+     * Number of statements returned by {@link #getTopStatements()}.
+     */
+    public static final int TOP_STATEMENTS = 10;
+    /**
+     * Aggregate statistics or null.
+     */
+    private final DbAccessStats parent;
+    /**
+     * Statements executed.
+     */
+    private final AtomicLong calls = new AtomicLong();
+    /**
+     * Statements that failed.
+     */
+    private final AtomicLong errors = new AtomicLong();
+    /**
+     * Rows returned or updated.
+     */
+    private final AtomicLong rows = new AtomicLong();
+    /**
+     * Statements executing now.
+     */
+    private final AtomicLong inFlight = new AtomicLong();
+    /**
+     * Latency in nanoseconds.
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+    /**
+     * Total time by phase ordinal.
+     */
+    private final AtomicLongArray phases = new AtomicLongArray(QueryPhase.
+            values().length);
+    /**
+     * Statements broken down by phase.
+     */
+    private final AtomicLong phased = new AtomicLong();
+    /**
+     * Parameter arrays per batch.
+     */
+    private final LatencyHistogram batchSizes = new LatencyHistogram();
+    /**
+     * Statistics by statement.
+     */
+    private final StatsCollector statements = new StatsCollector();
+
+    /**
+     * Construct statistics without parent.
+     */
+    public DbAccessStats() {
+        this(null);
+    }
+
+    /**
+     * Construct statistics.
+     *
+     * @param parent Aggregate statistics or null.
+     */
+    public DbAccessStats(final DbAccessStats parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Count statement as in-flight.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void start(final QueryEvent event) {
+        inFlight.incrementAndGet();
+        if (parent != null) {
+            parent.start(event);
+        }
+    }
+
+    /**
+     * Record finished statement.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void end(final QueryEvent event) {
+        inFlight.decrementAndGet();
+        calls.incrementAndGet();
+        if (event.getError() != null) {
+            errors.incrementAndGet();
+        }
+        rows.addAndGet(event.getRows());
+        latency.record(event.getElapsed());
+        if (event.getSlowestPhase() != null) {
+            phased.incrementAndGet();
+            for (QueryPhase phase : QueryPhase.values()) {
+                phases.addAndGet(phase.ordinal(), event.getPhase(phase));
+            }
+        }
+        if (event.getOperation() == QueryOperation.BATCH) {
+            batchSizes.record(event.getBatchSize());
+        }
+        statements.end(event);
+        if (parent != null) {
+            parent.end(event);
+        }
+    }
+
+    /**
+     * Get statistics by statement.
+     *
+     * @return Statement statistics.
+     */
+    public StatsCollector getStatements() {
+        return statements;
+    }
+
+    @Override
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    @Override
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    @Override
+    public long getRowCount() {
+        return rows.get();
+    }
+
+    @Override
+    public long getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public long getLatencyMean() {
+        return TimeUnit.NANOSECONDS.toMicros((long) latency.getMean());
+    }
+
+    @Override
+    public long getLatencyP50() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(50));
+    }
+
+    @Override
+    public long getLatencyP99() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getLatencyP999() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getValueAtPercentile(
+                99.9));
+    }
+
+    @Override
+    public long getLatencyMax() {
+        return TimeUnit.NANOSECONDS.toMicros(latency.getMax());
+    }
+
+    @Override
+    public String[] getPhaseBreakdown() {
+        final long count = phased.get();
+        long total = 0;
+        for (int i = 0; i < phases.length(); i++) {
+            total += phases.get(i);
+        }
+        final QueryPhase[] values = QueryPhase.values();
+        final String[] breakdown = new String[values.length];
+        for (QueryPhase phase : values) {
+            final long nanos = phases.get(phase.ordinal());
+            long mean = 0;
+            double share = 0;
+            if (count > 0 && total > 0) {
+                mean = TimeUnit.NANOSECONDS.toMicros(nanos / count);
+                share = 100.0 * nanos / total;
+            }
+            breakdown[phase.ordinal()] = String.format(
+                    "%s: mean=%dus, share=%.1f%%", phase, mean, share);
+        }
+        return breakdown;
+    }
+
+    @Override
+    public long getBatchCount() {
+        return batchSizes.getCount();
+    }
+
+    @Override
+    public double getBatchSizeMean() {
+        return batchSizes.getMean();
+    }
+
+    @Override
+    public long getBatchSizeMax() {
+        return batchSizes.getMax();
+    }
+
+    @Override
+    public String[] getTopStatements() {
+        final List<QueryStats> list = statements.getStats();
+        final String[] top = new String[Math.min(TOP_STATEMENTS, list.size())];
+        for (int i = 0; i < top.length; i++) {
+            top[i] = list.get(i).toString();
+        }
+        return top;
+    }
+
+    /**
+     * Reset statistics. In-flight count is kept since those statements are
+     * still executing.
+     */
+    @Override
+    public void reset() {
+        calls.set(0);
+        errors.set(0);
+        rows.set(0);
+        latency.reset();
+        for (int i = 0; i < phases.length(); i++) {
+            phases.set(i, 0);
+        }
+        phased.set(0);
+        batchSizes.reset();
+        statements.reset();
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+/**
+ * JMX management interface of {@link com.codeferm.dbaccess.metrics.DbAccessStats}.
+ * Times are in microseconds.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public interface DbAccessStatsMBean {
+
+    /**
+     * Get number of statements executed.
+     *
+     * @return Calls.
+     */
+    long getCallCount();
+
+    /**
+     * Get number of statements that failed.
+     *
+     * @return Errors.
+     */
+    long getErrorCount();
+
+    /**
+     * Get rows returned or updated.
+     *
+     * @return Rows.
+     */
+    long getRowCount();
+
+    /**
+     * Get number of statements executing now.
+     *
+     * @return In-flight statements.
+     */
+    long getInFlight();
+
+    /**
+     * Get mean latency.
+     *
+     * @return Microseconds.
+     */
+    long getLatencyMean();
+
+    /**
+     * Get median latency.
+     *
+     * @return Microseconds.
+     */
+    long getLatencyP50();
+
+    /**
+     * Get 99th percentile latency.
+     *
+     * @return Microseconds.
+     */
+    long getLatencyP99();
+
+    /**
+     * Get 99.9th percentile latency.
+     *
+     * @return Microseconds.
+     */
+    long getLatencyP999();
+
+    /**
+     * Get maximum latency.
+     *
+     * @return Microseconds.
+     */
+    long getLatencyMax();
+
+    /**
+     * Get mean time and share of total time by phase for statements that were
+     * broken down by phase.
+     *
+     * @return Phase summaries.
+     */
+    String[] getPhaseBreakdown();
+
+    /**
+     * Get number of batches executed.
+     *
+     * @return Batches.
+     */
+    long getBatchCount();
+
+    /**
+     * Get mean parameter arrays per batch.
+     *
+     * @return Mean batch size.
+     */
+    double getBatchSizeMean();
+
+    /**
+     * Get largest batch.
+     *
+     * @return Maximum batch size.
+     */
+    long getBatchSizeMax();
+
+    /**
+     * Get statements with the most total time.
+     *
+     * @return Statement summaries.
+     */
+    String[] getTopStatements();
+
+    /**
+     * Reset statistics.
+     */
+    void reset();
+}
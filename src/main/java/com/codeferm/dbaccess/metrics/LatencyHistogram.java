@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram in the style of HdrHistogram. Each power of
+ * two range is split into 32 linear buckets, so recorded values are accurate
+ * to about 3% over the full range of positive {@code long} values with a fixed
+ * footprint of under 2,000 counters. Recording is a single atomic increment,
+ * so many threads can record without contention on a lock.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Bits of linear resolution per power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+    /**
+     * Linear buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Values below this are counted exactly.
+     */
+    private static final int LINEAR = SUB_BUCKETS * 2;
+    /**
+     * Number of buckets to cover all positive {@code long} values.
+     */
+    private static final int BUCKETS = index(Long.MAX_VALUE) + 1;
+    /**
+     * Counts by bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    /**
+     * Number of values.
+     */
+    private final AtomicLong count = new AtomicLong();
+    /**
+     * Sum of values.
+     */
+    private final AtomicLong sum = new AtomicLong();
+    /**
+     * Smallest value.
+     */
+    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+    /**
+     * Largest value.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Get bucket index of value.
+     *
+     * @param value Value greater or equal to 0.
+     * @return Bucket index.
+     */
+    static int index(final long value) {
+        int index = (int) value;
+        if (value >= LINEAR) {
+            // Shift so the top SUB_BUCKET_BITS + 1 bits remain
+            final int shift = 63 - Long.numberOfLeadingZeros(value)
+                    - SUB_BUCKET_BITS;
+            index = shift * SUB_BUCKETS + (int) (value >>> shift);
+        }
+        return index;
+    }
+
+    /**
+     * Get lowest value counted in bucket.
+     *
+     * @param index Bucket index.
+     * @return Lowest value.
+     */
+    static long lowest(final int index) {
+        long value = index;
+        if (index >= LINEAR) {
+            final int shift = index / SUB_BUCKETS - 1;
+            value = (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        }
+        return value;
+    }
+
+    /**
+     * Get highest value counted in bucket.
+     *
+     * @param index Bucket index.
+     * @return Highest value.
+     */
+    static long highest(final int index) {
+        long value = index;
+        if (index >= LINEAR) {
+            value = lowest(index) + (1L << index / SUB_BUCKETS - 1) - 1;
+        }
+        return value;
+    }
+
+    /**
+     * Record value. Negative values are recorded as 0.
+     *
+     * @param value Value, usually nanoseconds.
+     */
+    public void record(final long value) {
+        final long v = Math.max(0, value);
+        counts.incrementAndGet(index(v));
+        count.incrementAndGet();
+        sum.addAndGet(v);
+        long current = min.get();
+        while (v < current && !min.compareAndSet(current, v)) {
+            current = min.get();
+        }
+        current = max.get();
+        while (v > current && !max.compareAndSet(current, v)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Get number of values recorded.
+     *
+     * @return Count.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * Get sum of values recorded.
+     *
+     * @return Sum.
+     */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /**
+     * Get smallest value recorded.
+     *
+     * @return Smallest value or 0 if empty.
+     */
+    public long getMin() {
+        final long value = min.get();
+        long result = 0;
+        if (value != Long.MAX_VALUE) {
+            result = value;
+        }
+        return result;
+    }
+
+    /**
+     * Get largest value recorded.
+     *
+     * @return Largest value or 0 if empty.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get mean of values recorded.
+     *
+     * @return Mean or 0 if empty.
+     */
+    public double getMean() {
+        final long n = count.get();
+        double mean = 0;
+        if (n > 0) {
+            mean = (double) sum.get() / n;
+        }
+        return mean;
+    }
+
+    /**
+     * Get value at percentile. The highest value of the bucket is returned, so
+     * the result is never lower than the true value, capped at the largest
+     * value recorded. Counts are read without stopping recorders, so the
+     * result is approximate while values are being recorded.
+     *
+     * @param percentile Percentile from 0 to 100.
+     * @return Value at percentile or 0 if empty.
+     */
+    public long getValueAtPercentile(final double percentile) {
+        final long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long value = 0;
+        if (total > 0) {
+            final long target = Math.max(1, (long) Math.ceil(Math.min(100,
+                    percentile) / 100 * total));
+            long seen = 0;
+            int i = 0; //NOPMD
+            while (seen + snapshot[i] < target) {
+                seen += snapshot[i++];
+            }
+            value = Math.min(highest(i), getMax());
+        }
+        return value;
+    }
+
+    /**
+     * Remove all values.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        min.set(Long.MAX_VALUE);
+        max.set(0);
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import javax.sql.DataSource;
+
+/**
+ * JDBC proxies that add time spent in the driver to the phases of the current
+ * {@link com.codeferm.dbaccess.metrics.QueryEvent}. This is how wrapper
+ * implementations such as {@link com.codeferm.dbaccess.DbJdbcTemplate} are
+ * broken down into phases, since the library makes the JDBC calls. Proxied
+ * calls outside of an event pass straight through.
+ * <p>
+ * {@code getConnection} is timed as acquire, {@code prepareStatement} as
+ * prepare, {@code set*} and {@code addBatch} as bind, {@code execute*} as
+ * execute and {@code ResultSet} navigation and getters as fetch. Time left
+ * over in the library call is mapping.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class PhaseTiming {
+
+    /**
+     * Static methods only.
+     */
+    private PhaseTiming() {
+    }
+
+    /**
+     * Proxy {@code DataSource}. A DataSource that is already timed is
+     * returned as is, so calls are not timed twice.
+     *
+     * @param dataSource DataSource to proxy.
+     * @return Timed DataSource.
+     */
+    public static DataSource wrap(final DataSource dataSource) {
+        DataSource timed = dataSource;
+        if (!isWrapped(dataSource)) {
+            timed = proxy(DataSource.class, dataSource);
+        }
+        return timed;
+    }
+
+    /**
+     * Proxy {@code Connection}. A Connection that is already timed is
+     * returned as is, so calls are not timed twice.
+     *
+     * @param connection Connection to proxy.
+     * @return Timed Connection.
+     */
+    public static Connection wrap(final Connection connection) {
+        Connection timed = connection;
+        if (!isWrapped(connection)) {
+            timed = proxy(Connection.class, connection);
+        }
+        return timed;
+    }
+
+    /**
+     * Is JDBC object a proxy created by this class?
+     *
+     * @param object JDBC object.
+     * @return True if calls are already timed.
+     */
+    public static boolean isWrapped(final Object object) {
+        return object != null && Proxy.isProxyClass(object.getClass())
+                && Proxy.getInvocationHandler(object) instanceof Handler;
+    }
+
+    /**
+     * Create proxy.
+     *
+     * @param <T> Interface type.
+     * @param type Interface to proxy.
+     * @param target Object to call.
+     * @return Proxy.
+     */
+    private static <T> T proxy(final Class<T> type, final Object target) {
+        return type.cast(Proxy.newProxyInstance(PhaseTiming.class.
+                getClassLoader(), new Class[]{type}, new Handler(target)));
+    }
+
+    /**
+     * Get phase of JDBC method.
+     *
+     * @param method Method called.
+     * @return Phase or null if not timed.
+     */
+    static QueryPhase phase(final Method method) {
+        final Class<?> type = method.getDeclaringClass();
+        final String name = method.getName();
+        QueryPhase phase = null;
+        if (type == DataSource.class) {
+            if ("getConnection".equals(name)) {
+                phase = QueryPhase.ACQUIRE;
+            }
+        } else if (type == Connection.class) {
+            if (name.startsWith("prepare") || "createStatement".equals(name)) {
+                phase = QueryPhase.PREPARE;
+            }
+        } else if (type == ResultSet.class) {
+            if (name.startsWith("get") || "next".equals(name)) {
+                phase = QueryPhase.FETCH;
+            }
+        } else if (name.startsWith("execute")) {
+            phase = QueryPhase.EXECUTE;
+        } else if (name.startsWith("set") || "addBatch".equals(name)
+                || "clearParameters".equals(name)) {
+            phase = QueryPhase.BIND;
+        }
+        return phase;
+    }
+
+    /**
+     * Get interface to proxy JDBC object returned by method.
+     *
+     * @param method Method called.
+     * @return Interface or null if result is not proxied.
+     */
+    static Class<?> proxied(final Method method) {
+        final Class<?> type = method.getReturnType();
+        Class<?> proxied = null;
+        if (type == Connection.class || type == Statement.class
+                || type == PreparedStatement.class || type
+                == CallableStatement.class || type == ResultSet.class) {
+            proxied = type;
+        }
+        return proxied;
+    }
+
+    /**
+     * Times calls and proxies JDBC objects returned.
+     */
+    private static final class Handler implements InvocationHandler {
+
+        /**
+         * Object called.
+         */
+        private final Object target;
+
+        /**
+         * Construct handler.
+         *
+         * @param target Object called.
+         */
+        Handler(final Object target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method,
+                final Object[] args) throws Throwable {
+            final QueryEvent event = QueryEvent.current();
+            final QueryPhase phase = phase(method);
+            final long start = System.nanoTime();
+            Object result = null;
+            try {
+                result = method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            } finally {
+                if (event != null && phase != null) {
+                    event.add(phase, System.nanoTime() - start);
+                }
+            }
+            final Class<?> type = proxied(method);
+            if (result != null && type != null) {
+                result = proxy(type, result);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,402 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+/**
+ * Execution of one {@link com.codeferm.dbaccess.DbAccess} operation passed to
+ * {@link com.codeferm.dbaccess.metrics.QueryMetrics}. Times are from
+ * {@link System#nanoTime()}. Implementations may break elapsed time down by
+ * {@link com.codeferm.dbaccess.metrics.QueryPhase}. An event is used by one
+ * thread at a time and is the current event of that thread while the
+ * statement executes, so code without access to the event, such as JDBC
+ * proxies, can still add to it.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class QueryEvent {
+
+    /**
+     * Event executing on this thread.
+     */
+    private static final ThreadLocal<QueryEvent> CURRENT
+            = new ThreadLocal<QueryEvent>();
+    /**
+     * Implementation class executing statement.
+     */
+    private final Class<?> source;
+    /**
+     * Operation.
+     */
+    private final QueryOperation operation;
+    /**
+     * SQL statement.
+     */
+    private final String sql;
+    /**
+     * Statement parameters, array of parameter arrays for batch.
+     */
+    private final Object[] params;
+    /**
+     * Wall clock start time in milliseconds.
+     */
+    private final long startMillis;
+    /**
+     * Start time in nanoseconds.
+     */
+    private final long start;
+    /**
+     * End time in nanoseconds.
+     */
+    private long end;
+    /**
+     * Time of last phase mark in nanoseconds.
+     */
+    private long lastMark;
+    /**
+     * Nanoseconds by phase ordinal.
+     */
+    private final long[] phases = new long[QueryPhase.values().length];
+    /**
+     * Rows returned or updated.
+     */
+    private int rows;
+    /**
+     * Error or null if successful.
+     */
+    private Throwable error;
+    /**
+     * Event that was current before this one.
+     */
+    private QueryEvent previous;
+    /**
+     * Fingerprint of SQL, null until first requested.
+     */
+    private SqlFingerprint fingerprint;
+    /**
+     * Metrics started with this event, so the same instance is ended.
+     */
+    private final QueryMetrics metrics;
+
+    /**
+     * Construct event starting now.
+     *
+     * @param source Implementation class executing statement.
+     * @param operation Operation.
+     * @param sql SQL statement.
+     * @param params Statement parameters, array of parameter arrays for batch.
+     */
+    public QueryEvent(final Class<?> source, final QueryOperation operation,
+            final String sql, final Object[] params) {
+        this(source, operation, sql, params, null);
+    }
+
+    /**
+     * Construct event starting now for metrics.
+     *
+     * @param source Implementation class executing statement.
+     * @param operation Operation.
+     * @param sql SQL statement.
+     * @param params Statement parameters, array of parameter arrays for batch.
+     * @param metrics Metrics started with this event or null.
+     */
+    public QueryEvent(final Class<?> source, final QueryOperation operation,
+            final String sql, final Object[] params,
+            final QueryMetrics metrics) {
+        this.metrics = metrics;
+        this.source = source;
+        this.operation = operation;
+        this.sql = sql;
+        this.params = params;
+        this.startMillis = System.currentTimeMillis();
+        this.start = System.nanoTime();
+        this.lastMark = start;
+    }
+
+    /**
+     * Get metrics started with this event. They are ended with this event
+     * even if other metrics have been set since.
+     *
+     * @return Metrics or null.
+     */
+    public QueryMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get event executing on this thread.
+     *
+     * @return Current event or null.
+     */
+    public static QueryEvent current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Make this the current event of this thread.
+     */
+    public void enter() {
+        previous = CURRENT.get();
+        CURRENT.set(this);
+    }
+
+    /**
+     * Restore the event that was current before {@link #enter()}.
+     */
+    public void exit() {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+            previous = null;
+        }
+    }
+
+    /**
+     * Mark end of phase. Time since the previous mark, or start, is added to
+     * the phase.
+     *
+     * @param phase Phase just finished.
+     */
+    public void mark(final QueryPhase phase) {
+        final long now = System.nanoTime();
+        phases[phase.ordinal()] += now - lastMark;
+        lastMark = now;
+    }
+
+    /**
+     * Add all time since start not yet in any phase to phase. Used after a
+     * library call where other phases were added separately.
+     *
+     * @param phase Phase receiving the rest.
+     */
+    public void markRest(final QueryPhase phase) {
+        final long now = System.nanoTime();
+        long rest = now - start;
+        for (long nanos : phases) {
+            rest -= nanos;
+        }
+        phases[phase.ordinal()] += Math.max(0, rest);
+        lastMark = now;
+    }
+
+    /**
+     * Add time to phase without moving the mark. Used when a phase is measured
+     * separately, such as mapping inside a library call.
+     *
+     * @param phase Phase.
+     * @param nanos Nanoseconds to add.
+     */
+    public void add(final QueryPhase phase, final long nanos) {
+        phases[phase.ordinal()] += nanos;
+    }
+
+    /**
+     * Mark event finished now.
+     *
+     * @param rows Rows returned or updated.
+     */
+    public void finish(final int rows) {
+        this.end = System.nanoTime();
+        this.rows = rows;
+    }
+
+    /**
+     * Set error.
+     *
+     * @param error Error.
+     */
+    public void setError(final Throwable error) {
+        this.error = error;
+    }
+
+    /**
+     * Get implementation class executing statement.
+     *
+     * @return Class.
+     */
+    public Class<?> getSource() {
+        return source;
+    }
+
+    /**
+     * Get operation.
+     *
+     * @return Operation.
+     */
+    public QueryOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Get SQL statement.
+     *
+     * @return SQL statement.
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Get fingerprint of SQL, so listeners can group statements by shape.
+     *
+     * @return Fingerprint.
+     */
+    public SqlFingerprint getFingerprint() {
+        if (fingerprint == null) {
+            fingerprint = SqlFingerprint.of(sql);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Get statement parameters.
+     *
+     * @return Parameters, array of parameter arrays for batch.
+     */
+    public Object[] getParams() {
+        return params;
+    }
+
+    /**
+     * Get number of parameter arrays for batch, otherwise 1.
+     *
+     * @return Batch size.
+     */
+    public int getBatchSize() {
+        int batchSize = 1;
+        if (operation == QueryOperation.BATCH && params != null) {
+            batchSize = params.length;
+        }
+        return batchSize;
+    }
+
+    /**
+     * Get wall clock start time.
+     *
+     * @return Start time in milliseconds.
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Get start time.
+     *
+     * @return Start time in nanoseconds.
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Get end time.
+     *
+     * @return End time in nanoseconds or 0 if not finished.
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Get elapsed time.
+     *
+     * @return Elapsed time in nanoseconds.
+     */
+    public long getElapsed() {
+        return end - start;
+    }
+
+    /**
+     * Get time spent in phase.
+     *
+     * @param phase Phase.
+     * @return Nanoseconds, 0 if phase was not measured.
+     */
+    public long getPhase(final QueryPhase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    /**
+     * Get time not marked to any phase.
+     *
+     * @return Nanoseconds.
+     */
+    public long getOther() {
+        long other = getElapsed();
+        for (long phase : phases) {
+            other -= phase;
+        }
+        return Math.max(0, other);
+    }
+
+    /**
+     * Get phase with the most time.
+     *
+     * @return Slowest phase or null if no phase was measured.
+     */
+    public QueryPhase getSlowestPhase() {
+        QueryPhase slowest = null;
+        long max = 0;
+        for (QueryPhase phase : QueryPhase.values()) {
+            if (phases[phase.ordinal()] > max) {
+                max = phases[phase.ordinal()];
+                slowest = phase;
+            }
+        }
+        return slowest;
+    }
+
+    /**
+     * Get rows returned or updated.
+     *
+     * @return Rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Get error.
+     *
+     * @return Error or null if successful.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Get type of error without its message, which may contain SQL and
+     * parameters.
+     *
+     * @return Error type or null if successful.
+     */
+    public String getErrorType() {
+        return errorType(error);
+    }
+
+    /**
+     * Get simple class name of error followed by that of its cause, for
+     * example {@code DbAccessException(SQLException)}. Messages are left out,
+     * since they may contain SQL and parameters.
+     *
+     * @param error Error or null.
+     * @return Error type or null if error is null.
+     */
+    public static String errorType(final Throwable error) {
+        String type = null;
+        if (error != null) {
+            type = error.getClass().getSimpleName();
+            if (error.getCause() != null) {
+                type = String.format("%s(%s)", type, error.getCause().
+                        getClass().getSimpleName());
+            }
+        }
+        return type;
+    }
+}
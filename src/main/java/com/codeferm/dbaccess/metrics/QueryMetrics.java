@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+/**
+ * Service provider interface called around every {@code selectList},
+ * {@code update}, {@code updateReturnKeys} and {@code batch} of a
+ * {@link com.codeferm.dbaccess.DbAccess} implementation. Calls are made on the
+ * thread executing the statement, so implementations must be thread safe and
+ * should not block. Exceptions thrown by implementations are logged and
+ * ignored.
+ *
+ * @see com.codeferm.dbaccess.metrics.StatsCollector
+ * @see com.codeferm.dbaccess.metrics.CompositeMetrics
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public interface QueryMetrics {
+
+    /**
+     * Statement is about to execute.
+     *
+     * @param event Event with start time set.
+     */
+    void start(QueryEvent event);
+
+    /**
+     * Statement finished successfully or with error.
+     *
+     * @param event Event with end time, rows and error set.
+     */
+    void end(QueryEvent event);
+}
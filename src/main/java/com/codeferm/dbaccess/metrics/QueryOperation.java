@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+/**
+ * {@link com.codeferm.dbaccess.DbAccess} operation measured by a
+ * {@link com.codeferm.dbaccess.metrics.QueryEvent}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public enum QueryOperation {
+
+    /**
+     * Query returning beans.
+     */
+    SELECT_BEAN_LIST("selectBeanList"),
+    /**
+     * Query returning Maps.
+     */
+    SELECT_MAP_LIST("selectMapList"),
+    /**
+     * INSERT, UPDATE, or DELETE.
+     */
+    UPDATE("update"),
+    /**
+     * INSERT returning generated keys.
+     */
+    UPDATE_RETURN_KEYS("updateReturnKeys"),
+    /**
+     * Batch INSERT, UPDATE, or DELETE.
+     */
+    BATCH("batch");
+
+    /**
+     * Name used in log messages.
+     */
+    private final String label;
+
+    /**
+     * Construct operation.
+     *
+     * @param label Name used in log messages.
+     */
+    QueryOperation(final String label) {
+        this.label = label;
+    }
+
+    /**
+     * Get name used in log messages.
+     *
+     * @return Label.
+     */
+    public String getLabel() {
+        return label;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+/**
+ * Phase of statement execution measured by
+ * {@link com.codeferm.dbaccess.metrics.QueryEvent#mark(QueryPhase)}. Time not
+ * marked to a phase, such as closing resources, is reported as other.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public enum QueryPhase {
+
+    /**
+     * Get {@code Connection} from {@code DataSource}.
+     */
+    ACQUIRE,
+    /**
+     * Prepare statement.
+     */
+    PREPARE,
+    /**
+     * Set parameters.
+     */
+    BIND,
+    /**
+     * Execute statement.
+     */
+    EXECUTE,
+    /**
+     * Read rows from {@code ResultSet}.
+     */
+    FETCH,
+    /**
+     * Map rows to beans or Maps.
+     */
+    MAP
+}
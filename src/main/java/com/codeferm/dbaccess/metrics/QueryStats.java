@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable snapshot of statistics for one SQL key collected by
+ * {@link com.codeferm.dbaccess.metrics.StatsCollector}. Times are in
+ * nanoseconds.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class QueryStats {
+
+    /**
+     * SQL key.
+     */
+    private final String key;
+    /**
+     * Number of executions.
+     */
+    private final long count;
+    /**
+     * Number of executions that failed.
+     */
+    private final long errors;
+    /**
+     * Rows returned or updated.
+     */
+    private final long rows;
+    /**
+     * Total time.
+     */
+    private final long total;
+    /**
+     * Fastest execution.
+     */
+    private final long min;
+    /**
+     * Slowest execution.
+     */
+    private final long max;
+    /**
+     * Median.
+     */
+    private final long p50;
+    /**
+     * 99th percentile.
+     */
+    private final long p99;
+    /**
+     * 99.9th percentile.
+     */
+    private final long p999;
+    /**
+     * Total time by phase ordinal.
+     */
+    private final long[] phases;
+
+    /**
+     * Construct snapshot from histogram.
+     *
+     * @param key SQL key.
+     * @param histogram Latency histogram.
+     * @param errors Number of executions that failed.
+     * @param rows Rows returned or updated.
+     * @param phases Total time by phase ordinal.
+     */
+    public QueryStats(final String key, final LatencyHistogram histogram,
+            final long errors, final long rows, final long[] phases) {
+        this.key = key;
+        this.count = histogram.getCount();
+        this.errors = errors;
+        this.rows = rows;
+        this.total = histogram.getSum();
+        this.min = histogram.getMin();
+        this.max = histogram.getMax();
+        this.p50 = histogram.getValueAtPercentile(50);
+        this.p99 = histogram.getValueAtPercentile(99);
+        this.p999 = histogram.getValueAtPercentile(99.9);
+        this.phases = phases.clone();
+    }
+
+    /**
+     * Get SQL key.
+     *
+     * @return Key.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Get number of executions.
+     *
+     * @return Count.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Get number of executions that failed.
+     *
+     * @return Errors.
+     */
+    public long getErrors() {
+        return errors;
+    }
+
+    /**
+     * Get rows returned or updated.
+     *
+     * @return Rows.
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Get total time.
+     *
+     * @return Total nanoseconds.
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * Get mean time.
+     *
+     * @return Mean nanoseconds or 0 if no executions.
+     */
+    public long getMean() {
+        long mean = 0;
+        if (count > 0) {
+            mean = total / count;
+        }
+        return mean;
+    }
+
+    /**
+     * Get fastest execution.
+     *
+     * @return Nanoseconds.
+     */
+    public long getMin() {
+        return min;
+    }
+
+    /**
+     * Get slowest execution.
+     *
+     * @return Nanoseconds.
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Get median.
+     *
+     * @return Nanoseconds.
+     */
+    public long getP50() {
+        return p50;
+    }
+
+    /**
+     * Get 99th percentile.
+     *
+     * @return Nanoseconds.
+     */
+    public long getP99() {
+        return p99;
+    }
+
+    /**
+     * Get 99.9th percentile.
+     *
+     * @return Nanoseconds.
+     */
+    public long getP999() {
+        return p999;
+    }
+
+    /**
+     * Get total time in phase.
+     *
+     * @param phase Phase.
+     * @return Nanoseconds, 0 if phase was not measured.
+     */
+    public long getPhaseTotal(final QueryPhase phase) {
+        return phases[phase.ordinal()];
+    }
+
+    /**
+     * Get mean time in phase per execution.
+     *
+     * @param phase Phase.
+     * @return Nanoseconds, 0 if phase was not measured.
+     */
+    public long getPhaseMean(final QueryPhase phase) {
+        long mean = 0;
+        if (count > 0) {
+            mean = phases[phase.ordinal()] / count;
+        }
+        return mean;
+    }
+
+    /**
+     * Summary with times in microseconds.
+     *
+     * @return Summary.
+     */
+    @Override
+    public String toString() {
+        return String.format("count=%d, errors=%d, rows=%d, mean=%d, p50=%d, "
+                + "p99=%d, p999=%d, max=%d, key=%s", count, errors, rows,
+                TimeUnit.NANOSECONDS.toMicros(getMean()), TimeUnit.NANOSECONDS.
+                toMicros(p50), TimeUnit.NANOSECONDS.toMicros(p99),
+                TimeUnit.NANOSECONDS.toMicros(p999), TimeUnit.NANOSECONDS.
+                toMicros(max), key);
+    }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link com.codeferm.dbaccess.metrics.QueryMetrics} that logs only statements
+ * slower than a threshold, so it can stay on under production load. Slow
+ * statements can be sampled to limit log volume. Each entry has the SQL, its
+ * {@link com.codeferm.dbaccess.metrics.SqlFingerprint} id, parameters, rows,
+ * error and the slowest
+ * {@link com.codeferm.dbaccess.metrics.QueryPhase}. Parameters are truncated
+ * and can be redacted, either all of them or those matching a pattern. When
+ * all are redacted the normalized SQL of the fingerprint is logged, so
+ * literals in the SQL are not logged either. Only the type of an error is
+ * logged, since its message may contain SQL and parameters.
+ * <p>
+ * Entries are logged at WARN level to the logger of this class, so they can be
+ * routed to their own appender.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class SlowQueryLog implements QueryMetrics {
+
+    /**
+     * Logger.
+     */
+    //CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger log = LoggerFactory.getLogger(//NOPMD
+            SlowQueryLog.class);
+    //CHECKSTYLE:ON ConstantName
+    /**
+     * Replacement for redacted values.
+     */
+    public static final String REDACTED = "***";
+    /**
+     * Default maximum length of each parameter.
+     */
+    public static final int DEFAULT_MAX_PARAM_LENGTH = 64;
+    /**
+     * Default maximum number of parameters logged.
+     */
+    public static final int DEFAULT_MAX_PARAMS = 20;
+    /**
+     * Default maximum length of SQL.
+     */
+    public static final int DEFAULT_MAX_SQL_LENGTH = 2000;
+    /**
+     * Threshold in nanoseconds.
+     */
+    private volatile long threshold;
+    /**
+     * Fraction of slow statements logged from 0 to 1.
+     */
+    private volatile double sampleRate = 1;
+    /**
+     * Redact all parameters.
+     */
+    private volatile boolean redactAll;
+    /**
+     * Redact parameters matching pattern, null for none.
+     */
+    private volatile Pattern redactPattern;
+    /**
+     * Maximum length of each parameter.
+     */
+    private volatile int maxParamLength = DEFAULT_MAX_PARAM_LENGTH;
+    /**
+     * Maximum number of parameters logged.
+     */
+    private volatile int maxParams = DEFAULT_MAX_PARAMS;
+    /**
+     * Maximum length of SQL.
+     */
+    private volatile int maxSqlLength = DEFAULT_MAX_SQL_LENGTH;
+    /**
+     * Statements over threshold.
+     */
+    private final AtomicLong slowCount = new AtomicLong();
+    /**
+     * Statements logged.
+     */
+    private final AtomicLong loggedCount = new AtomicLong();
+
+    /**
+     * Construct log.
+     *
+     * @param thresholdMillis Threshold in milliseconds.
+     */
+    public SlowQueryLog(final long thresholdMillis) {
+        this.threshold = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    /**
+     * Nothing to do at start.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void start(final QueryEvent event) {
+    }
+
+    /**
+     * Log event if over threshold and sampled.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void end(final QueryEvent event) {
+        if (event.getElapsed() >= threshold) {
+            slowCount.incrementAndGet();
+            if (log.isWarnEnabled() && (sampleRate >= 1 || ThreadLocalRandom.
+                    current().nextDouble() < sampleRate)) {
+                loggedCount.incrementAndGet();
+                log.warn(format(event));
+            }
+        }
+    }
+
+    /**
+     * Format log entry.
+     *
+     * @param event Event.
+     * @return Log entry.
+     */
+    public String format(final QueryEvent event) {
+        final QueryPhase slowest = event.getSlowestPhase();
+        String phase = "n/a";
+        if (slowest != null) {
+            phase = String.format("%s(%dms)", slowest, TimeUnit.NANOSECONDS.
+                    toMillis(event.getPhase(slowest)));
+        }
+        String error = "";
+        if (event.getError() != null) {
+            // Message may contain SQL and parameters
+            error = String.format(", error=%s", event.getErrorType());
+        }
+        String sql = event.getSql();
+        // Literals in SQL are as sensitive as parameters
+        if (redactAll) {
+            sql = event.getFingerprint().getSql();
+        }
+        return String.format("Slow %s: ms=%d, phase=%s, rows=%d, source=%s, "
+                + "fingerprint=%s, sql=%s, params=%s%s", event.getOperation().
+                getLabel(), TimeUnit.NANOSECONDS.toMillis(event.getElapsed()),
+                phase, event.getRows(), event.getSource().getSimpleName(),
+                event.getFingerprint().getId(), truncate(sql, maxSqlLength),
+                params(event), error);
+    }
+
+    /**
+     * Format parameters with redaction and truncation.
+     *
+     * @param event Event.
+     * @return Parameters.
+     */
+    private String params(final QueryEvent event) {
+        final Object[] params = event.getParams();
+        String str = "[]";
+        if (params != null) {
+            Object[] values = params;
+            // Only first parameter array of batch is logged
+            if (event.getOperation() == QueryOperation.BATCH) {
+                values = new Object[]{};
+                if (params.length > 0 && params[0] instanceof Object[]) {
+                    values = (Object[]) params[0];
+                }
+            }
+            final int count = Math.min(values.length, maxParams);
+            final String[] strs = new String[count];
+            for (int i = 0; i < count; i++) {
+                strs[i] = param(values[i]);
+            }
+            str = Arrays.toString(strs);
+            if (values.length > count) {
+                str = String.format("%s +%d", str, values.length - count);
+            }
+            if (event.getOperation() == QueryOperation.BATCH) {
+                str = String.format("%s x%d", str, params.length);
+            }
+        }
+        return str;
+    }
+
+    /**
+     * Format parameter with redaction and truncation.
+     *
+     * @param value Parameter value.
+     * @return Formatted value.
+     */
+    private String param(final Object value) {
+        String str = String.valueOf(value);
+        final Pattern pattern = redactPattern;
+        if (value != null && (redactAll || pattern != null && pattern.matcher(
+                str).find())) {
+            str = REDACTED;
+        } else {
+            str = truncate(str, maxParamLength);
+        }
+        return str;
+    }
+
+    /**
+     * Truncate string adding "..." if longer than maximum.
+     *
+     * @param str String.
+     * @param max Maximum length.
+     * @return Truncated string.
+     */
+    private static String truncate(final String str, final int max) {
+        String result = str;
+        if (str != null && str.length() > max) {
+            result = str.substring(0, max) + "...";
+        }
+        return result;
+    }
+
+    /**
+     * Get threshold.
+     *
+     * @return Threshold in milliseconds.
+     */
+    public long getThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(threshold);
+    }
+
+    /**
+     * Set threshold.
+     *
+     * @param thresholdMillis Threshold in milliseconds.
+     */
+    public void setThresholdMillis(final long thresholdMillis) {
+        this.threshold = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    /**
+     * Get fraction of slow statements logged.
+     *
+     * @return Sample rate from 0 to 1.
+     */
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Set fraction of slow statements logged.
+     *
+     * @param sampleRate Sample rate from 0 to 1.
+     */
+    public void setSampleRate(final double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Are all parameters redacted?
+     *
+     * @return True if all redacted.
+     */
+    public boolean isRedactAll() {
+        return redactAll;
+    }
+
+    /**
+     * Redact all parameters and log normalized SQL without literals.
+     *
+     * @param redactAll True to redact all.
+     */
+    public void setRedactAll(final boolean redactAll) {
+        this.redactAll = redactAll;
+    }
+
+    /**
+     * Get pattern of redacted parameters.
+     *
+     * @return Pattern or null.
+     */
+    public Pattern getRedactPattern() {
+        return redactPattern;
+    }
+
+    /**
+     * Redact parameters where pattern is found in the value.
+     *
+     * @param redactPattern Pattern or null for none.
+     */
+    public void setRedactPattern(final Pattern redactPattern) {
+        this.redactPattern = redactPattern;
+    }
+
+    /**
+     * Get maximum length of each parameter.
+     *
+     * @return Maximum length.
+     */
+    public int getMaxParamLength() {
+        return maxParamLength;
+    }
+
+    /**
+     * Set maximum length of each parameter.
+     *
+     * @param maxParamLength Maximum length.
+     */
+    public void setMaxParamLength(final int maxParamLength) {
+        this.maxParamLength = maxParamLength;
+    }
+
+    /**
+     * Get maximum number of parameters logged.
+     *
+     * @return Maximum parameters.
+     */
+    public int getMaxParams() {
+        return maxParams;
+    }
+
+    /**
+     * Set maximum number of parameters logged.
+     *
+     * @param maxParams Maximum parameters.
+     */
+    public void setMaxParams(final int maxParams) {
+        this.maxParams = maxParams;
+    }
+
+    /**
+     * Get maximum length of SQL.
+     *
+     * @return Maximum length.
+     */
+    public int getMaxSqlLength() {
+        return maxSqlLength;
+    }
+
+    /**
+     * Set maximum length of SQL.
+     *
+     * @param maxSqlLength Maximum length.
+     */
+    public void setMaxSqlLength(final int maxSqlLength) {
+        this.maxSqlLength = maxSqlLength;
+    }
+
+    /**
+     * Get number of statements over threshold.
+     *
+     * @return Slow statements.
+     */
+    public long getSlowCount() {
+        return slowCount.get();
+    }
+
+    /**
+     * Get number of statements logged.
+     *
+     * @return Logged statements.
+     */
+    public long getLoggedCount() {
+        return loggedCount.get();
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shape of a SQL statement, so statements differing only in literals share
+ * statistics. Normalizing replaces string and numeric literals with
+ * {@code ?}, collapses {@code IN} lists of placeholders to {@code in (?)},
+ * removes comments, collapses whitespace and lower cases everything outside of
+ * quoted identifiers. The result is hashed with 64 bit FNV-1a into a stable
+ * id.
+ * <p>
+ * Normalizing is a single pass over the SQL. Fingerprints are cached by SQL
+ * text, so a statement seen before costs one hash map lookup. The cache is
+ * cleared when it reaches its limit, so one-off SQL can not grow it without
+ * bound.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class SqlFingerprint {
+
+    /**
+     * Maximum number of cached fingerprints.
+     */
+    public static final int MAX_CACHED = 10000;
+    /**
+     * FNV-1a 64 bit offset basis.
+     */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    /**
+     * FNV-1a 64 bit prime.
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /**
+     * Fingerprints by SQL text.
+     */
+    private static final ConcurrentMap<String, SqlFingerprint> CACHE
+            = new ConcurrentHashMap<String, SqlFingerprint>();
+    /**
+     * Normalized SQL.
+     */
+    private final String sql;
+    /**
+     * FNV-1a hash of normalized SQL.
+     */
+    private final long hash;
+
+    /**
+     * Construct fingerprint.
+     *
+     * @param sql Normalized SQL.
+     */
+    private SqlFingerprint(final String sql) {
+        this.sql = sql;
+        this.hash = hash(sql);
+    }
+
+    /**
+     * Get fingerprint of SQL.
+     *
+     * @param sql SQL statement.
+     * @return Fingerprint.
+     */
+    public static SqlFingerprint of(final String sql) {
+        final String text = String.valueOf(sql);
+        SqlFingerprint fingerprint = CACHE.get(text);
+        if (fingerprint == null) {
+            fingerprint = new SqlFingerprint(normalize(text));
+            if (CACHE.size() >= MAX_CACHED) {
+                CACHE.clear();
+            }
+            CACHE.put(text, fingerprint);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Normalize SQL.
+     *
+     * @param sql SQL statement.
+     * @return Normalized SQL.
+     */
+    public static String normalize(final String sql) {
+        final int length = sql.length();
+        final StringBuilder out = new StringBuilder(length);
+        int i = 0; //NOPMD
+        while (i < length) {
+            final char c = sql.charAt(i);
+            if (c == '\'') {
+                // String literal, '' is an escaped quote
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                    i++;
+                }
+                i++;
+                out.append('?');
+            } else if (c == '"' || c == '`') {
+                // Quoted identifier kept as is
+                final int end = sql.indexOf(c, i + 1);
+                final int next = end < 0 ? length : end + 1;
+                out.append(sql, i, next);
+                i = next;
+            } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                final int end = sql.indexOf('\n', i);
+                i = end < 0 ? length : end;
+            } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                final int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? length : end + 2;
+                space(out);
+            } else if (Character.isWhitespace(c)) {
+                space(out);
+                i++;
+            } else if (Character.isDigit(c) && !identifier(out)) {
+                // Numeric literal including decimals, exponents and hex
+                i++;
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i))
+                        || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                out.append('?');
+            } else if (c == ')') {
+                out.append(c);
+                collapseIn(out);
+                i++;
+            } else {
+                out.append(Character.toLowerCase(c));
+                i++;
+            }
+        }
+        int end = out.length();
+        if (end > 0 && out.charAt(end - 1) == ' ') {
+            out.setLength(--end);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Append single space unless output is empty or already ends in one.
+     *
+     * @param out Output.
+     */
+    private static void space(final StringBuilder out) {
+        final int length = out.length();
+        if (length > 0 && out.charAt(length - 1) != ' ') {
+            out.append(' ');
+        }
+    }
+
+    /**
+     * Is output in the middle of an identifier, so a digit belongs to it?
+     *
+     * @param out Output.
+     * @return True if previous character is part of an identifier.
+     */
+    private static boolean identifier(final StringBuilder out) {
+        final int length = out.length();
+        boolean result = false;
+        if (length > 0) {
+            final char c = out.charAt(length - 1);
+            result = Character.isLetterOrDigit(c) || c == '_' || c == '$';
+        }
+        return result;
+    }
+
+    /**
+     * Replace {@code in (?, ?, ?)} at end of output with {@code in (?)}.
+     *
+     * @param out Output ending in {@code )}.
+     */
+    private static void collapseIn(final StringBuilder out) {
+        final int close = out.length() - 1;
+        int open = close - 1;
+        while (open >= 0 && (out.charAt(open) == '?' || out.charAt(open)
+                == ',' || out.charAt(open) == ' ')) {
+            open--;
+        }
+        if (open >= 0 && out.charAt(open) == '(' && open < close - 1) {
+            int word = open - 1;
+            if (word >= 0 && out.charAt(word) == ' ') {
+                word--;
+            }
+            if (word >= 1 && out.charAt(word) == 'n' && out.charAt(word - 1)
+                    == 'i' && (word < 2 || !Character.isLetterOrDigit(out.
+                    charAt(word - 2)) && out.charAt(word - 2) != '_')) {
+                out.setLength(open + 1);
+                out.append("?)");
+            }
+        }
+    }
+
+    /**
+     * 64 bit FNV-1a hash of string.
+     *
+     * @param str String.
+     * @return Hash.
+     */
+    static long hash(final String str) {
+        long h = FNV_OFFSET;
+        final int length = str.length();
+        for (int i = 0; i < length; i++) {
+            final char c = str.charAt(i);
+            h ^= c & 0xff;
+            h *= FNV_PRIME;
+            h ^= c >>> 8;
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Get normalized SQL.
+     *
+     * @return Normalized SQL.
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * Get hash of normalized SQL.
+     *
+     * @return FNV-1a hash.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Get hash as 16 hex digits.
+     *
+     * @return Id.
+     */
+    public String getId() {
+        return String.format("%016x", hash);
+    }
+
+    /**
+     * Get normalized SQL.
+     *
+     * @return Normalized SQL.
+     */
+    @Override
+    public String toString() {
+        return sql;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * {@link com.codeferm.dbaccess.metrics.QueryMetrics} that records a
+ * {@link com.codeferm.dbaccess.metrics.LatencyHistogram}, row count, error
+ * count and time by {@link com.codeferm.dbaccess.metrics.QueryPhase} per SQL
+ * statement. Statements are keyed by their
+ * {@link com.codeferm.dbaccess.metrics.SqlFingerprint}, so SQL with inlined
+ * literals is grouped by shape. Recording is lock-free. The number of
+ * statements tracked is bounded, so ad-hoc SQL is counted under
+ * {@link #OTHER} once the limit is reached.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class StatsCollector implements QueryMetrics {
+
+    /**
+     * Default maximum number of statements tracked.
+     */
+    public static final int DEFAULT_MAX_KEYS = 10000;
+    /**
+     * Key used for statements over the limit.
+     */
+    public static final String OTHER = "<other>";
+    /**
+     * Maximum number of statements tracked.
+     */
+    private final int maxKeys;
+    /**
+     * Statistics by SQL key.
+     */
+    private final ConcurrentMap<String, Stats> stats
+            = new ConcurrentHashMap<String, Stats>();
+
+    /**
+     * Construct collector with default maximum number of statements.
+     */
+    public StatsCollector() {
+        this(DEFAULT_MAX_KEYS);
+    }
+
+    /**
+     * Construct collector.
+     *
+     * @param maxKeys Maximum number of statements tracked.
+     */
+    public StatsCollector(final int maxKeys) {
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Nothing is recorded at start.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void start(final QueryEvent event) {
+    }
+
+    /**
+     * Record event.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void end(final QueryEvent event) {
+        final Stats entry = stats(event.getFingerprint().getSql());
+        entry.histogram.record(event.getElapsed());
+        entry.rows.addAndGet(event.getRows());
+        if (event.getError() != null) {
+            entry.errors.incrementAndGet();
+        }
+        entry.addPhases(event);
+    }
+
+    /**
+     * Get key of SQL.
+     *
+     * @param sql SQL statement or {@link #OTHER}.
+     * @return Normalized SQL.
+     */
+    static String key(final String sql) {
+        String key = sql;
+        if (!OTHER.equals(sql)) {
+            key = SqlFingerprint.of(sql).getSql();
+        }
+        return key;
+    }
+
+    /**
+     * Get snapshot for SQL statement. SQL is normalized, so any statement of
+     * the same shape finds the same snapshot.
+     *
+     * @param sql SQL statement or {@link #OTHER}.
+     * @return Snapshot or null if not recorded.
+     */
+    public QueryStats getStats(final String sql) {
+        final String key = key(sql);
+        final Stats entry = stats.get(key);
+        QueryStats queryStats = null;
+        if (entry != null) {
+            queryStats = entry.snapshot(key);
+        }
+        return queryStats;
+    }
+
+    /**
+     * Get snapshots for all SQL keys ordered by total time descending, so the
+     * statements costing the most are first.
+     *
+     * @return Snapshots.
+     */
+    public List<QueryStats> getStats() {
+        final List<QueryStats> list = new ArrayList<QueryStats>(stats.size());
+        for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+            list.add(entry.getValue().snapshot(entry.getKey()));
+        }
+        Collections.sort(list, new Comparator<QueryStats>() {
+
+            @Override
+            public int compare(final QueryStats o1, final QueryStats o2) {
+                return Long.compare(o2.getTotal(), o1.getTotal());
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Remove all statistics.
+     */
+    public void reset() {
+        stats.clear();
+    }
+
+    /**
+     * Get or create statistics for SQL key.
+     *
+     * @param sql SQL key.
+     * @return Statistics.
+     */
+    private Stats stats(final String sql) {
+        Stats entry = stats.get(sql);
+        if (entry == null) {
+            String key = sql;
+            if (stats.size() >= maxKeys) {
+                key = OTHER;
+            }
+            entry = new Stats();
+            final Stats existing = stats.putIfAbsent(key, entry);
+            if (existing != null) {
+                entry = existing;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Statistics for one SQL key.
+     */
+    private static final class Stats {
+
+        /**
+         * Latency in nanoseconds.
+         */
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        /**
+         * Rows returned or updated.
+         */
+        private final AtomicLong rows = new AtomicLong();
+        /**
+         * Executions that failed.
+         */
+        private final AtomicLong errors = new AtomicLong();
+        /**
+         * Total time by phase ordinal.
+         */
+        private final AtomicLongArray phases = new AtomicLongArray(
+                QueryPhase.values().length);
+
+        /**
+         * Add phase times of event.
+         *
+         * @param event Event.
+         */
+        void addPhases(final QueryEvent event) {
+            for (QueryPhase phase : QueryPhase.values()) {
+                final long nanos = event.getPhase(phase);
+                if (nanos > 0) {
+                    phases.addAndGet(phase.ordinal(), nanos);
+                }
+            }
+        }
+
+        /**
+         * Create snapshot.
+         *
+         * @param key SQL key.
+         * @return Snapshot.
+         */
+        QueryStats snapshot(final String key) {
+            final long[] totals = new long[phases.length()];
+            for (int i = 0; i < totals.length; i++) {
+                totals[i] = phases.get(i);
+            }
+            return new QueryStats(key, histogram, errors.get(), rows.get(),
+                    totals);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import java.lang.reflect.Method;
+
+/**
+ * Timing of one {@link com.codeferm.dbaccess.transaction.Transaction}
+ * annotated method passed to
+ * {@link com.codeferm.dbaccess.metrics.TransactionMetrics}. Wall time is split
+ * into time inside the method and time completing the transaction, which is
+ * {@code commit} or {@code rollback} plus any connection clean up the
+ * interceptor does. Times are in nanoseconds. Events are used by one thread
+ * only.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class TransactionEvent {
+
+    /**
+     * Transaction executing on this thread.
+     */
+    private static final ThreadLocal<TransactionEvent> CURRENT
+            = new ThreadLocal<TransactionEvent>();
+    /**
+     * Interceptor class.
+     */
+    private final Class<?> source;
+    /**
+     * Annotated method.
+     */
+    private final Method method;
+    /**
+     * Wall clock start time in milliseconds.
+     */
+    private final long startMillis;
+    /**
+     * Start time in nanoseconds.
+     */
+    private final long start;
+    /**
+     * Time method returned or threw in nanoseconds, 0 if still running.
+     */
+    private long methodEnd;
+    /**
+     * End time in nanoseconds.
+     */
+    private long end;
+    /**
+     * True if committed.
+     */
+    private boolean committed;
+    /**
+     * Error that caused rollback or null.
+     */
+    private Throwable error;
+    /**
+     * Transaction that was current before this one.
+     */
+    private TransactionEvent previous;
+    /**
+     * Metrics started with this event, so the same instance is ended.
+     */
+    private final TransactionMetrics metrics;
+
+    /**
+     * Construct event starting now.
+     *
+     * @param source Interceptor class.
+     * @param method Annotated method.
+     */
+    public TransactionEvent(final Class<?> source, final Method method) {
+        this(source, method, null);
+    }
+
+    /**
+     * Construct event starting now that remembers the metrics it was started
+     * with.
+     *
+     * @param source Interceptor class.
+     * @param method Annotated method.
+     * @param metrics Metrics started with this event or null.
+     */
+    public TransactionEvent(final Class<?> source, final Method method,
+            final TransactionMetrics metrics) {
+        this.metrics = metrics;
+        this.source = source;
+        this.method = method;
+        this.startMillis = System.currentTimeMillis();
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Get metrics started with this event. They are ended with this event
+     * even if other metrics have been set since.
+     *
+     * @return Metrics or null.
+     */
+    public TransactionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Get transaction executing on this thread.
+     *
+     * @return Current event or null.
+     */
+    public static TransactionEvent current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Make this the current transaction of this thread.
+     */
+    public void enter() {
+        previous = CURRENT.get();
+        CURRENT.set(this);
+    }
+
+    /**
+     * Restore the transaction that was current before {@link #enter()}.
+     */
+    public void exit() {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+            previous = null;
+        }
+    }
+
+    /**
+     * Mark method finished now. Only the first call counts, so a commit that
+     * fails and is rolled back is counted as completion time.
+     */
+    public void methodDone() {
+        if (methodEnd == 0) {
+            methodEnd = System.nanoTime();
+        }
+    }
+
+    /**
+     * Mark transaction finished now.
+     *
+     * @param committed True if committed, false if rolled back.
+     * @param error Error that caused rollback or null.
+     */
+    public void finish(final boolean committed, final Throwable error) {
+        methodDone();
+        this.end = System.nanoTime();
+        this.committed = committed;
+        this.error = error;
+    }
+
+    /**
+     * Get interceptor class.
+     *
+     * @return Interceptor class.
+     */
+    public Class<?> getSource() {
+        return source;
+    }
+
+    /**
+     * Get annotated method.
+     *
+     * @return Method.
+     */
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Get name of annotated method including simple class name.
+     *
+     * @return Name such as {@code Service.save}.
+     */
+    public String getName() {
+        return String.format("%s.%s", method.getDeclaringClass().
+                getSimpleName(), method.getName());
+    }
+
+    /**
+     * Get wall clock start time.
+     *
+     * @return Milliseconds since epoch.
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Get start time.
+     *
+     * @return Nanoseconds from {@link System#nanoTime()}.
+     */
+    public long getStart() {
+        return start;
+    }
+
+    /**
+     * Get end time.
+     *
+     * @return Nanoseconds from {@link System#nanoTime()}.
+     */
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Get wall time of transaction.
+     *
+     * @return Nanoseconds.
+     */
+    public long getElapsed() {
+        return end - start;
+    }
+
+    /**
+     * Get time inside annotated method.
+     *
+     * @return Nanoseconds.
+     */
+    public long getMethodTime() {
+        return methodEnd - start;
+    }
+
+    /**
+     * Get time committing or rolling back.
+     *
+     * @return Nanoseconds.
+     */
+    public long getCompletionTime() {
+        return end - methodEnd;
+    }
+
+    /**
+     * Was the transaction committed?
+     *
+     * @return True if committed, false if rolled back.
+     */
+    public boolean isCommitted() {
+        return committed;
+    }
+
+    /**
+     * Get error that caused rollback.
+     *
+     * @return Error or null.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Get type of error without its message, which may contain SQL and
+     * parameters.
+     *
+     * @return Error type or null.
+     * @see com.codeferm.dbaccess.metrics.QueryEvent#errorType(Throwable)
+     */
+    public String getErrorType() {
+        return QueryEvent.errorType(error);
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable snapshot of statistics for one
+ * {@link com.codeferm.dbaccess.transaction.Transaction} annotated method
+ * collected by {@link com.codeferm.dbaccess.metrics.TransactionStats}. Times
+ * are in nanoseconds.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class TransactionMethodStats {
+
+    /**
+     * Method name.
+     */
+    private final String name;
+    /**
+     * Transactions committed.
+     */
+    private final long commits;
+    /**
+     * Transactions rolled back.
+     */
+    private final long rollbacks;
+    /**
+     * Mean wall time.
+     */
+    private final long mean;
+    /**
+     * 99th percentile wall time.
+     */
+    private final long p99;
+    /**
+     * Mean time inside method.
+     */
+    private final long methodMean;
+    /**
+     * Mean commit or rollback time.
+     */
+    private final long completionMean;
+
+    /**
+     * Construct snapshot.
+     *
+     * @param name Method name.
+     * @param commits Transactions committed.
+     * @param rollbacks Transactions rolled back.
+     * @param wall Wall time histogram.
+     * @param methodTotal Total time inside method.
+     */
+    public TransactionMethodStats(final String name, final long commits,
+            final long rollbacks, final LatencyHistogram wall,
+            final long methodTotal) {
+        this.name = name;
+        this.commits = commits;
+        this.rollbacks = rollbacks;
+        this.mean = (long) wall.getMean();
+        this.p99 = wall.getValueAtPercentile(99);
+        long methodMeanValue = 0;
+        long completionMeanValue = 0;
+        if (wall.getCount() > 0) {
+            methodMeanValue = methodTotal / wall.getCount();
+            completionMeanValue = (wall.getSum() - methodTotal) / wall.
+                    getCount();
+        }
+        this.methodMean = methodMeanValue;
+        this.completionMean = completionMeanValue;
+    }
+
+    /**
+     * Get method name.
+     *
+     * @return Name such as {@code Service.save}.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get transactions committed.
+     *
+     * @return Commits.
+     */
+    public long getCommits() {
+        return commits;
+    }
+
+    /**
+     * Get transactions rolled back.
+     *
+     * @return Rollbacks.
+     */
+    public long getRollbacks() {
+        return rollbacks;
+    }
+
+    /**
+     * Get mean wall time.
+     *
+     * @return Nanoseconds.
+     */
+    public long getMean() {
+        return mean;
+    }
+
+    /**
+     * Get 99th percentile wall time.
+     *
+     * @return Nanoseconds.
+     */
+    public long getP99() {
+        return p99;
+    }
+
+    /**
+     * Get mean time inside method.
+     *
+     * @return Nanoseconds.
+     */
+    public long getMethodMean() {
+        return methodMean;
+    }
+
+    /**
+     * Get mean commit or rollback time.
+     *
+     * @return Nanoseconds.
+     */
+    public long getCompletionMean() {
+        return completionMean;
+    }
+
+    /**
+     * Summary with times in microseconds.
+     *
+     * @return Summary.
+     */
+    @Override
+    public String toString() {
+        return String.format("commits=%d, rollbacks=%d, mean=%d, p99=%d, "
+                + "method=%d, completion=%d, name=%s", commits, rollbacks,
+                TimeUnit.NANOSECONDS.toMicros(mean), TimeUnit.NANOSECONDS.
+                toMicros(p99), TimeUnit.NANOSECONDS.toMicros(methodMean),
+                TimeUnit.NANOSECONDS.toMicros(completionMean), name);
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+/**
+ * Service provider interface called around every
+ * {@link com.codeferm.dbaccess.transaction.Transaction} annotated method by the
+ * transaction interceptors. Interceptors are created by Guice, so listeners
+ * are set with {@link TransactionStats#setMetrics(TransactionMetrics)}. Calls
+ * are made on the thread executing the transaction, so implementations must be
+ * thread safe and should not block. Exceptions thrown by implementations are
+ * logged and ignored.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public interface TransactionMetrics {
+
+    /**
+     * Transaction started.
+     *
+     * @param event Event with start time set.
+     */
+    void start(TransactionEvent event);
+
+    /**
+     * Transaction committed or rolled back.
+     *
+     * @param event Event with all times and outcome set.
+     */
+    void end(TransactionEvent event);
+}
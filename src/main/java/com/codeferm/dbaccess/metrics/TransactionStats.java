@@ -0,0 +1,349 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Transaction outcomes and latency published by the
+ * {@link com.codeferm.dbaccess.transaction.Transaction} interceptors. Wall time
+ * is split into time inside the annotated method and time in {@code commit}
+ * or {@code rollback}, both overall and per method, so the cost of a
+ * transaction manager is visible while running. There is one instance per
+ * class loader, since interceptors are created by Guice. Additional
+ * {@link com.codeferm.dbaccess.metrics.TransactionMetrics} can be set to
+ * receive every event.
+ *
+ * @see com.codeferm.dbaccess.metrics.DbAccessMBeans
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class TransactionStats implements TransactionStatsMBean {
+
+    /**
+     * Logger.
+     */
+    //CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger log = LoggerFactory.getLogger(//NOPMD
+            TransactionStats.class);
+    //CHECKSTYLE:ON ConstantName
+    /**
+     * Single instance.
+     */
+    private static final TransactionStats INSTANCE = new TransactionStats();
+    /**
+     * Transactions committed.
+     */
+    private final AtomicLong commits = new AtomicLong();
+    /**
+     * Transactions rolled back.
+     */
+    private final AtomicLong rollbacks = new AtomicLong();
+    /**
+     * Wall time in nanoseconds.
+     */
+    private final LatencyHistogram wall = new LatencyHistogram();
+    /**
+     * Total time inside methods in nanoseconds.
+     */
+    private final AtomicLong methodTotal = new AtomicLong();
+    /**
+     * Commit time in nanoseconds.
+     */
+    private final LatencyHistogram commitTime = new LatencyHistogram();
+    /**
+     * Rollback time in nanoseconds.
+     */
+    private final LatencyHistogram rollbackTime = new LatencyHistogram();
+    /**
+     * Statistics by method name.
+     */
+    private final ConcurrentMap<String, Stats> methods
+            = new ConcurrentHashMap<String, Stats>();
+    /**
+     * Additional listener, null for none.
+     */
+    private volatile TransactionMetrics metrics;
+
+    /**
+     * Use {@link #getInstance()}.
+     */
+    private TransactionStats() {
+    }
+
+    /**
+     * Get single instance.
+     *
+     * @return Transaction statistics.
+     */
+    public static TransactionStats getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get additional listener.
+     *
+     * @return Listener or null.
+     */
+    public TransactionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Set additional listener called for every transaction.
+     *
+     * @param metrics Listener or null for none.
+     */
+    public void setMetrics(final TransactionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Start measuring transaction. Interceptors call this before invoking the
+     * annotated method and {@link #end(TransactionEvent, boolean, Throwable)}
+     * after commit or rollback, which they must do even if the method or
+     * rollback throws.
+     *
+     * @param source Interceptor class.
+     * @param method Annotated method.
+     * @return Event.
+     */
+    public TransactionEvent begin(final Class<?> source, final Method method) {
+        final TransactionMetrics transactionMetrics = metrics;
+        final TransactionEvent event = new TransactionEvent(source, method,
+                transactionMetrics);
+        event.enter();
+        if (transactionMetrics != null) {
+            try {
+                transactionMetrics.start(event);
+            } catch (RuntimeException e) {
+                log.warn(String.format("start: %s", e.getMessage()));
+            }
+        }
+        return event;
+    }
+
+    /**
+     * Finish and record transaction.
+     *
+     * @param event Event from {@link #begin(Class, Method)}.
+     * @param committed True if committed, false if rolled back.
+     * @param error Error that caused rollback or null.
+     */
+    public void end(final TransactionEvent event, final boolean committed,
+            final Throwable error) {
+        event.finish(committed, error);
+        event.exit();
+        wall.record(event.getElapsed());
+        methodTotal.addAndGet(event.getMethodTime());
+        if (committed) {
+            commits.incrementAndGet();
+            commitTime.record(event.getCompletionTime());
+        } else {
+            rollbacks.incrementAndGet();
+            rollbackTime.record(event.getCompletionTime());
+        }
+        stats(event.getName()).record(event);
+        // End the metrics started in begin, not what is set now
+        final TransactionMetrics transactionMetrics = event.getMetrics();
+        if (transactionMetrics != null) {
+            try {
+                transactionMetrics.end(event);
+            } catch (RuntimeException e) {
+                log.warn(String.format("end: %s", e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Get snapshot for method.
+     *
+     * @param name Method name such as {@code Service.save}.
+     * @return Snapshot or null if method not recorded.
+     */
+    public TransactionMethodStats getMethodStats(final String name) {
+        final Stats entry = methods.get(name);
+        TransactionMethodStats methodStats = null;
+        if (entry != null) {
+            methodStats = entry.snapshot(name);
+        }
+        return methodStats;
+    }
+
+    /**
+     * Get snapshots for all methods ordered by total time descending.
+     *
+     * @return Snapshots.
+     */
+    public List<TransactionMethodStats> getMethodStats() {
+        final List<Map.Entry<String, Stats>> entries
+                = new ArrayList<Map.Entry<String, Stats>>(methods.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Stats>>() {
+
+            @Override
+            public int compare(final Map.Entry<String, Stats> o1,
+                    final Map.Entry<String, Stats> o2) {
+                return Long.compare(o2.getValue().wall.getSum(), o1.getValue().
+                        wall.getSum());
+            }
+        });
+        final List<TransactionMethodStats> list
+                = new ArrayList<TransactionMethodStats>(entries.size());
+        for (Map.Entry<String, Stats> entry : entries) {
+            list.add(entry.getValue().snapshot(entry.getKey()));
+        }
+        return list;
+    }
+
+    /**
+     * Get or create statistics for method. Annotated methods are a fixed set,
+     * so the map is not bounded.
+     *
+     * @param name Method name.
+     * @return Statistics.
+     */
+    private Stats stats(final String name) {
+        Stats entry = methods.get(name);
+        if (entry == null) {
+            entry = new Stats();
+            final Stats existing = methods.putIfAbsent(name, entry);
+            if (existing != null) {
+                entry = existing;
+            }
+        }
+        return entry;
+    }
+
+    @Override
+    public long getCommitCount() {
+        return commits.get();
+    }
+
+    @Override
+    public long getRollbackCount() {
+        return rollbacks.get();
+    }
+
+    @Override
+    public long getMeanMicros() {
+        return TimeUnit.NANOSECONDS.toMicros((long) wall.getMean());
+    }
+
+    @Override
+    public long getP99Micros() {
+        return TimeUnit.NANOSECONDS.toMicros(wall.getValueAtPercentile(99));
+    }
+
+    @Override
+    public long getMeanMethodMicros() {
+        final long count = wall.getCount();
+        long mean = 0;
+        if (count > 0) {
+            mean = TimeUnit.NANOSECONDS.toMicros(methodTotal.get() / count);
+        }
+        return mean;
+    }
+
+    @Override
+    public long getMeanCommitMicros() {
+        return TimeUnit.NANOSECONDS.toMicros((long) commitTime.getMean());
+    }
+
+    @Override
+    public long getP99CommitMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(commitTime.getValueAtPercentile(
+                99));
+    }
+
+    @Override
+    public long getMeanRollbackMicros() {
+        return TimeUnit.NANOSECONDS.toMicros((long) rollbackTime.getMean());
+    }
+
+    @Override
+    public String[] getMethods() {
+        final List<TransactionMethodStats> list = getMethodStats();
+        final String[] summaries = new String[list.size()];
+        for (int i = 0; i < summaries.length; i++) {
+            summaries[i] = list.get(i).toString();
+        }
+        return summaries;
+    }
+
+    @Override
+    public void reset() {
+        commits.set(0);
+        rollbacks.set(0);
+        wall.reset();
+        methodTotal.set(0);
+        commitTime.reset();
+        rollbackTime.reset();
+        methods.clear();
+    }
+
+    /**
+     * Statistics for one method.
+     */
+    private static final class Stats {
+
+        /**
+         * Wall time in nanoseconds.
+         */
+        private final LatencyHistogram wall = new LatencyHistogram();
+        /**
+         * Total time inside method in nanoseconds.
+         */
+        private final AtomicLong methodTotal = new AtomicLong();
+        /**
+         * Transactions committed.
+         */
+        private final AtomicLong commits = new AtomicLong();
+        /**
+         * Transactions rolled back.
+         */
+        private final AtomicLong rollbacks = new AtomicLong();
+
+        /**
+         * Record transaction.
+         *
+         * @param event Finished event.
+         */
+        void record(final TransactionEvent event) {
+            wall.record(event.getElapsed());
+            methodTotal.addAndGet(event.getMethodTime());
+            if (event.isCommitted()) {
+                commits.incrementAndGet();
+            } else {
+                rollbacks.incrementAndGet();
+            }
+        }
+
+        /**
+         * Create snapshot.
+         *
+         * @param name Method name.
+         * @return Snapshot.
+         */
+        TransactionMethodStats snapshot(final String name) {
+            return new TransactionMethodStats(name, commits.get(), rollbacks.
+                    get(), wall, methodTotal.get());
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+/**
+ * JMX management interface of
+ * {@link com.codeferm.dbaccess.metrics.TransactionStats}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public interface TransactionStatsMBean {
+
+    /**
+     * Get number of transactions committed.
+     *
+     * @return Commits.
+     */
+    long getCommitCount();
+
+    /**
+     * Get number of transactions rolled back.
+     *
+     * @return Rollbacks.
+     */
+    long getRollbackCount();
+
+    /**
+     * Get mean wall time of transactions.
+     *
+     * @return Microseconds.
+     */
+    long getMeanMicros();
+
+    /**
+     * Get 99th percentile wall time of transactions.
+     *
+     * @return Microseconds.
+     */
+    long getP99Micros();
+
+    /**
+     * Get mean time inside annotated methods.
+     *
+     * @return Microseconds.
+     */
+    long getMeanMethodMicros();
+
+    /**
+     * Get mean commit time.
+     *
+     * @return Microseconds.
+     */
+    long getMeanCommitMicros();
+
+    /**
+     * Get 99th percentile commit time.
+     *
+     * @return Microseconds.
+     */
+    long getP99CommitMicros();
+
+    /**
+     * Get mean rollback time.
+     *
+     * @return Microseconds.
+     */
+    long getMeanRollbackMicros();
+
+    /**
+     * Get summary of each annotated method ordered by total time descending.
+     *
+     * @return Method summaries.
+     */
+    String[] getMethods();
+
+    /**
+     * Reset statistics.
+     */
+    void reset();
+}
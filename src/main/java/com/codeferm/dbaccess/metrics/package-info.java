@@ -0,0 +1,4 @@
+/**
+ * Query metrics.
+ */
+package com.codeferm.dbaccess.metrics;
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.replay;
+
+import com.codeferm.dbaccess.metrics.QueryOperation;
+
+/**
+ * Statement or transaction boundary captured by
+ * {@link com.codeferm.dbaccess.replay.TrafficRecorder}. Offsets are
+ * nanoseconds from the start of recording, so entries can be replayed with the
+ * original spacing. Entries of one thread are in the order they ran on that
+ * thread.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class TrafficEntry {
+
+    /**
+     * Entry type.
+     */
+    public enum Kind {
+
+        /**
+         * {@link com.codeferm.dbaccess.DbAccess} operation.
+         */
+        STATEMENT,
+        /**
+         * Transaction started.
+         */
+        BEGIN,
+        /**
+         * Transaction committed.
+         */
+        COMMIT,
+        /**
+         * Transaction rolled back.
+         */
+        ROLLBACK
+    }
+
+    /**
+     * Entry type.
+     */
+    private final Kind kind;
+    /**
+     * Start in nanoseconds from start of recording.
+     */
+    private final long offset;
+    /**
+     * Id of thread.
+     */
+    private final long threadId;
+    /**
+     * Name of thread.
+     */
+    private final String threadName;
+    /**
+     * Transaction id, 0 if statement ran outside a transaction.
+     */
+    private final long transactionId;
+    /**
+     * Operation of statement, null for transaction boundaries.
+     */
+    private final QueryOperation operation;
+    /**
+     * SQL of statement or name of transaction method.
+     */
+    private final String text;
+    /**
+     * Statement parameters, array of parameter arrays for batch.
+     */
+    private final Object[] params;
+    /**
+     * Elapsed nanoseconds of statement or of commit or rollback.
+     */
+    private final long elapsed;
+    /**
+     * Rows returned or updated.
+     */
+    private final int rows;
+    /**
+     * Error message or null if successful.
+     */
+    private final String error;
+
+    /**
+     * Construct entry.
+     *
+     * @param kind Entry type.
+     * @param offset Start in nanoseconds from start of recording.
+     * @param threadId Id of thread.
+     * @param threadName Name of thread.
+     * @param transactionId Transaction id or 0.
+     * @param operation Operation of statement or null.
+     * @param text SQL of statement or name of transaction method.
+     * @param params Statement parameters or null.
+     * @param elapsed Elapsed nanoseconds.
+     * @param rows Rows returned or updated.
+     * @param error Error message or null.
+     */
+    TrafficEntry(final Kind kind, final long offset, final long threadId,
+            final String threadName, final long transactionId,
+            final QueryOperation operation, final String text,
+            final Object[] params, final long elapsed, final int rows,
+            final String error) {
+        this.kind = kind;
+        this.offset = offset;
+        this.threadId = threadId;
+        this.threadName = threadName;
+        this.transactionId = transactionId;
+        this.operation = operation;
+        this.text = text;
+        this.params = params;
+        this.elapsed = elapsed;
+        this.rows = rows;
+        this.error = error;
+    }
+
+    /**
+     * Get entry type.
+     *
+     * @return Kind.
+     */
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Get start.
+     *
+     * @return Nanoseconds from start of recording.
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Get id of thread.
+     *
+     * @return Thread id.
+     */
+    public long getThreadId() {
+        return threadId;
+    }
+
+    /**
+     * Get name of thread.
+     *
+     * @return Thread name.
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * Get transaction id.
+     *
+     * @return Transaction id, 0 if statement ran outside a transaction.
+     */
+    public long getTransactionId() {
+        return transactionId;
+    }
+
+    /**
+     * Get operation of statement.
+     *
+     * @return Operation or null for transaction boundaries.
+     */
+    public QueryOperation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Get SQL of statement.
+     *
+     * @return SQL or null for transaction boundaries.
+     */
+    public String getSql() {
+        return kind == Kind.STATEMENT ? text : null;
+    }
+
+    /**
+     * Get name of transaction method.
+     *
+     * @return Name such as {@code Service.save} or null for statements.
+     */
+    public String getName() {
+        return kind == Kind.STATEMENT ? null : text;
+    }
+
+    /**
+     * Get statement parameters.
+     *
+     * @return Parameters, array of parameter arrays for batch.
+     */
+    public Object[] getParams() {
+        return params;
+    }
+
+    /**
+     * Get elapsed time of statement or of commit or rollback.
+     *
+     * @return Nanoseconds, 0 for {@link Kind#BEGIN}.
+     */
+    public long getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Get rows returned or updated.
+     *
+     * @return Rows.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Get error message.
+     *
+     * @return Message or null if successful.
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Get text of entry.
+     *
+     * @return SQL of statement or name of transaction method.
+     */
+    String getText() {
+        return text;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s@%d[thread=%s, tx=%d, %s]", kind, offset,
+                threadName, transactionId, text);
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.replay;
+
+import com.codeferm.dbaccess.metrics.QueryOperation;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read {@link com.codeferm.dbaccess.replay.TrafficEntry} written by
+ * {@link com.codeferm.dbaccess.replay.TrafficLogWriter}. A log cut short,
+ * for example by a crash while recording, ends at the last complete entry.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class TrafficLogReader implements Closeable {
+
+    /**
+     * Input.
+     */
+    private final DataInputStream in;
+    /**
+     * Wall clock start of recording.
+     */
+    private final long startMillis;
+    /**
+     * Strings by number.
+     */
+    private final List<String> symbols = new ArrayList<String>();
+    /**
+     * Offset of previous entry.
+     */
+    private long lastOffset;
+
+    /**
+     * Construct reader opening file.
+     *
+     * @param file Log file.
+     * @throws IOException Possible exception.
+     */
+    public TrafficLogReader(final File file) throws IOException {
+        this(new FileInputStream(file));
+    }
+
+    /**
+     * Construct reader and read header.
+     *
+     * @param in Input.
+     * @throws IOException If input is not a traffic log.
+     */
+    public TrafficLogReader(final InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        if (this.in.readInt() != TrafficLogWriter.MAGIC) {
+            throw new IOException("Not a traffic log");
+        }
+        final int version = this.in.readUnsignedByte();
+        if (version != TrafficLogWriter.VERSION) {
+            throw new IOException(String.format(
+                    "Unsupported traffic log version %d", version));
+        }
+        this.startMillis = this.in.readLong();
+    }
+
+    /**
+     * Get wall clock start of recording.
+     *
+     * @return Milliseconds since epoch.
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Read next entry.
+     *
+     * @return Entry or null at end of log.
+     * @throws IOException Possible exception.
+     */
+    public TrafficEntry read() throws IOException {
+        TrafficEntry entry = null;
+        final int kindOrdinal = in.read();
+        if (kindOrdinal >= TrafficEntry.Kind.values().length) {
+            throw new IOException(String.format("Unknown entry kind %d",
+                    kindOrdinal));
+        }
+        if (kindOrdinal >= 0) {
+            try {
+                entry = readEntry(TrafficEntry.Kind.values()[kindOrdinal]);
+            } catch (EOFException e) {
+                entry = null;
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Read remaining fields of entry.
+     *
+     * @param kind Entry type.
+     * @return Entry.
+     * @throws IOException Possible exception.
+     */
+    private TrafficEntry readEntry(final TrafficEntry.Kind kind) throws
+            IOException {
+        final long offset = lastOffset + readSignedLong();
+        lastOffset = offset;
+        final long threadId = readLong();
+        final String threadName = readSymbol();
+        final long transactionId = readLong();
+        final String text = readSymbol();
+        QueryOperation operation = null;
+        Object[] params = null;
+        long elapsed = 0;
+        int rows = 0;
+        String error = null;
+        switch (kind) {
+            case STATEMENT:
+                operation = QueryOperation.values()[in.readUnsignedByte()];
+                params = readArray();
+                elapsed = readLong();
+                rows = (int) readSignedLong();
+                error = readText();
+                break;
+            case BEGIN:
+                break;
+            default:
+                elapsed = readLong();
+                error = readText();
+        }
+        return new TrafficEntry(kind, offset, threadId, threadName,
+                transactionId, operation, text, params, elapsed, rows, error);
+    }
+
+    /**
+     * Read unsigned variable length integer.
+     *
+     * @return Value.
+     * @throws IOException Possible exception.
+     */
+    private long readLong() throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Read zigzag encoded variable length integer.
+     *
+     * @return Value.
+     * @throws IOException Possible exception.
+     */
+    private long readSignedLong() throws IOException {
+        final long value = readLong();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Read string or null.
+     *
+     * @return String or null.
+     * @throws IOException Possible exception.
+     */
+    private String readText() throws IOException {
+        final int length = (int) readLong();
+        String value = null;
+        if (length > 0) {
+            final byte[] bytes = new byte[length - 1];
+            in.readFully(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    /**
+     * Read string written once and then by number.
+     *
+     * @return String or null.
+     * @throws IOException Possible exception.
+     */
+    private String readSymbol() throws IOException {
+        final int number = (int) readLong();
+        String value;
+        if (number == 0) {
+            value = null;
+        } else if (number == 1) {
+            value = readText();
+            symbols.add(value);
+        } else {
+            value = symbols.get(number - 2);
+        }
+        return value;
+    }
+
+    /**
+     * Read array or null.
+     *
+     * @return Values or null.
+     * @throws IOException Possible exception.
+     */
+    private Object[] readArray() throws IOException {
+        final int length = (int) readLong();
+        Object[] values = null;
+        if (length > 0) {
+            values = new Object[length - 1];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = readValue();
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Read length and bytes.
+     *
+     * @return Bytes.
+     * @throws IOException Possible exception.
+     */
+    private byte[] readBytes() throws IOException {
+        final byte[] bytes = new byte[(int) readLong()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    /**
+     * Read tagged value.
+     *
+     * @return Value.
+     * @throws IOException Possible exception.
+     */
+    private Object readValue() throws IOException {
+        final int tag = in.readUnsignedByte();
+        Object value;
+        switch (tag) {
+            case TrafficLogWriter.TAG_NULL:
+                value = null;
+                break;
+            case TrafficLogWriter.TAG_STRING:
+                value = readText();
+                break;
+            case TrafficLogWriter.TAG_INTEGER:
+                value = (int) readSignedLong();
+                break;
+            case TrafficLogWriter.TAG_LONG:
+                value = readSignedLong();
+                break;
+            case TrafficLogWriter.TAG_SHORT:
+                value = (short) readSignedLong();
+                break;
+            case TrafficLogWriter.TAG_BYTE:
+                value = in.readByte();
+                break;
+            case TrafficLogWriter.TAG_TRUE:
+                value = Boolean.TRUE;
+                break;
+            case TrafficLogWriter.TAG_FALSE:
+                value = Boolean.FALSE;
+                break;
+            case TrafficLogWriter.TAG_FLOAT:
+                value = in.readFloat();
+                break;
+            case TrafficLogWriter.TAG_DOUBLE:
+                value = in.readDouble();
+                break;
+            case TrafficLogWriter.TAG_BIG_DECIMAL:
+                final int scale = (int) readSignedLong();
+                value = new BigDecimal(new BigInteger(readBytes()), scale);
+                break;
+            case TrafficLogWriter.TAG_BIG_INTEGER:
+                value = new BigInteger(readBytes());
+                break;
+            case TrafficLogWriter.TAG_TIMESTAMP:
+                final Timestamp timestamp = new Timestamp(readSignedLong());
+                timestamp.setNanos((int) readLong());
+                value = timestamp;
+                break;
+            case TrafficLogWriter.TAG_DATE:
+                value = new Date(readSignedLong());
+                break;
+            case TrafficLogWriter.TAG_TIME:
+                value = new Time(readSignedLong());
+                break;
+            case TrafficLogWriter.TAG_UTIL_DATE:
+                value = new java.util.Date(readSignedLong());
+                break;
+            case TrafficLogWriter.TAG_BYTES:
+                value = readBytes();
+                break;
+            case TrafficLogWriter.TAG_ARRAY:
+                value = readArray();
+                break;
+            default:
+                throw new IOException(String.format("Unknown value tag %d",
+                        tag));
+        }
+        return value;
+    }
+
+    /**
+     * Close input.
+     *
+     * @throws IOException Possible exception.
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,385 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Write {@link com.codeferm.dbaccess.replay.TrafficEntry} to a compact binary
+ * log. The log starts with magic {@code DBTR}, a version byte and the wall
+ * clock start of recording in milliseconds. Each entry is a kind byte followed
+ * by variable length integers, so small values take one byte. Offsets are
+ * stored as the difference from the previous entry. SQL, thread names and
+ * transaction names are written once and then referred to by number.
+ * Parameters are tagged by type, so they are read back as the same Java
+ * types. Values of other types are written as their string.
+ * <p>
+ * Not thread safe, {@link com.codeferm.dbaccess.replay.TrafficRecorder}
+ * writes from one thread.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class TrafficLogWriter implements Closeable {
+
+    /**
+     * Magic number "DBTR".
+     */
+    static final int MAGIC = 0x44425452;
+    /**
+     * Format version.
+     */
+    static final int VERSION = 1;
+    /**
+     * Null value.
+     */
+    static final int TAG_NULL = 0;
+    /**
+     * String.
+     */
+    static final int TAG_STRING = 1;
+    /**
+     * Integer.
+     */
+    static final int TAG_INTEGER = 2;
+    /**
+     * Long.
+     */
+    static final int TAG_LONG = 3;
+    /**
+     * Short.
+     */
+    static final int TAG_SHORT = 4;
+    /**
+     * Byte.
+     */
+    static final int TAG_BYTE = 5;
+    /**
+     * Boolean true.
+     */
+    static final int TAG_TRUE = 6;
+    /**
+     * Boolean false.
+     */
+    static final int TAG_FALSE = 7;
+    /**
+     * Float.
+     */
+    static final int TAG_FLOAT = 8;
+    /**
+     * Double.
+     */
+    static final int TAG_DOUBLE = 9;
+    /**
+     * BigDecimal.
+     */
+    static final int TAG_BIG_DECIMAL = 10;
+    /**
+     * BigInteger.
+     */
+    static final int TAG_BIG_INTEGER = 11;
+    /**
+     * java.sql.Timestamp.
+     */
+    static final int TAG_TIMESTAMP = 12;
+    /**
+     * java.sql.Date.
+     */
+    static final int TAG_DATE = 13;
+    /**
+     * java.sql.Time.
+     */
+    static final int TAG_TIME = 14;
+    /**
+     * java.util.Date.
+     */
+    static final int TAG_UTIL_DATE = 15;
+    /**
+     * byte[].
+     */
+    static final int TAG_BYTES = 16;
+    /**
+     * Object[], used for batch parameters.
+     */
+    static final int TAG_ARRAY = 17;
+    /**
+     * Output.
+     */
+    private final DataOutputStream out;
+    /**
+     * Numbers of strings already written.
+     */
+    private final Map<String, Integer> symbols = new HashMap<String, Integer>();
+    /**
+     * Offset of previous entry.
+     */
+    private long lastOffset;
+    /**
+     * Entries written.
+     */
+    private long count;
+
+    /**
+     * Construct writer creating file.
+     *
+     * @param file Log file, replaced if it exists.
+     * @param startMillis Wall clock start of recording.
+     * @throws IOException Possible exception.
+     */
+    public TrafficLogWriter(final File file, final long startMillis) throws
+            IOException {
+        this(new FileOutputStream(file), startMillis);
+    }
+
+    /**
+     * Construct writer and write header.
+     *
+     * @param out Output.
+     * @param startMillis Wall clock start of recording.
+     * @throws IOException Possible exception.
+     */
+    public TrafficLogWriter(final OutputStream out, final long startMillis)
+            throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+        this.out.writeLong(startMillis);
+    }
+
+    /**
+     * Write entry.
+     *
+     * @param entry Entry.
+     * @throws IOException Possible exception.
+     */
+    public void write(final TrafficEntry entry) throws IOException {
+        out.writeByte(entry.getKind().ordinal());
+        writeSignedLong(entry.getOffset() - lastOffset);
+        lastOffset = entry.getOffset();
+        writeLong(entry.getThreadId());
+        writeSymbol(entry.getThreadName());
+        writeLong(entry.getTransactionId());
+        writeSymbol(entry.getText());
+        switch (entry.getKind()) {
+            case STATEMENT:
+                out.writeByte(entry.getOperation().ordinal());
+                writeArray(entry.getParams());
+                writeLong(entry.getElapsed());
+                writeSignedLong(entry.getRows());
+                writeText(entry.getError());
+                break;
+            case BEGIN:
+                break;
+            default:
+                writeLong(entry.getElapsed());
+                writeText(entry.getError());
+        }
+        count++;
+    }
+
+    /**
+     * Write unsigned variable length integer, 7 bits per byte.
+     *
+     * @param value Value, negative values take ten bytes.
+     * @throws IOException Possible exception.
+     */
+    private void writeLong(final long value) throws IOException {
+        long rest = value;
+        while ((rest & ~0x7FL) != 0) {
+            out.writeByte((int) (rest & 0x7F) | 0x80);
+            rest >>>= 7;
+        }
+        out.writeByte((int) rest);
+    }
+
+    /**
+     * Write signed variable length integer with zigzag encoding, so small
+     * negative values are short too.
+     *
+     * @param value Value.
+     * @throws IOException Possible exception.
+     */
+    private void writeSignedLong(final long value) throws IOException {
+        writeLong((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Write string or null.
+     *
+     * @param value String or null.
+     * @throws IOException Possible exception.
+     */
+    private void writeText(final String value) throws IOException {
+        if (value == null) {
+            writeLong(0);
+        } else {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeLong(bytes.length + 1L);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Write string once and then by number. 0 is null, 1 is a new string
+     * that follows and higher values are the number of a string already
+     * written plus 2.
+     *
+     * @param value String or null.
+     * @throws IOException Possible exception.
+     */
+    private void writeSymbol(final String value) throws IOException {
+        if (value == null) {
+            writeLong(0);
+        } else {
+            final Integer number = symbols.get(value);
+            if (number == null) {
+                writeLong(1);
+                writeText(value);
+                symbols.put(value, symbols.size());
+            } else {
+                writeLong(number + 2L);
+            }
+        }
+    }
+
+    /**
+     * Write array or null.
+     *
+     * @param values Values or null.
+     * @throws IOException Possible exception.
+     */
+    private void writeArray(final Object[] values) throws IOException {
+        if (values == null) {
+            writeLong(0);
+        } else {
+            writeLong(values.length + 1L);
+            for (Object value : values) {
+                writeValue(value);
+            }
+        }
+    }
+
+    /**
+     * Write tagged value.
+     *
+     * @param value Value.
+     * @throws IOException Possible exception.
+     */
+    private void writeValue(final Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof String) {
+            out.writeByte(TAG_STRING);
+            writeText((String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TAG_INTEGER);
+            writeSignedLong((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(TAG_LONG);
+            writeSignedLong((Long) value);
+        } else if (value instanceof Short) {
+            out.writeByte(TAG_SHORT);
+            writeSignedLong((Short) value);
+        } else if (value instanceof Byte) {
+            out.writeByte(TAG_BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TAG_TRUE : TAG_FALSE);
+        } else if (value instanceof Float) {
+            out.writeByte(TAG_FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Double) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof BigDecimal) {
+            final BigDecimal decimal = (BigDecimal) value;
+            out.writeByte(TAG_BIG_DECIMAL);
+            writeSignedLong(decimal.scale());
+            writeBytes(decimal.unscaledValue().toByteArray());
+        } else if (value instanceof BigInteger) {
+            out.writeByte(TAG_BIG_INTEGER);
+            writeBytes(((BigInteger) value).toByteArray());
+        } else if (value instanceof Timestamp) {
+            final Timestamp timestamp = (Timestamp) value;
+            out.writeByte(TAG_TIMESTAMP);
+            writeSignedLong(timestamp.getTime());
+            writeLong(timestamp.getNanos());
+        } else if (value instanceof Date) {
+            out.writeByte(TAG_DATE);
+            writeSignedLong(((Date) value).getTime());
+        } else if (value instanceof Time) {
+            out.writeByte(TAG_TIME);
+            writeSignedLong(((Time) value).getTime());
+        } else if (value instanceof java.util.Date) {
+            out.writeByte(TAG_UTIL_DATE);
+            writeSignedLong(((java.util.Date) value).getTime());
+        } else if (value instanceof byte[]) {
+            out.writeByte(TAG_BYTES);
+            writeBytes((byte[]) value);
+        } else if (value instanceof Object[]) {
+            out.writeByte(TAG_ARRAY);
+            writeArray((Object[]) value);
+        } else {
+            out.writeByte(TAG_STRING);
+            writeText(value.toString());
+        }
+    }
+
+    /**
+     * Write length and bytes.
+     *
+     * @param bytes Bytes.
+     * @throws IOException Possible exception.
+     */
+    private void writeBytes(final byte[] bytes) throws IOException {
+        writeLong(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Flush buffered entries to output.
+     *
+     * @throws IOException Possible exception.
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Get number of entries written.
+     *
+     * @return Entries.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Flush and close output.
+     *
+     * @throws IOException Possible exception.
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
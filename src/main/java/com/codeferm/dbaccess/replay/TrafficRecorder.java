@@ -0,0 +1,375 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.replay;
+
+import com.codeferm.dbaccess.metrics.QueryEvent;
+import com.codeferm.dbaccess.metrics.QueryMetrics;
+import com.codeferm.dbaccess.metrics.QueryOperation;
+import com.codeferm.dbaccess.metrics.TransactionEvent;
+import com.codeferm.dbaccess.metrics.TransactionMetrics;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Record every {@link com.codeferm.dbaccess.DbAccess} statement and
+ * {@link com.codeferm.dbaccess.transaction.Transaction} boundary to a
+ * {@link com.codeferm.dbaccess.replay.TrafficLogWriter}, so production
+ * traffic can be replayed later against another implementation or database.
+ * Set it with {@code DbAccess.setMetrics} and
+ * {@code TransactionStats.getInstance().setMetrics}.
+ * <p>
+ * Entries go into a bounded ring buffer and are written by a daemon thread,
+ * so statements never wait on I/O. When the buffer is full new entries are
+ * dropped and counted. If a write fails the rest of its batch is dropped and
+ * counted too. Parameters are copied, but values are not, so do not change
+ * parameter objects after passing them to {@code DbAccess}. Call
+ * {@link #close()} to write what is left.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class TrafficRecorder implements QueryMetrics,
+        TransactionMetrics {
+
+    /**
+     * Logger.
+     */
+    //CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger log = LoggerFactory.getLogger(//NOPMD
+            TrafficRecorder.class);
+    //CHECKSTYLE:ON ConstantName
+    /**
+     * Default ring buffer capacity.
+     */
+    public static final int DEFAULT_CAPACITY = 65536;
+    /**
+     * Most entries written before flush.
+     */
+    private static final int BATCH = 512;
+    /**
+     * Writer thread poll interval in milliseconds.
+     */
+    private static final long POLL = 100;
+    /**
+     * Time close waits for buffered entries to be written in milliseconds.
+     */
+    private static final long CLOSE_WAIT = TimeUnit.SECONDS.toMillis(10);
+    /**
+     * Time close waits for interrupted writer thread in milliseconds.
+     */
+    private static final long INTERRUPT_WAIT = TimeUnit.SECONDS.toMillis(1);
+    /**
+     * Entries waiting to be written.
+     */
+    private final BlockingQueue<TrafficEntry> buffer;
+    /**
+     * Log writer.
+     */
+    private final TrafficLogWriter writer;
+    /**
+     * Writer thread.
+     */
+    private final Thread thread;
+    /**
+     * Start of recording from {@link System#nanoTime()}.
+     */
+    private final long startNanos;
+    /**
+     * Last transaction id.
+     */
+    private final AtomicLong transactionIds = new AtomicLong();
+    /**
+     * Entries dropped because buffer was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * Entries written.
+     */
+    private final AtomicLong written = new AtomicLong();
+    /**
+     * Transactions open on this thread.
+     */
+    private final ThreadLocal<Open> open = new ThreadLocal<Open>();
+    /**
+     * Set when closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Construct recorder with default capacity.
+     *
+     * @param writer Log writer.
+     */
+    public TrafficRecorder(final TrafficLogWriter writer) {
+        this(writer, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct recorder and start writer thread.
+     *
+     * @param writer Log writer.
+     * @param capacity Ring buffer capacity.
+     */
+    public TrafficRecorder(final TrafficLogWriter writer, final int capacity) {
+        this.writer = writer;
+        this.startNanos = System.nanoTime();
+        this.buffer = new ArrayBlockingQueue<TrafficEntry>(capacity);
+        this.thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                writeLoop();
+            }
+        }, "dbaccess-traffic-writer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Nothing to do at start, statements are recorded when finished.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void start(final QueryEvent event) {
+    }
+
+    /**
+     * Record statement under current transaction.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void end(final QueryEvent event) {
+        final Open current = open.get();
+        long transactionId = 0;
+        if (current != null) {
+            transactionId = current.id;
+        }
+        final Thread caller = Thread.currentThread();
+        record(new TrafficEntry(TrafficEntry.Kind.STATEMENT, event.getStart()
+                - startNanos, caller.getId(), caller.getName(), transactionId,
+                event.getOperation(), event.getSql(), copy(event.
+                getOperation(), event.getParams()), event.getElapsed(), event.
+                getRows(), message(event.getError())));
+    }
+
+    /**
+     * Record transaction start, so statements on this thread belong to it.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void start(final TransactionEvent event) {
+        final Open current = new Open(event, transactionIds.incrementAndGet(),
+                open.get());
+        open.set(current);
+        final Thread caller = Thread.currentThread();
+        record(new TrafficEntry(TrafficEntry.Kind.BEGIN, event.getStart()
+                - startNanos, caller.getId(), caller.getName(), current.id,
+                null, event.getName(), null, 0, 0, null));
+    }
+
+    /**
+     * Record commit or rollback. The entry starts when the method returned
+     * and its elapsed time is the commit or rollback.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void end(final TransactionEvent event) {
+        final Open top = open.get();
+        if (top != null && top.event == event) {
+            if (top.next == null) {
+                open.remove();
+            } else {
+                open.set(top.next);
+            }
+            TrafficEntry.Kind kind = TrafficEntry.Kind.ROLLBACK;
+            if (event.isCommitted()) {
+                kind = TrafficEntry.Kind.COMMIT;
+            }
+            final Thread caller = Thread.currentThread();
+            record(new TrafficEntry(kind, event.getStart() + event.
+                    getMethodTime() - startNanos, caller.getId(), caller.
+                    getName(), top.id, null, event.getName(), null, event.
+                    getCompletionTime(), 0, message(event.getError())));
+        }
+    }
+
+    /**
+     * Copy parameters, so callers reusing arrays do not change what is
+     * recorded.
+     *
+     * @param operation Operation.
+     * @param params Parameters, array of parameter arrays for batch.
+     * @return Copy or null.
+     */
+    private static Object[] copy(final QueryOperation operation,
+            final Object[] params) {
+        Object[] copy = null;
+        if (params != null) {
+            copy = params.clone();
+            if (operation == QueryOperation.BATCH) {
+                for (int i = 0; i < copy.length; i++) {
+                    if (copy[i] instanceof Object[]) {
+                        copy[i] = ((Object[]) copy[i]).clone();
+                    }
+                }
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Get error message.
+     *
+     * @param error Error or null.
+     * @return Message or null if no error.
+     */
+    private static String message(final Throwable error) {
+        String message = null;
+        if (error != null) {
+            message = String.valueOf(error.getMessage());
+        }
+        return message;
+    }
+
+    /**
+     * Add entry to buffer or count it as dropped.
+     *
+     * @param entry Entry.
+     */
+    private void record(final TrafficEntry entry) {
+        if (closed || !buffer.offer(entry)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Write buffered entries until closed and buffer is empty, or until
+     * interrupted. Entries not passed to the writer are counted as dropped.
+     */
+    private void writeLoop() {
+        final List<TrafficEntry> batch = new ArrayList<TrafficEntry>(BATCH);
+        boolean interrupted = false;
+        while (!interrupted && (!closed || !buffer.isEmpty())) {
+            int count = 0;
+            try {
+                final TrafficEntry entry = buffer.poll(POLL,
+                        TimeUnit.MILLISECONDS);
+                if (entry != null) {
+                    batch.add(entry);
+                    buffer.drainTo(batch, BATCH - 1);
+                    for (TrafficEntry item : batch) {
+                        writer.write(item);
+                        count++;
+                    }
+                    writer.flush();
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } catch (IOException | RuntimeException e) {
+                log.warn(String.format("Traffic log write failed: %s", e.
+                        getMessage()));
+            } finally {
+                written.addAndGet(count);
+                dropped.addAndGet(batch.size() - count);
+                batch.clear();
+            }
+        }
+        dropped.addAndGet(buffer.size());
+        buffer.clear();
+    }
+
+    /**
+     * Stop recording, write buffered entries and close writer. If the writer
+     * thread does not finish it is interrupted, and the writer is left open
+     * if the thread is still writing.
+     */
+    public void close() {
+        closed = true;
+        try {
+            thread.join(CLOSE_WAIT);
+            if (thread.isAlive()) {
+                thread.interrupt();
+                thread.join(INTERRUPT_WAIT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) {
+            log.warn("Traffic writer thread did not stop, writer not closed");
+        } else {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                log.warn(String.format("Traffic log close failed: %s", e.
+                        getMessage()));
+            }
+        }
+    }
+
+    /**
+     * Get number of entries dropped because buffer was full, recorder closed
+     * or a write failed.
+     *
+     * @return Dropped entries.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Get number of entries written.
+     *
+     * @return Written entries.
+     */
+    public long getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * Transaction open on a thread.
+     */
+    private static final class Open {
+
+        /**
+         * Transaction recorded.
+         */
+        private final TransactionEvent event;
+        /**
+         * Transaction id.
+         */
+        private final long id;
+        /**
+         * Enclosing transaction or null.
+         */
+        private final Open next;
+
+        /**
+         * Construct open transaction.
+         *
+         * @param event Transaction recorded.
+         * @param id Transaction id.
+         * @param next Enclosing transaction or null.
+         */
+        Open(final TransactionEvent event, final long id, final Open next) {
+            this.event = event;
+            this.id = id;
+            this.next = next;
+        }
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * Capture of statements and transactions to a binary log for replay.
+ */
+package com.codeferm.dbaccess.replay;
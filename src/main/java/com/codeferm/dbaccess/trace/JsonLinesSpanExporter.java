@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.trace;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write spans to a file in the OpenTelemetry protocol JSON file format. Each
+ * batch is one line holding an {@code ExportTraceServiceRequest}, that is
+ * {@code resourceSpans} with the service name resource and one
+ * {@code scopeSpans} entry, so the file can be loaded by OTLP JSON file
+ * receivers. The file is appended to.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class JsonLinesSpanExporter implements SpanExporter {
+
+    /**
+     * Default service name of resource.
+     */
+    public static final String DEFAULT_SERVICE_NAME = "dbaccess";
+    /**
+     * Instrumentation scope name.
+     */
+    private static final String SCOPE_NAME = "com.codeferm.dbaccess";
+    /**
+     * Output.
+     */
+    private final Writer writer;
+    /**
+     * Start of each line up to the first span.
+     */
+    private final String prefix;
+
+    /**
+     * Construct exporter appending to file.
+     *
+     * @param file Output file.
+     * @throws IOException Possible exception.
+     */
+    public JsonLinesSpanExporter(final File file) throws IOException {
+        this(new OutputStreamWriter(new FileOutputStream(file, true),
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Construct exporter writing to writer with default service name.
+     *
+     * @param writer Output.
+     */
+    public JsonLinesSpanExporter(final Writer writer) {
+        this(writer, DEFAULT_SERVICE_NAME);
+    }
+
+    /**
+     * Construct exporter writing to writer.
+     *
+     * @param writer Output.
+     * @param serviceName Value of {@code service.name} resource attribute.
+     */
+    public JsonLinesSpanExporter(final Writer writer,
+            final String serviceName) {
+        this.writer = new BufferedWriter(writer);
+        final StringBuilder sb = new StringBuilder(128);
+        sb.append("{\"resourceSpans\":[{\"resource\":{\"attributes\":[").
+                append("{\"key\":\"service.name\",\"value\":");
+        value(serviceName, sb);
+        sb.append("}]},\"scopeSpans\":[{\"scope\":{\"name\":");
+        string(SCOPE_NAME, sb);
+        sb.append("},\"spans\":[");
+        this.prefix = sb.toString();
+    }
+
+    /**
+     * Write spans as one line and flush.
+     *
+     * @param spans Spans.
+     * @throws IOException Possible exception.
+     */
+    @Override
+    public void export(final List<Span> spans) throws IOException {
+        if (!spans.isEmpty()) {
+            final StringBuilder sb = new StringBuilder(256 * spans.size());
+            sb.append(prefix);
+            boolean first = true;
+            for (Span span : spans) {
+                if (!first) {
+                    sb.append(',');
+                }
+                first = false;
+                format(span, sb);
+            }
+            sb.append("]}]}]}\n");
+            writer.write(sb.toString());
+            writer.flush();
+        }
+    }
+
+    /**
+     * Close writer.
+     *
+     * @throws IOException Possible exception.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Format span as JSON.
+     *
+     * @param span Span.
+     * @param sb Output.
+     */
+    static void format(final Span span, final StringBuilder sb) {
+        sb.append("{\"traceId\":\"").append(span.getTraceId()).append(
+                "\",\"spanId\":\"").append(span.getSpanId()).append('"');
+        if (span.getParentSpanId() != null) {
+            sb.append(",\"parentSpanId\":\"").append(span.getParentSpanId()).
+                    append('"');
+        }
+        sb.append(",\"name\":");
+        string(span.getName(), sb);
+        sb.append(",\"kind\":\"SPAN_KIND_CLIENT\",\"startTimeUnixNano\":\"").
+                append(span.getStartNanos()).append(
+                "\",\"endTimeUnixNano\":\"").append(span.getEndNanos()).append(
+                "\",\"attributes\":[");
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : span.getAttributes().
+                entrySet()) {
+            if (!first) {
+                sb.append(',');
+            }
+            first = false;
+            sb.append("{\"key\":");
+            string(entry.getKey(), sb);
+            sb.append(",\"value\":");
+            value(entry.getValue(), sb);
+            sb.append('}');
+        }
+        sb.append("],\"status\":{");
+        if (span.getError() == null) {
+            sb.append("\"code\":\"STATUS_CODE_OK\"");
+        } else {
+            sb.append("\"code\":\"STATUS_CODE_ERROR\",\"message\":");
+            string(span.getError(), sb);
+        }
+        sb.append("}}");
+    }
+
+    /**
+     * Format typed attribute value.
+     *
+     * @param value Value.
+     * @param sb Output.
+     */
+    private static void value(final Object value, final StringBuilder sb) {
+        if (value instanceof Boolean) {
+            sb.append("{\"boolValue\":").append(value).append('}');
+        } else if (value instanceof Integer || value instanceof Long) {
+            // OTLP JSON encodes 64 bit integers as strings
+            sb.append("{\"intValue\":\"").append(value).append("\"}");
+        } else if (value instanceof Number) {
+            sb.append("{\"doubleValue\":").append(value).append('}');
+        } else {
+            sb.append("{\"stringValue\":");
+            string(String.valueOf(value), sb);
+            sb.append('}');
+        }
+    }
+
+    /**
+     * Format JSON string with escapes.
+     *
+     * @param str String.
+     * @param sb Output.
+     */
+    private static void string(final String str, final StringBuilder sb) {
+        sb.append('"');
+        final int length = str.length();
+        for (int i = 0; i < length; i++) {
+            final char c = str.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        sb.append('"');
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.trace;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable timed operation in a trace, modeled on the OpenTelemetry span.
+ * Statement spans are children of the transaction span they ran in. Ids are
+ * lower case hex, 32 digits for trace and 16 for span.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class Span {
+
+    /**
+     * Trace id.
+     */
+    private final String traceId;
+    /**
+     * Span id.
+     */
+    private final String spanId;
+    /**
+     * Parent span id or null for root.
+     */
+    private final String parentSpanId;
+    /**
+     * Span name.
+     */
+    private final String name;
+    /**
+     * Start time in nanoseconds since epoch.
+     */
+    private final long startNanos;
+    /**
+     * End time in nanoseconds since epoch.
+     */
+    private final long endNanos;
+    /**
+     * Attributes in insertion order.
+     */
+    private final Map<String, Object> attributes;
+    /**
+     * Error type or null if successful.
+     */
+    private final String error;
+
+    /**
+     * Construct span.
+     *
+     * @param traceId Trace id.
+     * @param spanId Span id.
+     * @param parentSpanId Parent span id or null for root.
+     * @param name Span name.
+     * @param startNanos Start time in nanoseconds since epoch.
+     * @param endNanos End time in nanoseconds since epoch.
+     * @param attributes Attributes, values are strings, numbers or booleans.
+     * @param error Error type or null if successful. Do not pass exception
+     * messages, they may contain SQL and parameters.
+     */
+    public Span(final String traceId, final String spanId,
+            final String parentSpanId, final String name, final long startNanos,
+            final long endNanos, final Map<String, Object> attributes,
+            final String error) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.startNanos = startNanos;
+        this.endNanos = endNanos;
+        this.attributes = Collections.unmodifiableMap(
+                new LinkedHashMap<String, Object>(attributes));
+        this.error = error;
+    }
+
+    /**
+     * Get trace id.
+     *
+     * @return Trace id.
+     */
+    public String getTraceId() {
+        return traceId;
+    }
+
+    /**
+     * Get span id.
+     *
+     * @return Span id.
+     */
+    public String getSpanId() {
+        return spanId;
+    }
+
+    /**
+     * Get parent span id.
+     *
+     * @return Parent span id or null for root.
+     */
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    /**
+     * Get span name.
+     *
+     * @return Name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get start time.
+     *
+     * @return Nanoseconds since epoch.
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Get end time.
+     *
+     * @return Nanoseconds since epoch.
+     */
+    public long getEndNanos() {
+        return endNanos;
+    }
+
+    /**
+     * Get attributes.
+     *
+     * @return Unmodifiable attributes.
+     */
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * Get error type, used as status message.
+     *
+     * @return Error or null if successful.
+     */
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.trace;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Service provider interface that writes finished spans. Called only from the
+ * export thread of {@link com.codeferm.dbaccess.trace.SpanRecorder}, so
+ * implementations need not be thread safe and may block.
+ *
+ * @see com.codeferm.dbaccess.trace.JsonLinesSpanExporter
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public interface SpanExporter {
+
+    /**
+     * Write batch of spans.
+     *
+     * @param spans Spans in the order they finished.
+     * @throws IOException Possible exception.
+     */
+    void export(List<Span> spans) throws IOException;
+
+    /**
+     * Flush and release resources.
+     *
+     * @throws IOException Possible exception.
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.trace;
+
+import com.codeferm.dbaccess.metrics.QueryEvent;
+import com.codeferm.dbaccess.metrics.QueryMetrics;
+import com.codeferm.dbaccess.metrics.TransactionEvent;
+import com.codeferm.dbaccess.metrics.TransactionMetrics;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Record a {@link com.codeferm.dbaccess.trace.Span} for every
+ * {@link com.codeferm.dbaccess.DbAccess} operation and
+ * {@link com.codeferm.dbaccess.transaction.Transaction} method. Statement
+ * spans are children of the transaction running on the same thread, so a
+ * request's database timeline can be rebuilt offline. Set it with
+ * {@code DbAccess.setMetrics} and
+ * {@code TransactionStats.getInstance().setMetrics}.
+ * <p>
+ * Finished spans go into a bounded ring buffer and are written by a daemon
+ * thread through a {@link com.codeferm.dbaccess.trace.SpanExporter}, so
+ * statements never wait on I/O. When the buffer is full new spans are dropped
+ * and counted. Call {@link #close()} to write what is left.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class SpanRecorder implements QueryMetrics, TransactionMetrics {
+
+    /**
+     * Logger.
+     */
+    //CHECKSTYLE:OFF ConstantName - Logger is static final, not a constant
+    private static final Logger log = LoggerFactory.getLogger(//NOPMD
+            SpanRecorder.class);
+    //CHECKSTYLE:ON ConstantName
+    /**
+     * Default ring buffer capacity.
+     */
+    public static final int DEFAULT_CAPACITY = 8192;
+    /**
+     * Most spans exported in one call.
+     */
+    private static final int BATCH = 512;
+    /**
+     * Export thread poll interval in milliseconds.
+     */
+    private static final long POLL = 100;
+    /**
+     * Nanoseconds per millisecond.
+     */
+    private static final long NANOS_PER_MILLI = 1000000L;
+    /**
+     * Finished spans waiting for export.
+     */
+    private final BlockingQueue<Span> buffer;
+    /**
+     * Exporter.
+     */
+    private final SpanExporter exporter;
+    /**
+     * Export thread.
+     */
+    private final Thread thread;
+    /**
+     * Spans dropped because buffer was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+    /**
+     * Spans exported.
+     */
+    private final AtomicLong exported = new AtomicLong();
+    /**
+     * Transactions open on this thread.
+     */
+    private final ThreadLocal<Open> open = new ThreadLocal<Open>();
+    /**
+     * Set when closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Construct recorder with default capacity.
+     *
+     * @param exporter Exporter.
+     */
+    public SpanRecorder(final SpanExporter exporter) {
+        this(exporter, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Construct recorder and start export thread.
+     *
+     * @param exporter Exporter.
+     * @param capacity Ring buffer capacity.
+     */
+    public SpanRecorder(final SpanExporter exporter, final int capacity) {
+        this.exporter = exporter;
+        this.buffer = new ArrayBlockingQueue<Span>(capacity);
+        this.thread = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                exportLoop();
+            }
+        }, "dbaccess-span-export");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Create random hex id.
+     *
+     * @param longs Number of 64 bit parts.
+     * @return Hex id.
+     */
+    static String id(final int longs) {
+        final StringBuilder sb = new StringBuilder(longs * 16);
+        for (int i = 0; i < longs; i++) {
+            long value = 0;
+            while (value == 0) {
+                value = ThreadLocalRandom.current().nextLong();
+            }
+            sb.append(String.format("%016x", value));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Nothing to do at start, statement spans are created when finished.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void start(final QueryEvent event) {
+    }
+
+    /**
+     * Record statement span under current transaction.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void end(final QueryEvent event) {
+        final Open parent = open.get();
+        String traceId;
+        String parentSpanId = null;
+        if (parent == null) {
+            traceId = id(2);
+        } else {
+            traceId = parent.traceId;
+            parentSpanId = parent.spanId;
+        }
+        final Map<String, Object> attributes
+                = new LinkedHashMap<String, Object>();
+        attributes.put("db.operation", event.getOperation().getLabel());
+        attributes.put("db.statement", event.getFingerprint().getSql());
+        attributes.put("db.sql.fingerprint", event.getFingerprint().getId());
+        attributes.put("dbaccess.implementation", event.getSource().getName());
+        attributes.put("dbaccess.rows", event.getRows());
+        attributes.put("dbaccess.batch_size", event.getBatchSize());
+        attributes.put("thread.name", Thread.currentThread().getName());
+        final long start = event.getStartMillis() * NANOS_PER_MILLI;
+        // Error type only, since messages contain SQL and parameters
+        record(new Span(traceId, id(1), parentSpanId, event.getOperation().
+                getLabel(), start, start + event.getElapsed(), attributes,
+                event.getErrorType()));
+    }
+
+    /**
+     * Open transaction span, so statements become its children.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void start(final TransactionEvent event) {
+        final Open parent = open.get();
+        String traceId;
+        String parentSpanId = null;
+        if (parent == null) {
+            traceId = id(2);
+        } else {
+            traceId = parent.traceId;
+            parentSpanId = parent.spanId;
+        }
+        open.set(new Open(event, traceId, id(1), parentSpanId, parent));
+    }
+
+    /**
+     * Close and record transaction span.
+     *
+     * @param event Event.
+     */
+    @Override
+    public void end(final TransactionEvent event) {
+        final Open top = open.get();
+        if (top != null && top.event == event) {
+            if (top.next == null) {
+                open.remove();
+            } else {
+                open.set(top.next);
+            }
+            final Map<String, Object> attributes
+                    = new LinkedHashMap<String, Object>();
+            attributes.put("code.function", event.getMethod().getName());
+            attributes.put("code.namespace", event.getMethod().
+                    getDeclaringClass().getName());
+            attributes.put("dbaccess.interceptor", event.getSource().getName());
+            attributes.put("dbaccess.committed", event.isCommitted());
+            attributes.put("dbaccess.method_nanos", event.getMethodTime());
+            attributes.put("dbaccess.completion_nanos", event.
+                    getCompletionTime());
+            attributes.put("thread.name", Thread.currentThread().getName());
+            final long start = event.getStartMillis() * NANOS_PER_MILLI;
+            record(new Span(top.traceId, top.spanId, top.parentSpanId, event.
+                    getName(), start, start + event.getElapsed(), attributes,
+                    event.getErrorType()));
+        }
+    }
+
+    /**
+     * Add span to buffer or count it as dropped.
+     *
+     * @param span Finished span.
+     */
+    public void record(final Span span) {
+        if (closed || !buffer.offer(span)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Export buffered spans until closed and buffer is empty.
+     */
+    private void exportLoop() {
+        final List<Span> batch = new ArrayList<Span>(BATCH);
+        while (!closed || !buffer.isEmpty()) {
+            try {
+                final Span span = buffer.poll(POLL, TimeUnit.MILLISECONDS);
+                if (span != null) {
+                    batch.add(span);
+                    buffer.drainTo(batch, BATCH - 1);
+                    exporter.export(batch);
+                    exported.addAndGet(batch.size());
+                }
+            } catch (InterruptedException e) {
+                closed = true;
+            } catch (IOException | RuntimeException e) {
+                log.warn(String.format("Span export failed: %s", e.
+                        getMessage()));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Stop recording, export buffered spans and close exporter.
+     */
+    public void close() {
+        closed = true;
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            exporter.close();
+        } catch (IOException e) {
+            log.warn(String.format("Span exporter close failed: %s", e.
+                    getMessage()));
+        }
+    }
+
+    /**
+     * Get number of spans dropped because buffer was full or recorder closed.
+     *
+     * @return Dropped spans.
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Get number of spans exported.
+     *
+     * @return Exported spans.
+     */
+    public long getExportedCount() {
+        return exported.get();
+    }
+
+    /**
+     * Transaction span open on a thread.
+     */
+    private static final class Open {
+
+        /**
+         * Transaction measured.
+         */
+        private final TransactionEvent event;
+        /**
+         * Trace id.
+         */
+        private final String traceId;
+        /**
+         * Span id.
+         */
+        private final String spanId;
+        /**
+         * Parent span id or null.
+         */
+        private final String parentSpanId;
+        /**
+         * Enclosing transaction or null.
+         */
+        private final Open next;
+
+        /**
+         * Construct open span.
+         *
+         * @param event Transaction measured.
+         * @param traceId Trace id.
+         * @param spanId Span id.
+         * @param parentSpanId Parent span id or null.
+         * @param next Enclosing transaction or null.
+         */
+        Open(final TransactionEvent event, final String traceId,
+                final String spanId, final String parentSpanId,
+                final Open next) {
+            this.event = event;
+            this.traceId = traceId;
+            this.spanId = spanId;
+            this.parentSpanId = parentSpanId;
+            this.next = next;
+        }
+    }
+}
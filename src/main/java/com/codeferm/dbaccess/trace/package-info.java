@@ -0,0 +1,4 @@
+/**
+ * Span recording of statements and transactions.
+ */
+package com.codeferm.dbaccess.trace;
@@ -8,6 +8,8 @@ package com.codeferm.dbaccess.transaction;
 
 import com.atomikos.icatch.jta.UserTransactionImp;
 import com.codeferm.dbaccess.DbAccess;
+import com.codeferm.dbaccess.metrics.TransactionEvent;
+import com.codeferm.dbaccess.metrics.TransactionStats;
 import java.lang.reflect.Method;
 import javax.transaction.UserTransaction;
 import org.aopalliance.intercept.MethodInterceptor;
@@ -18,7 +20,8 @@ import org.slf4j.LoggerFactory;
 /**
  * Intercept methods annotated with
  * {@link com.codeferm.dbaccess.transaction.Transaction} and commit on success
- * or rollback if {@link java.lang.Exception} is thrown. The first method
+ * or rollback if {@link java.lang.Exception} or {@link java.lang.Error} is
+ * thrown. The first method
  * parameter must be an instance of {@link com.codeferm.dbaccess.DbAccess} in
  * order for this class to close the connection prior to commit or rollback
  * operation as required by Atomikos.
@@ -97,19 +100,30 @@ public final class AtomikosTransInterceptor implements MethodInterceptor {
             final UserTransaction userTransaction = new UserTransactionImp();
             // Begin transaction
             userTransaction.begin();
+            // Open identity map if requested
+            final boolean identityMap = annotation.identityMap()
+                    && IdentityMap.open();
+            final TransactionStats stats = TransactionStats.getInstance();
+            final TransactionEvent event = stats.begin(getClass(), method);
+            boolean committed = false;
+            Throwable error = null;
             try {
                 // Proceed with the original method's invocation
                 object = invocation.proceed();
+                event.methodDone();
                 // Close connection
                 dbAccess.cleanUp();
                 // Commit if successful
                 userTransaction.commit();
+                committed = true;
                 if (log.isDebugEnabled()) {
                     log.debug(String.format(
                             "Committed transaction for method %s",
                             invocation.getMethod().getName()));
                 }
             } catch (Exception e) {
+                event.methodDone();
+                error = e;
                 // Rollback on Exception
                 if (log.isDebugEnabled()) {
                     log.debug(String.format(
@@ -121,6 +135,24 @@ public final class AtomikosTransInterceptor implements MethodInterceptor {
                 // Rollback on error
                 userTransaction.rollback();
                 throw e;
+            } catch (Error e) {
+                event.methodDone();
+                error = e;
+                // Rollback on Error too, so transaction is not left bound
+                try {
+                    dbAccess.cleanUp();
+                    userTransaction.rollback();
+                } catch (Exception rollbackError) { //NOPMD, keep Error
+                    e.addSuppressed(rollbackError);
+                }
+                throw e;
+            } finally {
+                // End event even if rollback or method threw an Error
+                stats.end(event, committed, error);
+                // Identity map only lives as long as the transaction
+                if (identityMap) {
+                    IdentityMap.close();
+                }
             }
         }
         return object;
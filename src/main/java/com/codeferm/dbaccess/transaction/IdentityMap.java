@@ -0,0 +1,232 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.transaction;
+
+import com.codeferm.dbaccess.DbAccess;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unit of work identity map bound to the current thread for the life of a
+ * {@link com.codeferm.dbaccess.transaction.Transaction} annotated method. Beans
+ * loaded by key through
+ * {@link com.codeferm.dbaccess.DbAccess#selectByKey(String, Object, Class)} are
+ * kept here, so repeat lookups of the same bean class, SQL and key through the
+ * same {@link com.codeferm.dbaccess.DbAccess} inside the transaction are served
+ * from memory instead of the database. Beans are kept per {@code DbAccess}
+ * instance, since another instance may use another connection or database.
+ * <p>
+ * The map is opt-in by setting {@code identityMap = true} on the annotation.
+ * The transaction interceptors open it before the method is invoked and clear
+ * it after commit or rollback. Every {@code update}, {@code updateReturnKeys}
+ * and {@code batch} executed through {@link com.codeferm.dbaccess.DbAccess}
+ * clears the map, since the rows changed are not known. Changes made some
+ * other way should be evicted with {@link #remove(Class, Object)},
+ * {@link #evict(Class)} or {@link #clear()}.
+ * <p>
+ * As with any identity map every lookup returns the same bean instance, so
+ * changes made to a bean are seen by later lookups in the transaction even
+ * though they were never written to the database.
+ *
+ * @see com.codeferm.dbaccess.transaction.Transaction
+ * @see com.codeferm.dbaccess.transaction.JdbcTransInterceptor
+ * @see com.codeferm.dbaccess.transaction.QueryRunnerTransInterceptor
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class IdentityMap {
+
+    /**
+     * Beans by class, then {@code DbAccess}, SQL and key, for the current
+     * thread. A
+     * {@code null} value means no identity map is open.
+     */
+    private static final ThreadLocal<Map<Class, Map<List<Object>, Object>>> MAPS
+            = new ThreadLocal<Map<Class, Map<List<Object>, Object>>>();
+
+    /**
+     * Suppress default constructor for non-instantiability.
+     */
+    private IdentityMap() {
+        throw new AssertionError();
+    }
+
+    /**
+     * Key of bean within its class. The same key selected by different SQL
+     * or {@code DbAccess} may map to different beans.
+     *
+     * @param dbAccess Implementation the bean was loaded through.
+     * @param sql SQL the bean was loaded with.
+     * @param key Key value.
+     * @return Owner, SQL and key.
+     */
+    private static List<Object> entryKey(final DbAccess dbAccess,
+            final String sql, final Object key) {
+        return Arrays.<Object>asList(new Owner(dbAccess), sql, key);
+    }
+
+    /**
+     * Open identity map for current thread. Nested calls keep the map that is
+     * already open.
+     *
+     * @return True if a new map was opened and the caller must call
+     * {@link #close()}.
+     */
+    public static boolean open() {
+        boolean opened = false;
+        if (MAPS.get() == null) {
+            MAPS.set(new HashMap<Class, Map<List<Object>, Object>>());
+            opened = true;
+        }
+        return opened;
+    }
+
+    /**
+     * Clear and close identity map for current thread.
+     */
+    public static void close() {
+        MAPS.remove();
+    }
+
+    /**
+     * Is identity map open for current thread?
+     *
+     * @return True if open.
+     */
+    public static boolean isOpen() {
+        return MAPS.get() != null;
+    }
+
+    /**
+     * Get bean by {@code DbAccess}, class, SQL and key.
+     *
+     * @param <T> Type of bean.
+     * @param dbAccess Implementation the bean was loaded through.
+     * @param clazz Bean class.
+     * @param sql SQL the bean was loaded with.
+     * @param key Key value.
+     * @return Bean or null if not loaded or map is not open.
+     */
+    public static <T> T get(final DbAccess dbAccess, final Class clazz,
+            final String sql, final Object key) {
+        T object = null;
+        final Map<Class, Map<List<Object>, Object>> maps = MAPS.get();
+        if (maps != null) {
+            final Map<List<Object>, Object> map = maps.get(clazz);
+            if (map != null) {
+                object = (T) map.get(entryKey(dbAccess, sql, key));
+            }
+        }
+        return object;
+    }
+
+    /**
+     * Put bean by {@code DbAccess}, class, SQL and key. Ignored if map is not
+     * open.
+     *
+     * @param dbAccess Implementation the bean was loaded through.
+     * @param clazz Bean class.
+     * @param sql SQL the bean was loaded with.
+     * @param key Key value.
+     * @param object Bean to keep.
+     */
+    public static void put(final DbAccess dbAccess, final Class clazz,
+            final String sql, final Object key, final Object object) {
+        final Map<Class, Map<List<Object>, Object>> maps = MAPS.get();
+        if (maps != null) {
+            Map<List<Object>, Object> map = maps.get(clazz);
+            if (map == null) {
+                map = new HashMap<List<Object>, Object>();
+                maps.put(clazz, map);
+            }
+            map.put(entryKey(dbAccess, sql, key), object);
+        }
+    }
+
+    /**
+     * Evict bean by class and key whatever {@code DbAccess} and SQL it was
+     * loaded with.
+     *
+     * @param clazz Bean class.
+     * @param key Key value.
+     */
+    public static void remove(final Class clazz, final Object key) {
+        final Map<Class, Map<List<Object>, Object>> maps = MAPS.get();
+        if (maps != null) {
+            final Map<List<Object>, Object> map = maps.get(clazz);
+            if (map != null) {
+                final Iterator<List<Object>> iterator = map.keySet().
+                        iterator();
+                while (iterator.hasNext()) {
+                    final Object entry = iterator.next().get(2);
+                    if (key == null ? entry == null : key.equals(entry)) {
+                        iterator.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Evict all beans of class.
+     *
+     * @param clazz Bean class.
+     */
+    public static void evict(final Class clazz) {
+        final Map<Class, Map<List<Object>, Object>> maps = MAPS.get();
+        if (maps != null) {
+            maps.remove(clazz);
+        }
+    }
+
+    /**
+     * Evict all beans, but leave map open.
+     */
+    public static void clear() {
+        final Map<Class, Map<List<Object>, Object>> maps = MAPS.get();
+        if (maps != null) {
+            maps.clear();
+        }
+    }
+
+    /**
+     * {@code DbAccess} compared by identity, so beans are never shared
+     * between instances whatever their {@code equals}.
+     */
+    private static final class Owner {
+
+        /**
+         * Implementation beans were loaded through.
+         */
+        private final DbAccess dbAccess;
+
+        /**
+         * Construct owner.
+         *
+         * @param dbAccess Implementation beans were loaded through.
+         */
+        Owner(final DbAccess dbAccess) {
+            this.dbAccess = dbAccess;
+        }
+
+        @Override
+        public boolean equals(final Object object) {
+            return object instanceof Owner
+                    && ((Owner) object).dbAccess == dbAccess;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(dbAccess);
+        }
+    }
+}
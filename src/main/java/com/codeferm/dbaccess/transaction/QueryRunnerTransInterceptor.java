@@ -7,6 +7,8 @@
 package com.codeferm.dbaccess.transaction;
 
 import com.codeferm.dbaccess.DbQueryRunnerConn;
+import com.codeferm.dbaccess.metrics.TransactionEvent;
+import com.codeferm.dbaccess.metrics.TransactionStats;
 import java.lang.reflect.Method;
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
@@ -16,7 +18,8 @@ import org.slf4j.LoggerFactory;
 /**
  * Intercept methods annotated with
  * {@link com.codeferm.dbaccess.transaction.Transaction} and commit on success
- * or rollback if {@link java.lang.Exception} is thrown. The first method
+ * or rollback if {@link java.lang.Exception} or {@link java.lang.Error} is
+ * thrown. The first method
  * parameter must be an instance of {@link com.codeferm.dbaccess.DbAccess} in
  * order for this class to access the connection prior to commit or rollback
  * operation as required by JDBC style transactions.
@@ -95,18 +98,29 @@ public final class QueryRunnerTransInterceptor implements MethodInterceptor {
                     getArguments()[0];
             // Begin transaction
             dbAccess.getConnection().setAutoCommit(false);
+            // Open identity map if requested
+            final boolean identityMap = annotation.identityMap()
+                    && IdentityMap.open();
+            final TransactionStats stats = TransactionStats.getInstance();
+            final TransactionEvent event = stats.begin(getClass(), method);
+            boolean committed = false;
+            Throwable error = null;
             try {
                 // Proceed with the original method's invocation
                 object = invocation.proceed();
+                event.methodDone();
                 // Commit if successful
                 dbAccess.getConnection().commit();
                 dbAccess.getConnection().setAutoCommit(true);
+                committed = true;
                 if (log.isDebugEnabled()) {
                     log.debug(String.format(
                             "Committed transaction for method %s",
                             invocation.getMethod().getName()));
                 }
             } catch (Exception e) {
+                event.methodDone();
+                error = e;
                 // Rollback on Exception
                 if (log.isDebugEnabled()) {
                     log.debug(String.format(
@@ -117,6 +131,24 @@ public final class QueryRunnerTransInterceptor implements MethodInterceptor {
                 dbAccess.getConnection().rollback();
                 dbAccess.getConnection().setAutoCommit(true);
                 throw e;
+            } catch (Error e) {
+                event.methodDone();
+                error = e;
+                // Rollback on Error too, so connection is not left open
+                try {
+                    dbAccess.getConnection().rollback();
+                    dbAccess.getConnection().setAutoCommit(true);
+                } catch (Exception rollbackError) { //NOPMD, keep Error
+                    e.addSuppressed(rollbackError);
+                }
+                throw e;
+            } finally {
+                // End event even if rollback or method threw an Error
+                stats.end(event, committed, error);
+                // Identity map only lives as long as the transaction
+                if (identityMap) {
+                    IdentityMap.close();
+                }
             }
         }
         return object;
@@ -22,6 +22,7 @@ import java.lang.annotation.Target;
  * @see com.codeferm.dbaccess.transaction.JdbcTransInterceptor
  * @see com.codeferm.dbaccess.transaction.JdbcTransModule
  * @see com.codeferm.dbaccess.transaction.TransactionFactory
+ * @see com.codeferm.dbaccess.transaction.IdentityMap
  *
  * @author sgoldsmith
  * @version 1.0.0
@@ -31,4 +32,12 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface Transaction {
+
+    /**
+     * Open a {@link com.codeferm.dbaccess.transaction.IdentityMap} for the
+     * life of the transaction, so repeat key lookups are served from memory.
+     *
+     * @return True to use identity map.
+     */
+    boolean identityMap() default false;
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess;
+
+import com.codeferm.dbaccess.dto.TestTableDto;
+import com.codeferm.dbaccess.jdbc.SyntheticResultSet;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.DbBeanMapper} mapping with
+ * {@link com.codeferm.dbaccess.jdbc.SyntheticResultSet}. No database is
+ * required.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class DbBeanMapperTest {
+
+    /**
+     * SQL used to cache columns.
+     */
+    private static final String SQL = "select * from test_table";
+    /**
+     * Mapper without a connection.
+     */
+    private DbBeanMapper mapper;
+
+    /**
+     * Start each test with empty cache.
+     */
+    @Before
+    public void setUp() {
+        DbColumns.clear();
+        mapper = new DbJdbcConn((java.sql.Connection) null);
+    }
+
+    /**
+     * All columns are mapped to bean properties.
+     */
+    @Test
+    public void createObjects() {
+        final ResultSet resultSet = SyntheticResultSet.testTable(3, 13);
+        final List<TestTableDto> list = mapper.createObjects(SQL, resultSet,
+                TestTableDto.class);
+        assertEquals("Should map all rows", 3, list.size());
+        final TestTableDto dto = list.get(2);
+        assertEquals("id should be row number", Integer.valueOf(2), dto.
+                getId());
+        assertEquals("bigint should be row number", Long.valueOf(2), dto.
+                getBigintField());
+        assertEquals("numeric should be scaled", BigDecimal.valueOf(2, 2), dto.
+                getNumericField());
+        assertEquals("varchar should be set", "value 2", dto.
+                getVarcharField());
+    }
+
+    /**
+     * Columns not in the result set leave properties null.
+     */
+    @Test
+    public void createObjectsPartial() {
+        final List<TestTableDto> list = mapper.createObjects(SQL,
+                SyntheticResultSet.testTable(1, 3), TestTableDto.class);
+        assertEquals("varchar should be set", "value 0", list.get(0).
+                getVarcharField());
+        assertNull("double should not be set", list.get(0).getDoubleField());
+    }
+
+    /**
+     * Bean properties without a column are left unset instead of failing,
+     * since mapping is driven by columns.
+     */
+    @Test
+    public void propertyWithoutColumn() {
+        final List<TestTableDto> list = mapper.createObjects(SQL,
+                SyntheticResultSet.testTable(2, 1), TestTableDto.class);
+        assertEquals("Should map all rows", 2, list.size());
+        assertEquals("id should be set", Integer.valueOf(1), list.get(1).
+                getId());
+        assertNull("varchar should not be set", list.get(1).
+                getVarcharField());
+    }
+
+    /**
+     * Deprecated field driven helpers still map fields to columns and write
+     * methods.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void fieldHelpers() {
+        final Field[] fields = TestTableDto.class.getDeclaredFields();
+        // Case is kept, drivers match column names ignoring case
+        assertTrue("Column name", "varchar_field".equalsIgnoreCase(mapper.
+                fromCamelCase(fields).get("varcharField")));
+        assertEquals("Write method", "setVarcharField", mapper.
+                getWriteMethods(fields, TestTableDto.class).get(
+                        "varcharField").getName());
+    }
+
+    /**
+     * Rows are mapped to Maps by column label and result set can be read
+     * again.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void createMaps() throws SQLException {
+        final ResultSet resultSet = SyntheticResultSet.testTable(2, 13);
+        final List<Map<String, Object>> list = mapper.createMaps(SQL,
+                resultSet);
+        assertEquals("Should map all rows", 2, list.size());
+        assertEquals("Should map all columns", 13, list.get(0).size());
+        assertEquals("int should be row number", 1, list.get(1).get(
+                "int_field"));
+        assertFalse("Result set should be exhausted", resultSet.next());
+        resultSet.beforeFirst();
+        assertEquals("Should read again", 2, mapper.createMaps(SQL,
+                resultSet).size());
+    }
+
+    /**
+     * Getters convert values like a driver.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void convert() throws SQLException {
+        final ResultSet resultSet = SyntheticResultSet.testTable(2, 13);
+        resultSet.next();
+        resultSet.next();
+        assertEquals("int from bigint", 1, resultSet.getInt("bigint_field"));
+        assertEquals("string from int", "1", resultSet.getString(1));
+        assertEquals("double from numeric", 0.01, resultSet.getDouble(
+                "numeric_field"), 0);
+        assertEquals("boolean from boolean", false, resultSet.getBoolean(
+                "boolean_field"));
+        assertEquals("long from Class", Long.valueOf(1), resultSet.getObject(
+                1, Long.class));
+        assertFalse("Value should not be null", resultSet.wasNull());
+    }
+}
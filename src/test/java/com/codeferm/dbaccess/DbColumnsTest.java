@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess;
+
+import com.codeferm.dbaccess.dto.TestTableDto;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.DbColumns} caching. No database is
+ * required.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class DbColumnsTest {
+
+    /**
+     * Create {@code ResultSetMetaData} with VARCHAR columns.
+     *
+     * @param labels Column labels.
+     * @return Metadata proxy.
+     */
+    private static ResultSetMetaData metaData(final String... labels) {
+        return (ResultSetMetaData) Proxy.newProxyInstance(DbColumnsTest.class.
+                getClassLoader(), new Class[]{ResultSetMetaData.class},
+                new InvocationHandler() {
+
+                    @Override
+                    public Object invoke(final Object proxy, final Method method,
+                            final Object[] args) {
+                        Object object = null;
+                        if ("getColumnCount".equals(method.getName())) {
+                            object = labels.length;
+                        } else if ("getColumnLabel".equals(method.getName())) {
+                            object = labels[(Integer) args[0] - 1];
+                        } else if ("getColumnType".equals(method.getName())) {
+                            object = Types.VARCHAR;
+                        }
+                        return object;
+                    }
+                });
+    }
+
+    /**
+     * Start each test with empty cache.
+     */
+    @Before
+    public void setUp() {
+        DbColumns.clear();
+    }
+
+    /**
+     * Columns are cached by SQL and rebuilt when column count changes.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void cache() throws SQLException {
+        final DbColumns columns = DbColumns.get("select", metaData("id",
+                "varchar_field"));
+        assertEquals("Property should be camelCase", "varcharField", columns.
+                getProperty(2));
+        assertEquals("Type should be cached", Types.VARCHAR, columns.
+                getType(1));
+        assertSame("Columns should be cached", columns, DbColumns.get(
+                "select", metaData("id", "varchar_field")));
+        assertEquals("Should have one hit", 1, DbColumns.getHits());
+        final DbColumns changed = DbColumns.get("select", metaData("id"));
+        assertEquals("Columns should be rebuilt", 1, changed.size());
+        assertEquals("Should have two misses", 2, DbColumns.getMisses());
+    }
+
+    /**
+     * Write methods are matched to columns and unknown columns are ignored.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void writeMethods() throws SQLException {
+        final Method[] methods = DbColumns.get(null, metaData("char_field",
+                "no_such_field")).getWriteMethods(TestTableDto.class);
+        assertEquals("Wrong write method", "setCharField", methods[0].
+                getName());
+        assertNull("Unknown column should be null", methods[1]);
+    }
+}
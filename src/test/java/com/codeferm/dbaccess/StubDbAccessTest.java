@@ -0,0 +1,507 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess;
+
+import com.codeferm.dbaccess.dto.TestTableDto;
+import com.codeferm.dbaccess.jdbc.StubDataSource;
+import com.codeferm.dbaccess.jdbc.StubDatabase;
+import com.codeferm.dbaccess.metrics.DbAccessStats;
+import com.codeferm.dbaccess.metrics.QueryEvent;
+import com.codeferm.dbaccess.metrics.QueryMetrics;
+import com.codeferm.dbaccess.metrics.QueryPhase;
+import com.codeferm.dbaccess.metrics.TransactionEvent;
+import com.codeferm.dbaccess.metrics.TransactionStats;
+import com.codeferm.dbaccess.transaction.IdentityMap;
+import com.codeferm.dbaccess.transaction.JdbcTransModule;
+import com.codeferm.dbaccess.transaction.QueryRunnerTransModule;
+import com.codeferm.dbaccess.transaction.TransactionFactory;
+import com.codeferm.dbaccess.transaction.TransactionTest;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import javax.sql.DataSource;
+import org.apache.commons.dbutils.QueryLoader;
+import org.apache.commons.dbutils.QueryRunner;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test each {@link com.codeferm.dbaccess.DbAccess} implementation and the
+ * JDBC and QueryRunner transaction interceptors against
+ * {@link com.codeferm.dbaccess.jdbc.StubDatabase}, so no database server is
+ * required. Atomikos needs an XA DataSource and is not covered.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class StubDbAccessTest {
+
+    /**
+     * Rows in batch.
+     */
+    private static final int BATCH_SIZE = 10;
+    /**
+     * SQL statements.
+     */
+    private static Map<String, String> sqlMap;
+    /**
+     * Database.
+     */
+    private StubDatabase database;
+    /**
+     * DataSource.
+     */
+    private DataSource dataSource;
+
+    /**
+     * Load SQL statements.
+     *
+     * @throws IOException Possible exception.
+     */
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        sqlMap = QueryLoader.instance().load("/sql.properties");
+    }
+
+    /**
+     * Create empty {@code test_table}.
+     */
+    @Before
+    public void setUp() {
+        database = StubDatabase.get("stub-dbaccess");
+        database.reset();
+        database.createTestTable();
+        dataSource = new StubDataSource(database);
+    }
+
+    /**
+     * Drop database.
+     */
+    @After
+    public void tearDown() {
+        StubDatabase.drop("stub-dbaccess");
+    }
+
+    /**
+     * Create insert parameters.
+     *
+     * @param varchar Value of varchar_field.
+     * @return Parameters.
+     */
+    private static Object[] params(final String varchar) {
+        final Timestamp now = new Timestamp(System.currentTimeMillis());
+        return new Object[]{"dbAccess", varchar, Boolean.TRUE, now, now, now,
+            Long.MAX_VALUE, Integer.MAX_VALUE, Short.MAX_VALUE, BigDecimal.
+            valueOf(1234567.99), Float.valueOf(123.6F), Double.valueOf(
+            123.456D)};
+    }
+
+    /**
+     * Run the statements of {@code sql.properties} through implementation.
+     *
+     * @param db Implementation.
+     * @throws SQLException Possible exception.
+     */
+    private void dbAccess(final DbAccess db) throws SQLException {
+        try {
+            final Integer testInt = db.select(sqlMap.get("select.test"),
+                    "testval");
+            assertEquals("Integer should be 1", Integer.valueOf(1), testInt);
+            final int id = db.updateReturnKey(sqlMap.get("insert.testtable"),
+                    params("varchar"), "id");
+            assertTrue("Key should be > 0", id > 0);
+            final TestTableDto dto = db.select(sqlMap.get(
+                    "select.testtable.by.id"), new Object[]{id},
+                    TestTableDto.class);
+            assertEquals("Bean should be mapped", "varchar", dto.
+                    getVarcharField());
+            assertEquals("Long should be mapped", Long.valueOf(
+                    Long.MAX_VALUE), dto.getBigintField());
+            final List<Map<String, Object>> maps = db.selectList(sqlMap.get(
+                    "select.testtable.by.id"), new Object[]{id});
+            assertEquals("All columns should be mapped", 13, maps.get(0).
+                    size());
+            assertEquals("One row should be updated", 1, db.update(sqlMap.get(
+                    "update.testtable.by.id"), new Object[]{"update", id}));
+            final List<TestTableDto> list = db.selectList(sqlMap.get(
+                    "select.testtable.by.varchar.field"), new Object[]{
+                        "update"}, TestTableDto.class);
+            assertEquals("Updated row should be selected", 1, list.size());
+            final Object[][] batch = new Object[BATCH_SIZE][];
+            for (int i = 0; i < batch.length; i++) {
+                batch[i] = params("batch");
+            }
+            final int[] counts = db.batch(sqlMap.get("insert.testtable"),
+                    batch);
+            assertEquals("Each row should be counted", BATCH_SIZE,
+                    counts.length);
+            assertEquals("Batch rows should be deleted", BATCH_SIZE, db.
+                    update(sqlMap.get("delete.testtable.by.varchar.field"),
+                            new Object[]{"batch"}));
+            assertEquals("Row should be deleted", 1, db.update(sqlMap.get(
+                    "delete.testtable.by.id"), new Object[]{id}));
+            assertEquals("Table should be empty", 0, database.count(
+                    "test_table"));
+        } finally {
+            db.cleanUp();
+        }
+    }
+
+    /**
+     * Test {@link com.codeferm.dbaccess.DbJdbcConn}.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void dbJdbcConn() throws SQLException {
+        dbAccess(new DbJdbcConn(dataSource));
+        assertEquals("Connection should be closed", 0, database.
+                getOpenCount());
+    }
+
+    /**
+     * Test {@link com.codeferm.dbaccess.DbJdbcDs}.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void dbJdbcDs() throws SQLException {
+        dbAccess(new DbJdbcDs(dataSource));
+        assertEquals("Connections should be closed", 0, database.
+                getOpenCount());
+    }
+
+    /**
+     * Test {@link com.codeferm.dbaccess.DbQueryRunnerConn}.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void dbQueryRunnerConn() throws SQLException {
+        dbAccess(new DbQueryRunnerConn(dataSource));
+    }
+
+    /**
+     * Test {@link com.codeferm.dbaccess.DbQueryRunnerDs}.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void dbQueryRunnerDs() throws SQLException {
+        dbAccess(new DbQueryRunnerDs(dataSource));
+    }
+
+    /**
+     * Test {@link com.codeferm.dbaccess.DbJdbcTemplate}.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void dbJdbcTemplate() throws SQLException {
+        dbAccess(new DbJdbcTemplate(dataSource));
+    }
+
+    /**
+     * Test {@link com.codeferm.dbaccess.DbPersist}.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void dbPersist() throws SQLException {
+        dbAccess(new DbPersist(dataSource));
+    }
+
+    /**
+     * Injected failure is wrapped in
+     * {@link com.codeferm.dbaccess.DbAccessException}.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void failure() throws SQLException {
+        database.setFailEvery(1);
+        final DbAccess db = new DbJdbcDs(dataSource);
+        try {
+            db.select(sqlMap.get("select.test"), "testval");
+            fail("Select should fail");
+        } catch (DbAccessException e) {
+            assertEquals("Failure should be injected", 1, database.
+                    getFailureCount());
+        }
+        assertEquals("Connection should be closed after failure", 0,
+                database.getOpenCount());
+    }
+
+    /**
+     * Latency is seen by implementation.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void latency() throws SQLException {
+        database.setExecuteLatency(5, TimeUnit.MILLISECONDS);
+        final DbAccess db = new DbJdbcDs(dataSource);
+        final long start = System.nanoTime();
+        db.select(sqlMap.get("select.test"), "testval");
+        assertTrue("Select should take execute latency", System.nanoTime()
+                - start >= TimeUnit.MILLISECONDS.toNanos(5));
+    }
+
+    /**
+     * Fetching rows and mapping them are timed as separate phases for beans
+     * and maps.
+     *
+     * @param db Implementation.
+     */
+    private void fetchAndMap(final DbAccess db) {
+        final QueryEvent[] last = new QueryEvent[1];
+        db.setMetrics(new QueryMetrics() {
+
+            @Override
+            public void start(final QueryEvent event) {
+                // Nothing to do
+            }
+
+            @Override
+            public void end(final QueryEvent event) {
+                last[0] = event;
+            }
+        });
+        try {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                db.update(sqlMap.get("insert.testtable"), params("phase"));
+            }
+            final List<TestTableDto> list = db.selectList(sqlMap.get(
+                    "select.testtable.by.varchar.field"), new Object[]{
+                        "phase"}, TestTableDto.class);
+            assertEquals("All rows should be mapped", BATCH_SIZE, list.
+                    size());
+            assertTrue("Bean fetch should be timed", last[0].getPhase(
+                    QueryPhase.FETCH) > 0);
+            assertTrue("Bean map should be timed", last[0].getPhase(
+                    QueryPhase.MAP) > 0);
+            final List<Map<String, Object>> maps = db.selectList(sqlMap.get(
+                    "select.testtable.by.varchar.field"), new Object[]{
+                        "phase"});
+            assertEquals("All rows should be mapped", BATCH_SIZE, maps.
+                    size());
+            assertTrue("Map fetch should be timed", last[0].getPhase(
+                    QueryPhase.FETCH) > 0);
+            assertTrue("Map map should be timed", last[0].getPhase(
+                    QueryPhase.MAP) > 0);
+        } finally {
+            db.cleanUp();
+        }
+    }
+
+    /**
+     * Fetch and map phases of {@link com.codeferm.dbaccess.DbJdbcConn}.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void dbJdbcConnPhases() throws SQLException {
+        fetchAndMap(new DbJdbcConn(dataSource));
+    }
+
+    /**
+     * Fetch and map phases of {@link com.codeferm.dbaccess.DbJdbcDs}.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void dbJdbcDsPhases() throws SQLException {
+        fetchAndMap(new DbJdbcDs(dataSource));
+    }
+
+    /**
+     * Phase timing of {@link com.codeferm.dbaccess.DbQueryRunnerDs} keeps the
+     * configured {@code QueryRunner}.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void queryRunnerDsPhaseTiming() throws SQLException {
+        final DbQueryRunnerDs db = new DbQueryRunnerDs(dataSource);
+        final QueryRunner runner = db.getTemplate();
+        db.enablePhaseTiming();
+        db.enablePhaseTiming();
+        assertTrue("Phase timing should be on", db.isPhaseTiming());
+        assertSame("QueryRunner should be kept", runner, db.getTemplate());
+    }
+
+    /**
+     * Metrics set while a statement executes do not see its end, and the
+     * metrics it started with do.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void swapMetrics() throws SQLException {
+        final DbAccess db = new DbJdbcDs(dataSource);
+        final DbAccessStats first = new DbAccessStats();
+        final DbAccessStats second = new DbAccessStats();
+        db.setMetrics(new QueryMetrics() {
+
+            @Override
+            public void start(final QueryEvent event) {
+                first.start(event);
+                // Swap while statement executes
+                db.setMetrics(second);
+            }
+
+            @Override
+            public void end(final QueryEvent event) {
+                first.end(event);
+            }
+        });
+        db.select(sqlMap.get("select.test"), "testval");
+        assertEquals("First metrics should end statement", 1, first.
+                getCallCount());
+        assertEquals("First metrics should not be in-flight", 0, first.
+                getInFlight());
+        assertEquals("Second metrics should not end statement", 0, second.
+                getCallCount());
+        assertEquals("Second metrics should not be in-flight", 0, second.
+                getInFlight());
+        db.select(sqlMap.get("select.test"), "testval");
+        assertEquals("Second metrics should see next statement", 1, second.
+                getCallCount());
+    }
+
+    /**
+     * Commit and roll back through transaction interceptor.
+     *
+     * @param test Intercepted test object.
+     * @param db Implementation sharing one connection.
+     * @throws Exception Possible exception.
+     */
+    private void transaction(final TransactionTest test, final DbAccess db)
+            throws Exception {
+        try {
+            final int id = test.commitRec(db, sqlMap.get("insert.testtable"));
+            test.verifyCommit(db, sqlMap.get("select.testtable.by.id"),
+                    sqlMap.get("delete.testtable.by.id"), id);
+            try {
+                test.rollbackRec(db, sqlMap.get("insert.testtable"));
+                fail("Empty parameters should roll back");
+            } catch (DbAccessException e) {
+                assertEquals("Insert should be rolled back", 0, database.
+                        count("test_table"));
+            }
+            assertTrue("Transactions should commit", database.
+                    getCommitCount() >= 2);
+            assertTrue("Transaction should roll back", database.
+                    getRollbackCount() >= 1);
+        } finally {
+            db.cleanUp();
+        }
+    }
+
+    /**
+     * Test {@link com.codeferm.dbaccess.transaction.JdbcTransInterceptor}.
+     *
+     * @throws Exception Possible exception.
+     */
+    @Test
+    public void jdbcTransaction() throws Exception {
+        transaction(TransactionFactory.createObject(TransactionTest.class,
+                JdbcTransModule.class), new DbJdbcConn(dataSource));
+    }
+
+    /**
+     * Identity map is opened by
+     * {@link com.codeferm.dbaccess.transaction.JdbcTransInterceptor}, serves
+     * repeat loads, is cleared by a write and closed with the transaction.
+     *
+     * @throws Exception Possible exception.
+     */
+    @Test
+    public void identityMap() throws Exception {
+        final TransactionTest test = TransactionFactory.createObject(
+                TransactionTest.class, JdbcTransModule.class);
+        final DbAccess db = new DbJdbcConn(dataSource);
+        try {
+            final int id = db.updateReturnKey(sqlMap.get("insert.testtable"),
+                    params("varchar"), "id");
+            final long executes = database.getExecuteCount();
+            final TestTableDto[] dtos = test.identityMapRec(db, sqlMap.get(
+                    "select.testtable.by.id"), sqlMap.get(
+                            "update.testtable.by.id"), id);
+            assertSame("Second load should be served from map", dtos[0],
+                    dtos[1]);
+            assertEquals("Second load should not execute", 3, database.
+                    getExecuteCount() - executes);
+            assertNotSame("Write should clear map", dtos[0], dtos[2]);
+            assertEquals("Load after write should see update", "identity",
+                    dtos[2].getVarcharField());
+            assertFalse("Map should be closed", IdentityMap.isOpen());
+        } finally {
+            db.cleanUp();
+        }
+    }
+
+    /**
+     * Transaction is rolled back, event ended and identity map closed when
+     * the method throws an {@link java.lang.Error}.
+     *
+     * @throws Exception Possible exception.
+     */
+    @Test
+    public void transactionError() throws Exception {
+        final TransactionTest test = TransactionFactory.createObject(
+                TransactionTest.class, JdbcTransModule.class);
+        final DbJdbcConn db = new DbJdbcConn(dataSource);
+        final TransactionStats stats = TransactionStats.getInstance();
+        final long rollbacks = stats.getRollbackCount();
+        final long databaseRollbacks = database.getRollbackCount();
+        try {
+            test.errorRec(db, sqlMap.get("update.testtable.by.id"));
+            fail("Error should be thrown");
+        } catch (AssertionError e) {
+            assertEquals("Error should be thrown by method",
+                    "Error inside transaction", e.getMessage());
+            assertTrue("Auto commit should be restored",
+                    db.getConnection().getAutoCommit());
+        } finally {
+            db.cleanUp();
+        }
+        assertNull("Event should be ended", TransactionEvent.current());
+        assertEquals("Error should be counted as rollback",
+                rollbacks + 1, stats.getRollbackCount());
+        assertEquals("Error should roll back connection",
+                databaseRollbacks + 1, database.getRollbackCount());
+        assertFalse("Map should be closed", IdentityMap.isOpen());
+    }
+
+    /**
+     * Test
+     * {@link com.codeferm.dbaccess.transaction.QueryRunnerTransInterceptor}.
+     *
+     * @throws Exception Possible exception.
+     */
+    @Test
+    public void queryRunnerTransaction() throws Exception {
+        transaction(TransactionFactory.createObject(TransactionTest.class,
+                QueryRunnerTransModule.class), new DbQueryRunnerConn(
+                        dataSource));
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.cache;
+
+import com.codeferm.dbaccess.DbAccess;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.cache.DbCache}. No database is required.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class DbCacheTest {
+
+    /**
+     * Page size used by tests.
+     */
+    private static final int PAGE_SIZE = 256;
+    /**
+     * Implementation counting statements.
+     */
+    private CountingDbAccess dbAccess;
+    /**
+     * Cache under test.
+     */
+    private DbCache cache;
+
+    /**
+     * {@link com.codeferm.dbaccess.DbAccess} returning one row per query and
+     * optionally writing through the cache while a query runs.
+     */
+    private static final class CountingDbAccess extends DbAccess {
+
+        /**
+         * Queries executed.
+         */
+        private int selects;
+        /**
+         * Cache to write through during the next query, null for none.
+         */
+        private DbCache writeDuringSelect;
+        /**
+         * Value of {@code value} column.
+         */
+        private Object value = "value";
+
+        @Override
+        public <T> List<T> selectList(final String sql, final Object[] params,
+                final Class clazz) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public List<Map<String, Object>> selectList(final String sql,
+                final Object[] params) {
+            selects++;
+            final Map<String, Object> map = new LinkedHashMap<String, Object>();
+            map.put("Select", selects);
+            map.put("Value", value);
+            final List<Map<String, Object>> list
+                    = new ArrayList<Map<String, Object>>();
+            list.add(map);
+            if (writeDuringSelect != null) {
+                final DbCache writer = writeDuringSelect;
+                writeDuringSelect = null;
+                writer.update("update", new Object[]{});
+            }
+            return list;
+        }
+
+        @Override
+        public int update(final String sql, final Object[] params) {
+            return 1;
+        }
+
+        @Override
+        public Map<String, Object> updateReturnKeys(final String sql,
+                final Object[] params) {
+            return null;
+        }
+
+        @Override
+        public int[] batch(final String sql, final Object[][] params) {
+            return new int[params.length];
+        }
+
+        @Override
+        public void cleanUp() {
+            // Nothing to clean up
+        }
+    }
+
+    /**
+     * Create cache over counting implementation.
+     */
+    @Before
+    public void setUp() {
+        dbAccess = new CountingDbAccess();
+        cache = new DbCache(dbAccess, new OffHeapResultStore(PAGE_SIZE * 100,
+                PAGE_SIZE, PAGE_SIZE * 10, false));
+    }
+
+    /**
+     * Null parameters are cached like no parameters.
+     */
+    @Test
+    public void nullParams() {
+        assertNotNull("Result should be returned", cache.selectList("select",
+                (Object[]) null));
+        cache.selectList("select", new Object[]{});
+        assertEquals("Second query should be served from store", 1,
+                dbAccess.selects);
+    }
+
+    /**
+     * Result read while a write clears the store is not stored.
+     */
+    @Test
+    public void writeDuringSelect() {
+        dbAccess.writeDuringSelect = cache;
+        cache.selectList("select", new Object[]{});
+        assertEquals("Result read before write should not be stored", 0,
+                cache.getStore().size());
+        cache.selectList("select", new Object[]{});
+        cache.selectList("select", new Object[]{});
+        assertEquals("Result read after write should be stored", 2,
+                dbAccess.selects);
+    }
+
+    /**
+     * Result with a value that cannot be encoded is returned, not cached.
+     */
+    @Test
+    public void notEncodable() {
+        dbAccess.value = new Object();
+        final List<Map<String, Object>> list = cache.selectList("select",
+                new Object[]{});
+        assertEquals("Rows should be returned", 1, list.size());
+        assertEquals("Result should not be stored", 0, cache.getStore().
+                size());
+    }
+
+    /**
+     * Parameters that print the same but differ in type get their own entry.
+     */
+    @Test
+    public void paramTypes() {
+        assertFalse("Integer and String", DbCache.key("select", new Object[]{
+            1}).equals(DbCache.key("select", new Object[]{"1"})));
+        assertFalse("Integer and Long", DbCache.key("select", new Object[]{
+            1}).equals(DbCache.key("select", new Object[]{1L})));
+        cache.selectList("select", new Object[]{1});
+        cache.selectList("select", new Object[]{"1"});
+        assertEquals("Each type should query", 2, dbAccess.selects);
+        cache.selectList("select", new Object[]{1});
+        assertEquals("Same type should be served from store", 2,
+                dbAccess.selects);
+    }
+
+    /**
+     * Rows served from store keep column order and ignore case like a miss.
+     */
+    @Test
+    public void rowKeys() {
+        cache.selectList("select", new Object[]{});
+        final Map<String, Object> row = cache.selectList("select",
+                new Object[]{}).get(0);
+        assertEquals("Should be served from store", 1, dbAccess.selects);
+        assertEquals("Column order", Arrays.asList("Select", "Value"),
+                new ArrayList<String>(row.keySet()));
+        assertEquals("Exact case", "value", row.get("Value"));
+        assertEquals("Upper case", "value", row.get("VALUE"));
+        assertEquals("Lower case", 1, row.get("select"));
+    }
+
+    /**
+     * Clean up does not save the store, only {@link DbCache#save()} does.
+     *
+     * @throws IOException Possible exception.
+     */
+    @Test
+    public void saveOnlyOnRequest() throws IOException {
+        final File file = File.createTempFile("dbaccess", ".snapshot");
+        file.delete();
+        try {
+            cache.setSnapshotFile(file);
+            cache.selectList("select", new Object[]{});
+            cache.cleanUp();
+            assertFalse("Clean up should not save", file.exists());
+            assertEquals("Result should be saved", 1, cache.save());
+            assertTrue("Save should write file", file.exists());
+        } finally {
+            file.delete();
+        }
+    }
+}
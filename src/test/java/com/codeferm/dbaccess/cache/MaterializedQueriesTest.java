@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.cache;
+
+import com.codeferm.dbaccess.DbAccess;
+import com.codeferm.dbaccess.DbAccessException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.cache.MaterializedQueries}. No database is
+ * required.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class MaterializedQueriesTest {
+
+    /**
+     * Number of times query was executed.
+     */
+    private final AtomicInteger executions = new AtomicInteger();
+    /**
+     * Make query fail.
+     */
+    private final AtomicBoolean failing = new AtomicBoolean();
+    /**
+     * Next query counts down entered and waits for release.
+     */
+    private final AtomicReference<CountDownLatch[]> block
+            = new AtomicReference<CountDownLatch[]>();
+    /**
+     * Registry under test.
+     */
+    private MaterializedQueries queries;
+
+    /**
+     * Create registry over {@code DbAccess} returning execution count.
+     */
+    @Before
+    public void setUp() {
+        final DbAccess dbAccess = new DbAccess() {
+
+            @Override
+            public <T> List<T> selectList(final String sql,
+                    final Object[] params, final Class clazz) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public List<Map<String, Object>> selectList(final String sql,
+                    final Object[] params) {
+                if (failing.get()) {
+                    throw new DbAccessException("Query failed");
+                }
+                final Map<String, Object> map = new HashMap<String, Object>();
+                map.put("count", executions.incrementAndGet());
+                final CountDownLatch[] latches = block.getAndSet(null);
+                if (latches != null) {
+                    latches[0].countDown();
+                    try {
+                        latches[1].await(1, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return Collections.singletonList(map);
+            }
+
+            @Override
+            public int update(final String sql, final Object[] params) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Map<String, Object> updateReturnKeys(final String sql,
+                    final Object[] params) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int[] batch(final String sql, final Object[][] params) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void cleanUp() {
+            }
+        };
+        queries = new MaterializedQueries(dbAccess, Collections.singletonMap(
+                "md_select", "SELECT 1"));
+    }
+
+    /**
+     * Stop refresh thread.
+     */
+    @After
+    public void tearDown() {
+        queries.shutdown();
+    }
+
+    /**
+     * Snapshot is loaded on register and served from memory.
+     */
+    @Test
+    public void get() {
+        queries.register("md_select", new Object[]{}, 0, 0);
+        assertEquals("Snapshot should be loaded", 1, queries.get("md_select").
+                get(0).get("count"));
+        queries.get("md_select");
+        assertEquals("Reads should not execute query", 1, executions.get());
+        queries.refresh("md_select");
+        assertEquals("Refresh should swap snapshot", 2, queries.get(
+                "md_select").get(0).get("count"));
+    }
+
+    /**
+     * Stale and scheduled reads refresh in the background.
+     *
+     * @throws InterruptedException Possible exception.
+     */
+    @Test
+    public void background() throws InterruptedException {
+        queries.register("md_select", new Object[]{}, 10, 1);
+        Thread.sleep(100);
+        queries.get("md_select");
+        Thread.sleep(20);
+        assertTrue("Snapshot should be refreshed", (Integer) queries.get(
+                "md_select").get(0).get("count") > 1);
+    }
+
+    /**
+     * Query is not registered if first load fails.
+     */
+    @Test
+    public void firstLoadFails() {
+        failing.set(true);
+        try {
+            queries.register("md_select", new Object[]{}, 10, 0);
+            fail("Register should fail");
+        } catch (DbAccessException e) {
+            assertTrue("Query should not be registered", queries.getNames().
+                    isEmpty());
+        }
+        try {
+            queries.get("md_select");
+            fail("Get should fail");
+        } catch (DbAccessException e) {
+            assertEquals("Query should not be registered",
+                    "Query md_select not registered", e.getMessage());
+        }
+        failing.set(false);
+        queries.register("md_select", new Object[]{}, 0, 0);
+        assertEquals("Snapshot should be loaded", 1, queries.get("md_select").
+                get(0).get("count"));
+    }
+
+    /**
+     * Rows of a snapshot cannot be changed by readers.
+     */
+    @Test(expected = UnsupportedOperationException.class)
+    public void unmodifiableRows() {
+        queries.register("md_select", new Object[]{}, 0, 0);
+        queries.get("md_select").get(0).put("count", 0);
+    }
+
+    /**
+     * A refresh that started first does not replace a snapshot that started
+     * later.
+     *
+     * @throws InterruptedException Possible exception.
+     */
+    @Test
+    public void olderRefreshDiscarded() throws InterruptedException {
+        queries.register("md_select", new Object[]{}, 0, 0);
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        block.set(new CountDownLatch[]{entered, release});
+        final Thread slow = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                queries.refresh("md_select");
+            }
+        });
+        slow.start();
+        assertTrue("Slow refresh should start", entered.await(1,
+                TimeUnit.SECONDS));
+        Thread.sleep(5);
+        queries.refresh("md_select");
+        release.countDown();
+        slow.join(1000);
+        assertEquals("Later refresh should be kept", 3, queries.get(
+                "md_select").get(0).get("count"));
+    }
+}
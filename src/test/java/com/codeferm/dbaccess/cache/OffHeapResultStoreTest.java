@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.cache;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.cache.OffHeapResultStore}. No database is
+ * required.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class OffHeapResultStoreTest {
+
+    /**
+     * Page size used by tests.
+     */
+    private static final int PAGE_SIZE = 256;
+
+    /**
+     * Create result shaped like test_table rows.
+     *
+     * @param rows Number of rows.
+     * @return Result.
+     */
+    static CachedResult result(final int rows) {
+        final List<Map<String, Object>> list
+                = new ArrayList<Map<String, Object>>(rows);
+        for (int i = 0; i < rows; i++) {
+            final Map<String, Object> map = new HashMap<String, Object>();
+            map.put("id", i);
+            map.put("varchar_field", "varchar " + i);
+            map.put("boolean_field", Boolean.TRUE);
+            map.put("timestamp_field", new Timestamp(i));
+            map.put("bigint_field", Long.MAX_VALUE);
+            map.put("numeric_field", BigDecimal.valueOf(1234567.99));
+            map.put("double_field", null);
+            list.add(map);
+        }
+        return new CachedResult("select", new Object[]{"param", 1}, 1L, list);
+    }
+
+    /**
+     * Results are decoded with the same values and types.
+     */
+    @Test
+    public void roundTrip() {
+        for (boolean compress : new boolean[]{false, true}) {
+            final OffHeapResultStore store = new OffHeapResultStore(
+                    PAGE_SIZE * 100, PAGE_SIZE, PAGE_SIZE * 10, compress);
+            final CachedResult expected = result(20);
+            store.put("key", expected);
+            final CachedResult actual = store.get("key");
+            assertNotNull("Result should be cached", actual);
+            assertEquals("SQL should match", "select", actual.getSql());
+            assertEquals("Param should match", 1, actual.getParams()[1]);
+            assertEquals("Row count should match", 20, actual.getRows().size());
+            assertEquals("Row should match", expected.getRows().get(19),
+                    actual.getRows().get(19));
+            assertTrue("Pages should be used", store.getUsedBytes() > 0);
+            store.remove("key");
+            assertEquals("Pages should be freed", 0, store.getUsedBytes());
+        }
+    }
+
+    /**
+     * Least recently used result is evicted when store is full.
+     */
+    @Test
+    public void evict() {
+        final CachedResult result = result(10);
+        // Size store to hold two results
+        final OffHeapResultStore probe = new OffHeapResultStore(PAGE_SIZE
+                * 100, PAGE_SIZE, PAGE_SIZE * 10, false);
+        probe.put("a", result);
+        final int used = (int) probe.getUsedBytes();
+        final OffHeapResultStore store = new OffHeapResultStore(used * 2,
+                PAGE_SIZE, used, false);
+        store.put("a", result);
+        store.put("b", result);
+        // Touch a, so b is least recently used
+        assertNotNull("a should be cached", store.get("a"));
+        store.put("c", result);
+        assertNull("b should be evicted", store.get("b"));
+        assertNotNull("a should be cached", store.get("a"));
+        assertEquals("One eviction expected", 1, store.getEvictions());
+        assertTrue("Store should not exceed max", store.getUsedBytes()
+                <= store.getMaxBytes());
+    }
+}
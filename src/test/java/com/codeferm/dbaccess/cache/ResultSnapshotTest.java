@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.cache;
+
+import com.codeferm.dbaccess.DbAccessException;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InvalidClassException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.cache.ResultSnapshot}. No database is
+ * required.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class ResultSnapshotTest {
+
+    /**
+     * Snapshot file.
+     */
+    private File file;
+
+    /**
+     * Create temporary snapshot file name.
+     *
+     * @throws IOException Possible exception.
+     */
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("dbaccess", ".snapshot");
+        file.delete();
+    }
+
+    /**
+     * Delete snapshot file.
+     */
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Results are saved and loaded in eviction order. Expired results are
+     * dropped when there is no {@code DbAccess} to re-validate them.
+     */
+    @Test
+    public void saveLoad() {
+        final OffHeapResultStore store = new OffHeapResultStore(1024 * 1024);
+        final CachedResult result = OffHeapResultStoreTest.result(5);
+        store.put("a", result);
+        store.put("b", new CachedResult("select", new Object[]{}, System.
+                currentTimeMillis(), result.getRows()));
+        assertEquals("Two results should be saved", 2, ResultSnapshot.save(
+                store, file));
+        assertEquals("Save should not count hits", 0, store.getHits());
+        final OffHeapResultStore loaded = new OffHeapResultStore(1024 * 1024);
+        assertEquals("Two results should be loaded", 2, ResultSnapshot.load(
+                loaded, file, 0, null));
+        assertEquals("Order should be kept", store.keys(), loaded.keys());
+        assertEquals("Rows should match", result.getRows().get(4), loaded.get(
+                "a").getRows().get(4));
+        final OffHeapResultStore expired = new OffHeapResultStore(1024 * 1024);
+        assertEquals("Expired result should be dropped", 1, ResultSnapshot.
+                load(expired, file, 60000, null));
+        assertNull("Expired result should be dropped", expired.get("a"));
+    }
+
+    /**
+     * Create store with one result holding a serialized value.
+     *
+     * @param value Value of only column.
+     * @return Store.
+     */
+    private static OffHeapResultStore serialized(final Object value) {
+        final Map<String, Object> row = new HashMap<String, Object>();
+        row.put("value", value);
+        final OffHeapResultStore store = new OffHeapResultStore(1024 * 1024);
+        store.put("a", new CachedResult("select", new Object[]{}, System.
+                currentTimeMillis(), Collections.singletonList(row)));
+        return store;
+    }
+
+    /**
+     * Only plain JDBC value types are deserialized from a snapshot file.
+     */
+    @Test
+    public void restricted() {
+        final UUID uuid = UUID.randomUUID();
+        ResultSnapshot.save(serialized(uuid), file);
+        final OffHeapResultStore loaded = new OffHeapResultStore(1024 * 1024);
+        ResultSnapshot.load(loaded, file, 0, null);
+        assertEquals("Allowed value should be loaded", uuid, loaded.get("a").
+                getRows().get(0).get("value"));
+        final List<String> list = new ArrayList<String>();
+        list.add("value");
+        ResultSnapshot.save(serialized(list), file);
+        try {
+            ResultSnapshot.load(new OffHeapResultStore(1024 * 1024), file, 0,
+                    null);
+            fail("Class not allowed should not be deserialized");
+        } catch (DbAccessException e) {
+            assertTrue("Class should be rejected", e.getCause()
+                    instanceof InvalidClassException);
+        }
+    }
+
+    /**
+     * Saving again replaces the previous snapshot.
+     */
+    @Test
+    public void replace() {
+        ResultSnapshot.save(serialized("first"), file);
+        ResultSnapshot.save(serialized("second"), file);
+        assertFalse("Temporary file should be moved", new File(file.getPath()
+                + ".tmp").exists());
+        final OffHeapResultStore loaded = new OffHeapResultStore(1024 * 1024);
+        ResultSnapshot.load(loaded, file, 0, null);
+        assertEquals("Last snapshot should be loaded", "second", loaded.get(
+                "a").getRows().get(0).get("value"));
+    }
+
+    /**
+     * A length larger than the file is rejected before it is allocated.
+     *
+     * @throws IOException Possible exception.
+     */
+    @Test
+    public void badLength() throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(
+                file))) {
+            out.writeInt(0x44424353);
+            out.writeInt(1);
+            out.writeBoolean(true);
+            out.writeInt(Integer.MAX_VALUE);
+        }
+        try {
+            ResultSnapshot.load(new OffHeapResultStore(1024 * 1024), file, 0,
+                    null);
+            fail("Bad length should be rejected");
+        } catch (DbAccessException e) {
+            assertTrue("Should report bad snapshot", e.getMessage().
+                    startsWith("Bad snapshot"));
+        }
+    }
+
+    /**
+     * A truncated file is reported as a bad snapshot.
+     */
+    @Test
+    public void truncated() {
+        ResultSnapshot.save(serialized("value"), file);
+        final File cut = new File(file.getPath() + ".cut");
+        try {
+            final byte[] bytes = Files.readAllBytes(file.toPath());
+            Files.write(cut.toPath(), Arrays.copyOf(bytes, bytes.length - 2));
+            ResultSnapshot.load(new OffHeapResultStore(1024 * 1024), cut, 0,
+                    null);
+            fail("Truncated file should be rejected");
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } catch (DbAccessException e) {
+            assertTrue("Should report bad snapshot", e.getMessage().
+                    startsWith("Bad snapshot"));
+        } finally {
+            cut.delete();
+        }
+    }
+}
@@ -0,0 +1,678 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.jdbc;
+
+import com.codeferm.dbaccess.DbAccessException;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.sql.DataSource;
+import org.postgresql.PGConnection;
+
+/**
+ * Fill any table with deterministic rows for large data tests and benchmarks.
+ * Columns and types come from {@code DatabaseMetaData.getColumns} and identity
+ * columns are left to the database. Every value is a hash of seed, row number
+ * and column position, so the same seed always produces the same table no
+ * matter how rows are split between threads or batches, and more rows can be
+ * appended later by starting at the next row number.
+ * <p>
+ * PostgreSQL connections load with {@code COPY FROM STDIN} streaming rows as
+ * they are generated, other databases use batched inserts committed every
+ * {@link #setBatchSize(int)} rows. Add {@code reWriteBatchedInserts=true} to
+ * PostgreSQL URLs when COPY is turned off. Columns can be given a fixed value
+ * with {@link #setValue(String, Object)}, for example {@code varchar_field}
+ * of {@code test_table} to select the rows again.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class DataGenerator {
+
+    /**
+     * Default rows per batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+    /**
+     * Start of generated dates, 2000-01-01 UTC.
+     */
+    private static final long BASE_MILLIS = 946684800000L;
+    /**
+     * Range of generated dates in days.
+     */
+    private static final long DAYS = 3650;
+    /**
+     * Milliseconds per day.
+     */
+    private static final long DAY_MILLIS = 86400000L;
+    /**
+     * Length of strings when column size is unknown.
+     */
+    private static final int STRING_LENGTH = 16;
+    /**
+     * Longest generated string.
+     */
+    private static final int MAX_STRING_LENGTH = 32;
+    /**
+     * Precision of numeric columns when size is unknown.
+     */
+    private static final int NUMERIC_PRECISION = 9;
+    /**
+     * Scale of numeric columns when size is unknown.
+     */
+    private static final int NUMERIC_SCALE = 2;
+    /**
+     * Characters of generated strings.
+     */
+    private static final char[] ALPHABET
+            = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+    /**
+     * Hex digits for COPY of bytes.
+     */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    /**
+     * Seed.
+     */
+    private final long seed;
+    /**
+     * Fixed values by lower case column name.
+     */
+    private final Map<String, Object> fixed = new HashMap<String, Object>();
+    /**
+     * Rows per batch.
+     */
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    /**
+     * Threads used by {@link #populate(DataSource, String, long, long)}.
+     */
+    private int threads = 1;
+    /**
+     * Use COPY when the connection supports it.
+     */
+    private boolean copy = true;
+
+    /**
+     * Construct generator.
+     *
+     * @param seed Seed, same seed generates same values.
+     */
+    public DataGenerator(final long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Column to generate.
+     */
+    static final class Column {
+
+        /**
+         * Name.
+         */
+        private final String name;
+        /**
+         * Type from {@link java.sql.Types}.
+         */
+        private final int type;
+        /**
+         * Size or precision, 0 if unknown.
+         */
+        private final int size;
+        /**
+         * Scale.
+         */
+        private final int scale;
+        /**
+         * Position in table starting at 1.
+         */
+        private final int position;
+
+        /**
+         * Construct column.
+         *
+         * @param name Name.
+         * @param type Type from {@link java.sql.Types}.
+         * @param size Size or precision, 0 if unknown.
+         * @param scale Scale.
+         * @param position Position in table starting at 1.
+         */
+        Column(final String name, final int type, final int size,
+                final int scale, final int position) {
+            this.name = name;
+            this.type = type;
+            this.size = size;
+            this.scale = scale;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Set rows per batch and per commit of batched inserts.
+     *
+     * @param batchSize Rows per batch.
+     */
+    public void setBatchSize(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Set threads used to populate from a {@code DataSource}. Each thread
+     * uses its own connection and a contiguous range of rows.
+     *
+     * @param threads Threads.
+     */
+    public void setThreads(final int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * Use COPY on PostgreSQL connections, default true.
+     *
+     * @param copy Use COPY.
+     */
+    public void setCopy(final boolean copy) {
+        this.copy = copy;
+    }
+
+    /**
+     * Use fixed value for column instead of generated values.
+     *
+     * @param column Column name.
+     * @param value Value or null for SQL NULL.
+     */
+    public void setValue(final String column, final Object value) {
+        fixed.put(column.toLowerCase(Locale.ROOT), value);
+    }
+
+    /**
+     * Populate table using threads from {@link #setThreads(int)}.
+     *
+     * @param dataSource Database.
+     * @param table Table name.
+     * @param first Number of first row, 0 for new table.
+     * @param rows Rows to add.
+     * @return Rows added.
+     */
+    public long populate(final DataSource dataSource, final String table,
+            final long first, final long rows) {
+        final int count = (int) Math.max(1, Math.min(threads, rows));
+        final ExecutorService executor = Executors.newFixedThreadPool(count);
+        final List<Future<Long>> futures = new ArrayList<Future<Long>>();
+        final long chunk = (rows + count - 1) / count;
+        for (long start = 0; start < rows; start += chunk) {
+            final long from = first + start;
+            final long length = Math.min(chunk, rows - start);
+            futures.add(executor.submit(new Callable<Long>() {
+
+                @Override
+                public Long call() throws SQLException {
+                    try (Connection connection = dataSource.getConnection()) {
+                        return populate(connection, table, from, length);
+                    }
+                }
+            }));
+        }
+        long added = 0;
+        try {
+            for (Future<Long> future : futures) {
+                added += future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DbAccessException(e);
+        } catch (ExecutionException e) {
+            throw new DbAccessException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return added;
+    }
+
+    /**
+     * Populate table on one connection.
+     *
+     * @param connection Connection.
+     * @param table Table name.
+     * @param first Number of first row, 0 for new table.
+     * @param rows Rows to add.
+     * @return Rows added.
+     */
+    public long populate(final Connection connection, final String table,
+            final long first, final long rows) {
+        long added;
+        try {
+            final List<Column> columns = columns(connection, table);
+            if (copy && connection.isWrapperFor(PGConnection.class)) {
+                added = copy(connection, table, columns, first, rows);
+            } else {
+                added = insert(connection, table, columns, first, rows);
+            }
+        } catch (SQLException | IOException e) {
+            throw new DbAccessException(e);
+        }
+        return added;
+    }
+
+    /**
+     * Get columns to generate in table order without identity columns. The
+     * name is tried as given, in lower case and in upper case.
+     *
+     * @param connection Connection.
+     * @param table Table name.
+     * @return Columns.
+     * @throws SQLException If table is not found.
+     */
+    static List<Column> columns(final Connection connection,
+            final String table) throws SQLException {
+        final DatabaseMetaData metaData = connection.getMetaData();
+        final String[] names = {table, table.toLowerCase(Locale.ROOT), table.
+            toUpperCase(Locale.ROOT)};
+        final List<Column> columns = new ArrayList<Column>();
+        boolean found = false;
+        for (int i = 0; i < names.length && !found; i++) {
+            try (ResultSet resultSet = metaData.getColumns(null, null,
+                    names[i], null)) {
+                while (resultSet.next()) {
+                    found = true;
+                    if (!"YES".equalsIgnoreCase(resultSet.getString(
+                            "IS_AUTOINCREMENT"))) {
+                        columns.add(new Column(resultSet.getString(
+                                "COLUMN_NAME"), resultSet.getInt("DATA_TYPE"),
+                                resultSet.getInt("COLUMN_SIZE"), resultSet.
+                                getInt("DECIMAL_DIGITS"), resultSet.getInt(
+                                "ORDINAL_POSITION")));
+                    }
+                }
+            }
+        }
+        if (!found) {
+            throw new SQLException(String.format("Table %s not found", table),
+                    "42P01");
+        }
+        return columns;
+    }
+
+    /**
+     * Create column list of SQL.
+     *
+     * @param columns Columns.
+     * @return Comma separated names.
+     */
+    private static String names(final List<Column> columns) {
+        final StringBuilder sb = new StringBuilder();
+        for (Column column : columns) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(column.name);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Insert rows in batches, committing each batch.
+     *
+     * @param connection Connection.
+     * @param table Table name.
+     * @param columns Columns.
+     * @param first Number of first row.
+     * @param rows Rows to add.
+     * @return Rows added.
+     * @throws SQLException Possible exception.
+     */
+    private long insert(final Connection connection, final String table,
+            final List<Column> columns, final long first, final long rows)
+            throws SQLException {
+        final StringBuilder markers = new StringBuilder();
+        for (int i = 0; i < columns.size(); i++) {
+            markers.append(i == 0 ? "?" : ", ?");
+        }
+        final String sql = String.format("insert into %s (%s) values (%s)",
+                table, names(columns), markers);
+        final boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            int pending = 0;
+            for (long row = first; row < first + rows; row++) {
+                for (int i = 0; i < columns.size(); i++) {
+                    final Column column = columns.get(i);
+                    final Object value = value(column, row);
+                    if (value == null) {
+                        statement.setNull(i + 1, column.type);
+                    } else {
+                        statement.setObject(i + 1, value);
+                    }
+                }
+                statement.addBatch();
+                if (++pending == batchSize) {
+                    statement.executeBatch();
+                    connection.commit();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                statement.executeBatch();
+                connection.commit();
+            }
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+        return rows;
+    }
+
+    /**
+     * Stream rows with PostgreSQL {@code COPY FROM STDIN}.
+     *
+     * @param connection PostgreSQL connection.
+     * @param table Table name.
+     * @param columns Columns.
+     * @param first Number of first row.
+     * @param rows Rows to add.
+     * @return Rows added.
+     * @throws SQLException Possible exception.
+     * @throws IOException Possible exception.
+     */
+    private long copy(final Connection connection, final String table,
+            final List<Column> columns, final long first, final long rows)
+            throws SQLException, IOException {
+        return connection.unwrap(PGConnection.class).getCopyAPI().copyIn(
+                String.format("copy %s (%s) from stdin", table, names(
+                        columns)), new CopyReader(columns, first, rows));
+    }
+
+    /**
+     * Get value of column in row.
+     *
+     * @param column Column.
+     * @param row Row number.
+     * @return Value or null.
+     */
+    Object value(final Column column, final long row) {
+        Object value;
+        final String key = column.name.toLowerCase(Locale.ROOT);
+        if (fixed.containsKey(key)) {
+            value = fixed.get(key);
+        } else {
+            value = generate(column, hash(row, column.position));
+        }
+        return value;
+    }
+
+    /**
+     * Hash seed, row and column.
+     *
+     * @param row Row number.
+     * @param position Column position.
+     * @return Hash.
+     */
+    private long hash(final long row, final int position) {
+        return mix(seed + row * 0x9E3779B97F4A7C15L + position
+                * 0xD1B54A32D192ED03L);
+    }
+
+    /**
+     * SplitMix64 finalizer, spreads every input bit over the result.
+     *
+     * @param value Value.
+     * @return Mixed value.
+     */
+    private static long mix(final long value) {
+        long z = value;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Generate non negative value of column type from hash.
+     *
+     * @param column Column.
+     * @param hash Hash.
+     * @return Value or null if type is not supported.
+     */
+    private static Object generate(final Column column, final long hash) {
+        final long positive = hash >>> 1;
+        Object value;
+        switch (column.type) {
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+                value = string(column, hash);
+                break;
+            case Types.BIT:
+            case Types.BOOLEAN:
+                value = (hash & 1) == 1;
+                break;
+            case Types.TINYINT:
+                value = (short) (hash >>> 57);
+                break;
+            case Types.SMALLINT:
+                value = (short) (hash >>> 49);
+                break;
+            case Types.INTEGER:
+                value = (int) (hash >>> 33);
+                break;
+            case Types.BIGINT:
+                value = positive;
+                break;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                final int precision = Math.min(18, column.size > 0 ? column.
+                        size : NUMERIC_PRECISION);
+                final int scale = column.size > 0 ? Math.min(column.scale,
+                        precision) : NUMERIC_SCALE;
+                value = BigDecimal.valueOf(positive % BigDecimal.ONE.
+                        scaleByPowerOfTen(precision).longValue(), scale);
+                break;
+            case Types.REAL:
+                value = (hash >>> 40) / 100f;
+                break;
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                value = (hash >>> 11) / 1000.0;
+                break;
+            case Types.DATE:
+                value = new Date(BASE_MILLIS + positive % DAYS * DAY_MILLIS);
+                break;
+            case Types.TIME:
+                value = new Time(positive % DAY_MILLIS / 1000 * 1000);
+                break;
+            case Types.TIMESTAMP:
+                value = new Timestamp(BASE_MILLIS + positive % (DAYS
+                        * DAY_MILLIS));
+                break;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                final byte[] bytes = new byte[length(column)];
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = (byte) (hash >>> (i % 8 * 8) ^ i);
+                }
+                value = bytes;
+                break;
+            default:
+                value = null;
+        }
+        return value;
+    }
+
+    /**
+     * Get length of generated strings and bytes.
+     *
+     * @param column Column.
+     * @return Length.
+     */
+    private static int length(final Column column) {
+        return column.size > 0 ? Math.min(column.size, MAX_STRING_LENGTH)
+                : STRING_LENGTH;
+    }
+
+    /**
+     * Generate string from hash.
+     *
+     * @param column Column.
+     * @param hash Hash.
+     * @return String.
+     */
+    private static String string(final Column column, final long hash) {
+        final char[] chars = new char[length(column)];
+        long bits = hash >>> 1;
+        for (int i = 0; i < chars.length; i++) {
+            // 36^12 fits in 63 bits, so mix again every 12 characters
+            if (i > 0 && i % 12 == 0) {
+                bits = mix(hash + i) >>> 1;
+            }
+            chars[i] = ALPHABET[(int) (bits % ALPHABET.length)];
+            bits /= ALPHABET.length;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Rows in COPY text format, generated as they are read.
+     */
+    private final class CopyReader extends Reader {
+
+        /**
+         * Columns.
+         */
+        private final List<Column> columns;
+        /**
+         * Row after last.
+         */
+        private final long end;
+        /**
+         * Next row.
+         */
+        private long row;
+        /**
+         * Text of current rows.
+         */
+        private final StringBuilder buffer = new StringBuilder();
+        /**
+         * Next character of buffer.
+         */
+        private int position;
+
+        /**
+         * Construct reader.
+         *
+         * @param columns Columns.
+         * @param first Number of first row.
+         * @param rows Rows to read.
+         */
+        CopyReader(final List<Column> columns, final long first,
+                final long rows) {
+            this.columns = columns;
+            this.row = first;
+            this.end = first + rows;
+        }
+
+        @Override
+        public int read(final char[] cbuf, final int off, final int len) {
+            if (position == buffer.length()) {
+                buffer.setLength(0);
+                position = 0;
+                for (int i = 0; i < batchSize && row < end; i++) {
+                    appendRow();
+                }
+            }
+            int count = -1;
+            if (position < buffer.length()) {
+                count = Math.min(len, buffer.length() - position);
+                buffer.getChars(position, position + count, cbuf, off);
+                position += count;
+            }
+            return count;
+        }
+
+        /**
+         * Append next row as tab separated line.
+         */
+        private void appendRow() {
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    buffer.append('\t');
+                }
+                append(value(columns.get(i), row));
+            }
+            buffer.append('\n');
+            row++;
+        }
+
+        /**
+         * Append value escaped for COPY text format.
+         *
+         * @param value Value.
+         */
+        private void append(final Object value) {
+            if (value == null) {
+                buffer.append("\\N");
+            } else if (value instanceof Boolean) {
+                buffer.append((Boolean) value ? 't' : 'f');
+            } else if (value instanceof byte[]) {
+                buffer.append("\\\\x");
+                for (byte b : (byte[]) value) {
+                    buffer.append(HEX[(b >> 4) & 0xF]).append(HEX[b & 0xF]);
+                }
+            } else {
+                final String text = value.toString();
+                for (int i = 0; i < text.length(); i++) {
+                    final char c = text.charAt(i);
+                    switch (c) {
+                        case '\\':
+                            buffer.append("\\\\");
+                            break;
+                        case '\t':
+                            buffer.append("\\t");
+                            break;
+                        case '\n':
+                            buffer.append("\\n");
+                            break;
+                        case '\r':
+                            buffer.append("\\r");
+                            break;
+                        default:
+                            buffer.append(c);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.jdbc;
+
+import com.codeferm.dbaccess.DbAccessException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.jdbc.DataGenerator} against
+ * {@link com.codeferm.dbaccess.jdbc.StubDatabase}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class DataGeneratorTest {
+
+    /**
+     * Rows generated.
+     */
+    private static final int ROWS = 10000;
+
+    /**
+     * Drop databases.
+     */
+    @After
+    public void tearDown() {
+        StubDatabase.drop("generator-a");
+        StubDatabase.drop("generator-b");
+        StubDatabase.drop("generator-c");
+    }
+
+    /**
+     * Create database with {@code test_table}.
+     *
+     * @param name Database name.
+     * @return Database.
+     */
+    private static StubDatabase database(final String name) {
+        final StubDatabase database = StubDatabase.get(name);
+        database.reset();
+        database.createTestTable();
+        return database;
+    }
+
+    /**
+     * Read rows without id in sorted order.
+     *
+     * @param database Database.
+     * @return Rows as strings.
+     * @throws SQLException Possible exception.
+     */
+    private static List<String> rows(final StubDatabase database) throws
+            SQLException {
+        final List<String> rows = new ArrayList<String>();
+        try (Connection connection = database.connect();
+                Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery(
+                        "select * from test_table")) {
+            final int columns = resultSet.getMetaData().getColumnCount();
+            while (resultSet.next()) {
+                final StringBuilder row = new StringBuilder();
+                for (int i = 2; i <= columns; i++) {
+                    row.append(resultSet.getObject(i)).append('|');
+                }
+                rows.add(row.toString());
+            }
+        }
+        Collections.sort(rows);
+        return rows;
+    }
+
+    /**
+     * Rows are inserted in committed batches with identity left to the
+     * database.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void populate() throws SQLException {
+        final StubDatabase database = database("generator-a");
+        final DataGenerator generator = new DataGenerator(1);
+        generator.setBatchSize(1000);
+        generator.setThreads(4);
+        generator.setValue("varchar_field", "generated");
+        generator.setValue("double_field", null);
+        assertEquals("Added", ROWS, generator.populate(new StubDataSource(
+                database), "TEST_TABLE", 0, ROWS));
+        assertEquals("Rows", ROWS, database.count("test_table"));
+        assertTrue("Committed per batch", database.getCommitCount()
+                >= ROWS / 1000);
+        try (Connection connection = database.connect();
+                Statement statement = connection.createStatement();
+                ResultSet resultSet = statement.executeQuery(
+                        "select id, varchar_field, double_field, int_field "
+                        + "from test_table")) {
+            assertFalse("Identity", resultSet.next() && resultSet.getObject(
+                    "id") == null);
+            assertEquals("Fixed value", "generated", resultSet.getString(
+                    "varchar_field"));
+            assertNull("Fixed null", resultSet.getObject("double_field"));
+        }
+    }
+
+    /**
+     * Same seed generates same rows however they are split, other seeds do
+     * not.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void deterministic() throws SQLException {
+        final StubDatabase first = database("generator-a");
+        final StubDatabase second = database("generator-b");
+        final StubDatabase other = database("generator-c");
+        final DataGenerator generator = new DataGenerator(42);
+        try (Connection connection = first.connect()) {
+            generator.populate(connection, "test_table", 0, ROWS);
+        }
+        final DataGenerator split = new DataGenerator(42);
+        split.setBatchSize(333);
+        split.setThreads(3);
+        split.populate(new StubDataSource(second), "test_table", 0, ROWS / 2);
+        split.populate(new StubDataSource(second), "test_table", ROWS / 2,
+                ROWS / 2);
+        try (Connection connection = other.connect()) {
+            new DataGenerator(43).populate(connection, "test_table", 0, ROWS);
+        }
+        final List<String> rows = rows(first);
+        assertEquals("Same seed", rows, rows(second));
+        assertFalse("Other seed", rows.equals(rows(other)));
+    }
+
+    /**
+     * Missing table is reported.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test(expected = DbAccessException.class)
+    public void missingTable() throws SQLException {
+        try (Connection connection = database("generator-a").connect()) {
+            new DataGenerator(1).populate(connection, "no_table", 0, 1);
+        }
+    }
+}
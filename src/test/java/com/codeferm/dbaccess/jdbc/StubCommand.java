@@ -0,0 +1,554 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.jdbc;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.SQLSyntaxErrorException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SQL statement parsed for {@link com.codeferm.dbaccess.jdbc.StubDatabase}.
+ * Only the single table statements used by the tests are understood: SELECT
+ * with optional WHERE and ORDER BY, SELECT of a literal without FROM, INSERT
+ * with VALUES, UPDATE and DELETE. WHERE is conditions joined by AND comparing
+ * a column to a {@code ?} marker or literal.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class StubCommand {
+
+    /**
+     * Statement type.
+     */
+    enum Type {
+
+        /**
+         * SELECT from table.
+         */
+        SELECT,
+        /**
+         * SELECT of literal without FROM.
+         */
+        SELECT_VALUE,
+        /**
+         * INSERT.
+         */
+        INSERT,
+        /**
+         * UPDATE.
+         */
+        UPDATE,
+        /**
+         * DELETE.
+         */
+        DELETE
+    }
+
+    /**
+     * SELECT from table.
+     */
+    private static final Pattern SELECT = Pattern.compile(
+            "select\\s+(.+?)\\s+from\\s+(\\w+)(?:\\s+where\\s+(.+?))?"
+            + "(?:\\s+order\\s+by\\s+(\\w+)(?:\\s+(asc|desc))?)?",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    /**
+     * SELECT of literal.
+     */
+    private static final Pattern SELECT_VALUE = Pattern.compile(
+            "select\\s+(.+?)(?:\\s+as\\s+(\\w+))?", Pattern.CASE_INSENSITIVE
+            | Pattern.DOTALL);
+    /**
+     * INSERT.
+     */
+    private static final Pattern INSERT = Pattern.compile(
+            "insert\\s+into\\s+(\\w+)\\s*\\((.+?)\\)\\s*values\\s*\\((.+)\\)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    /**
+     * UPDATE.
+     */
+    private static final Pattern UPDATE = Pattern.compile(
+            "update\\s+(\\w+)\\s+set\\s+(.+?)(?:\\s+where\\s+(.+))?",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    /**
+     * DELETE.
+     */
+    private static final Pattern DELETE = Pattern.compile(
+            "delete\\s+from\\s+(\\w+)(?:\\s+where\\s+(.+))?",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    /**
+     * Condition or assignment.
+     */
+    private static final Pattern COMPARISON = Pattern.compile(
+            "(\\w+)\\s*(=|<>|!=|<=|>=|<|>)\\s*(.+)", Pattern.DOTALL);
+    /**
+     * Select list item with optional alias.
+     */
+    private static final Pattern ITEM = Pattern.compile(
+            "(\\w+|\\*)(?:\\s+as\\s+(\\w+))?", Pattern.CASE_INSENSITIVE);
+    /**
+     * Statement type.
+     */
+    private final Type type;
+    /**
+     * Table name, null for SELECT_VALUE.
+     */
+    private String table;
+    /**
+     * Selected, inserted or updated columns.
+     */
+    private final List<String> columns = new ArrayList<String>();
+    /**
+     * Labels of selected columns.
+     */
+    private final List<String> labels = new ArrayList<String>();
+    /**
+     * Inserted or updated values, same order as columns.
+     */
+    private final List<Operand> values = new ArrayList<Operand>();
+    /**
+     * WHERE conditions.
+     */
+    private final List<Condition> where = new ArrayList<Condition>();
+    /**
+     * ORDER BY column or null.
+     */
+    private String orderBy;
+    /**
+     * ORDER BY descending.
+     */
+    private boolean descending;
+    /**
+     * Number of {@code ?} markers.
+     */
+    private int paramCount;
+
+    /**
+     * Construct empty command.
+     *
+     * @param type Statement type.
+     */
+    private StubCommand(final Type type) {
+        this.type = type;
+    }
+
+    /**
+     * Parse SQL.
+     *
+     * @param sql SQL statement.
+     * @return Command.
+     * @throws SQLException If statement is not supported.
+     */
+    static StubCommand parse(final String sql) throws SQLException {
+        final String text = sql.trim().replaceAll(";$", "").trim();
+        StubCommand command;
+        Matcher matcher;
+        if ((matcher = SELECT.matcher(text)).matches()) {
+            command = new StubCommand(Type.SELECT);
+            command.table = lower(matcher.group(2));
+            for (String item : split(matcher.group(1), ",")) {
+                final Matcher itemMatcher = ITEM.matcher(item);
+                if (!itemMatcher.matches()) {
+                    throw unsupported(sql);
+                }
+                final String column = lower(itemMatcher.group(1));
+                command.columns.add(column);
+                command.labels.add(itemMatcher.group(2) == null ? column
+                        : lower(itemMatcher.group(2)));
+            }
+            command.where(matcher.group(3), sql);
+            if (matcher.group(4) != null) {
+                command.orderBy = lower(matcher.group(4));
+                command.descending = "desc".equalsIgnoreCase(matcher.group(
+                        5));
+            }
+        } else if ((matcher = INSERT.matcher(text)).matches()) {
+            command = new StubCommand(Type.INSERT);
+            command.table = lower(matcher.group(1));
+            for (String column : split(matcher.group(2), ",")) {
+                command.columns.add(lower(column));
+            }
+            for (String value : split(matcher.group(3), ",")) {
+                command.values.add(command.operand(value, sql));
+            }
+            if (command.columns.size() != command.values.size()) {
+                throw new SQLSyntaxErrorException(String.format(
+                        "%d columns and %d values: %s", command.columns.
+                        size(), command.values.size(), sql));
+            }
+        } else if ((matcher = UPDATE.matcher(text)).matches()) {
+            command = new StubCommand(Type.UPDATE);
+            command.table = lower(matcher.group(1));
+            for (String assignment : split(matcher.group(2), ",")) {
+                final Matcher assignMatcher = COMPARISON.matcher(assignment);
+                if (!assignMatcher.matches() || !"=".equals(assignMatcher.
+                        group(2))) {
+                    throw unsupported(sql);
+                }
+                command.columns.add(lower(assignMatcher.group(1)));
+                command.values.add(command.operand(assignMatcher.group(3),
+                        sql));
+            }
+            command.where(matcher.group(3), sql);
+        } else if ((matcher = DELETE.matcher(text)).matches()) {
+            command = new StubCommand(Type.DELETE);
+            command.table = lower(matcher.group(1));
+            command.where(matcher.group(2), sql);
+        } else if ((matcher = SELECT_VALUE.matcher(text)).matches()) {
+            command = new StubCommand(Type.SELECT_VALUE);
+            command.values.add(command.operand(matcher.group(1), sql));
+            command.labels.add(matcher.group(2) == null ? "value" : lower(
+                    matcher.group(2)));
+        } else {
+            throw unsupported(sql);
+        }
+        return command;
+    }
+
+    /**
+     * Parse WHERE conditions.
+     *
+     * @param clause WHERE clause or null.
+     * @param sql SQL statement for errors.
+     * @throws SQLException If condition is not supported.
+     */
+    private void where(final String clause, final String sql) throws
+            SQLException {
+        if (clause != null) {
+            for (String condition : split(clause, " and ")) {
+                final Matcher matcher = COMPARISON.matcher(condition);
+                if (!matcher.matches()) {
+                    throw unsupported(sql);
+                }
+                where.add(new Condition(lower(matcher.group(1)), matcher.
+                        group(2), operand(matcher.group(3), sql)));
+            }
+        }
+    }
+
+    /**
+     * Parse {@code ?} marker or literal.
+     *
+     * @param text Operand text.
+     * @param sql SQL statement for errors.
+     * @return Operand.
+     * @throws SQLException If literal is not supported.
+     */
+    private Operand operand(final String text, final String sql) throws
+            SQLException {
+        final String value = text.trim();
+        Operand operand;
+        if ("?".equals(value)) {
+            operand = new Operand(paramCount++, null);
+        } else if (value.length() > 1 && value.startsWith("'") && value.
+                endsWith("'")) {
+            operand = new Operand(-1, value.substring(1, value.length() - 1).
+                    replace("''", "'"));
+        } else if ("null".equalsIgnoreCase(value)) {
+            operand = new Operand(-1, null);
+        } else if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(
+                value)) {
+            operand = new Operand(-1, Boolean.valueOf(value));
+        } else {
+            try {
+                if (value.matches("-?\\d+")) {
+                    operand = new Operand(-1, Integer.valueOf(value));
+                } else {
+                    operand = new Operand(-1, new BigDecimal(value));
+                }
+            } catch (NumberFormatException e) {
+                throw unsupported(sql);
+            }
+        }
+        return operand;
+    }
+
+    /**
+     * Split on separator outside of quotes. Separator is matched ignoring
+     * case.
+     *
+     * @param text Text to split.
+     * @param separator Separator.
+     * @return Trimmed parts.
+     */
+    static List<String> split(final String text, final String separator) {
+        final List<String> parts = new ArrayList<String>();
+        final String lower = text.toLowerCase(Locale.ROOT);
+        boolean quoted = false;
+        int start = 0;
+        int i = 0;
+        while (i < text.length()) {
+            if (text.charAt(i) == '\'') {
+                quoted = !quoted;
+                i++;
+            } else if (!quoted && lower.startsWith(separator, i)) {
+                parts.add(text.substring(start, i).trim());
+                i += separator.length();
+                start = i;
+            } else {
+                i++;
+            }
+        }
+        parts.add(text.substring(start).trim());
+        return parts;
+    }
+
+    /**
+     * Lower case identifier.
+     *
+     * @param name Identifier.
+     * @return Lower case identifier.
+     */
+    private static String lower(final String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Create exception for unsupported SQL.
+     *
+     * @param sql SQL statement.
+     * @return Exception.
+     */
+    private static SQLException unsupported(final String sql) {
+        return new SQLSyntaxErrorException(String.format(
+                "Statement not supported by stub driver: %s", sql));
+    }
+
+    /**
+     * Get statement type.
+     *
+     * @return Type.
+     */
+    Type getType() {
+        return type;
+    }
+
+    /**
+     * Is this a query returning a result set?
+     *
+     * @return True for SELECT.
+     */
+    boolean isQuery() {
+        return type == Type.SELECT || type == Type.SELECT_VALUE;
+    }
+
+    /**
+     * Get table name.
+     *
+     * @return Table or null.
+     */
+    String getTable() {
+        return table;
+    }
+
+    /**
+     * Get selected, inserted or updated columns.
+     *
+     * @return Columns.
+     */
+    List<String> getColumns() {
+        return columns;
+    }
+
+    /**
+     * Get labels of selected columns.
+     *
+     * @return Labels.
+     */
+    List<String> getLabels() {
+        return labels;
+    }
+
+    /**
+     * Get inserted or updated values.
+     *
+     * @return Values.
+     */
+    List<Operand> getValues() {
+        return values;
+    }
+
+    /**
+     * Get WHERE conditions.
+     *
+     * @return Conditions.
+     */
+    List<Condition> getWhere() {
+        return where;
+    }
+
+    /**
+     * Get ORDER BY column.
+     *
+     * @return Column or null.
+     */
+    String getOrderBy() {
+        return orderBy;
+    }
+
+    /**
+     * Is ORDER BY descending?
+     *
+     * @return True if descending.
+     */
+    boolean isDescending() {
+        return descending;
+    }
+
+    /**
+     * Get number of {@code ?} markers.
+     *
+     * @return Parameter count.
+     */
+    int getParamCount() {
+        return paramCount;
+    }
+
+    /**
+     * Parameter marker or literal.
+     */
+    static final class Operand {
+
+        /**
+         * Parameter index from 0 or -1 for literal.
+         */
+        private final int param;
+        /**
+         * Literal value.
+         */
+        private final Object literal;
+
+        /**
+         * Construct operand.
+         *
+         * @param param Parameter index from 0 or -1 for literal.
+         * @param literal Literal value.
+         */
+        Operand(final int param, final Object literal) {
+            this.param = param;
+            this.literal = literal;
+        }
+
+        /**
+         * Get value.
+         *
+         * @param params Statement parameters.
+         * @return Parameter or literal.
+         */
+        Object value(final Object[] params) {
+            return param < 0 ? literal : params[param];
+        }
+    }
+
+    /**
+     * Column compared to operand.
+     */
+    static final class Condition {
+
+        /**
+         * Column.
+         */
+        private final String column;
+        /**
+         * Comparison operator.
+         */
+        private final String operator;
+        /**
+         * Right side.
+         */
+        private final Operand operand;
+
+        /**
+         * Construct condition.
+         *
+         * @param column Column.
+         * @param operator Comparison operator.
+         * @param operand Right side.
+         */
+        Condition(final String column, final String operator,
+                final Operand operand) {
+            this.column = column;
+            this.operator = operator;
+            this.operand = operand;
+        }
+
+        /**
+         * Get column.
+         *
+         * @return Column.
+         */
+        String getColumn() {
+            return column;
+        }
+
+        /**
+         * Test value. Null never matches, like SQL.
+         *
+         * @param value Column value.
+         * @param params Statement parameters.
+         * @return True if condition holds.
+         */
+        boolean test(final Object value, final Object[] params) {
+            final Object other = operand.value(params);
+            boolean result = false;
+            if (value != null && other != null) {
+                final int compare = compare(value, other);
+                switch (operator) {
+                    case "=":
+                        result = compare == 0;
+                        break;
+                    case "<>":
+                    case "!=":
+                        result = compare != 0;
+                        break;
+                    case "<":
+                        result = compare < 0;
+                        break;
+                    case ">":
+                        result = compare > 0;
+                        break;
+                    case "<=":
+                        result = compare <= 0;
+                        break;
+                    default:
+                        result = compare >= 0;
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Compare values, numbers by value, dates by time and others as strings.
+     *
+     * @param value Left value.
+     * @param other Right value.
+     * @return Comparison.
+     */
+    static int compare(final Object value, final Object other) {
+        int compare;
+        if (value instanceof Number && other instanceof Number) {
+            compare = new BigDecimal(value.toString()).compareTo(
+                    new BigDecimal(other.toString()));
+        } else if (value instanceof java.util.Date
+                && other instanceof java.util.Date) {
+            compare = Long.compare(((java.util.Date) value).getTime(),
+                    ((java.util.Date) other).getTime());
+        } else if (value instanceof Boolean && other instanceof Boolean) {
+            compare = ((Boolean) value).compareTo((Boolean) other);
+        } else {
+            compare = value.toString().compareTo(other.toString());
+        }
+        return compare;
+    }
+}
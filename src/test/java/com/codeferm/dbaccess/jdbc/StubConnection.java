@@ -0,0 +1,422 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@code Connection} of {@link com.codeferm.dbaccess.jdbc.StubDatabase}.
+ * Changes made while auto commit is off are undone on rollback or close.
+ * Connection properties such as isolation and read only are kept but have no
+ * effect. Methods not listed return a default value, so pools and libraries
+ * probing optional features keep working.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class StubConnection implements InvocationHandler {
+
+    /**
+     * Database.
+     */
+    private final StubDatabase database;
+    /**
+     * Undo actions of open transaction.
+     */
+    private final List<Runnable> undo = new ArrayList<Runnable>();
+    /**
+     * Auto commit mode.
+     */
+    private boolean autoCommit = true;
+    /**
+     * Read only hint.
+     */
+    private boolean readOnly;
+    /**
+     * Transaction isolation.
+     */
+    private int isolation = Connection.TRANSACTION_READ_COMMITTED;
+    /**
+     * Catalog.
+     */
+    private String catalog;
+    /**
+     * Schema.
+     */
+    private String schema;
+    /**
+     * Closed.
+     */
+    private boolean closed;
+
+    /**
+     * Construct handler.
+     *
+     * @param database Database.
+     */
+    StubConnection(final StubDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Get database.
+     *
+     * @return Database.
+     */
+    StubDatabase getDatabase() {
+        return database;
+    }
+
+    /**
+     * Get undo actions of open transaction.
+     *
+     * @return Undo actions or null in auto commit mode.
+     */
+    List<Runnable> getUndo() {
+        return autoCommit ? null : undo;
+    }
+
+    /**
+     * Check connection is open.
+     *
+     * @throws SQLException If closed.
+     */
+    void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLNonTransientConnectionException(
+                    "Connection is closed", "08003");
+        }
+    }
+
+    /**
+     * Commit open transaction.
+     */
+    private void commit() {
+        if (!undo.isEmpty()) {
+            undo.clear();
+        }
+        database.committed();
+    }
+
+    /**
+     * Undo open transaction in reverse order.
+     */
+    private void rollback() {
+        for (int i = undo.size() - 1; i >= 0; i--) {
+            undo.get(i).run();
+        }
+        undo.clear();
+        database.rolledBack();
+    }
+
+    /**
+     * Create statement proxy.
+     *
+     * @param proxy Connection proxy.
+     * @param sql SQL or null for {@code Statement}.
+     * @param keys Return generated keys.
+     * @return Statement proxy.
+     * @throws SQLException If statement is not supported.
+     */
+    private Object statement(final Object proxy, final String sql,
+            final boolean keys) throws SQLException {
+        checkOpen();
+        database.prepare();
+        final StubCommand command = sql == null ? null : database.command(
+                sql);
+        return Proxy.newProxyInstance(StubConnection.class.getClassLoader(),
+                new Class[]{sql == null ? Statement.class
+                    : PreparedStatement.class}, new StubStatement(this,
+                        (Connection) proxy, sql, command, keys));
+    }
+
+    /**
+     * Do args ask for generated keys?
+     *
+     * @param args Arguments of {@code prepareStatement}.
+     * @return True if keys requested.
+     */
+    private static boolean keys(final Object[] args) {
+        boolean keys = false;
+        if (args.length == 2) {
+            keys = args[1] instanceof Integer ? (Integer) args[1]
+                    == Statement.RETURN_GENERATED_KEYS : args[1] != null;
+        }
+        return keys;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method,
+            final Object[] args) throws Throwable {
+        final String name = method.getName();
+        Object result = null;
+        switch (name) {
+            case "prepareStatement":
+                result = statement(proxy, (String) args[0], keys(args));
+                break;
+            case "createStatement":
+                result = statement(proxy, null, false);
+                break;
+            case "prepareCall":
+                throw new SQLFeatureNotSupportedException(
+                        "Stored procedures not supported by stub driver");
+            case "setAutoCommit":
+                checkOpen();
+                final boolean value = (Boolean) args[0];
+                if (value && !autoCommit) {
+                    commit();
+                }
+                autoCommit = value;
+                break;
+            case "getAutoCommit":
+                checkOpen();
+                result = autoCommit;
+                break;
+            case "commit":
+                checkOpen();
+                commit();
+                break;
+            case "rollback":
+                checkOpen();
+                if (args != null) {
+                    throw new SQLFeatureNotSupportedException(
+                            "Savepoints not supported by stub driver");
+                }
+                rollback();
+                break;
+            case "close":
+                if (!closed) {
+                    if (!undo.isEmpty()) {
+                        rollback();
+                    }
+                    closed = true;
+                    database.closed();
+                }
+                break;
+            case "abort":
+                invoke(proxy, Connection.class.getMethod("close"), null);
+                break;
+            case "isClosed":
+                result = closed;
+                break;
+            case "isValid":
+                result = !closed;
+                break;
+            case "getMetaData":
+                checkOpen();
+                result = Proxy.newProxyInstance(StubConnection.class.
+                        getClassLoader(), new Class[]{DatabaseMetaData.class},
+                        new MetaData((Connection) proxy, database));
+                break;
+            case "setReadOnly":
+                readOnly = (Boolean) args[0];
+                break;
+            case "isReadOnly":
+                result = readOnly;
+                break;
+            case "setTransactionIsolation":
+                isolation = (Integer) args[0];
+                break;
+            case "getTransactionIsolation":
+                result = isolation;
+                break;
+            case "setCatalog":
+                catalog = (String) args[0];
+                break;
+            case "getCatalog":
+                result = catalog;
+                break;
+            case "setSchema":
+                schema = (String) args[0];
+                break;
+            case "getSchema":
+                result = schema;
+                break;
+            case "getHoldability":
+                result = ResultSet.CLOSE_CURSORS_AT_COMMIT;
+                break;
+            case "nativeSQL":
+                result = args[0];
+                break;
+            default:
+                result = defaultValue(proxy, method, args);
+        }
+        return result;
+    }
+
+    /**
+     * Default for methods without stub behavior: {@code Object} methods work
+     * on the proxy, {@code unwrap} returns the proxy and others return false,
+     * 0 or null.
+     *
+     * @param proxy Proxy.
+     * @param method Method called.
+     * @param args Arguments.
+     * @return Default value.
+     * @throws SQLException If unwrap to unsupported interface.
+     */
+    static Object defaultValue(final Object proxy, final Method method,
+            final Object[] args) throws SQLException {
+        final String name = method.getName();
+        final Class<?> type = method.getReturnType();
+        Object result = null;
+        if ("equals".equals(name) && args != null && args.length == 1) {
+            result = proxy == args[0];
+        } else if ("hashCode".equals(name) && args == null) {
+            result = System.identityHashCode(proxy);
+        } else if ("toString".equals(name) && args == null) {
+            result = String.format("Stub%s@%x", proxy.getClass().
+                    getInterfaces()[0].getSimpleName(), System.
+                    identityHashCode(proxy));
+        } else if ("isWrapperFor".equals(name)) {
+            result = ((Class<?>) args[0]).isInstance(proxy);
+        } else if ("unwrap".equals(name)) {
+            if (!((Class<?>) args[0]).isInstance(proxy)) {
+                throw new SQLException(String.format("Not a wrapper for %s",
+                        args[0]));
+            }
+            result = proxy;
+        } else if (type == boolean.class) {
+            result = Boolean.FALSE;
+        } else if (type == int.class) {
+            result = 0;
+        } else if (type == long.class) {
+            result = 0L;
+        }
+        return result;
+    }
+
+    /**
+     * {@code DatabaseMetaData} describing the stub driver.
+     */
+    private static final class MetaData implements InvocationHandler {
+
+        /**
+         * Column labels of {@code getColumns}.
+         */
+        private static final String[] COLUMN_LABELS = {"TABLE_NAME",
+            "COLUMN_NAME", "DATA_TYPE", "COLUMN_SIZE", "DECIMAL_DIGITS",
+            "NULLABLE", "ORDINAL_POSITION", "IS_AUTOINCREMENT"};
+        /**
+         * Column types of {@code getColumns}.
+         */
+        private static final int[] COLUMN_TYPES = {Types.VARCHAR,
+            Types.VARCHAR, Types.INTEGER, Types.INTEGER, Types.INTEGER,
+            Types.INTEGER, Types.INTEGER, Types.VARCHAR};
+        /**
+         * Connection proxy.
+         */
+        private final Connection connection;
+        /**
+         * Database.
+         */
+        private final StubDatabase database;
+
+        /**
+         * Construct handler.
+         *
+         * @param connection Connection proxy.
+         * @param database Database.
+         */
+        MetaData(final Connection connection, final StubDatabase database) {
+            this.connection = connection;
+            this.database = database;
+        }
+
+        /**
+         * Describe columns of table. Sizes are unknown, so they are 0, and
+         * column name patterns are ignored.
+         *
+         * @param table Table name.
+         * @return Columns in order, empty if table does not exist.
+         */
+        private ResultSet columns(final String table) {
+            final List<Object[]> rows = new ArrayList<Object[]>();
+            try {
+                final StubTable stubTable = database.table(table);
+                final String[] columns = stubTable.getColumns();
+                for (int i = 0; i < columns.length; i++) {
+                    rows.add(new Object[]{stubTable.getName(), columns[i],
+                        stubTable.getType(columns[i]), 0, 0,
+                        DatabaseMetaData.columnNullable, i + 1, columns[i].
+                        equals(stubTable.getIdentity()) ? "YES" : "NO"});
+                }
+            } catch (SQLException e) {
+                rows.clear();
+            }
+            return SyntheticResultSet.create(COLUMN_LABELS, COLUMN_TYPES,
+                    rows.toArray(new Object[rows.size()][]));
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method,
+                final Object[] args) throws Throwable {
+            Object result;
+            switch (method.getName()) {
+                case "getConnection":
+                    result = connection;
+                    break;
+                case "getDatabaseProductName":
+                    result = "Stub";
+                    break;
+                case "getDriverName":
+                    result = StubDriver.class.getName();
+                    break;
+                case "getDatabaseProductVersion":
+                case "getDriverVersion":
+                    result = String.format("%d.%d", StubDriver.MAJOR_VERSION,
+                            StubDriver.MINOR_VERSION);
+                    break;
+                case "getDatabaseMajorVersion":
+                case "getDriverMajorVersion":
+                    result = StubDriver.MAJOR_VERSION;
+                    break;
+                case "getDatabaseMinorVersion":
+                case "getDriverMinorVersion":
+                    result = StubDriver.MINOR_VERSION;
+                    break;
+                case "getJDBCMajorVersion":
+                    result = 4;
+                    break;
+                case "getIdentifierQuoteString":
+                    result = "\"";
+                    break;
+                case "getUserName":
+                    result = "";
+                    break;
+                case "supportsBatchUpdates":
+                case "supportsGetGeneratedKeys":
+                case "supportsTransactions":
+                    result = true;
+                    break;
+                case "getDefaultTransactionIsolation":
+                    result = Connection.TRANSACTION_READ_COMMITTED;
+                    break;
+                case "getColumns":
+                    result = columns((String) args[2]);
+                    break;
+                default:
+                    result = defaultValue(proxy, method, args);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.jdbc;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.logging.Logger;
+import javax.sql.DataSource;
+
+/**
+ * Unpooled {@code DataSource} of
+ * {@link com.codeferm.dbaccess.jdbc.StubDatabase}. Every
+ * {@code getConnection} opens a connection, so connect latency applies each
+ * time. Wrap in a pool to measure pooled access.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class StubDataSource implements DataSource {
+
+    /**
+     * Database.
+     */
+    private final StubDatabase database;
+    /**
+     * Log writer.
+     */
+    private PrintWriter logWriter;
+    /**
+     * Login timeout in seconds.
+     */
+    private int loginTimeout;
+
+    /**
+     * Construct DataSource.
+     *
+     * @param database Database.
+     */
+    public StubDataSource(final StubDatabase database) {
+        this.database = database;
+    }
+
+    /**
+     * Get database.
+     *
+     * @return Database.
+     */
+    public StubDatabase getDatabase() {
+        return database;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return database.connect();
+    }
+
+    @Override
+    public Connection getConnection(final String username,
+            final String password) throws SQLException {
+        return database.connect();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(final PrintWriter out) {
+        this.logWriter = out;
+    }
+
+    @Override
+    public void setLoginTimeout(final int seconds) {
+        this.loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return loginTimeout;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("java.util.logging");
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        if (!iface.isInstance(this)) {
+            throw new SQLException(String.format("Not a wrapper for %s",
+                    iface));
+        }
+        return iface.cast(this);
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
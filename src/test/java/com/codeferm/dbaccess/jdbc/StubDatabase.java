@@ -0,0 +1,559 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.jdbc;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory database behind {@link com.codeferm.dbaccess.jdbc.StubDriver} and
+ * {@link com.codeferm.dbaccess.jdbc.StubDataSource}, so library overhead can
+ * be measured and tested without a database server. Tables are created with
+ * {@link #createTable} and {@code test_table} from {@code sql.properties} is
+ * created with {@link #createTestTable()}. Statements supported are described
+ * in {@link com.codeferm.dbaccess.jdbc.StubCommand}.
+ * <p>
+ * Latency can be added to connect, prepare, execute and to each row returned
+ * or changed. Short delays spin and longer ones park, so the added time is
+ * close to what was asked for. Failures are injected on every nth execute or
+ * on statements matching a pattern and are deterministic, the nth execute of
+ * the database always fails.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class StubDatabase {
+
+    /**
+     * Databases by name.
+     */
+    private static final ConcurrentMap<String, StubDatabase> DATABASES
+            = new ConcurrentHashMap<String, StubDatabase>();
+    /**
+     * Delays shorter than this spin instead of park.
+     */
+    private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(
+            100);
+    /**
+     * Fixed time of generated date and time values.
+     */
+    private static final long SEED_MILLIS = 1000000000000L;
+    /**
+     * Database name.
+     */
+    private final String name;
+    /**
+     * Tables by lower case name.
+     */
+    private final ConcurrentMap<String, StubTable> tables
+            = new ConcurrentHashMap<String, StubTable>();
+    /**
+     * Parsed statements by SQL.
+     */
+    private final ConcurrentMap<String, StubCommand> commands
+            = new ConcurrentHashMap<String, StubCommand>();
+    /**
+     * Connect latency in nanoseconds.
+     */
+    private volatile long connectNanos;
+    /**
+     * Prepare latency in nanoseconds.
+     */
+    private volatile long prepareNanos;
+    /**
+     * Execute latency in nanoseconds.
+     */
+    private volatile long executeNanos;
+    /**
+     * Latency of each row returned or changed in nanoseconds.
+     */
+    private volatile long rowNanos;
+    /**
+     * Fail every nth execute, 0 for never.
+     */
+    private volatile int failEvery;
+    /**
+     * Fail statements where pattern is found or null.
+     */
+    private volatile Pattern failPattern;
+    /**
+     * Fail connect.
+     */
+    private volatile boolean failConnect;
+    /**
+     * Connections opened.
+     */
+    private final AtomicLong connectCount = new AtomicLong();
+    /**
+     * Connections open.
+     */
+    private final AtomicInteger openCount = new AtomicInteger();
+    /**
+     * Statements executed, each statement of a batch counts.
+     */
+    private final AtomicLong executeCount = new AtomicLong();
+    /**
+     * Commits.
+     */
+    private final AtomicLong commitCount = new AtomicLong();
+    /**
+     * Rollbacks.
+     */
+    private final AtomicLong rollbackCount = new AtomicLong();
+    /**
+     * Failures injected.
+     */
+    private final AtomicLong failureCount = new AtomicLong();
+
+    /**
+     * Construct database.
+     *
+     * @param name Database name.
+     */
+    private StubDatabase(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Get database by name, creating it if it does not exist.
+     *
+     * @param name Database name.
+     * @return Database.
+     */
+    public static StubDatabase get(final String name) {
+        StubDatabase database = DATABASES.get(name);
+        if (database == null) {
+            final StubDatabase created = new StubDatabase(name);
+            database = DATABASES.putIfAbsent(name, created);
+            if (database == null) {
+                database = created;
+            }
+        }
+        return database;
+    }
+
+    /**
+     * Remove database by name. Open connections keep working.
+     *
+     * @param name Database name.
+     */
+    public static void drop(final String name) {
+        DATABASES.remove(name);
+    }
+
+    /**
+     * Get database name.
+     *
+     * @return Name.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Get URL of database for {@link com.codeferm.dbaccess.jdbc.StubDriver}.
+     *
+     * @return URL.
+     */
+    public String getUrl() {
+        return StubDriver.URL_PREFIX + name;
+    }
+
+    /**
+     * Create table, replacing existing table with same name.
+     *
+     * @param table Table name.
+     * @param columns Column names.
+     * @param types Column types from {@link java.sql.Types}.
+     * @param identity Column assigned from a sequence when not inserted or
+     * null for none.
+     */
+    public void createTable(final String table, final String[] columns,
+            final int[] types, final String identity) {
+        final String key = table.toLowerCase(Locale.ROOT);
+        tables.put(key, new StubTable(key, columns, types, identity));
+    }
+
+    /**
+     * Create {@code test_table} used by {@code sql.properties} with
+     * {@code id} as identity.
+     */
+    public void createTestTable() {
+        createTable("test_table", SyntheticResultSet.TEST_TABLE_LABELS,
+                SyntheticResultSet.TEST_TABLE_TYPES, "id");
+    }
+
+    /**
+     * Create {@code test_table} if it does not exist.
+     */
+    public void createTestTableIfAbsent() {
+        tables.putIfAbsent("test_table", new StubTable("test_table",
+                SyntheticResultSet.TEST_TABLE_LABELS,
+                SyntheticResultSet.TEST_TABLE_TYPES, "id"));
+    }
+
+    /**
+     * Add generated rows to table without SQL. Values come from
+     * {@link SyntheticResultSet#value(int, int, long)} with a fixed time, so
+     * the same call always produces the same rows. Character values are padded
+     * to the payload length to control row size.
+     *
+     * @param table Table name.
+     * @param rowCount Rows to add.
+     * @param payload Length of character values, 0 for unpadded.
+     * @throws SQLException If table does not exist.
+     */
+    public void seed(final String table, final int rowCount,
+            final int payload) throws SQLException {
+        final StubTable stubTable = table(table);
+        final String[] columns = stubTable.getColumns();
+        final List<Object[]> rows = new ArrayList<Object[]>(rowCount);
+        final int first = stubTable.size();
+        for (int i = 0; i < rowCount; i++) {
+            rows.add(row(stubTable, columns, first + i, payload));
+        }
+        stubTable.load(rows);
+    }
+
+    /**
+     * Generate row for table.
+     *
+     * @param table Table.
+     * @param columns Column names.
+     * @param number Row number.
+     * @param payload Length of character values.
+     * @return Row.
+     * @throws SQLException If column does not exist.
+     */
+    private static Object[] row(final StubTable table, final String[] columns,
+            final int number, final int payload) throws SQLException {
+        final Object[] row = new Object[columns.length];
+        for (int i = 0; i < row.length; i++) {
+            if (!columns[i].equals(table.getIdentity())) {
+                final int type = table.getType(columns[i]);
+                Object value = SyntheticResultSet.value(type, number,
+                        SEED_MILLIS);
+                if (value instanceof String && payload > 0) {
+                    value = pad((String) value, payload);
+                }
+                row[i] = value;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Pad or cut string to length.
+     *
+     * @param value String.
+     * @param length Length.
+     * @return String of length.
+     */
+    private static String pad(final String value, final int length) {
+        final StringBuilder sb = new StringBuilder(length);
+        sb.append(value);
+        while (sb.length() < length) {
+            sb.append('x');
+        }
+        sb.setLength(length);
+        return sb.toString();
+    }
+
+    /**
+     * Delete all rows of all tables and reset identities, latency, failures
+     * and counters.
+     */
+    public void reset() {
+        for (StubTable table : tables.values()) {
+            table.clear();
+        }
+        connectNanos = 0;
+        prepareNanos = 0;
+        executeNanos = 0;
+        rowNanos = 0;
+        failEvery = 0;
+        failPattern = null;
+        failConnect = false;
+        connectCount.set(0);
+        executeCount.set(0);
+        commitCount.set(0);
+        rollbackCount.set(0);
+        failureCount.set(0);
+    }
+
+    /**
+     * Get table.
+     *
+     * @param table Table name.
+     * @return Table.
+     * @throws SQLException If table does not exist.
+     */
+    StubTable table(final String table) throws SQLException {
+        final StubTable stubTable = tables.get(table.toLowerCase(Locale.ROOT));
+        if (stubTable == null) {
+            throw new SQLException(String.format("Table %s not found in %s",
+                    table, name), "42P01");
+        }
+        return stubTable;
+    }
+
+    /**
+     * Get number of rows in table.
+     *
+     * @param table Table name.
+     * @return Rows.
+     * @throws SQLException If table does not exist.
+     */
+    public int count(final String table) throws SQLException {
+        return table(table).size();
+    }
+
+    /**
+     * Parse SQL once per distinct statement.
+     *
+     * @param sql SQL statement.
+     * @return Command.
+     * @throws SQLException If statement is not supported.
+     */
+    StubCommand command(final String sql) throws SQLException {
+        StubCommand command = commands.get(sql);
+        if (command == null) {
+            command = StubCommand.parse(sql);
+            commands.put(sql, command);
+        }
+        return command;
+    }
+
+    /**
+     * Open connection.
+     *
+     * @return Connection.
+     * @throws SQLException If connect failure is injected.
+     */
+    public Connection connect() throws SQLException {
+        pause(connectNanos);
+        if (failConnect) {
+            failureCount.incrementAndGet();
+            throw new SQLTransientConnectionException(String.format(
+                    "Injected connect failure: %s", name), "08001");
+        }
+        connectCount.incrementAndGet();
+        openCount.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(StubDatabase.class.
+                getClassLoader(), new Class[]{Connection.class},
+                new StubConnection(this));
+    }
+
+    /**
+     * Connection closed.
+     */
+    void closed() {
+        openCount.decrementAndGet();
+    }
+
+    /**
+     * Transaction committed.
+     */
+    void committed() {
+        commitCount.incrementAndGet();
+    }
+
+    /**
+     * Transaction rolled back.
+     */
+    void rolledBack() {
+        rollbackCount.incrementAndGet();
+    }
+
+    /**
+     * Add prepare latency.
+     */
+    void prepare() {
+        pause(prepareNanos);
+    }
+
+    /**
+     * Count execute and inject failure. Called before each statement.
+     *
+     * @param sql SQL statement.
+     * @throws SQLException If failure is injected.
+     */
+    void execute(final String sql) throws SQLException {
+        final long count = executeCount.incrementAndGet();
+        final int every = failEvery;
+        final Pattern pattern = failPattern;
+        if (every > 0 && count % every == 0 || pattern != null && pattern.
+                matcher(sql).find()) {
+            failureCount.incrementAndGet();
+            throw new SQLTransientException(String.format(
+                    "Injected failure on execute %d: %s", count, sql),
+                    "40001");
+        }
+    }
+
+    /**
+     * Add execute latency for call and rows.
+     *
+     * @param rows Rows returned or changed.
+     */
+    void executed(final int rows) {
+        pause(executeNanos + rows * rowNanos);
+    }
+
+    /**
+     * Wait without sleeping for short delays.
+     *
+     * @param nanos Nanoseconds, nothing is done if 0 or less.
+     */
+    static void pause(final long nanos) {
+        if (nanos > 0) {
+            final long deadline = System.nanoTime() + nanos;
+            long left = nanos;
+            while (left > 0) {
+                if (left > SPIN_NANOS) {
+                    LockSupport.parkNanos(left - SPIN_NANOS);
+                }
+                left = deadline - System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * Set connect latency.
+     *
+     * @param latency Latency.
+     * @param unit Unit of latency.
+     */
+    public void setConnectLatency(final long latency, final TimeUnit unit) {
+        this.connectNanos = unit.toNanos(latency);
+    }
+
+    /**
+     * Set prepare latency.
+     *
+     * @param latency Latency.
+     * @param unit Unit of latency.
+     */
+    public void setPrepareLatency(final long latency, final TimeUnit unit) {
+        this.prepareNanos = unit.toNanos(latency);
+    }
+
+    /**
+     * Set execute latency, added once per execute call including batches.
+     *
+     * @param latency Latency.
+     * @param unit Unit of latency.
+     */
+    public void setExecuteLatency(final long latency, final TimeUnit unit) {
+        this.executeNanos = unit.toNanos(latency);
+    }
+
+    /**
+     * Set latency of each row returned or changed.
+     *
+     * @param latency Latency.
+     * @param unit Unit of latency.
+     */
+    public void setRowLatency(final long latency, final TimeUnit unit) {
+        this.rowNanos = unit.toNanos(latency);
+    }
+
+    /**
+     * Fail every nth execute counted from the last {@link #reset()}.
+     *
+     * @param failEvery N or 0 for never.
+     */
+    public void setFailEvery(final int failEvery) {
+        this.failEvery = failEvery;
+    }
+
+    /**
+     * Fail statements where pattern is found in the SQL.
+     *
+     * @param failPattern Pattern or null for none.
+     */
+    public void setFailPattern(final Pattern failPattern) {
+        this.failPattern = failPattern;
+    }
+
+    /**
+     * Fail connect.
+     *
+     * @param failConnect True to fail.
+     */
+    public void setFailConnect(final boolean failConnect) {
+        this.failConnect = failConnect;
+    }
+
+    /**
+     * Get connections opened.
+     *
+     * @return Connections.
+     */
+    public long getConnectCount() {
+        return connectCount.get();
+    }
+
+    /**
+     * Get connections open.
+     *
+     * @return Connections.
+     */
+    public int getOpenCount() {
+        return openCount.get();
+    }
+
+    /**
+     * Get statements executed including failures.
+     *
+     * @return Statements.
+     */
+    public long getExecuteCount() {
+        return executeCount.get();
+    }
+
+    /**
+     * Get commits.
+     *
+     * @return Commits.
+     */
+    public long getCommitCount() {
+        return commitCount.get();
+    }
+
+    /**
+     * Get rollbacks.
+     *
+     * @return Rollbacks.
+     */
+    public long getRollbackCount() {
+        return rollbackCount.get();
+    }
+
+    /**
+     * Get failures injected.
+     *
+     * @return Failures.
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+}
@@ -0,0 +1,345 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.jdbc;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.jdbc.StubDatabase} through plain JDBC.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class StubDatabaseTest {
+
+    /**
+     * Insert used by tests.
+     */
+    private static final String INSERT
+            = "insert into stub_table (name, amount) values (?, ?)";
+    /**
+     * Database.
+     */
+    private StubDatabase database;
+    /**
+     * Connection.
+     */
+    private Connection connection;
+
+    /**
+     * Create table and open connection.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Before
+    public void setUp() throws SQLException {
+        database = StubDatabase.get("stub-test");
+        database.reset();
+        database.createTable("stub_table", new String[]{"id", "name",
+            "amount"}, new int[]{Types.INTEGER, Types.VARCHAR, Types.BIGINT},
+                "id");
+        connection = new StubDataSource(database).getConnection();
+    }
+
+    /**
+     * Close connection and drop database.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+        StubDatabase.drop("stub-test");
+    }
+
+    /**
+     * Insert row.
+     *
+     * @param name Name.
+     * @param amount Amount.
+     * @return Generated id.
+     * @throws SQLException Possible exception.
+     */
+    private int insert(final String name, final long amount) throws
+            SQLException {
+        final PreparedStatement statement = connection.prepareStatement(
+                INSERT, Statement.RETURN_GENERATED_KEYS);
+        try {
+            statement.setString(1, name);
+            statement.setLong(2, amount);
+            assertEquals("One row should be inserted", 1, statement.
+                    executeUpdate());
+            final ResultSet keys = statement.getGeneratedKeys();
+            assertTrue("Key should be returned", keys.next());
+            return keys.getInt("id");
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Select amount of row.
+     *
+     * @param id Row id.
+     * @return Amount or -1 if row not found.
+     * @throws SQLException Possible exception.
+     */
+    private long amount(final int id) throws SQLException {
+        final PreparedStatement statement = connection.prepareStatement(
+                "select amount from stub_table where id = ?");
+        try {
+            statement.setInt(1, id);
+            final ResultSet resultSet = statement.executeQuery();
+            return resultSet.next() ? resultSet.getLong(1) : -1;
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Insert, select, update and delete.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void crud() throws SQLException {
+        assertEquals("First id should be 1", 1, insert("a", 10));
+        assertEquals("Second id should be 2", 2, insert("b", 20));
+        assertEquals("Amount should be selected", 20, amount(2));
+        final Statement statement = connection.createStatement();
+        try {
+            assertEquals("One row should be updated", 1, statement.
+                    executeUpdate(
+                            "update stub_table set amount = 25 where "
+                            + "name = 'b'"));
+            assertEquals("Amount should be updated", 25, amount(2));
+            final ResultSet resultSet = statement.executeQuery(
+                    "select id, name as label from stub_table where "
+                    + "amount >= 10 order by id desc");
+            assertEquals("Alias should be label", "label", resultSet.
+                    getMetaData().getColumnLabel(2));
+            assertTrue("First row should exist", resultSet.next());
+            assertEquals("Rows should be descending", 2, resultSet.getInt(
+                    "id"));
+            assertEquals("Both rows should be deleted", 2, statement.
+                    executeUpdate("delete from stub_table"));
+        } finally {
+            statement.close();
+        }
+        assertEquals("Table should be empty", 0, database.count(
+                "stub_table"));
+    }
+
+    /**
+     * Select without table used as validation query.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void selectValue() throws SQLException {
+        final Statement statement = connection.createStatement();
+        try {
+            final ResultSet resultSet = statement.executeQuery(
+                    "select 1 as testval");
+            assertTrue("Row should exist", resultSet.next());
+            assertEquals("Value should be 1", 1, resultSet.getInt("testval"));
+            assertFalse("Only one row", resultSet.next());
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Rollback undoes insert, update and delete.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void rollback() throws SQLException {
+        final int kept = insert("kept", 1);
+        connection.setAutoCommit(false);
+        final int added = insert("added", 2);
+        final Statement statement = connection.createStatement();
+        try {
+            statement.executeUpdate("update stub_table set amount = 5");
+            statement.executeUpdate("delete from stub_table where id = "
+                    + kept);
+        } finally {
+            statement.close();
+        }
+        assertEquals("Delete should be seen in transaction", -1, amount(
+                kept));
+        connection.rollback();
+        connection.setAutoCommit(true);
+        assertEquals("Delete and update should be undone", 1, amount(kept));
+        assertEquals("Insert should be undone", -1, amount(added));
+        assertEquals("Rollback should be counted", 1, database.
+                getRollbackCount());
+    }
+
+    /**
+     * Batch returns counts and closing with open transaction rolls back.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void batch() throws SQLException {
+        connection.setAutoCommit(false);
+        final PreparedStatement statement = connection.prepareStatement(
+                INSERT);
+        try {
+            for (int i = 0; i < 3; i++) {
+                statement.setString(1, "batch");
+                statement.setLong(2, i);
+                statement.addBatch();
+            }
+            assertArrayEquals("Each insert should count one", new int[]{1, 1,
+                1}, statement.executeBatch());
+        } finally {
+            statement.close();
+        }
+        assertEquals("Rows should be inserted", 3, database.count(
+                "stub_table"));
+        connection.close();
+        assertEquals("Close should roll back", 0, database.count(
+                "stub_table"));
+        assertEquals("Connection should be closed", 0, database.
+                getOpenCount());
+        connection = new StubDataSource(database).getConnection();
+    }
+
+    /**
+     * Every nth execute fails the same way each run.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void failEvery() throws SQLException {
+        database.setFailEvery(3);
+        int failed = 0;
+        for (int i = 1; i <= 9; i++) {
+            try {
+                insert("fail", i);
+            } catch (SQLTransientException e) {
+                assertEquals("Every third execute should fail", 0, i % 3);
+                failed++;
+            }
+        }
+        assertEquals("Three executes should fail", 3, failed);
+        assertEquals("Six rows should be inserted", 6, database.count(
+                "stub_table"));
+        database.setFailEvery(0);
+        database.setFailPattern(Pattern.compile("where id"));
+        try {
+            amount(1);
+            fail("Select by id should fail");
+        } catch (SQLTransientException e) {
+            assertEquals("Failures should be counted", 4, database.
+                    getFailureCount());
+        }
+    }
+
+    /**
+     * Batch failure reports counts of statements run.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void batchFailure() throws SQLException {
+        database.setFailEvery(2);
+        final PreparedStatement statement = connection.prepareStatement(
+                INSERT);
+        try {
+            for (int i = 0; i < 3; i++) {
+                statement.setString(1, "batch");
+                statement.setLong(2, i);
+                statement.addBatch();
+            }
+            statement.executeBatch();
+            fail("Second statement should fail");
+        } catch (BatchUpdateException e) {
+            assertArrayEquals("First statement should be counted", new int[]{
+                1}, e.getUpdateCounts());
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Latency is added to execute and each row.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void latency() throws SQLException {
+        for (int i = 0; i < 10; i++) {
+            insert("latency", i);
+        }
+        database.setExecuteLatency(2, TimeUnit.MILLISECONDS);
+        database.setRowLatency(1, TimeUnit.MILLISECONDS);
+        final Statement statement = connection.createStatement();
+        try {
+            final long start = System.nanoTime();
+            statement.executeQuery("select * from stub_table");
+            final long elapsed = System.nanoTime() - start;
+            assertTrue("Execute and ten rows should take 12 ms", elapsed
+                    >= TimeUnit.MILLISECONDS.toNanos(12));
+        } finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Driver creates {@code test_table} from URL option and connect failure
+     * is injected.
+     *
+     * @throws Exception Possible exception.
+     */
+    @Test
+    public void driver() throws Exception {
+        Class.forName(StubDriver.class.getName());
+        final String url = StubDriver.URL_PREFIX + "stub-test;"
+                + StubDriver.TEST_TABLE_OPTION;
+        final Connection driverConnection = DriverManager.getConnection(url);
+        try {
+            final Statement statement = driverConnection.createStatement();
+            final ResultSet resultSet = statement.executeQuery(
+                    "select * from test_table");
+            assertEquals("All columns should be selected", 13, resultSet.
+                    getMetaData().getColumnCount());
+            statement.close();
+        } finally {
+            driverConnection.close();
+        }
+        database.setFailConnect(true);
+        try {
+            DriverManager.getConnection(url).close();
+            fail("Connect should fail");
+        } catch (SQLException e) {
+            assertEquals("Connect failure state", "08001", e.getSQLState());
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.jdbc;
+
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * JDBC driver for {@link com.codeferm.dbaccess.jdbc.StubDatabase}. URLs are
+ * {@code jdbc:stub:<name>[;test_table]} and the database is created on first
+ * connect. With {@code test_table} the table used by {@code sql.properties} is
+ * created if it does not exist. Set {@code db.driver} to this class and
+ * {@code db.url} to {@code jdbc:stub:test;test_table} to run the pool based
+ * tests without a database server.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class StubDriver implements Driver {
+
+    /**
+     * URL prefix.
+     */
+    public static final String URL_PREFIX = "jdbc:stub:";
+    /**
+     * URL option creating {@code test_table}.
+     */
+    public static final String TEST_TABLE_OPTION = "test_table";
+    /**
+     * Major version.
+     */
+    static final int MAJOR_VERSION = 1;
+    /**
+     * Minor version.
+     */
+    static final int MINOR_VERSION = 0;
+
+    static {
+        try {
+            DriverManager.registerDriver(new StubDriver());
+        } catch (SQLException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Get database of URL and apply URL options.
+     *
+     * @param url URL.
+     * @return Database or null if URL is not a stub URL.
+     */
+    public static StubDatabase database(final String url) {
+        StubDatabase database = null;
+        if (url != null && url.startsWith(URL_PREFIX)) {
+            final String[] parts = url.substring(URL_PREFIX.length()).split(
+                    ";");
+            database = StubDatabase.get(parts[0]);
+            for (int i = 1; i < parts.length; i++) {
+                if (TEST_TABLE_OPTION.equalsIgnoreCase(parts[i].trim())) {
+                    database.createTestTableIfAbsent();
+                }
+            }
+        }
+        return database;
+    }
+
+    @Override
+    public Connection connect(final String url, final Properties info) throws
+            SQLException {
+        final StubDatabase database = database(url);
+        Connection connection = null;
+        if (database != null) {
+            connection = database.connect();
+        }
+        return connection;
+    }
+
+    @Override
+    public boolean acceptsURL(final String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(final String url,
+            final Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+
+    @Override
+    public int getMajorVersion() {
+        return MAJOR_VERSION;
+    }
+
+    @Override
+    public int getMinorVersion() {
+        return MINOR_VERSION;
+    }
+
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("java.util.logging");
+    }
+}
@@ -0,0 +1,511 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.ParameterMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * {@code Statement} and {@code PreparedStatement} of
+ * {@link com.codeferm.dbaccess.jdbc.StubDatabase}. Parameters are bound by
+ * any {@code set} method taking an index and value. Result sets and generated
+ * keys are {@link com.codeferm.dbaccess.jdbc.SyntheticResultSet} instances.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class StubStatement implements InvocationHandler {
+
+    /**
+     * Marker of parameter not set.
+     */
+    private static final Object UNSET = new Object();
+    /**
+     * Connection handler.
+     */
+    private final StubConnection owner;
+    /**
+     * Connection proxy.
+     */
+    private final Connection connection;
+    /**
+     * Prepared SQL or null for {@code Statement}.
+     */
+    private final String sql;
+    /**
+     * Prepared command or null for {@code Statement}.
+     */
+    private final StubCommand command;
+    /**
+     * Return generated keys of prepared statement.
+     */
+    private final boolean keys;
+    /**
+     * Return generated keys of last execute.
+     */
+    private boolean returnKeys;
+    /**
+     * Bound parameters.
+     */
+    private final Object[] params;
+    /**
+     * Parameter arrays or SQL strings added to batch.
+     */
+    private final List<Object> batch = new ArrayList<Object>();
+    /**
+     * Generated identity values of last execute.
+     */
+    private final List<Object> generated = new ArrayList<Object>();
+    /**
+     * Identity column of last insert.
+     */
+    private String identity;
+    /**
+     * Identity type of last insert.
+     */
+    private int identityType = Types.INTEGER;
+    /**
+     * Result of last query.
+     */
+    private ResultSet resultSet;
+    /**
+     * Update count of last update or -1.
+     */
+    private int updateCount = -1;
+    /**
+     * Maximum rows or 0 for all.
+     */
+    private int maxRows;
+    /**
+     * Fetch size hint.
+     */
+    private int fetchSize;
+    /**
+     * Query timeout in seconds, not enforced.
+     */
+    private int queryTimeout;
+    /**
+     * Closed.
+     */
+    private boolean closed;
+
+    /**
+     * Construct handler.
+     *
+     * @param owner Connection handler.
+     * @param connection Connection proxy.
+     * @param sql Prepared SQL or null for {@code Statement}.
+     * @param command Prepared command or null for {@code Statement}.
+     * @param keys Return generated keys.
+     */
+    StubStatement(final StubConnection owner, final Connection connection,
+            final String sql, final StubCommand command, final boolean keys) {
+        this.owner = owner;
+        this.connection = connection;
+        this.sql = sql;
+        this.command = command;
+        this.keys = keys;
+        this.params = new Object[command == null ? 0 : command.
+                getParamCount()];
+        Arrays.fill(params, UNSET);
+    }
+
+    /**
+     * Check statement is open.
+     *
+     * @throws SQLException If statement or connection is closed.
+     */
+    private void checkOpen() throws SQLException {
+        owner.checkOpen();
+        if (closed) {
+            throw new SQLException("Statement is closed", "HY010");
+        }
+    }
+
+    /**
+     * Get SQL type of literal.
+     *
+     * @param value Literal.
+     * @return Type from {@link java.sql.Types}.
+     */
+    private static int type(final Object value) {
+        int type = Types.VARCHAR;
+        if (value instanceof Integer) {
+            type = Types.INTEGER;
+        } else if (value instanceof BigDecimal) {
+            type = Types.NUMERIC;
+        } else if (value instanceof Boolean) {
+            type = Types.BOOLEAN;
+        }
+        return type;
+    }
+
+    /**
+     * Close result of previous execute.
+     */
+    private void clearResult() {
+        if (resultSet != null) {
+            try {
+                resultSet.close();
+            } catch (SQLException e) {
+                // SyntheticResultSet close does not fail
+            }
+            resultSet = null;
+        }
+        updateCount = -1;
+        generated.clear();
+    }
+
+    /**
+     * Run one statement without latency.
+     *
+     * @param stmtCommand Command.
+     * @param stmtSql SQL statement.
+     * @param values Parameters.
+     * @return Rows returned or changed.
+     * @throws SQLException If statement fails.
+     */
+    private int run(final StubCommand stmtCommand, final String stmtSql,
+            final Object[] values) throws SQLException {
+        final StubDatabase database = owner.getDatabase();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == UNSET) {
+                throw new SQLException(String.format(
+                        "No value specified for parameter %d", i + 1),
+                        "07001");
+            }
+        }
+        if (stmtCommand.getParamCount() != values.length) {
+            throw new SQLException(String.format(
+                    "Statement has %d parameters, %d given: %s", stmtCommand.
+                    getParamCount(), values.length, stmtSql), "07001");
+        }
+        database.execute(stmtSql);
+        int rows;
+        if (stmtCommand.getType() == StubCommand.Type.SELECT_VALUE) {
+            final Object value = stmtCommand.getValues().get(0).value(values);
+            resultSet = SyntheticResultSet.create(stmtCommand.getLabels().
+                    toArray(new String[1]), new int[]{type(value)},
+                    new Object[][]{{value}});
+            rows = 1;
+        } else {
+            final StubTable table = database.table(stmtCommand.getTable());
+            switch (stmtCommand.getType()) {
+                case SELECT:
+                    final StubTable.Result result = table.select(stmtCommand,
+                            values, maxRows);
+                    resultSet = SyntheticResultSet.create(result.getLabels(),
+                            result.getTypes(), result.getRows());
+                    rows = result.getRows().length;
+                    break;
+                case INSERT:
+                    final Object id = table.insert(stmtCommand, values, owner.
+                            getUndo());
+                    if (id != null) {
+                        identity = table.getIdentity();
+                        identityType = table.getType(identity);
+                        generated.add(id);
+                    }
+                    rows = 1;
+                    break;
+                case UPDATE:
+                    rows = table.update(stmtCommand, values, owner.getUndo());
+                    break;
+                default:
+                    rows = table.delete(stmtCommand, values, owner.getUndo());
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Execute prepared statement or SQL of {@code Statement}.
+     *
+     * @param args Arguments of execute method, SQL first for
+     * {@code Statement}.
+     * @param query True if result set expected, false if update expected and
+     * null for either.
+     * @return Rows returned or changed.
+     * @throws SQLException If statement fails.
+     */
+    private int execute(final Object[] args, final Boolean query) throws
+            SQLException {
+        checkOpen();
+        clearResult();
+        StubCommand stmtCommand = command;
+        String stmtSql = sql;
+        Object[] values = params;
+        returnKeys = keys;
+        if (args != null && args.length == 2) {
+            returnKeys = args[1] instanceof Integer ? (Integer) args[1]
+                    == Statement.RETURN_GENERATED_KEYS : args[1] != null;
+        }
+        if (args != null && args.length > 0) {
+            stmtSql = (String) args[0];
+            stmtCommand = owner.getDatabase().command(stmtSql);
+            values = new Object[0];
+        }
+        if (stmtCommand == null) {
+            throw new SQLException("No SQL to execute", "HY010");
+        }
+        if (query != null && query != stmtCommand.isQuery()) {
+            throw new SQLException(String.format(query
+                    ? "Statement does not return a result set: %s"
+                    : "Statement returns a result set: %s", stmtSql),
+                    "0100E");
+        }
+        final int rows = run(stmtCommand, stmtSql, values);
+        if (!stmtCommand.isQuery()) {
+            updateCount = rows;
+        }
+        owner.getDatabase().executed(rows);
+        return rows;
+    }
+
+    /**
+     * Execute batch. Latency is added once for the batch.
+     *
+     * @return Update counts.
+     * @throws SQLException If a statement fails.
+     */
+    private int[] executeBatch() throws SQLException {
+        checkOpen();
+        clearResult();
+        returnKeys = keys;
+        final int[] counts = new int[batch.size()];
+        int total = 0;
+        try {
+            for (int i = 0; i < counts.length; i++) {
+                final Object entry = batch.get(i);
+                try {
+                    if (entry instanceof String) {
+                        final StubCommand entryCommand = owner.getDatabase().
+                                command((String) entry);
+                        counts[i] = run(entryCommand, (String) entry,
+                                new Object[0]);
+                    } else {
+                        counts[i] = run(command, sql, (Object[]) entry);
+                    }
+                } catch (SQLException e) {
+                    throw new BatchUpdateException(e.getMessage(), e.
+                            getSQLState(), e.getErrorCode(), Arrays.copyOf(
+                                    counts, i), e);
+                }
+                total += counts[i];
+            }
+        } finally {
+            batch.clear();
+            owner.getDatabase().executed(total);
+        }
+        return counts;
+    }
+
+    /**
+     * Get generated keys of last execute.
+     *
+     * @return Keys, empty if none.
+     */
+    private ResultSet generatedKeys() {
+        final Object[][] rows = new Object[returnKeys ? generated.size() : 0][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = new Object[]{generated.get(i)};
+        }
+        return SyntheticResultSet.create(new String[]{identity == null ? "id"
+            : identity}, new int[]{identityType}, rows);
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method,
+            final Object[] args) throws Throwable {
+        final String name = method.getName();
+        Object result = null;
+        switch (name) {
+            case "executeQuery":
+                execute(args, true);
+                result = resultSet;
+                break;
+            case "executeUpdate":
+                result = execute(args, false);
+                break;
+            case "executeLargeUpdate":
+                result = (long) execute(args, false);
+                break;
+            case "execute":
+                execute(args, null);
+                result = resultSet != null;
+                break;
+            case "addBatch":
+                checkOpen();
+                batch.add(args == null ? params.clone() : args[0]);
+                break;
+            case "clearBatch":
+                batch.clear();
+                break;
+            case "executeBatch":
+                result = executeBatch();
+                break;
+            case "executeLargeBatch":
+                final int[] counts = executeBatch();
+                final long[] largeCounts = new long[counts.length];
+                for (int i = 0; i < counts.length; i++) {
+                    largeCounts[i] = counts[i];
+                }
+                result = largeCounts;
+                break;
+            case "getResultSet":
+                result = resultSet;
+                break;
+            case "getUpdateCount":
+                result = updateCount;
+                break;
+            case "getLargeUpdateCount":
+                result = (long) updateCount;
+                break;
+            case "getMoreResults":
+                clearResult();
+                result = false;
+                break;
+            case "getGeneratedKeys":
+                result = generatedKeys();
+                break;
+            case "getConnection":
+                result = connection;
+                break;
+            case "close":
+                clearResult();
+                closed = true;
+                break;
+            case "isClosed":
+                result = closed;
+                break;
+            case "clearParameters":
+                Arrays.fill(params, UNSET);
+                break;
+            case "getParameterMetaData":
+                result = Proxy.newProxyInstance(StubStatement.class.
+                        getClassLoader(), new Class[]{ParameterMetaData.class},
+                        new ParameterInfo(params.length));
+                break;
+            case "setMaxRows":
+                maxRows = (Integer) args[0];
+                break;
+            case "getMaxRows":
+                result = maxRows;
+                break;
+            case "setFetchSize":
+                fetchSize = (Integer) args[0];
+                break;
+            case "getFetchSize":
+                result = fetchSize;
+                break;
+            case "setQueryTimeout":
+                queryTimeout = (Integer) args[0];
+                break;
+            case "getQueryTimeout":
+                result = queryTimeout;
+                break;
+            case "getResultSetType":
+                result = ResultSet.TYPE_FORWARD_ONLY;
+                break;
+            case "getResultSetConcurrency":
+                result = ResultSet.CONCUR_READ_ONLY;
+                break;
+            case "getFetchDirection":
+                result = ResultSet.FETCH_FORWARD;
+                break;
+            case "getResultSetHoldability":
+                result = ResultSet.CLOSE_CURSORS_AT_COMMIT;
+                break;
+            default:
+                if (name.startsWith("set") && args != null && args.length
+                        >= 2 && args[0] instanceof Integer) {
+                    bind((Integer) args[0], "setNull".equals(name) ? null
+                            : args[1]);
+                } else {
+                    result = StubConnection.defaultValue(proxy, method, args);
+                }
+        }
+        return result;
+    }
+
+    /**
+     * Bind parameter.
+     *
+     * @param index Index starting at 1.
+     * @param value Value.
+     * @throws SQLException If index is out of range.
+     */
+    private void bind(final int index, final Object value) throws
+            SQLException {
+        checkOpen();
+        if (index < 1 || index > params.length) {
+            throw new SQLException(String.format(
+                    "Parameter index %d out of range 1 to %d", index,
+                    params.length), "22023");
+        }
+        params[index - 1] = value;
+    }
+
+    /**
+     * {@code ParameterMetaData} with count only, types are unknown.
+     */
+    private static final class ParameterInfo implements InvocationHandler {
+
+        /**
+         * Number of parameters.
+         */
+        private final int count;
+
+        /**
+         * Construct handler.
+         *
+         * @param count Number of parameters.
+         */
+        ParameterInfo(final int count) {
+            this.count = count;
+        }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method,
+                final Object[] args) throws Throwable {
+            Object result;
+            switch (method.getName()) {
+                case "getParameterCount":
+                    result = count;
+                    break;
+                case "getParameterType":
+                    result = Types.VARCHAR;
+                    break;
+                case "getParameterClassName":
+                    result = Object.class.getName();
+                    break;
+                case "isNullable":
+                    result = ParameterMetaData.parameterNullableUnknown;
+                    break;
+                case "getParameterMode":
+                    result = ParameterMetaData.parameterModeIn;
+                    break;
+                default:
+                    result = StubConnection.defaultValue(proxy, method, args);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,523 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.jdbc;
+
+import java.sql.SQLException;
+import java.sql.SQLSyntaxErrorException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Table of {@link com.codeferm.dbaccess.jdbc.StubDatabase}. Rows are kept in
+ * insert order and every operation locks the table, so statements are atomic
+ * but there is no isolation between open transactions. Changes made by a
+ * connection not in auto commit mode are recorded as undo actions.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+final class StubTable {
+
+    /**
+     * Table name.
+     */
+    private final String name;
+    /**
+     * Column names in lower case.
+     */
+    private final String[] columns;
+    /**
+     * Column types from {@link java.sql.Types}.
+     */
+    private final int[] types;
+    /**
+     * Java class of each column.
+     */
+    private final Class<?>[] classes;
+    /**
+     * Index of identity column or -1.
+     */
+    private final int identity;
+    /**
+     * Rows.
+     */
+    private final List<Object[]> rows = new ArrayList<Object[]>();
+    /**
+     * Next identity value.
+     */
+    private long nextId = 1;
+
+    /**
+     * Construct table.
+     *
+     * @param name Table name.
+     * @param columns Column names.
+     * @param types Column types from {@link java.sql.Types}.
+     * @param identity Identity column name or null.
+     */
+    StubTable(final String name, final String[] columns, final int[] types,
+            final String identity) {
+        if (columns.length != types.length) {
+            throw new IllegalArgumentException(String.format(
+                    "%d columns and %d types", columns.length, types.length));
+        }
+        this.name = name;
+        this.columns = new String[columns.length];
+        this.types = types.clone();
+        this.classes = new Class<?>[columns.length];
+        int index = -1;
+        for (int i = 0; i < columns.length; i++) {
+            this.columns[i] = columns[i].toLowerCase(Locale.ROOT);
+            this.classes[i] = SyntheticResultSet.javaClass(types[i]);
+            if (this.columns[i].equalsIgnoreCase(identity)) {
+                index = i;
+            }
+        }
+        this.identity = index;
+    }
+
+    /**
+     * Get table name.
+     *
+     * @return Name.
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Get column names.
+     *
+     * @return Column names in lower case.
+     */
+    String[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * Get identity column.
+     *
+     * @return Column name or null.
+     */
+    String getIdentity() {
+        return identity < 0 ? null : columns[identity];
+    }
+
+    /**
+     * Get type of column.
+     *
+     * @param column Column name.
+     * @return Type from {@link java.sql.Types}.
+     * @throws SQLException If column does not exist.
+     */
+    int getType(final String column) throws SQLException {
+        return types[index(column)];
+    }
+
+    /**
+     * Get number of rows.
+     *
+     * @return Rows.
+     */
+    synchronized int size() {
+        return rows.size();
+    }
+
+    /**
+     * Get index of column.
+     *
+     * @param column Column name in lower case.
+     * @return Index.
+     * @throws SQLException If column does not exist.
+     */
+    private int index(final String column) throws SQLException {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(column)) {
+                return i;
+            }
+        }
+        throw new SQLSyntaxErrorException(String.format(
+                "Column %s not found in %s", column, name));
+    }
+
+    /**
+     * Convert value to column class.
+     *
+     * @param index Column index.
+     * @param value Value or null.
+     * @return Converted value or null.
+     * @throws SQLException If value cannot be converted.
+     */
+    private Object column(final int index, final Object value) throws
+            SQLException {
+        Object result = null;
+        if (value != null) {
+            result = SyntheticResultSet.convert(value, classes[index]);
+        }
+        return result;
+    }
+
+    /**
+     * Does row match all conditions?
+     *
+     * @param row Row.
+     * @param where Column indexes and conditions.
+     * @param params Statement parameters.
+     * @return True if row matches.
+     */
+    private static boolean matches(final Object[] row, final Filter where,
+            final Object[] params) {
+        boolean result = true;
+        for (int i = 0; i < where.indexes.length && result; i++) {
+            result = where.conditions.get(i).test(row[where.indexes[i]],
+                    params);
+        }
+        return result;
+    }
+
+    /**
+     * Resolve WHERE columns.
+     *
+     * @param command Command.
+     * @return Filter.
+     * @throws SQLException If column does not exist.
+     */
+    private Filter filter(final StubCommand command) throws SQLException {
+        final List<StubCommand.Condition> conditions = command.getWhere();
+        final int[] indexes = new int[conditions.size()];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = index(conditions.get(i).getColumn());
+        }
+        return new Filter(indexes, conditions);
+    }
+
+    /**
+     * Select rows.
+     *
+     * @param command SELECT command.
+     * @param params Statement parameters.
+     * @param maxRows Maximum rows or 0 for all.
+     * @return Selected rows.
+     * @throws SQLException If column does not exist.
+     */
+    Result select(final StubCommand command, final Object[] params,
+            final int maxRows) throws SQLException {
+        final List<Integer> selected = new ArrayList<Integer>();
+        final List<String> labels = new ArrayList<String>();
+        for (int i = 0; i < command.getColumns().size(); i++) {
+            final String column = command.getColumns().get(i);
+            if ("*".equals(column)) {
+                for (int j = 0; j < columns.length; j++) {
+                    selected.add(j);
+                    labels.add(columns[j]);
+                }
+            } else {
+                selected.add(index(column));
+                labels.add(command.getLabels().get(i));
+            }
+        }
+        final Filter where = filter(command);
+        final List<Object[]> matched = new ArrayList<Object[]>();
+        synchronized (this) {
+            for (Object[] row : rows) {
+                if (matches(row, where, params)) {
+                    matched.add(row.clone());
+                }
+            }
+        }
+        if (command.getOrderBy() != null) {
+            final int order = index(command.getOrderBy());
+            final int sign = command.isDescending() ? -1 : 1;
+            Collections.sort(matched, new Comparator<Object[]>() {
+                @Override
+                public int compare(final Object[] a, final Object[] b) {
+                    int compare;
+                    if (a[order] == null || b[order] == null) {
+                        compare = a[order] == null ? (b[order] == null ? 0
+                                : 1) : -1;
+                    } else {
+                        compare = StubCommand.compare(a[order], b[order]);
+                    }
+                    return sign * compare;
+                }
+            });
+        }
+        final int count = maxRows > 0 ? Math.min(maxRows, matched.size())
+                : matched.size();
+        final String[] resultLabels = labels.toArray(new String[labels.
+                size()]);
+        final int[] resultTypes = new int[selected.size()];
+        for (int i = 0; i < resultTypes.length; i++) {
+            resultTypes[i] = types[selected.get(i)];
+        }
+        final Object[][] resultRows = new Object[count][];
+        for (int i = 0; i < count; i++) {
+            final Object[] row = matched.get(i);
+            resultRows[i] = new Object[resultTypes.length];
+            for (int j = 0; j < resultTypes.length; j++) {
+                resultRows[i][j] = row[selected.get(j)];
+            }
+        }
+        return new Result(resultLabels, resultTypes, resultRows);
+    }
+
+    /**
+     * Insert row.
+     *
+     * @param command INSERT command.
+     * @param params Statement parameters.
+     * @param undo Undo actions of open transaction or null in auto commit.
+     * @return Identity value or null if table has no identity.
+     * @throws SQLException If column does not exist or value cannot be
+     * converted.
+     */
+    Object insert(final StubCommand command, final Object[] params,
+            final List<Runnable> undo) throws SQLException {
+        final Object[] row = new Object[columns.length];
+        boolean hasId = false;
+        for (int i = 0; i < command.getColumns().size(); i++) {
+            final int index = index(command.getColumns().get(i));
+            row[index] = column(index, command.getValues().get(i).value(
+                    params));
+            hasId |= index == identity;
+        }
+        Object id = null;
+        synchronized (this) {
+            if (identity >= 0) {
+                if (hasId && row[identity] != null) {
+                    nextId = Math.max(nextId, ((Number) row[identity]).
+                            longValue() + 1);
+                } else {
+                    row[identity] = column(identity, nextId++);
+                }
+                id = row[identity];
+            }
+            rows.add(row);
+        }
+        if (undo != null) {
+            undo.add(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (StubTable.this) {
+                        rows.remove(row);
+                    }
+                }
+            });
+        }
+        return id;
+    }
+
+    /**
+     * Add rows directly without SQL.
+     *
+     * @param values Rows with a value for each column, identity is assigned
+     * if null.
+     * @throws SQLException If value cannot be converted.
+     */
+    synchronized void load(final List<Object[]> values) throws SQLException {
+        for (Object[] value : values) {
+            final Object[] row = new Object[columns.length];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = column(i, value[i]);
+            }
+            if (identity >= 0) {
+                if (row[identity] == null) {
+                    row[identity] = column(identity, nextId++);
+                } else {
+                    nextId = Math.max(nextId, ((Number) row[identity]).
+                            longValue() + 1);
+                }
+            }
+            rows.add(row);
+        }
+    }
+
+    /**
+     * Update rows.
+     *
+     * @param command UPDATE command.
+     * @param params Statement parameters.
+     * @param undo Undo actions of open transaction or null in auto commit.
+     * @return Rows updated.
+     * @throws SQLException If column does not exist or value cannot be
+     * converted.
+     */
+    int update(final StubCommand command, final Object[] params,
+            final List<Runnable> undo) throws SQLException {
+        final int[] indexes = new int[command.getColumns().size()];
+        final Object[] values = new Object[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            indexes[i] = index(command.getColumns().get(i));
+            values[i] = column(indexes[i], command.getValues().get(i).value(
+                    params));
+        }
+        final Filter where = filter(command);
+        int count = 0;
+        synchronized (this) {
+            for (final Object[] row : rows) {
+                if (matches(row, where, params)) {
+                    final Object[] old = row.clone();
+                    for (int i = 0; i < indexes.length; i++) {
+                        row[indexes[i]] = values[i];
+                    }
+                    if (undo != null) {
+                        undo.add(new Runnable() {
+                            @Override
+                            public void run() {
+                                synchronized (StubTable.this) {
+                                    System.arraycopy(old, 0, row, 0,
+                                            old.length);
+                                }
+                            }
+                        });
+                    }
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Delete rows.
+     *
+     * @param command DELETE command.
+     * @param params Statement parameters.
+     * @param undo Undo actions of open transaction or null in auto commit.
+     * @return Rows deleted.
+     * @throws SQLException If column does not exist.
+     */
+    int delete(final StubCommand command, final Object[] params,
+            final List<Runnable> undo) throws SQLException {
+        final Filter where = filter(command);
+        final List<Object[]> deleted = new ArrayList<Object[]>();
+        synchronized (this) {
+            final List<Object[]> kept = new ArrayList<Object[]>(rows.size());
+            for (Object[] row : rows) {
+                if (matches(row, where, params)) {
+                    deleted.add(row);
+                } else {
+                    kept.add(row);
+                }
+            }
+            if (!deleted.isEmpty()) {
+                rows.clear();
+                rows.addAll(kept);
+            }
+        }
+        if (undo != null && !deleted.isEmpty()) {
+            undo.add(new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (StubTable.this) {
+                        rows.addAll(deleted);
+                    }
+                }
+            });
+        }
+        return deleted.size();
+    }
+
+    /**
+     * Delete all rows and reset identity.
+     */
+    synchronized void clear() {
+        rows.clear();
+        nextId = 1;
+    }
+
+    /**
+     * Resolved WHERE clause.
+     */
+    private static final class Filter {
+
+        /**
+         * Column index of each condition.
+         */
+        private final int[] indexes;
+        /**
+         * Conditions.
+         */
+        private final List<StubCommand.Condition> conditions;
+
+        /**
+         * Construct filter.
+         *
+         * @param indexes Column index of each condition.
+         * @param conditions Conditions.
+         */
+        Filter(final int[] indexes,
+                final List<StubCommand.Condition> conditions) {
+            this.indexes = indexes;
+            this.conditions = conditions;
+        }
+    }
+
+    /**
+     * Rows returned by SELECT.
+     */
+    static final class Result {
+
+        /**
+         * Column labels.
+         */
+        private final String[] labels;
+        /**
+         * Column types.
+         */
+        private final int[] types;
+        /**
+         * Rows.
+         */
+        private final Object[][] rows;
+
+        /**
+         * Construct result.
+         *
+         * @param labels Column labels.
+         * @param types Column types.
+         * @param rows Rows.
+         */
+        Result(final String[] labels, final int[] types,
+                final Object[][] rows) {
+            this.labels = labels;
+            this.types = types;
+            this.rows = rows;
+        }
+
+        /**
+         * Get column labels.
+         *
+         * @return Labels.
+         */
+        String[] getLabels() {
+            return labels;
+        }
+
+        /**
+         * Get column types.
+         *
+         * @return Types.
+         */
+        int[] getTypes() {
+            return types;
+        }
+
+        /**
+         * Get rows.
+         *
+         * @return Rows.
+         */
+        Object[][] getRows() {
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,521 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * In-memory {@code ResultSet} over fixed rows, so mapping code can run without
+ * a database. Getters convert values the way a driver would, for example
+ * {@code getInt} on a {@code Long}. The same instance can be read again after
+ * {@code beforeFirst()}. Methods not needed for reading rows throw
+ * {@code SQLFeatureNotSupportedException}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class SyntheticResultSet implements InvocationHandler {
+
+    /**
+     * Column labels of {@code test_table}.
+     */
+    public static final String[] TEST_TABLE_LABELS = {"id", "char_field",
+        "varchar_field", "boolean_field", "date_field", "time_field",
+        "timestamp_field", "bigint_field", "int_field", "smallint_field",
+        "numeric_field", "real_field", "double_field"};
+    /**
+     * Column types of {@code test_table}.
+     */
+    public static final int[] TEST_TABLE_TYPES = {Types.INTEGER, Types.CHAR,
+        Types.VARCHAR, Types.BOOLEAN, Types.DATE, Types.TIME, Types.TIMESTAMP,
+        Types.BIGINT, Types.INTEGER, Types.SMALLINT, Types.NUMERIC, Types.REAL,
+        Types.DOUBLE};
+    /**
+     * Column labels.
+     */
+    private final String[] labels;
+    /**
+     * Column types from {@link java.sql.Types}.
+     */
+    private final int[] types;
+    /**
+     * Rows of column values.
+     */
+    private final Object[][] rows;
+    /**
+     * Metadata proxy.
+     */
+    private final ResultSetMetaData metaData;
+    /**
+     * Current row, -1 before first.
+     */
+    private int row = -1;
+    /**
+     * Was last value read null?
+     */
+    private boolean wasNull;
+    /**
+     * Closed by caller.
+     */
+    private boolean closed;
+
+    /**
+     * Construct handler.
+     *
+     * @param labels Column labels.
+     * @param types Column types from {@link java.sql.Types}.
+     * @param rows Rows of column values.
+     */
+    private SyntheticResultSet(final String[] labels, final int[] types,
+            final Object[][] rows) {
+        if (labels.length != types.length) {
+            throw new IllegalArgumentException(String.format(
+                    "%d labels and %d types", labels.length, types.length));
+        }
+        this.labels = labels.clone();
+        this.types = types.clone();
+        this.rows = rows.clone();
+        this.metaData = (ResultSetMetaData) Proxy.newProxyInstance(
+                SyntheticResultSet.class.getClassLoader(), new Class[]{
+                    ResultSetMetaData.class}, new MetaData());
+    }
+
+    /**
+     * Create {@code ResultSet}.
+     *
+     * @param labels Column labels.
+     * @param types Column types from {@link java.sql.Types}.
+     * @param rows Rows of column values.
+     * @return ResultSet.
+     */
+    public static ResultSet create(final String[] labels, final int[] types,
+            final Object[][] rows) {
+        return (ResultSet) Proxy.newProxyInstance(SyntheticResultSet.class.
+                getClassLoader(), new Class[]{ResultSet.class},
+                new SyntheticResultSet(labels, types, rows));
+    }
+
+    /**
+     * Create {@code ResultSet} shaped like {@code test_table} using the first
+     * columns of the table.
+     *
+     * @param rowCount Number of rows.
+     * @param columnCount Number of columns from 1 to 13.
+     * @return ResultSet.
+     */
+    public static ResultSet testTable(final int rowCount,
+            final int columnCount) {
+        final String[] labels = Arrays.copyOf(TEST_TABLE_LABELS, columnCount);
+        final int[] types = Arrays.copyOf(TEST_TABLE_TYPES, columnCount);
+        final Object[][] rows = new Object[rowCount][];
+        final long now = System.currentTimeMillis();
+        for (int i = 0; i < rowCount; i++) {
+            rows[i] = new Object[columnCount];
+            for (int col = 0; col < columnCount; col++) {
+                rows[i][col] = value(types[col], i, now);
+            }
+        }
+        return create(labels, types, rows);
+    }
+
+    /**
+     * Generate value of type.
+     *
+     * @param type Column type from {@link java.sql.Types}.
+     * @param number Row number.
+     * @param millis Time of date and time values.
+     * @return Value.
+     */
+    public static Object value(final int type, final int number,
+            final long millis) {
+        Object value;
+        switch (type) {
+            case Types.BOOLEAN:
+            case Types.BIT:
+                value = number % 2 == 0;
+                break;
+            case Types.SMALLINT:
+                value = (int) (short) number;
+                break;
+            case Types.INTEGER:
+                value = number;
+                break;
+            case Types.BIGINT:
+                value = (long) number;
+                break;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                value = BigDecimal.valueOf(number, 2);
+                break;
+            case Types.REAL:
+                value = (float) number;
+                break;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+                value = (double) number;
+                break;
+            case Types.DATE:
+                value = new Date(millis);
+                break;
+            case Types.TIME:
+                value = new Time(millis);
+                break;
+            case Types.TIMESTAMP:
+                value = new Timestamp(millis);
+                break;
+            default:
+                value = String.format("value %d", number);
+        }
+        return value;
+    }
+
+    /**
+     * Get Java class of column type as returned by {@code getObject}.
+     *
+     * @param type Column type from {@link java.sql.Types}.
+     * @return Class.
+     */
+    public static Class<?> javaClass(final int type) {
+        Class<?> clazz;
+        switch (type) {
+            case Types.BOOLEAN:
+            case Types.BIT:
+                clazz = Boolean.class;
+                break;
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                clazz = Integer.class;
+                break;
+            case Types.BIGINT:
+                clazz = Long.class;
+                break;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                clazz = BigDecimal.class;
+                break;
+            case Types.REAL:
+                clazz = Float.class;
+                break;
+            case Types.DOUBLE:
+            case Types.FLOAT:
+                clazz = Double.class;
+                break;
+            case Types.DATE:
+                clazz = Date.class;
+                break;
+            case Types.TIME:
+                clazz = Time.class;
+                break;
+            case Types.TIMESTAMP:
+                clazz = Timestamp.class;
+                break;
+            default:
+                clazz = String.class;
+        }
+        return clazz;
+    }
+
+    /**
+     * Convert value to type returned by getter.
+     *
+     * @param value Column value.
+     * @param type Getter return type.
+     * @return Converted value.
+     * @throws SQLException If value cannot be converted.
+     */
+    static Object convert(final Object value, final Class<?> type) throws
+            SQLException {
+        Object result = value;
+        if (value == null) {
+            if (type == boolean.class) {
+                result = Boolean.FALSE;
+            } else if (type.isPrimitive()) {
+                result = convert(0, type);
+            }
+        } else if (type == String.class) {
+            result = value.toString();
+        } else if (type == boolean.class || type == Boolean.class) {
+            if (value instanceof Number) {
+                result = ((Number) value).intValue() != 0;
+            }
+        } else if (value instanceof Number) {
+            result = convertNumber((Number) value, type);
+        } else if (value instanceof java.util.Date) {
+            result = convertDate((java.util.Date) value, type);
+        }
+        if (!type.isPrimitive() && !type.isInstance(result)) {
+            throw new SQLException(String.format("Cannot convert %s to %s",
+                    value.getClass().getName(), type.getName()));
+        }
+        return result;
+    }
+
+    /**
+     * Convert number to numeric type.
+     *
+     * @param value Number.
+     * @param type Getter return type.
+     * @return Converted value or value if type is not numeric.
+     */
+    private static Object convertNumber(final Number value,
+            final Class<?> type) {
+        Object result = value;
+        if (type == int.class || type == Integer.class) {
+            result = value.intValue();
+        } else if (type == long.class || type == Long.class) {
+            result = value.longValue();
+        } else if (type == short.class || type == Short.class) {
+            result = value.shortValue();
+        } else if (type == byte.class || type == Byte.class) {
+            result = value.byteValue();
+        } else if (type == float.class || type == Float.class) {
+            result = value.floatValue();
+        } else if (type == double.class || type == Double.class) {
+            result = value.doubleValue();
+        } else if (type == BigDecimal.class && !(value instanceof BigDecimal)) {
+            result = new BigDecimal(value.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Convert date to JDBC date type.
+     *
+     * @param value Date.
+     * @param type Getter return type.
+     * @return Converted value or value if type is not a date.
+     */
+    private static Object convertDate(final java.util.Date value,
+            final Class<?> type) {
+        Object result = value;
+        if (type == Timestamp.class && !(value instanceof Timestamp)) {
+            result = new Timestamp(value.getTime());
+        } else if (type == Date.class && !(value instanceof Date)) {
+            result = new Date(value.getTime());
+        } else if (type == Time.class && !(value instanceof Time)) {
+            result = new Time(value.getTime());
+        }
+        return result;
+    }
+
+    /**
+     * Get column index from index or label argument.
+     *
+     * @param arg Index or label.
+     * @return Index starting at 1.
+     * @throws SQLException If column does not exist.
+     */
+    private int column(final Object arg) throws SQLException {
+        int index = -1;
+        if (arg instanceof Integer) {
+            index = (Integer) arg;
+        } else {
+            for (int i = 0; i < labels.length && index < 0; i++) {
+                if (labels[i].equalsIgnoreCase((String) arg)) {
+                    index = i + 1;
+                }
+            }
+        }
+        if (index < 1 || index > labels.length) {
+            throw new SQLException(String.format("Invalid column %s", arg));
+        }
+        return index;
+    }
+
+    /**
+     * Get value of current row.
+     *
+     * @param arg Index or label.
+     * @return Value.
+     * @throws SQLException If not on a row or column does not exist.
+     */
+    private Object get(final Object arg) throws SQLException {
+        if (closed) {
+            throw new SQLException("ResultSet closed");
+        }
+        if (row < 0 || row >= rows.length) {
+            throw new SQLException("Not on a row");
+        }
+        final Object value = rows[row][column(arg) - 1];
+        wasNull = value == null;
+        return value;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method,
+            final Object[] args) throws Throwable {
+        final String name = method.getName();
+        Object result = null;
+        switch (name) {
+            case "next":
+                row = Math.min(row + 1, rows.length);
+                result = row < rows.length;
+                break;
+            case "beforeFirst":
+                row = -1;
+                break;
+            case "getRow":
+                result = row < rows.length ? row + 1 : 0;
+                break;
+            case "close":
+                closed = true;
+                break;
+            case "isClosed":
+                result = closed;
+                break;
+            case "getMetaData":
+                result = metaData;
+                break;
+            case "wasNull":
+                result = wasNull;
+                break;
+            case "findColumn":
+                result = column(args[0]);
+                break;
+            case "getType":
+                result = ResultSet.TYPE_SCROLL_INSENSITIVE;
+                break;
+            case "getConcurrency":
+                result = ResultSet.CONCUR_READ_ONLY;
+                break;
+            case "getFetchSize":
+                result = 0;
+                break;
+            case "setFetchSize":
+            case "clearWarnings":
+            case "getWarnings":
+            case "getStatement":
+                break;
+            case "hashCode":
+                result = System.identityHashCode(proxy);
+                break;
+            case "equals":
+                result = proxy == args[0];
+                break;
+            case "toString":
+                result = String.format("SyntheticResultSet[%d rows]",
+                        rows.length);
+                break;
+            default:
+                if (name.startsWith("get") && args != null && args.length
+                        <= 2) {
+                    Class<?> type = method.getReturnType();
+                    if (args.length == 2 && args[1] instanceof Class) {
+                        type = (Class<?>) args[1];
+                    }
+                    final Object value = get(args[0]);
+                    if (type == Object.class) {
+                        result = value;
+                    } else {
+                        result = convert(value, type);
+                    }
+                } else {
+                    throw new SQLFeatureNotSupportedException(name);
+                }
+        }
+        return result;
+    }
+
+    /**
+     * Metadata of columns.
+     */
+    private final class MetaData implements InvocationHandler {
+
+        @Override
+        public Object invoke(final Object proxy, final Method method,
+                final Object[] args) throws Throwable {
+            final String name = method.getName();
+            Object result;
+            if ("getColumnCount".equals(name)) {
+                result = labels.length;
+            } else if ("hashCode".equals(name)) {
+                result = System.identityHashCode(proxy);
+            } else if ("equals".equals(name)) {
+                result = proxy == args[0];
+            } else if ("toString".equals(name)) {
+                result = Arrays.toString(labels);
+            } else {
+                result = column(method, (Integer) args[0] - 1);
+            }
+            return result;
+        }
+
+        /**
+         * Get column metadata.
+         *
+         * @param method Method called.
+         * @param index Column index starting at 0.
+         * @return Value.
+         * @throws SQLException If method is not supported.
+         */
+        private Object column(final Method method, final int index) throws
+                SQLException {
+            final String name = method.getName();
+            Object result;
+            switch (name) {
+                case "getColumnLabel":
+                case "getColumnName":
+                    result = labels[index];
+                    break;
+                case "getColumnType":
+                    result = types[index];
+                    break;
+                case "getColumnClassName":
+                    result = javaClass(types[index]).getName();
+                    break;
+                case "getColumnTypeName":
+                    result = javaClass(types[index]).getSimpleName();
+                    break;
+                case "getTableName":
+                    result = "test_table";
+                    break;
+                case "getSchemaName":
+                case "getCatalogName":
+                    result = "";
+                    break;
+                case "isNullable":
+                    result = ResultSetMetaData.columnNullable;
+                    break;
+                case "getPrecision":
+                case "getScale":
+                    result = 0;
+                    break;
+                case "getColumnDisplaySize":
+                    result = 50;
+                    break;
+                case "isSigned":
+                case "isReadOnly":
+                    result = true;
+                    break;
+                case "isAutoIncrement":
+                case "isCaseSensitive":
+                case "isCurrency":
+                case "isSearchable":
+                case "isWritable":
+                case "isDefinitelyWritable":
+                    result = false;
+                    break;
+                default:
+                    throw new SQLFeatureNotSupportedException(name);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.metrics.AllocationMetrics}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class AllocationMetricsTest {
+
+    /**
+     * Array allocated during statement.
+     */
+    private byte[] buffer;
+
+    /**
+     * Bytes allocated between start and end are recorded by SQL key and
+     * implementation operation.
+     */
+    @Test
+    public void allocation() {
+        final AllocationMetrics metrics = new AllocationMetrics();
+        final QueryEvent event = new QueryEvent(AllocationMetricsTest.class,
+                QueryOperation.SELECT_MAP_LIST, "select", null);
+        metrics.start(event);
+        buffer = new byte[1024 * 1024];
+        event.finish(buffer.length / 1024);
+        metrics.end(event);
+        if (AllocationMetrics.isSupported()) {
+            final AllocationStats stats = metrics.getStats("select");
+            assertNotNull("SQL key not recorded", stats);
+            assertEquals("Count", 1, stats.getCount());
+            assertTrue("Buffer not counted", stats.getBytes() >= buffer.
+                    length);
+            assertTrue("Bytes per row", stats.getBytesPerRow() >= 1024);
+            assertEquals("Operation", stats.getBytes(), metrics.
+                    getOperationStats("AllocationMetricsTest.selectMapList").
+                    getBytes());
+        }
+    }
+
+    /**
+     * An end without a recorded start, as when metrics are added to a
+     * {@link com.codeferm.dbaccess.metrics.CompositeMetrics} while a statement
+     * runs, does not take the start of the enclosing event.
+     */
+    @Test
+    public void endWithoutStart() {
+        final AllocationMetrics metrics = new AllocationMetrics();
+        final QueryEvent outer = new QueryEvent(AllocationMetricsTest.class,
+                QueryOperation.SELECT_MAP_LIST, "select outer", null);
+        final QueryEvent inner = new QueryEvent(AllocationMetricsTest.class,
+                QueryOperation.SELECT_MAP_LIST, "select inner", null);
+        metrics.start(outer);
+        inner.finish(0);
+        metrics.end(inner);
+        outer.finish(0);
+        metrics.end(outer);
+        assertNull("Inner has no start", metrics.getStats("select inner"));
+        if (AllocationMetrics.isSupported()) {
+            assertEquals("Outer keeps its start", 1, metrics.getStats(
+                    "select outer").getCount());
+        }
+    }
+}
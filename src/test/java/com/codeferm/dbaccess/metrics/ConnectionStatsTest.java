@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import javax.sql.DataSource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.metrics.ConnectionStats}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class ConnectionStatsTest {
+
+    /**
+     * Create {@code DataSource} returning connections that do nothing, or
+     * failing with timeout if {@code exhausted}.
+     *
+     * @param exhausted True to fail {@code getConnection}.
+     * @return DataSource.
+     */
+    private static DataSource dataSource(final boolean exhausted) {
+        final Connection connection = (Connection) Proxy.newProxyInstance(
+                ConnectionStatsTest.class.getClassLoader(), new Class[]{
+                    Connection.class}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method,
+                    final Object[] args) {
+                return null;
+            }
+        });
+        return (DataSource) Proxy.newProxyInstance(ConnectionStatsTest.class.
+                getClassLoader(), new Class[]{DataSource.class},
+                new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method,
+                    final Object[] args) throws SQLException {
+                if (exhausted) {
+                    throw new SQLTransientConnectionException("Timeout");
+                }
+                return connection;
+            }
+        });
+    }
+
+    /**
+     * Acquire, hold and in flight are recorded by operation.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void connections() throws SQLException {
+        final ConnectionStats stats = new ConnectionStats();
+        final DataSource dataSource = stats.wrap(dataSource(false));
+        final QueryEvent event = new QueryEvent(ConnectionStatsTest.class,
+                QueryOperation.UPDATE, "update", null);
+        event.enter();
+        final Connection connection;
+        try {
+            connection = dataSource.getConnection();
+        } finally {
+            event.exit();
+        }
+        final Connection other = dataSource.getConnection();
+        assertEquals("In flight", 2, stats.getInFlight());
+        connection.close();
+        connection.close();
+        other.close();
+        assertEquals("In flight after close", 0, stats.getInFlight());
+        assertEquals("Max in flight", 2, stats.getMaxInFlight());
+        assertEquals("Acquires", 2, stats.getAcquireCount());
+        assertEquals("Update holds", 1, stats.getHold(QueryOperation.UPDATE).
+                getCount());
+        assertEquals("Other holds", 1, stats.getHold(null).getCount());
+        assertEquals("Operations", 2, stats.getOperations().length);
+    }
+
+    /**
+     * Slow and timed out acquires are counted as exhausted.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void exhausted() throws SQLException {
+        final ConnectionStats stats = new ConnectionStats();
+        stats.setExhaustionThresholdMillis(0);
+        stats.wrap(dataSource(false)).getConnection().close();
+        assertEquals("Slow acquire", 1, stats.getExhaustedCount());
+        stats.setExhaustionThresholdMillis(60000);
+        try {
+            stats.wrap(dataSource(true)).getConnection();
+            fail("Should throw");
+        } catch (SQLTransientConnectionException e) {
+            assertEquals("Timeout", 2, stats.getExhaustedCount());
+            assertEquals("Failures", 1, stats.getAcquireFailures());
+        }
+    }
+}
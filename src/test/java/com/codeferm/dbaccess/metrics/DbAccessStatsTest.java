@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import com.codeferm.dbaccess.DbColumns;
+import com.codeferm.dbaccess.jdbc.SyntheticResultSet;
+import java.lang.management.ManagementFactory;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import static org.junit.Assert.assertEquals;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.metrics.DbAccessStats}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class DbAccessStatsTest {
+
+    /**
+     * Statistics are aggregated, readable over JMX and resettable.
+     *
+     * @throws JMException Possible exception.
+     */
+    @Test
+    public void stats() throws JMException {
+        final DbAccessStats aggregate = new DbAccessStats();
+        final DbAccessStats stats = new DbAccessStats(aggregate);
+        final QueryEvent event = new QueryEvent(DbAccessStatsTest.class,
+                QueryOperation.BATCH, "insert", new Object[100][]);
+        stats.start(event);
+        assertEquals("Should be in-flight", 1, aggregate.getInFlight());
+        event.finish(100);
+        stats.end(event);
+        assertEquals("Should not be in-flight", 0, stats.getInFlight());
+        assertEquals("Aggregate should count", 1, aggregate.getCallCount());
+        assertEquals("Batch size should match", 100, stats.getBatchSizeMax());
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.registerMBean(stats, DbAccessMBeans.objectName("test"));
+        try {
+            assertEquals("JMX should read rows", 100L, server.getAttribute(
+                    DbAccessMBeans.objectName("test"), "RowCount"));
+            server.invoke(DbAccessMBeans.objectName("test"), "reset", null,
+                    null);
+            assertEquals("Reset should clear", 0, stats.getCallCount());
+        } finally {
+            DbAccessMBeans.unregister("test");
+        }
+    }
+
+    /**
+     * Column cache statistics are global and not reset with an instance.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void columnCache() throws SQLException {
+        DbColumns.clear();
+        final ResultSetMetaData metaData = SyntheticResultSet.testTable(0, 1).
+                getMetaData();
+        DbColumns.get("select id", metaData);
+        DbColumns.get("select id", metaData);
+        new DbAccessStats().reset();
+        final ColumnCacheStats stats = ColumnCacheStats.getInstance();
+        assertEquals("Instance reset should not clear hits", 1, stats.
+                getHitCount());
+        assertEquals("Hit rate", 0.5, stats.getHitRate(), 0.001);
+        assertEquals("Size", 1, stats.getSize());
+        stats.reset();
+        assertEquals("Reset should clear hits", 0, stats.getHitCount());
+    }
+}
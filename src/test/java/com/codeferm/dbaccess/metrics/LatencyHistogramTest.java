@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.metrics.LatencyHistogram}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class LatencyHistogramTest {
+
+    /**
+     * Every value falls in a bucket whose bounds contain it.
+     */
+    @Test
+    public void buckets() {
+        for (long value : new long[]{0, 1, 63, 64, 65, 127, 128, 1000,
+            123456789L, Long.MAX_VALUE}) {
+            final int index = LatencyHistogram.index(value);
+            assertTrue("Lowest should be <= value", LatencyHistogram.lowest(
+                    index) <= value);
+            assertTrue("Highest should be >= value", LatencyHistogram.highest(
+                    index) >= value);
+        }
+        assertEquals("Buckets should be contiguous", LatencyHistogram.highest(
+                100) + 1, LatencyHistogram.lowest(101));
+    }
+
+    /**
+     * Percentiles are within bucket precision.
+     */
+    @Test
+    public void percentiles() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 100000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals("Count should match", 100000, histogram.getCount());
+        assertEquals("Max should match", 100000000L, histogram.getMax());
+        final long p50 = histogram.getValueAtPercentile(50);
+        assertTrue("p50 should be within 4%", Math.abs(p50 - 50000000L)
+                < 2000000L);
+        final long p999 = histogram.getValueAtPercentile(99.9);
+        assertTrue("p999 should be within 4%", Math.abs(p999 - 99900000L)
+                < 4000000L);
+        histogram.reset();
+        assertEquals("Reset should clear", 0, histogram.getValueAtPercentile(
+                99));
+    }
+}
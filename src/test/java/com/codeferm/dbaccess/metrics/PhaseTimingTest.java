@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import javax.sql.DataSource;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.metrics.PhaseTiming}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class PhaseTimingTest {
+
+    /**
+     * Create JDBC object that sleeps 1 ms on each call and returns
+     * {@code PreparedStatement} for prepare calls.
+     *
+     * @param <T> Interface type.
+     * @param type Interface.
+     * @return JDBC object.
+     */
+    private static <T> T sleeper(final Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(PhaseTimingTest.class.
+                getClassLoader(), new Class[]{type}, new InvocationHandler() {
+            @Override
+            public Object invoke(final Object proxy, final Method method,
+                    final Object[] args) throws Throwable {
+                Thread.sleep(1);
+                Object result = null;
+                if (method.getReturnType() == PreparedStatement.class) {
+                    result = sleeper(PreparedStatement.class);
+                } else if (method.getReturnType() == int.class) {
+                    result = 1;
+                } else if ("close".equals(method.getName())) {
+                    result = null;
+                } else if (method.getReturnType() != void.class) {
+                    throw new SQLException("Not supported");
+                }
+                return result;
+            }
+        }));
+    }
+
+    /**
+     * Phases of driver calls are added to current event.
+     *
+     * @throws SQLException Possible exception.
+     */
+    @Test
+    public void phases() throws SQLException {
+        final Connection connection = PhaseTiming.wrap(sleeper(
+                Connection.class));
+        final QueryEvent event = new QueryEvent(PhaseTimingTest.class,
+                QueryOperation.UPDATE, "update", new Object[]{1});
+        event.enter();
+        try {
+            final PreparedStatement statement = connection.prepareStatement(
+                    "update");
+            statement.setInt(1, 1);
+            statement.executeUpdate();
+            statement.close();
+        } finally {
+            event.exit();
+        }
+        event.finish(1);
+        assertTrue("Prepare not timed", event.getPhase(QueryPhase.PREPARE)
+                > 0);
+        assertTrue("Bind not timed", event.getPhase(QueryPhase.BIND) > 0);
+        assertTrue("Execute not timed", event.getPhase(QueryPhase.EXECUTE)
+                > 0);
+        assertEquals("Fetch should not be timed", 0, event.getPhase(
+                QueryPhase.FETCH));
+        assertNull("Event should not be current", QueryEvent.current());
+    }
+
+    /**
+     * Timed objects are not wrapped again.
+     */
+    @Test
+    public void wrapOnce() {
+        final DataSource dataSource = sleeper(DataSource.class);
+        assertFalse("Driver object is not timed", PhaseTiming.isWrapped(
+                dataSource));
+        final DataSource timed = PhaseTiming.wrap(dataSource);
+        assertTrue("Proxy is timed", PhaseTiming.isWrapped(timed));
+        assertSame("DataSource wrapped once", timed, PhaseTiming.wrap(timed));
+        final Connection connection = PhaseTiming.wrap(sleeper(
+                Connection.class));
+        assertSame("Connection wrapped once", connection, PhaseTiming.wrap(
+                connection));
+    }
+
+    /**
+     * Driver exceptions are not wrapped.
+     *
+     * @throws SQLException Expected exception.
+     */
+    @Test(expected = SQLException.class)
+    public void exception() throws SQLException {
+        PhaseTiming.wrap(sleeper(Connection.class)).getMetaData();
+    }
+
+    /**
+     * Time left over in library call is added to phase and stats.
+     *
+     * @throws InterruptedException Possible exception.
+     */
+    @Test
+    public void markRest() throws InterruptedException {
+        final QueryEvent event = new QueryEvent(PhaseTimingTest.class,
+                QueryOperation.SELECT_MAP_LIST, "select", null);
+        event.add(QueryPhase.EXECUTE, 1);
+        Thread.sleep(1);
+        event.markRest(QueryPhase.MAP);
+        event.finish(0);
+        final long map = event.getPhase(QueryPhase.MAP);
+        assertTrue("Rest should be mapping", map > 0 && map < event.
+                getElapsed());
+        final StatsCollector collector = new StatsCollector();
+        collector.end(event);
+        assertEquals("Execute total", 1, collector.getStats("select").
+                getPhaseTotal(QueryPhase.EXECUTE));
+    }
+}
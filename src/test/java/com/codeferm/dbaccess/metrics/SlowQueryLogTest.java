@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import com.codeferm.dbaccess.DbAccessException;
+import java.sql.SQLException;
+import java.util.regex.Pattern;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.metrics.SlowQueryLog}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class SlowQueryLogTest {
+
+    /**
+     * Only statements over threshold are counted.
+     */
+    @Test
+    public void threshold() {
+        final SlowQueryLog slowQueryLog = new SlowQueryLog(60000);
+        final QueryEvent event = new QueryEvent(SlowQueryLogTest.class,
+                QueryOperation.UPDATE, "update", new Object[]{1});
+        event.finish(1);
+        slowQueryLog.end(event);
+        assertEquals("Fast statement should not be slow", 0, slowQueryLog.
+                getSlowCount());
+        slowQueryLog.setThresholdMillis(0);
+        slowQueryLog.setSampleRate(0);
+        slowQueryLog.end(event);
+        assertEquals("Statement should be slow", 1, slowQueryLog.
+                getSlowCount());
+        assertEquals("Statement should not be sampled", 0, slowQueryLog.
+                getLoggedCount());
+    }
+
+    /**
+     * Parameters are redacted and truncated and slowest phase is reported.
+     */
+    @Test
+    public void format() {
+        final SlowQueryLog slowQueryLog = new SlowQueryLog(0);
+        slowQueryLog.setRedactPattern(Pattern.compile("@"));
+        slowQueryLog.setMaxParamLength(4);
+        final QueryEvent event = new QueryEvent(SlowQueryLogTest.class,
+                QueryOperation.SELECT_MAP_LIST, "select", new Object[]{
+                    "user@example.com", "abcdefgh", null});
+        event.add(QueryPhase.EXECUTE, 5000000L);
+        event.finish(0);
+        final String str = slowQueryLog.format(event);
+        assertTrue("Should redact", str.contains(
+                "params=[***, abcd..., null]"));
+        assertTrue("Should report phase", str.contains("phase=EXECUTE(5ms)"));
+    }
+
+    /**
+     * Redacting all logs normalized SQL without literals.
+     */
+    @Test
+    public void redactAll() {
+        final SlowQueryLog slowQueryLog = new SlowQueryLog(0);
+        slowQueryLog.setRedactAll(true);
+        final QueryEvent event = new QueryEvent(SlowQueryLogTest.class,
+                QueryOperation.SELECT_MAP_LIST,
+                "select * from users where ssn = '123-45-6789' and id = ?",
+                new Object[]{1});
+        event.finish(0);
+        final String str = slowQueryLog.format(event);
+        assertFalse("Should not log literal", str.contains("123-45-6789"));
+        assertTrue("Should redact params", str.contains("params=[***]"));
+    }
+
+    /**
+     * Error message of failed statement is not logged, since it contains SQL
+     * and parameters.
+     */
+    @Test
+    public void redactError() {
+        final SlowQueryLog slowQueryLog = new SlowQueryLog(0);
+        slowQueryLog.setRedactAll(true);
+        final QueryEvent event = new QueryEvent(SlowQueryLogTest.class,
+                QueryOperation.UPDATE, "update users set ssn = ? where id = ?",
+                new Object[]{"123-45-6789", 1});
+        event.setError(new DbAccessException(
+                "update: sql=update users set ssn = ? where id = ?, "
+                + "params=[123-45-6789, 1]", new SQLException("failed")));
+        event.finish(0);
+        final String str = slowQueryLog.format(event);
+        assertFalse("Should not log params", str.contains("123-45-6789"));
+        assertTrue("Should log error type", str.contains(
+                "error=DbAccessException(SQLException)"));
+    }
+
+    /**
+     * Batch with no or null parameter arrays is formatted.
+     */
+    @Test
+    public void emptyBatch() {
+        final SlowQueryLog slowQueryLog = new SlowQueryLog(0);
+        QueryEvent event = new QueryEvent(SlowQueryLogTest.class,
+                QueryOperation.BATCH, "insert", new Object[0][]);
+        assertTrue("Empty batch", slowQueryLog.format(event).contains(
+                "params=[] x0"));
+        event = new QueryEvent(SlowQueryLogTest.class, QueryOperation.BATCH,
+                "insert", new Object[1][]);
+        assertTrue("Null row", slowQueryLog.format(event).contains(
+                "params=[] x1"));
+        event = new QueryEvent(SlowQueryLogTest.class, QueryOperation.BATCH,
+                "insert", null);
+        assertTrue("Null params", slowQueryLog.format(event).contains(
+                "params=[]"));
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.metrics.SqlFingerprint}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class SqlFingerprintTest {
+
+    /**
+     * Literals, IN lists, comments and whitespace are normalized.
+     */
+    @Test
+    public void normalize() {
+        assertEquals("Literals", "select * from t1 where a = ? and b = ?",
+                SqlFingerprint.normalize("SELECT *\n  FROM t1 WHERE a = 42 "
+                        + "AND b = 'it''s'"));
+        assertEquals("In list", "delete from t where id in (?)",
+                SqlFingerprint.normalize("delete from t where id IN (1, 2, 3)"));
+        assertEquals("Function kept", "select min(?, ?)", SqlFingerprint.
+                normalize("select min(1, 2)"));
+        assertEquals("Comments", "select \"Key\" from t", SqlFingerprint.
+                normalize("select /* hint */ \"Key\" from t -- note"));
+        assertEquals("Decimal", "update t set x = ?", SqlFingerprint.
+                normalize("update t set x = 1.5e3 "));
+    }
+
+    /**
+     * Same shape gives same id and fingerprints are cached.
+     */
+    @Test
+    public void fingerprint() {
+        final SqlFingerprint a = SqlFingerprint.of(
+                "select * from t where id = 1");
+        final SqlFingerprint b = SqlFingerprint.of(
+                "select * from t where id = 2");
+        assertEquals("Same shape", a.getId(), b.getId());
+        assertTrue("Different shape", a.getHash() != SqlFingerprint.of(
+                "select * from u where id = 1").getHash());
+        assertSame("Cached", a, SqlFingerprint.of(
+                "select * from t where id = 1"));
+        assertEquals("Id length", 16, a.getId().length());
+    }
+}
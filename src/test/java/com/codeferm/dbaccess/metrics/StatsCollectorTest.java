@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import com.codeferm.dbaccess.DbAccessException;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.metrics.StatsCollector}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class StatsCollectorTest {
+
+    /**
+     * Create finished event.
+     *
+     * @param sql SQL statement.
+     * @param rows Rows returned.
+     * @param error Error or null.
+     * @return Event.
+     */
+    private static QueryEvent event(final String sql, final int rows,
+            final Throwable error) {
+        final QueryEvent event = new QueryEvent(StatsCollectorTest.class,
+                QueryOperation.SELECT_MAP_LIST, sql, new Object[]{});
+        event.setError(error);
+        event.finish(rows);
+        return event;
+    }
+
+    /**
+     * Events are aggregated by SQL and keys over the limit go to other.
+     */
+    @Test
+    public void collect() {
+        final StatsCollector collector = new StatsCollector(2);
+        collector.end(event("a", 10, null));
+        collector.end(event("a", 5, new DbAccessException("test")));
+        collector.end(event("b", 1, null));
+        collector.end(event("c", 1, null));
+        final QueryStats stats = collector.getStats("a");
+        assertNotNull("Stats should exist", stats);
+        assertEquals("Count should match", 2, stats.getCount());
+        assertEquals("Errors should match", 1, stats.getErrors());
+        assertEquals("Rows should match", 15, stats.getRows());
+        assertNotNull("Over limit should be other", collector.getStats(
+                StatsCollector.OTHER));
+        assertEquals("Three keys expected", 3, collector.getStats().size());
+        collector.reset();
+        assertEquals("Reset should clear", 0, collector.getStats().size());
+    }
+}
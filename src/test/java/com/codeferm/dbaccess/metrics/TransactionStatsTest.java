@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.metrics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.metrics.TransactionStats}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class TransactionStatsTest {
+
+    /**
+     * Outcomes and times are recorded per method and listener is called.
+     *
+     * @throws NoSuchMethodException Possible exception.
+     * @throws InterruptedException Possible exception.
+     */
+    @Test
+    public void stats() throws NoSuchMethodException, InterruptedException {
+        final TransactionStats stats = TransactionStats.getInstance();
+        stats.reset();
+        final AtomicInteger ended = new AtomicInteger();
+        stats.setMetrics(new TransactionMetrics() {
+
+            @Override
+            public void start(final TransactionEvent event) {
+                assertSame("Event should be current", event, TransactionEvent.
+                        current());
+            }
+
+            @Override
+            public void end(final TransactionEvent event) {
+                ended.incrementAndGet();
+            }
+        });
+        try {
+            final Method method = TransactionStatsTest.class.getMethod("stats");
+            TransactionEvent event = stats.begin(TransactionStatsTest.class,
+                    method);
+            Thread.sleep(2);
+            event.methodDone();
+            stats.end(event, true, null);
+            assertTrue("Method time", event.getMethodTime() >= 2000000L);
+            assertEquals("Wall time", event.getElapsed(), event.getMethodTime()
+                    + event.getCompletionTime());
+            event = stats.begin(TransactionStatsTest.class, method);
+            stats.end(event, false, new IllegalStateException("test"));
+            assertNull("Event should not be current", TransactionEvent.
+                    current());
+            assertEquals("Commits", 1, stats.getCommitCount());
+            assertEquals("Rollbacks", 1, stats.getRollbackCount());
+            assertEquals("Listener", 2, ended.get());
+            final TransactionMethodStats methodStats = stats.getMethodStats(
+                    "TransactionStatsTest.stats");
+            assertEquals("Method commits", 1, methodStats.getCommits());
+            assertEquals("Method rollbacks", 1, methodStats.getRollbacks());
+            assertEquals("Summaries", 1, stats.getMethods().length);
+        } finally {
+            stats.setMetrics(null);
+            stats.reset();
+        }
+    }
+
+    /**
+     * Listener set while a transaction runs does not see its end, and the
+     * listener it started with does.
+     *
+     * @throws NoSuchMethodException Possible exception.
+     */
+    @Test
+    public void swapMetrics() throws NoSuchMethodException {
+        final TransactionStats stats = TransactionStats.getInstance();
+        final AtomicInteger first = new AtomicInteger();
+        final AtomicInteger second = new AtomicInteger();
+        final TransactionMetrics secondMetrics = new TransactionMetrics() {
+
+            @Override
+            public void start(final TransactionEvent event) {
+                // Nothing to do
+            }
+
+            @Override
+            public void end(final TransactionEvent event) {
+                second.incrementAndGet();
+            }
+        };
+        stats.setMetrics(new TransactionMetrics() {
+
+            @Override
+            public void start(final TransactionEvent event) {
+                // Swap while transaction runs
+                stats.setMetrics(secondMetrics);
+            }
+
+            @Override
+            public void end(final TransactionEvent event) {
+                first.incrementAndGet();
+            }
+        });
+        try {
+            final Method method = TransactionStatsTest.class.getMethod(
+                    "swapMetrics");
+            stats.end(stats.begin(TransactionStatsTest.class, method), true,
+                    null);
+            assertEquals("First listener should end transaction", 1, first.
+                    get());
+            assertEquals("Second listener should not end transaction", 0,
+                    second.get());
+        } finally {
+            stats.setMetrics(null);
+            stats.reset();
+        }
+    }
+}
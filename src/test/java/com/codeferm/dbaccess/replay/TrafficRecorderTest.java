@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.replay;
+
+import com.codeferm.dbaccess.metrics.QueryEvent;
+import com.codeferm.dbaccess.metrics.QueryOperation;
+import com.codeferm.dbaccess.metrics.TransactionEvent;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Date;
+import java.sql.Time;
+import java.sql.Timestamp;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.replay.TrafficRecorder} and the traffic
+ * log format.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class TrafficRecorderTest {
+
+    /**
+     * Parameter types are read back as written.
+     *
+     * @throws IOException Possible exception.
+     */
+    @Test
+    public void roundTrip() throws IOException {
+        final Timestamp timestamp = new Timestamp(1000000000123L);
+        timestamp.setNanos(123456789);
+        final Object[] params = {null, "text", -1, Long.MAX_VALUE,
+            (short) 2, (byte) 3, Boolean.TRUE, Boolean.FALSE, 1.5f, -2.5d,
+            new BigDecimal("-123.45"), new BigInteger("12345678901234567890"),
+            timestamp, new Date(86400000L), new Time(3600000L),
+            new java.util.Date(5L), new byte[]{1, 2}};
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (TrafficLogWriter writer = new TrafficLogWriter(out, 42L)) {
+            writer.write(new TrafficEntry(TrafficEntry.Kind.STATEMENT, 500L,
+                    7L, "main", 0L, QueryOperation.UPDATE, "update t set a = ?",
+                    params, 10L, 1, null));
+            writer.write(new TrafficEntry(TrafficEntry.Kind.STATEMENT, 300L,
+                    7L, "main", 0L, QueryOperation.BATCH, "update t set a = ?",
+                    new Object[]{new Object[]{1}, new Object[]{2}}, 20L, 2,
+                    "failed"));
+        }
+        final byte[] bytes = out.toByteArray();
+        try (TrafficLogReader reader = new TrafficLogReader(
+                new ByteArrayInputStream(bytes))) {
+            assertEquals("Start", 42L, reader.getStartMillis());
+            final TrafficEntry first = reader.read();
+            assertEquals("Offset", 500L, first.getOffset());
+            assertEquals("Operation", QueryOperation.UPDATE, first.
+                    getOperation());
+            final Object[] read = first.getParams();
+            assertEquals("Parameters", params.length, read.length);
+            for (int i = 0; i < params.length - 1; i++) {
+                assertEquals("Parameter " + i, params[i], read[i]);
+            }
+            assertArrayEquals("Bytes", (byte[]) params[params.length - 1],
+                    (byte[]) read[params.length - 1]);
+            assertNull("No error", first.getError());
+            final TrafficEntry second = reader.read();
+            assertEquals("Offset before previous", 300L, second.getOffset());
+            assertEquals("Same SQL", first.getSql(), second.getSql());
+            assertArrayEquals("Batch", new Object[]{1}, (Object[]) second.
+                    getParams()[0]);
+            assertEquals("Error", "failed", second.getError());
+            assertNull("End of log", reader.read());
+        }
+        try (TrafficLogReader reader = new TrafficLogReader(
+                new ByteArrayInputStream(bytes, 0, bytes.length - 3))) {
+            assertEquals("Truncated log keeps complete entries", 500L,
+                    reader.read().getOffset());
+            assertNull("Truncated entry", reader.read());
+        }
+    }
+
+    /**
+     * Statements are recorded under their transaction.
+     *
+     * @throws IOException Possible exception.
+     * @throws NoSuchMethodException Possible exception.
+     */
+    @Test
+    public void record() throws IOException, NoSuchMethodException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final TrafficRecorder recorder = new TrafficRecorder(
+                new TrafficLogWriter(out, System.currentTimeMillis()));
+        final TransactionEvent transaction = new TransactionEvent(
+                TrafficRecorderTest.class, TrafficRecorderTest.class.
+                getMethod("record"));
+        recorder.start(transaction);
+        final Object[] params = {1};
+        final QueryEvent event = new QueryEvent(TrafficRecorderTest.class,
+                QueryOperation.UPDATE, "update t set a = ?", params);
+        event.finish(1);
+        recorder.end(event);
+        params[0] = 2;
+        transaction.methodDone();
+        transaction.finish(true, null);
+        recorder.end(transaction);
+        final QueryEvent outside = new QueryEvent(TrafficRecorderTest.class,
+                QueryOperation.SELECT_MAP_LIST, "select a from t", null);
+        outside.finish(0);
+        recorder.end(outside);
+        recorder.close();
+        assertEquals("Written", 4, recorder.getWrittenCount());
+        assertEquals("Dropped", 0, recorder.getDroppedCount());
+        try (TrafficLogReader reader = new TrafficLogReader(
+                new ByteArrayInputStream(out.toByteArray()))) {
+            final TrafficEntry begin = reader.read();
+            assertEquals("Begin", TrafficEntry.Kind.BEGIN, begin.getKind());
+            assertEquals("Name", "TrafficRecorderTest.record", begin.
+                    getName());
+            final TrafficEntry statement = reader.read();
+            assertEquals("In transaction", begin.getTransactionId(),
+                    statement.getTransactionId());
+            assertEquals("Thread", Thread.currentThread().getName(),
+                    statement.getThreadName());
+            assertArrayEquals("Copied parameters", new Object[]{1},
+                    statement.getParams());
+            final TrafficEntry commit = reader.read();
+            assertEquals("Commit", TrafficEntry.Kind.COMMIT, commit.
+                    getKind());
+            assertEquals("No transaction", 0, reader.read().
+                    getTransactionId());
+            assertNull("End of log", reader.read());
+        }
+    }
+
+    /**
+     * Entries not written because a write failed are counted as dropped, so
+     * every recorded entry is either written or dropped.
+     *
+     * @throws IOException Possible exception.
+     */
+    @Test
+    public void writeFailure() throws IOException {
+        final TrafficRecorder recorder = new TrafficRecorder(
+                new TrafficLogWriter(new ByteArrayOutputStream(), System.
+                        currentTimeMillis()));
+        final Object bad = new Object() {
+
+            @Override
+            public String toString() {
+                throw new IllegalStateException("Cannot write");
+            }
+        };
+        for (Object param : new Object[]{1, bad, 2}) {
+            final QueryEvent event = new QueryEvent(TrafficRecorderTest.class,
+                    QueryOperation.UPDATE, "update t set a = ?", new Object[]{
+                        param});
+            event.finish(1);
+            recorder.end(event);
+        }
+        recorder.close();
+        assertTrue("Failed entry should be dropped", recorder.
+                getDroppedCount() >= 1);
+        assertEquals("Every entry written or dropped", 3, recorder.
+                getWrittenCount() + recorder.getDroppedCount());
+    }
+}
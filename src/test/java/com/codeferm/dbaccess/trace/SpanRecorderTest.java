@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.trace;
+
+import com.codeferm.dbaccess.metrics.QueryEvent;
+import com.codeferm.dbaccess.metrics.QueryOperation;
+import com.codeferm.dbaccess.metrics.TransactionEvent;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.trace.SpanRecorder}.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class SpanRecorderTest {
+
+    /**
+     * Statement spans are children of transaction span.
+     *
+     * @throws NoSuchMethodException Possible exception.
+     */
+    @Test
+    public void nesting() throws NoSuchMethodException {
+        final List<Span> spans = new ArrayList<Span>();
+        final SpanRecorder recorder = new SpanRecorder(new SpanExporter() {
+
+            @Override
+            public void export(final List<Span> batch) {
+                spans.addAll(batch);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        final TransactionEvent transaction = new TransactionEvent(
+                SpanRecorderTest.class, SpanRecorderTest.class.getMethod(
+                        "nesting"));
+        recorder.start(transaction);
+        final QueryEvent event = new QueryEvent(SpanRecorderTest.class,
+                QueryOperation.UPDATE, "update t set a = 1", null);
+        event.finish(1);
+        recorder.end(event);
+        transaction.finish(true, null);
+        recorder.end(transaction);
+        recorder.close();
+        assertEquals("Spans", 2, spans.size());
+        final Span statement = spans.get(0);
+        final Span parent = spans.get(1);
+        assertEquals("Transaction name", "SpanRecorderTest.nesting", parent.
+                getName());
+        assertNull("Transaction is root", parent.getParentSpanId());
+        assertEquals("Same trace", parent.getTraceId(), statement.getTraceId());
+        assertEquals("Parent", parent.getSpanId(), statement.
+                getParentSpanId());
+        assertEquals("Normalized SQL", "update t set a = ?", statement.
+                getAttributes().get("db.statement"));
+        assertEquals("Exported", 2, recorder.getExportedCount());
+    }
+
+    /**
+     * Span status holds the error type, not the message with SQL and
+     * parameters.
+     */
+    @Test
+    public void error() {
+        final List<Span> spans = new ArrayList<Span>();
+        final SpanRecorder recorder = new SpanRecorder(new SpanExporter() {
+
+            @Override
+            public void export(final List<Span> batch) {
+                spans.addAll(batch);
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        final QueryEvent event = new QueryEvent(SpanRecorderTest.class,
+                QueryOperation.UPDATE, "update t set a = ?", new Object[]{
+                    "secret"});
+        event.setError(new IllegalStateException("params=[secret]"));
+        event.finish(0);
+        recorder.end(event);
+        recorder.close();
+        assertEquals("Error type", "IllegalStateException", spans.get(0).
+                getError());
+    }
+
+    /**
+     * Batches are written as OTLP JSON file lines.
+     *
+     * @throws IOException Possible exception.
+     */
+    @Test
+    public void jsonLines() throws IOException {
+        final StringWriter writer = new StringWriter();
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+        attributes.put("dbaccess.rows", 1);
+        final Span span = new Span("0af7651916cd43dd8448eb211c80319c",
+                "b7ad6b7169203331", null, "update", 1000, 2000, attributes,
+                "bad \"sql\"");
+        final JsonLinesSpanExporter exporter = new JsonLinesSpanExporter(
+                writer);
+        final List<Span> batch = new ArrayList<Span>();
+        batch.add(span);
+        exporter.export(batch);
+        final String line = writer.toString();
+        assertTrue("Times", line.contains("\"startTimeUnixNano\":\"1000\""));
+        assertTrue("Attribute", line.contains(
+                "{\"key\":\"dbaccess.rows\",\"value\":{\"intValue\":\"1\"}}"));
+        assertTrue("Status", line.contains(
+                "\"message\":\"bad \\\"sql\\\"\""));
+        assertTrue("Envelope", line.startsWith(
+                "{\"resourceSpans\":[{\"resource\":{\"attributes\":"
+                + "[{\"key\":\"service.name\",\"value\":{\"stringValue\":"
+                + "\"dbaccess\"}}]},\"scopeSpans\":[{\"scope\":"));
+        assertTrue("One line", line.endsWith("}}]}]}]}\n"));
+        assertEquals("Batch is one line", 1, line.split("\n").length);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) Steven P. Goldsmith. All rights reserved.
+ *
+ * Created by Steven P. Goldsmith on November 27, 2011
+ * sgoldsmith@com.codeferm
+ */
+package com.codeferm.dbaccess.transaction;
+
+import com.codeferm.dbaccess.DbAccess;
+import com.codeferm.dbaccess.DbJdbcConn;
+import com.codeferm.dbaccess.dto.TestTableDto;
+import java.sql.Connection;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test {@link com.codeferm.dbaccess.transaction.IdentityMap} life cycle. No
+ * database is required.
+ *
+ * @author sgoldsmith
+ * @version 1.0.0
+ * @since 1.0.0
+ */
+public final class IdentityMapTest {
+
+    /**
+     * SQL beans are loaded with.
+     */
+    private static final String SQL = "select * from test_table where id = ?";
+    /**
+     * Implementation beans are loaded through.
+     */
+    private final DbAccess db = new DbJdbcConn((Connection) null);
+
+    /**
+     * Make sure map is not left open for other tests on this thread.
+     */
+    @After
+    public void tearDown() {
+        IdentityMap.close();
+    }
+
+    /**
+     * Beans are only kept while map is open.
+     */
+    @Test
+    public void openClose() {
+        final TestTableDto dto = new TestTableDto();
+        assertFalse("Map should not be open", IdentityMap.isOpen());
+        // Put is ignored when map is not open
+        IdentityMap.put(db, TestTableDto.class, SQL, 1, dto);
+        assertNull("Bean should not be kept", IdentityMap.get(db,
+                TestTableDto.class, SQL, 1));
+        assertTrue("Map should be opened", IdentityMap.open());
+        assertFalse("Nested open should keep outer map", IdentityMap.open());
+        IdentityMap.put(db, TestTableDto.class, SQL, 1, dto);
+        assertSame("Bean should be served from map", dto, IdentityMap.get(db,
+                TestTableDto.class, SQL, 1));
+        assertNull("Key is per bean class", IdentityMap.get(db, Object.class,
+                SQL, 1));
+        assertNull("Key is per DbAccess", IdentityMap.get(new DbJdbcConn(
+                (Connection) null), TestTableDto.class, SQL, 1));
+        assertNull("Key is per SQL", IdentityMap.get(db,
+                TestTableDto.class,
+                "select * from test_table where int_field = ?", 1));
+        IdentityMap.remove(TestTableDto.class, 1);
+        assertNull("Bean should be evicted", IdentityMap.get(db,
+                TestTableDto.class, SQL, 1));
+        IdentityMap.put(db, TestTableDto.class, SQL, 1, dto);
+        IdentityMap.evict(TestTableDto.class);
+        assertNull("Class should be evicted", IdentityMap.get(db,
+                TestTableDto.class, SQL, 1));
+        IdentityMap.put(db, TestTableDto.class, SQL, 1, dto);
+        IdentityMap.close();
+        assertFalse("Map should be closed", IdentityMap.isOpen());
+        assertNull("Bean should be cleared on close", IdentityMap.get(db,
+                TestTableDto.class, SQL, 1));
+    }
+}
@@ -154,4 +154,45 @@ public class TransactionTest {
                     "Record commited and should have been rolled back");
         }
     }
+
+    /**
+     * Load bean by key twice, update it and load it again with identity map.
+     *
+     * @param db dbAccess implementation.
+     * @param selectSql SQL for selectByKey.
+     * @param updateSql SQL for update.
+     * @param id Key of record to load/update.
+     * @return Beans from first load, second load and load after update.
+     */
+    //CHECKSTYLE:OFF DesignForExtension - Guice methods cannot be final
+    @Transaction(identityMap = true)
+    //CHECKSTYLE:ON DesignForExtension
+    public TestTableDto[] identityMapRec(final DbAccess db,
+            final String selectSql, final String updateSql, final int id) {
+        if (!IdentityMap.isOpen()) {
+            throw new DbAccessException("Identity map not open");
+        }
+        final TestTableDto first = db.selectByKey(selectSql, id,
+                TestTableDto.class);
+        final TestTableDto second = db.selectByKey(selectSql, id,
+                TestTableDto.class);
+        db.update(updateSql, new Object[]{"identity", id});
+        final TestTableDto updated = db.selectByKey(selectSql, id,
+                TestTableDto.class);
+        return new TestTableDto[]{first, second, updated};
+    }
+
+    /**
+     * Throw an {@link java.lang.Error} inside a transaction.
+     *
+     * @param db dbAccess implementation.
+     * @param sql SQL for update.
+     */
+    //CHECKSTYLE:OFF DesignForExtension - Guice methods cannot be final
+    @Transaction(identityMap = true)
+    //CHECKSTYLE:ON DesignForExtension
+    public void errorRec(final DbAccess db, final String sql) {
+        db.update(sql, new Object[]{"error", 0});
+        throw new AssertionError("Error inside transaction");
+    }
 }